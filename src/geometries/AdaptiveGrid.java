@@ -0,0 +1,539 @@
+package geometries;
+
+import primitives.Point;
+import primitives.Ray;
+import primitives.Vector;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Hierarchical grid over bounded geometries - a coarse uniform grid whose dense cells
+ * are recursively subdivided by grids of their own, so empty space costs little memory
+ * and clusters of small geometries (e.g. bubbles near a spout) don't overfill a cell.
+ * <br>
+ * The resolution of each grid is chosen by the amount of its geometries and by the
+ * proportions of its bounds (about {@link #DENSITY} cells per geometry). The cells hold
+ * the indices of the geometries whose boxes overlap them in a compact array, and a cell
+ * with more than {@link #DENSE_CELL} geometries is subdivided, up to {@link #MAX_LEVELS}
+ * levels, unless its geometries mostly cover it. A subdivision is kept only if it
+ * lowers the maximal or the average amount of geometries of a cell by {@link #SPLIT_GAIN},
+ * and the references of all the subdivisions are capped by a memory budget of
+ * {@link #SUBDIVISION_BUDGET} references per geometry, so heavily overlapping large
+ * geometries don't multiply the cells. A ray walks the cells it pierces front to back (3D-DDA), descends into the
+ * grids of subdivided cells, and stops at the first cell that contains the closest hit
+ * found so far. A geometry spanning several cells (e.g. a large sphere or polygon) is
+ * tested once per ray, by a mailbox of the last ray that tested each geometry, kept per
+ * thread.
+ */
+public class AdaptiveGrid extends Intersectable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    /** Cells per geometry of a grid */
+    private static final double DENSITY = 2;
+    /** Maximal resolution of a grid along an axis */
+    private static final int MAX_RESOLUTION = 128;
+    /** Maximal amount of geometries of a cell that isn't subdivided */
+    private static final int DENSE_CELL = 8;
+    /** Maximal amount of grid levels */
+    private static final int MAX_LEVELS = 3;
+    /** Maximal part of a cell covered by the box of a geometry that a subdivision separates */
+    private static final double COVERED = 0.5;
+    /** Maximal ratio of the amount of geometries of a cell of a subdivision to the subdivided one */
+    private static final double SPLIT_GAIN = 0.5;
+    /** Budget of the references of the subdivisions - references per geometry */
+    private static final double SUBDIVISION_BUDGET = 16;
+    /** Margin of the geometry boxes inserted into the cells, relatively to the cell size */
+    private static final double MARGIN = 1e-9;
+
+    /** The geometries */
+    private final Intersectable[] geometries;
+    /** The boxes of the geometries - min x, y, z and max x, y, z of each geometry */
+    private final double[] boxes;
+    /** The top level grid, null if there are no geometries */
+    private final Grid root;
+    /** Amount of the grids */
+    private int grids = 0;
+    /** Amount of the cells of all the grids */
+    private int cells = 0;
+    /** Amount of the references to the geometries from the cells */
+    private int references = 0;
+    /** The budget of the references of the subdivisions left during the build */
+    private transient long budget;
+    /** The mailboxes of the rendering threads, created on the first query */
+    private transient volatile ThreadLocal<Mailbox> mailboxes;
+
+    /**
+     * Builds the grid over geometries
+     *
+     * @param geometries the geometries
+     * @throws IllegalArgumentException if a geometry is unbounded
+     */
+    public AdaptiveGrid(Intersectable... geometries) {
+        this.geometries = geometries.clone();
+        int n = geometries.length;
+        boxes = new double[6 * n];
+        double[] bounds = { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
+        for (int i = 0; i < n; ++i) {
+            Intersectable geometry = geometries[i];
+            geometry.initializebox();
+            if (geometry.box == null) throw new IllegalArgumentException("Grid geometries must be bounded");
+            double[] box = { geometry.box.min.getX(), geometry.box.min.getY(), geometry.box.min.getZ(),
+                    geometry.box.max.getX(), geometry.box.max.getY(), geometry.box.max.getZ() };
+            System.arraycopy(box, 0, boxes, 6 * i, 6);
+            for (int k = 0; k < 3; ++k) {
+                bounds[k] = Math.min(bounds[k], box[k]);
+                bounds[3 + k] = Math.max(bounds[3 + k], box[3 + k]);
+            }
+        }
+        if (n == 0) {
+            root = null;
+            return;
+        }
+        box = new AABB(new Point(bounds[0], bounds[1], bounds[2]), new Point(bounds[3], bounds[4], bounds[5]));
+        bvhIsOn = true;
+
+        // a flat scene gets a thin extent, so every axis has cells
+        double size = Math.max(bounds[3] - bounds[0], Math.max(bounds[4] - bounds[1], bounds[5] - bounds[2]));
+        double pad = size > 0 ? size * 1e-6 : 1e-6;
+        for (int k = 0; k < 3; ++k)
+            if (!(bounds[3 + k] - bounds[k] > pad)) {
+                bounds[k] -= pad;
+                bounds[3 + k] += pad;
+            }
+        int[] all = new int[n];
+        for (int i = 0; i < n; ++i) all[i] = i;
+        budget = (long) (SUBDIVISION_BUDGET * n);
+        root = new Grid(bounds, all);
+        root.place(all, 1);
+    }
+
+    /**
+     * Returns the amount of the grids - the top level grid and the grids of the
+     * subdivided cells
+     *
+     * @return the amount of grids
+     */
+    public int grids() {
+        return grids;
+    }
+
+    /**
+     * Returns the amount of the cells of all the grids
+     *
+     * @return the amount of cells
+     */
+    public int cells() {
+        return cells;
+    }
+
+    /**
+     * Returns the amount of the references to the geometries from the cells
+     *
+     * @return the amount of references
+     */
+    public int references() {
+        return references;
+    }
+
+    /**
+     * Returns the geometries
+     *
+     * @return unmodifiable list of the geometries
+     */
+    public List<Intersectable> getGeometries() {
+        return List.of(geometries);
+    }
+
+    /**
+     * Returns the mailbox of the current thread for a new ray
+     *
+     * @return the mailbox
+     */
+    private Mailbox mailbox() {
+        ThreadLocal<Mailbox> local = mailboxes;
+        if (local == null) {
+            synchronized (this) {
+                if (mailboxes == null) mailboxes = ThreadLocal.withInitial(() -> new Mailbox(geometries.length));
+                local = mailboxes;
+            }
+        }
+        Mailbox mailbox = local.get();
+        mailbox.next();
+        return mailbox;
+    }
+
+    @Override
+    protected List<Intersection> calculateIntersectionsHelper(Ray ray) {
+        if (root == null) return null;
+        Walk walk = new Walk(ray, null);
+        double[] range = new double[2];
+        if (!root.clip(walk, range)) return null;
+        root.walk(walk, range[0], range[1]);
+        return walk.list;
+    }
+
+    @Override
+    protected boolean closestHitHelper(Ray ray, HitRecord hit) {
+        if (root == null) return false;
+        Walk walk = new Walk(ray, hit);
+        double[] range = new double[2];
+        if (!root.clip(walk, range) || !(range[0] < hit.t)) return false;
+        root.walk(walk, range[0], range[1]);
+        return walk.found;
+    }
+
+    @Override
+    public void computeBoundingBox() {
+        // the box is computed by the build
+    }
+
+    /**
+     * A walk of a ray through the grids - the ray, its mailbox and what it found
+     */
+    private final class Walk {
+        /** The ray */
+        final Ray ray;
+        /** Ray head coordinates */
+        final double[] origin;
+        /** Ray direction coordinates */
+        final double[] direction;
+        /** Inverses of ray direction coordinates */
+        final double[] inverse;
+        /** The mailbox of the ray */
+        final Mailbox mailbox = mailbox();
+        /** The record of the closest hit, null if all the intersections are collected */
+        final HitRecord hit;
+        /** The collected intersections */
+        List<Intersection> list = null;
+        /** Whether a closer hit was found */
+        boolean found = false;
+
+        /**
+         * Starts a walk
+         *
+         * @param ray the ray
+         * @param hit the record of the closest hit, or null to collect all the intersections
+         */
+        Walk(Ray ray, HitRecord hit) {
+            this.ray = ray;
+            this.hit = hit;
+            Point head = ray.getHead();
+            Vector dir = ray.getDirection();
+            origin = new double[] { head.getX(), head.getY(), head.getZ() };
+            direction = new double[] { dir.getX(), dir.getY(), dir.getZ() };
+            inverse = new double[] { 1 / direction[0], 1 / direction[1], 1 / direction[2] };
+        }
+
+        /**
+         * Tests a geometry, unless the ray already tested it
+         *
+         * @param geometry the geometry index
+         */
+        void test(int geometry) {
+            if (!mailbox.check(geometry)) return;
+            if (hit != null) {
+                found |= geometries[geometry].closestHit(ray, hit);
+                return;
+            }
+            var intersections = geometries[geometry].calculateIntersections(ray);
+            if (intersections == null) return;
+            if (list == null) list = new ArrayList<>(intersections);
+            else list.addAll(intersections);
+        }
+
+        /**
+         * Checks whether the walk is done within a cell - the closest hit is within it,
+         * so the next cells are beyond it
+         *
+         * @param exit the exit distance of the ray from the cell
+         * @return true if the walk is done
+         */
+        boolean done(double exit) {
+            return hit != null && hit.t <= exit;
+        }
+    }
+
+    /**
+     * Uniform grid of a level - the top level grid, or the grid of a subdivided cell
+     */
+    private final class Grid implements Serializable {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        /** The bounds of the grid - min x, y, z and max x, y, z */
+        private final double[] bounds;
+        /** The resolution along each axis */
+        private final int[] resolution = new int[3];
+        /** The cell size along each axis */
+        private final double[] cellSize = new double[3];
+        /** The position of the geometry indices of each cell, and the end of the last one */
+        private final int[] cellStart;
+        /** The geometry indices of the cells, null until they are placed */
+        private int[] cellGeometries = null;
+        /** The grids of the subdivided cells, null if no cell is subdivided */
+        private Grid[] children = null;
+
+        /**
+         * Lays out a grid - chooses its resolution and counts the geometries of its cells
+         *
+         * @param bounds  the bounds
+         * @param members the indices of the geometries overlapping the bounds
+         */
+        Grid(double[] bounds, int[] members) {
+            this.bounds = bounds;
+            double[] extent = { bounds[3] - bounds[0], bounds[4] - bounds[1], bounds[5] - bounds[2] };
+            // a thin axis gets a single cell, and doesn't multiply the cells of the others
+            double thin = Math.max(extent[0], Math.max(extent[1], extent[2])) / MAX_RESOLUTION;
+            double volume = Math.max(extent[0], thin) * Math.max(extent[1], thin) * Math.max(extent[2], thin);
+            double factor = Math.cbrt(DENSITY * members.length / volume);
+            int count = 1;
+            for (int k = 0; k < 3; ++k) {
+                resolution[k] = (int) Math.max(1, Math.min(MAX_RESOLUTION, Math.round(extent[k] * factor)));
+                cellSize[k] = extent[k] / resolution[k];
+                count *= resolution[k];
+            }
+
+            cellStart = new int[count + 1];
+            int[] range = new int[6];
+            for (int member : members) {
+                cellRange(member, range);
+                for (int z = range[2]; z <= range[5]; ++z)
+                    for (int y = range[1]; y <= range[4]; ++y)
+                        for (int x = range[0]; x <= range[3]; ++x)
+                            ++cellStart[cell(x, y, z) + 1];
+            }
+        }
+
+        /**
+         * Returns the amount of the references to the geometries from the cells
+         *
+         * @return the amount of references
+         */
+        private long referenceCount() {
+            long sum = 0;
+            for (int c = 1; c < cellStart.length; ++c)
+                sum += cellStart[c];
+            return sum;
+        }
+
+        /**
+         * Checks whether the grid separates the geometries of a cell it subdivides - its
+         * maximal or average amount of geometries of a non-empty cell is lower by
+         * {@link #SPLIT_GAIN}
+         *
+         * @param size the amount of the geometries of the subdivided cell
+         * @return true if the grid separates the geometries
+         */
+        private boolean separates(int size) {
+            int max = 0, filled = 0;
+            long sum = 0;
+            for (int c = 1; c < cellStart.length; ++c) {
+                int count = cellStart[c];
+                if (count == 0) continue;
+                max = Math.max(max, count);
+                ++filled;
+                sum += count;
+            }
+            return max <= SPLIT_GAIN * size || sum <= SPLIT_GAIN * size * filled;
+        }
+
+        /**
+         * Places the geometries in the cells, and subdivides the dense cells
+         *
+         * @param members the indices of the geometries overlapping the bounds
+         * @param level   the level of the grid
+         */
+        void place(int[] members, int level) {
+            int count = cellStart.length - 1;
+            ++grids;
+            cells += count;
+            for (int c = 0; c < count; ++c)
+                cellStart[c + 1] += cellStart[c];
+            cellGeometries = new int[cellStart[count]];
+            references += cellGeometries.length;
+            int[] fill = Arrays.copyOf(cellStart, count);
+            int[] range = new int[6];
+            for (int member : members) {
+                cellRange(member, range);
+                for (int z = range[2]; z <= range[5]; ++z)
+                    for (int y = range[1]; y <= range[4]; ++y)
+                        for (int x = range[0]; x <= range[3]; ++x)
+                            cellGeometries[fill[cell(x, y, z)]++] = member;
+            }
+
+            if (level == MAX_LEVELS) return;
+            for (int z = 0; z < resolution[2]; ++z)
+                for (int y = 0; y < resolution[1]; ++y)
+                    for (int x = 0; x < resolution[0]; ++x)
+                        subdivide(x, y, z, level);
+        }
+
+        /**
+         * Subdivides a cell by a grid of its own if it is dense - unless most of its
+         * geometries cover most of it, the grid doesn't separate them, or its references
+         * exceed the budget left
+         *
+         * @param x     the cell x index
+         * @param y     the cell y index
+         * @param z     the cell z index
+         * @param level the level of the grid
+         */
+        private void subdivide(int x, int y, int z, int level) {
+            int c = cell(x, y, z);
+            int size = cellStart[c + 1] - cellStart[c];
+            if (size <= DENSE_CELL) return;
+            int[] index = { x, y, z };
+            double[] cellBounds = new double[6];
+            for (int k = 0; k < 3; ++k) {
+                cellBounds[k] = bounds[k] + index[k] * cellSize[k];
+                cellBounds[3 + k] = index[k] == resolution[k] - 1 ? bounds[3 + k] : cellBounds[k] + cellSize[k];
+            }
+            int[] members = Arrays.copyOfRange(cellGeometries, cellStart[c], cellStart[c + 1]);
+            int separable = 0;
+            for (int member : members)
+                if (covered(member, cellBounds) <= COVERED) ++separable;
+            if (separable <= DENSE_CELL) return;
+
+            Grid child = new Grid(cellBounds, members);
+            long childReferences = child.referenceCount();
+            if (childReferences > budget || !child.separates(size)) return;
+            budget -= childReferences;
+            if (children == null) children = new Grid[cellStart.length - 1];
+            children[c] = child;
+            child.place(members, level + 1);
+        }
+
+        /**
+         * Calculates the part of a cell covered by the box of a geometry
+         *
+         * @param member     the geometry index
+         * @param cellBounds the bounds of the cell
+         * @return the covered part of the cell volume
+         */
+        private double covered(int member, double[] cellBounds) {
+            double part = 1;
+            for (int k = 0; k < 3; ++k) {
+                double extent = cellBounds[3 + k] - cellBounds[k];
+                if (!(extent > 0)) continue;
+                double overlap = Math.min(boxes[6 * member + 3 + k], cellBounds[3 + k])
+                        - Math.max(boxes[6 * member + k], cellBounds[k]);
+                part *= Math.max(0, overlap) / extent;
+            }
+            return part;
+        }
+
+        /**
+         * Index of a cell
+         *
+         * @param x the cell x index
+         * @param y the cell y index
+         * @param z the cell z index
+         * @return the cell index
+         */
+        private int cell(int x, int y, int z) {
+            return (z * resolution[1] + y) * resolution[0] + x;
+        }
+
+        /**
+         * Calculates the range of the cells overlapped by the box of a geometry, with a
+         * small margin so a box touching a cell is placed in it
+         *
+         * @param member the geometry index
+         * @param range  receives min x, y, z and max x, y, z cell indices
+         */
+        private void cellRange(int member, int[] range) {
+            for (int k = 0; k < 3; ++k) {
+                double margin = MARGIN * cellSize[k];
+                range[k] = cellIndex(k, boxes[6 * member + k] - margin);
+                range[3 + k] = cellIndex(k, boxes[6 * member + 3 + k] + margin);
+            }
+        }
+
+        /**
+         * Index of the cell containing a coordinate along an axis, clamped to the grid
+         *
+         * @param axis  the axis
+         * @param value the coordinate
+         * @return the cell index along the axis
+         */
+        private int cellIndex(int axis, double value) {
+            int index = (int) Math.floor((value - bounds[axis]) / cellSize[axis]);
+            return Math.max(0, Math.min(resolution[axis] - 1, index));
+        }
+
+        /**
+         * Clips a ray to the bounds of the grid
+         *
+         * @param walk  the walk of the ray
+         * @param range receives the entry and the exit distances
+         * @return false if the ray misses the bounds
+         */
+        boolean clip(Walk walk, double[] range) {
+            double near = 0, far = Double.POSITIVE_INFINITY;
+            for (int k = 0; k < 3; ++k) {
+                double t1 = (bounds[k] - walk.origin[k]) * walk.inverse[k];
+                double t2 = (bounds[3 + k] - walk.origin[k]) * walk.inverse[k];
+                if (Double.isNaN(t1) || Double.isNaN(t2)) continue;
+                near = Math.max(near, Math.min(t1, t2));
+                far = Math.min(far, Math.max(t1, t2));
+            }
+            range[0] = near;
+            range[1] = far;
+            return near <= far;
+        }
+
+        /**
+         * Walks a ray through the cells of the grid front to back (3D-DDA)
+         *
+         * @param walk  the walk of the ray
+         * @param enter the entry distance of the ray into the grid
+         * @param exit  the exit distance of the ray from the grid
+         * @return true if the walk is done - the closest hit is within the grid
+         */
+        boolean walk(Walk walk, double enter, double exit) {
+            int[] index = new int[3], step = new int[3];
+            double[] next = new double[3], delta = new double[3];
+            for (int k = 0; k < 3; ++k) {
+                double d = walk.direction[k];
+                index[k] = cellIndex(k, walk.origin[k] + d * enter);
+                if (d > 0) {
+                    step[k] = 1;
+                    next[k] = (bounds[k] + (index[k] + 1) * cellSize[k] - walk.origin[k]) * walk.inverse[k];
+                    delta[k] = cellSize[k] * walk.inverse[k];
+                } else if (d < 0) {
+                    step[k] = -1;
+                    next[k] = (bounds[k] + index[k] * cellSize[k] - walk.origin[k]) * walk.inverse[k];
+                    delta[k] = -cellSize[k] * walk.inverse[k];
+                } else {
+                    next[k] = Double.POSITIVE_INFINITY;
+                    delta[k] = Double.POSITIVE_INFINITY;
+                }
+            }
+
+            while (true) {
+                int axis = next[0] < next[1] ? (next[0] < next[2] ? 0 : 2) : (next[1] < next[2] ? 1 : 2);
+                double cellExit = Math.min(next[axis], exit);
+                int c = cell(index[0], index[1], index[2]);
+                Grid child = children == null ? null : children[c];
+                if (child != null) {
+                    if (child.walk(walk, enter, cellExit)) return true;
+                } else {
+                    for (int i = cellStart[c]; i < cellStart[c + 1]; ++i)
+                        walk.test(cellGeometries[i]);
+                    if (walk.done(cellExit)) return true;
+                }
+                if (next[axis] >= exit) return false;
+                index[axis] += step[axis];
+                if (index[axis] < 0 || index[axis] >= resolution[axis]) return false;
+                enter = next[axis];
+                next[axis] += delta[axis];
+            }
+        }
+    }
+}
@@ -0,0 +1,1356 @@
+package geometries;
+
+import primitives.Point;
+import primitives.Ray;
+
+import java.io.Serial;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.IntStream;
+
+/**
+ * Parallel builder of the bounding volume hierarchy of a group of geometries.<br>
+ * The bounding boxes of the geometries are computed in parallel, then the hierarchy is
+ * built top-down by splitting the geometries at the best of a few candidate planes by
+ * the surface area heuristic, evaluated over bins of the box centroids. The subtrees are
+ * built as fork-join tasks. Each subtree is built by a single task from its own range of
+ * the geometries, so the hierarchy doesn't depend on the amount of threads.<br>
+ * Alternatively, a linear hierarchy (LBVH) is built much faster, though of lower
+ * quality, from the geometries sorted by the Morton codes of their centroids. The
+ * {@link Metrics} of a build report its time and the SAH cost of the hierarchy, to
+ * choose the method per job.<br>
+ * For scenes of large overlapping geometries (e.g. floors and walls of polygons), a
+ * spatial split hierarchy (SBVH) may also split the space between the geometries, so a
+ * geometry crossing the split plane is referred from both sides, each reference bounded
+ * by the box of its part only. The extra references are capped by a memory budget.<br>
+ * The nodes of the hierarchy are {@link Geometries} groups, and unbounded geometries
+ * (e.g. planes) are kept at the top level, outside the hierarchy.
+ */
+public final class BvhBuilder {
+    /** Amount of centroid bins along an axis */
+    private static final int BINS = 16;
+    /** Maximal amount of geometries in a leaf group */
+    private static final int LEAF_SIZE = 2;
+    /** Amount of geometries below which a subtree is built without forking */
+    private static final int SEQUENTIAL_THRESHOLD = 256;
+    /** Relative cost of testing a node box to intersecting a geometry */
+    private static final double TRAVERSAL_COST = 0.125;
+    /** Bits of a Morton code per axis - 63 bits codes */
+    private static final int MORTON_BITS = 21;
+    /** Bits of a radix sort digit */
+    private static final int RADIX_BITS = 8;
+    /** Amount of geometries per chunk of a parallel radix sort pass */
+    private static final int SORT_CHUNK = 1 << 14;
+    /**
+     * Overlap of the children of the best object split, relative to the root surface
+     * area, above which spatial splits are considered
+     */
+    private static final double SPATIAL_OVERLAP = 1e-5;
+
+    /** Default budget of spatial split references - extra references per geometry */
+    public static final double SPLIT_BUDGET = 0.3;
+
+    /** Hierarchy build method */
+    public enum Method {
+        /** Top-down build by the surface area heuristic over centroid bins - best hierarchy */
+        SAH,
+        /** Linear build over Morton codes of the centroids - fastest build */
+        LBVH,
+        /**
+         * Top-down build by the surface area heuristic with spatial splits, within the
+         * default {@link #SPLIT_BUDGET} - best hierarchy for large overlapping geometries
+         */
+        SBVH
+    }
+
+    /**
+     * Metrics of a hierarchy build
+     *
+     * @param method     the build method
+     * @param primitives the amount of bounded geometries in the hierarchy
+     * @param references the amount of references to the geometries in the hierarchy
+     *                   leaves - more than the geometries when spatial splits refer to a
+     *                   geometry from both of their sides
+     * @param unbounded  the amount of unbounded geometries kept outside the hierarchy
+     * @param nodes      the amount of inner nodes
+     * @param depth      the depth of the hierarchy
+     * @param sahCost    the expected cost of a ray by the surface area heuristic - in
+     *                   geometry intersections, box tests weighted relatively to them
+     * @param nanos      the build time in nanoseconds
+     */
+    public record Metrics(Method method, int primitives, int references, int unbounded, int nodes, int depth,
+                          double sahCost, long nanos) {}
+
+    /** Don't let anyone instantiate this class. */
+    private BvhBuilder() {}
+
+    /**
+     * Builds the hierarchy of a group by the common fork-join pool
+     *
+     * @param geometries the group - its geometries are replaced by the hierarchy root and
+     *                   the unbounded geometries
+     * @return the build metrics
+     */
+    public static Metrics build(Geometries geometries) {
+        return build(geometries, Method.SAH);
+    }
+
+    /**
+     * Builds the hierarchy of a group by a method, by the common fork-join pool
+     *
+     * @param geometries the group - its geometries are replaced by the hierarchy root and
+     *                   the unbounded geometries
+     * @param method     the build method
+     * @return the build metrics
+     */
+    public static Metrics build(Geometries geometries, Method method) {
+        return build(geometries, method, SPLIT_BUDGET, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Builds the hierarchy of a group by a given amount of threads
+     *
+     * @param geometries  the group - its geometries are replaced by the hierarchy root
+     *                    and the unbounded geometries
+     * @param parallelism the amount of threads
+     * @return the build metrics
+     * @throws IllegalArgumentException if the amount of threads is not positive
+     */
+    public static Metrics build(Geometries geometries, int parallelism) {
+        return build(geometries, Method.SAH, parallelism);
+    }
+
+    /**
+     * Builds the hierarchy of a group by a method and a given amount of threads
+     *
+     * @param geometries  the group - its geometries are replaced by the hierarchy root
+     *                    and the unbounded geometries
+     * @param method      the build method
+     * @param parallelism the amount of threads
+     * @return the build metrics
+     * @throws IllegalArgumentException if the amount of threads is not positive
+     */
+    public static Metrics build(Geometries geometries, Method method, int parallelism) {
+        return build(geometries, method, SPLIT_BUDGET, parallelism);
+    }
+
+    /**
+     * Builds the hierarchy of a group with spatial splits (SBVH) within a given budget of
+     * extra references, by a given amount of threads
+     *
+     * @param geometries  the group - its geometries are replaced by the hierarchy root
+     *                    and the unbounded geometries
+     * @param budget      the budget of extra references per geometry (0 - no spatial splits)
+     * @param parallelism the amount of threads
+     * @return the build metrics
+     * @throws IllegalArgumentException if the budget is negative or the amount of threads
+     *                                  is not positive
+     */
+    public static Metrics buildSpatial(Geometries geometries, double budget, int parallelism) {
+        if (!(budget >= 0)) throw new IllegalArgumentException("Spatial split budget must not be negative");
+        return build(geometries, Method.SBVH, budget, parallelism);
+    }
+
+    /**
+     * Builds the hierarchy of a group by a method and a given amount of threads
+     *
+     * @param geometries  the group
+     * @param method      the build method
+     * @param budget      the budget of spatial split references per geometry
+     * @param parallelism the amount of threads
+     * @return the build metrics
+     * @throws IllegalArgumentException if the amount of threads is not positive
+     */
+    private static Metrics build(Geometries geometries, Method method, double budget, int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("Parallelism must be positive");
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return build(geometries, method, budget, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Builds the hierarchy of a group by a fork-join pool
+     *
+     * @param geometries the group
+     * @param method     the build method
+     * @param budget     the budget of spatial split references per geometry
+     * @param pool       the pool
+     * @return the build metrics
+     */
+    private static Metrics build(Geometries geometries, Method method, double budget, ForkJoinPool pool) {
+        long start = System.nanoTime();
+        List<Intersectable> all = geometries.getGeometries();
+        Intersectable[] objects = all.toArray(new Intersectable[0]);
+        pool.invoke(new Boxes(objects, 0, objects.length));
+
+        List<Intersectable> bounded = new ArrayList<>(), unbounded = new ArrayList<>();
+        for (Intersectable object : objects)
+            (object.box == null ? unbounded : bounded).add(object);
+        all.clear();
+        geometries.resetBounds();
+        int count = bounded.size();
+        Built root = null;
+        if (count > 0) {
+            Build build = new Build(bounded.toArray(new Intersectable[0]));
+            root = switch (method) {
+                case SAH -> pool.invoke(new Subtree(build, 0, count));
+                case LBVH -> linear(build, pool);
+                case SBVH -> spatial(build, budget, pool);
+            };
+            all.add(root.node());
+        }
+        all.addAll(unbounded);
+        long nanos = System.nanoTime() - start;
+        return new Metrics(method, count, root == null ? 0 : references(root.node()), unbounded.size(),
+                root == null ? 0 : root.nodes(), root == null ? 0 : root.depth(),
+                root == null ? 0 : sahCost(root.node()), nanos);
+    }
+
+    /**
+     * Counts the references to geometries in the leaves of a hierarchy
+     *
+     * @param node the hierarchy root
+     * @return the amount of references
+     */
+    private static int references(Intersectable node) {
+        if (!(node instanceof Geometries group)) return 1;
+        int references = 0;
+        for (Intersectable child : group.getGeometries())
+            references += references(child);
+        return references;
+    }
+
+    /**
+     * Calculates the SAH cost of a hierarchy - the box tests and the geometry
+     * intersections of each node, weighted by the probability of a ray that hits the
+     * root box to hit the node box (the ratio of their surface areas)
+     *
+     * @param root the hierarchy root
+     * @return the cost
+     */
+    static double sahCost(Intersectable root) {
+        if (!(root instanceof Geometries)) return 1;
+        double rootArea = area(root.box);
+        return rootArea == 0 ? 0 : nodeCost(root) / rootArea;
+    }
+
+    /**
+     * Calculates the unnormalized SAH cost of a subtree
+     *
+     * @param node the subtree root
+     * @return the cost, weighted by surface areas
+     */
+    private static double nodeCost(Intersectable node) {
+        if (!(node instanceof Geometries group)) return 0;
+        double cost = TRAVERSAL_COST;
+        double subtrees = 0;
+        for (Intersectable child : group.getGeometries())
+            if (child instanceof Geometries) subtrees += nodeCost(child);
+            else cost += 1;
+        return cost * area(node.box) + subtrees;
+    }
+
+    /**
+     * Calculates the half surface area of a box
+     *
+     * @param box the box
+     * @return the half surface area
+     */
+    private static double area(Intersectable.AABB box) {
+        double dx = box.max.getX() - box.min.getX(), dy = box.max.getY() - box.min.getY();
+        double dz = box.max.getZ() - box.min.getZ();
+        return dx * dy + dy * dz + dz * dx;
+    }
+
+    /**
+     * Builds a linear hierarchy - the geometries are sorted by the Morton codes of their
+     * centroids, and each inner node is found independently of the others from the
+     * sorted codes (by the longest common prefixes of the codes, Karras 2012), so all
+     * the build steps are linear in the amount of geometries and run in parallel
+     *
+     * @param build the build data
+     * @param pool  the pool
+     * @return the hierarchy
+     */
+    private static Built linear(Build build, ForkJoinPool pool) {
+        int count = build.objects.length;
+        if (count == 1) return new Built(build.objects[0], 0, 0);
+        long[] codes = new long[count];
+        int[] order = pool.submit(() -> {
+            mortonCodes(build, codes);
+            return radixSort(codes);
+        }).join();
+        Intersectable[] sorted = new Intersectable[count];
+        for (int i = 0; i < count; ++i) sorted[i] = build.objects[order[i]];
+
+        int[] left = new int[count - 1], right = new int[count - 1], span = new int[count - 1];
+        pool.submit(() -> IntStream.range(0, count - 1).parallel()
+                .forEach(i -> linearNode(codes, i, left, right, span))).join();
+        return pool.invoke(new LinearSubtree(sorted, left, right, span, 0));
+    }
+
+    /**
+     * Builds a spatial split hierarchy (SBVH, Stich et al. 2009) - each node is split by
+     * the cheaper by the surface area heuristic of the best object split and the best
+     * spatial split. A spatial split divides the space at a plane, so a geometry crossing
+     * the plane is referred from both sides, each reference bounded by its part only
+     * (polygons are clipped exactly, other geometries by their boxes). Spatial splits are
+     * considered only where the children of the object split overlap, and the extra
+     * references are capped by the budget, divided between the subtrees by their sizes.
+     *
+     * @param build  the build data
+     * @param budget the budget of extra references per geometry
+     * @param pool   the pool
+     * @return the hierarchy
+     */
+    private static Built spatial(Build build, double budget, ForkJoinPool pool) {
+        int count = build.objects.length;
+        if (count == 1) return new Built(build.objects[0], 0, 0);
+        double[][] shapes = new double[count][];
+        for (int i = 0; i < count; ++i)
+            if (build.objects[i] instanceof Polygon polygon) {
+                double[] shape = new double[3 * polygon.vertices.size()];
+                for (int v = 0; v < polygon.vertices.size(); ++v) {
+                    Point vertex = polygon.vertices.get(v);
+                    shape[3 * v] = vertex.getX();
+                    shape[3 * v + 1] = vertex.getY();
+                    shape[3 * v + 2] = vertex.getZ();
+                }
+                shapes[i] = shape;
+            }
+        int[] refs = new int[count];
+        double[] regions = new double[6 * count];
+        for (int i = 0; i < count; ++i) {
+            refs[i] = i;
+            Arrays.fill(regions, 6 * i, 6 * i + 3, Double.NEGATIVE_INFINITY);
+            Arrays.fill(regions, 6 * i + 3, 6 * i + 6, Double.POSITIVE_INFINITY);
+        }
+        double[] total = { Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE,
+                -Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE };
+        for (int i = 0; i < count; ++i)
+            Subtree.grow(total, build.bounds, i);
+        SpatialBuild spatial = new SpatialBuild(build.objects, shapes, Subtree.area(total));
+        int extra = (int) Math.min(Integer.MAX_VALUE, Math.floor(budget * count));
+        return pool.invoke(new SpatialSubtree(spatial, refs, build.bounds.clone(), regions, extra));
+    }
+
+    /**
+     * Calculates the Morton codes of the geometry centroids within the centroids' extent
+     *
+     * @param build the build data
+     * @param codes the codes
+     */
+    private static void mortonCodes(Build build, long[] codes) {
+        double[] low = new double[3], scale = new double[3];
+        for (int axis = 0; axis < 3; ++axis) {
+            double min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+            for (int i = 0; i < codes.length; ++i) {
+                min = Math.min(min, build.centroids[3 * i + axis]);
+                max = Math.max(max, build.centroids[3 * i + axis]);
+            }
+            low[axis] = min;
+            scale[axis] = max > min ? ((1 << MORTON_BITS) - 1) / (max - min) : 0;
+        }
+        IntStream.range(0, codes.length).parallel().forEach(i -> {
+            long code = 0;
+            for (int axis = 0; axis < 3; ++axis)
+                code |= spread((long) ((build.centroids[3 * i + axis] - low[axis]) * scale[axis])) << (2 - axis);
+            codes[i] = code;
+        });
+    }
+
+    /**
+     * Spreads the low 21 bits of a value to every third bit
+     *
+     * @param value the value
+     * @return the spread bits
+     */
+    private static long spread(long value) {
+        long x = value & 0x1FFFFFL;
+        x = (x | x << 32) & 0x1F00000000FFFFL;
+        x = (x | x << 16) & 0x1F0000FF0000FFL;
+        x = (x | x << 8) & 0x100F00F00F00F00FL;
+        x = (x | x << 4) & 0x10C30C30C30C30C3L;
+        x = (x | x << 2) & 0x1249249249249249L;
+        return x;
+    }
+
+    /**
+     * Sorts codes by a stable parallel radix sort - the digit histograms and the
+     * scattering of chunks of the codes run in parallel, and passes of a digit that
+     * is the same in all the codes are skipped
+     *
+     * @param codes the codes, sorted in place
+     * @return the original positions of the sorted codes
+     */
+    private static int[] radixSort(long[] codes) {
+        int count = codes.length, radix = 1 << RADIX_BITS, chunks = (count + SORT_CHUNK - 1) / SORT_CHUNK;
+        long[] keys = codes, keysOut = new long[count];
+        int[] values = new int[count], valuesOut = new int[count];
+        for (int i = 0; i < count; ++i) values[i] = i;
+        int[][] offsets = new int[chunks][radix];
+        for (int shift = 0; shift < 3 * MORTON_BITS; shift += RADIX_BITS) {
+            final int digitShift = shift;
+            final long[] in = keys;
+            IntStream.range(0, chunks).parallel().forEach(chunk -> {
+                int[] histogram = offsets[chunk];
+                Arrays.fill(histogram, 0);
+                for (int i = chunk * SORT_CHUNK, end = Math.min(count, i + SORT_CHUNK); i < end; ++i)
+                    ++histogram[(int) (in[i] >>> digitShift) & (radix - 1)];
+            });
+            int position = 0;
+            boolean single = false;
+            for (int digit = 0; digit < radix; ++digit) {
+                int total = 0;
+                for (int chunk = 0; chunk < chunks; ++chunk) {
+                    int amount = offsets[chunk][digit];
+                    offsets[chunk][digit] = position + total;
+                    total += amount;
+                }
+                if (total == count) single = true;
+                position += total;
+            }
+            if (single) continue;
+
+            final long[] out = keysOut;
+            final int[] valuesIn = values, valuesTo = valuesOut;
+            IntStream.range(0, chunks).parallel().forEach(chunk -> {
+                int[] offset = offsets[chunk];
+                for (int i = chunk * SORT_CHUNK, end = Math.min(count, i + SORT_CHUNK); i < end; ++i) {
+                    int to = offset[(int) (in[i] >>> digitShift) & (radix - 1)]++;
+                    out[to] = in[i];
+                    valuesTo[to] = valuesIn[i];
+                }
+            });
+            keysOut = keys;
+            keys = out;
+            valuesOut = values;
+            values = valuesTo;
+        }
+        if (keys != codes) System.arraycopy(keys, 0, codes, 0, count);
+        return values;
+    }
+
+    /**
+     * Length of the common prefix of two sorted codes, made unique by their positions
+     *
+     * @param codes the sorted codes
+     * @param i     the first position
+     * @param j     the second position
+     * @return the prefix length, -1 if the second position is out of range
+     */
+    private static int prefix(long[] codes, int i, int j) {
+        if (j < 0 || j >= codes.length) return -1;
+        long diff = codes[i] ^ codes[j];
+        return diff != 0 ? Long.numberOfLeadingZeros(diff) : Long.SIZE + Integer.numberOfLeadingZeros(i ^ j);
+    }
+
+    /**
+     * Finds the range of the geometries of an inner node of the linear hierarchy and
+     * its split - inner node i covers a range that starts or ends at geometry i
+     *
+     * @param codes the sorted codes
+     * @param i     the inner node
+     * @param left  the left children - inner node, or complement of a geometry
+     * @param right the right children - inner node, or complement of a geometry
+     * @param span  the amount of geometries under the inner nodes
+     */
+    private static void linearNode(long[] codes, int i, int[] left, int[] right, int[] span) {
+        int d = prefix(codes, i, i + 1) > prefix(codes, i, i - 1) ? 1 : -1;
+        int minPrefix = prefix(codes, i, i - d);
+        int maxLength = 2;
+        while (prefix(codes, i, i + maxLength * d) > minPrefix) maxLength <<= 1;
+        int length = 0;
+        for (int t = maxLength >> 1; t > 0; t >>= 1)
+            if (prefix(codes, i, i + (length + t) * d) > minPrefix) length += t;
+        int j = i + length * d;
+
+        int nodePrefix = prefix(codes, i, j);
+        int split = 0;
+        for (int divisor = 2, t; ; divisor <<= 1) {
+            t = (length + divisor - 1) / divisor;
+            if (prefix(codes, i, i + (split + t) * d) > nodePrefix) split += t;
+            if (t == 1) break;
+        }
+        int gamma = i + split * d + Math.min(d, 0);
+        left[i] = Math.min(i, j) == gamma ? ~gamma : gamma;
+        right[i] = Math.max(i, j) == gamma + 1 ? ~(gamma + 1) : gamma + 1;
+        span[i] = length + 1;
+    }
+
+    /**
+     * Creates the nodes of a subtree of the linear hierarchy
+     */
+    private static final class LinearSubtree extends RecursiveTask<Built> {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        /** The geometries sorted by their codes */
+        private final Intersectable[] objects;
+        /** The left children of the inner nodes */
+        private final int[] left;
+        /** The right children of the inner nodes */
+        private final int[] right;
+        /** The amount of geometries under the inner nodes */
+        private final int[] span;
+        /** The subtree root - inner node, or complement of a geometry */
+        private final int node;
+
+        /**
+         * Creates the task
+         *
+         * @param objects the sorted geometries
+         * @param left    the left children
+         * @param right   the right children
+         * @param span    the amount of geometries under the inner nodes
+         * @param node    the subtree root
+         */
+        LinearSubtree(Intersectable[] objects, int[] left, int[] right, int[] span, int node) {
+            this.objects = objects;
+            this.left = left;
+            this.right = right;
+            this.span = span;
+            this.node = node;
+        }
+
+        @Override
+        protected Built compute() {
+            if (node < 0) return new Built(objects[~node], 0, 0);
+            LinearSubtree first = new LinearSubtree(objects, left, right, span, left[node]);
+            LinearSubtree second = new LinearSubtree(objects, left, right, span, right[node]);
+            Built a, b;
+            if (span[node] > SEQUENTIAL_THRESHOLD) {
+                first.fork();
+                b = second.compute();
+                a = first.join();
+            } else {
+                a = first.compute();
+                b = second.compute();
+            }
+            Geometries group = new Geometries(a.node(), b.node());
+            group.computeBoundingBox();
+            return new Built(group, a.nodes() + b.nodes() + 1, Math.max(a.depth(), b.depth()) + 1);
+        }
+    }
+
+    /**
+     * Computes the bounding boxes of a range of geometries in parallel
+     */
+    private static final class Boxes extends RecursiveAction {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        /** The geometries */
+        private final Intersectable[] objects;
+        /** The range start */
+        private final int from;
+        /** The range end (exclusive) */
+        private final int to;
+
+        /**
+         * Creates the task
+         *
+         * @param objects the geometries
+         * @param from    the range start
+         * @param to      the range end (exclusive)
+         */
+        Boxes(Intersectable[] objects, int from, int to) {
+            this.objects = objects;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SEQUENTIAL_THRESHOLD) {
+                for (int i = from; i < to; ++i)
+                    objects[i].initializebox();
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Boxes(objects, from, middle), new Boxes(objects, middle, to));
+        }
+    }
+
+    /**
+     * Data of a build shared by its tasks - each task works on its own range of it
+     */
+    private static final class Build {
+        /** The bounded geometries, reordered by the subtrees */
+        final Intersectable[] objects;
+        /** The box bounds of the geometries - min x, y, z and max x, y, z of each one */
+        final double[] bounds;
+        /** The box centroids of the geometries */
+        final double[] centroids;
+
+        /**
+         * Collects the boxes of the geometries
+         *
+         * @param objects the bounded geometries
+         */
+        Build(Intersectable[] objects) {
+            this.objects = objects;
+            bounds = new double[6 * objects.length];
+            centroids = new double[3 * objects.length];
+            for (int i = 0; i < objects.length; ++i) {
+                Intersectable.AABB box = objects[i].box;
+                bounds[6 * i] = box.min.getX();
+                bounds[6 * i + 1] = box.min.getY();
+                bounds[6 * i + 2] = box.min.getZ();
+                bounds[6 * i + 3] = box.max.getX();
+                bounds[6 * i + 4] = box.max.getY();
+                bounds[6 * i + 5] = box.max.getZ();
+                for (int axis = 0; axis < 3; ++axis)
+                    centroids[3 * i + axis] = (bounds[6 * i + axis] + bounds[6 * i + 3 + axis]) / 2;
+            }
+        }
+
+        /**
+         * Swaps two geometries with their boxes
+         *
+         * @param i the first index
+         * @param j the second index
+         */
+        void swap(int i, int j) {
+            Intersectable object = objects[i];
+            objects[i] = objects[j];
+            objects[j] = object;
+            for (int k = 0; k < 6; ++k) {
+                double value = bounds[6 * i + k];
+                bounds[6 * i + k] = bounds[6 * j + k];
+                bounds[6 * j + k] = value;
+            }
+            for (int k = 0; k < 3; ++k) {
+                double value = centroids[3 * i + k];
+                centroids[3 * i + k] = centroids[3 * j + k];
+                centroids[3 * j + k] = value;
+            }
+        }
+    }
+
+    /**
+     * A built subtree
+     *
+     * @param node  the subtree root
+     * @param nodes the amount of inner nodes of the subtree
+     * @param depth the depth of the subtree
+     */
+    private record Built(Intersectable node, int nodes, int depth) {}
+
+    /**
+     * Builds the subtree of a range of the geometries
+     */
+    private static final class Subtree extends RecursiveTask<Built> {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        /** The build data (the task is never serialized) */
+        private final transient Build build;
+        /** The range start */
+        private final int from;
+        /** The range end (exclusive) */
+        private final int to;
+
+        /**
+         * Creates the task
+         *
+         * @param build the build data
+         * @param from  the range start
+         * @param to    the range end (exclusive)
+         */
+        Subtree(Build build, int from, int to) {
+            this.build = build;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Built compute() {
+            int count = to - from;
+            if (count == 1) return new Built(build.objects[from], 0, 0);
+            int middle = count <= LEAF_SIZE ? -1 : split();
+            if (middle < 0) {
+                Geometries leaf = new Geometries(Arrays.copyOfRange(build.objects, from, to));
+                leaf.computeBoundingBox();
+                return new Built(leaf, 1, 1);
+            }
+
+            Subtree left = new Subtree(build, from, middle), right = new Subtree(build, middle, to);
+            Built first, second;
+            if (count > SEQUENTIAL_THRESHOLD) {
+                left.fork();
+                second = right.compute();
+                first = left.join();
+            } else {
+                first = left.compute();
+                second = right.compute();
+            }
+            Geometries node = new Geometries(first.node(), second.node());
+            node.computeBoundingBox();
+            return new Built(node, first.nodes() + second.nodes() + 1,
+                    Math.max(first.depth(), second.depth()) + 1);
+        }
+
+        /**
+         * Chooses the split of the range by the surface area heuristic over the centroid
+         * bins, and partitions the range accordingly
+         *
+         * @return the start of the second part, or -1 if a leaf is cheaper than any split
+         */
+        private int split() {
+            int count = to - from;
+            double[] extent = { Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE,
+                    -Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE };
+            double[] total = { Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE,
+                    -Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE };
+            for (int i = from; i < to; ++i)
+                for (int axis = 0; axis < 3; ++axis) {
+                    double centroid = build.centroids[3 * i + axis];
+                    extent[axis] = Math.min(extent[axis], centroid);
+                    extent[3 + axis] = Math.max(extent[3 + axis], centroid);
+                    total[axis] = Math.min(total[axis], build.bounds[6 * i + axis]);
+                    total[3 + axis] = Math.max(total[3 + axis], build.bounds[6 * i + 3 + axis]);
+                }
+
+            double bestCost = Double.MAX_VALUE;
+            int bestAxis = -1, bestBin = 0;
+            int[] binCounts = new int[BINS];
+            double[] binBounds = new double[6 * BINS];
+            double[] rightAreas = new double[BINS];
+            for (int axis = 0; axis < 3; ++axis) {
+                double size = extent[3 + axis] - extent[axis];
+                if (size <= 0) continue;
+                Arrays.fill(binCounts, 0);
+                for (int b = 0; b < BINS; ++b)
+                    for (int k = 0; k < 3; ++k) {
+                        binBounds[6 * b + k] = Double.MAX_VALUE;
+                        binBounds[6 * b + 3 + k] = -Double.MAX_VALUE;
+                    }
+                for (int i = from; i < to; ++i) {
+                    int b = bin(build.centroids[3 * i + axis], extent[axis], size);
+                    ++binCounts[b];
+                    for (int k = 0; k < 3; ++k) {
+                        binBounds[6 * b + k] = Math.min(binBounds[6 * b + k], build.bounds[6 * i + k]);
+                        binBounds[6 * b + 3 + k] = Math.max(binBounds[6 * b + 3 + k], build.bounds[6 * i + 3 + k]);
+                    }
+                }
+                double[] sweep = { Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE,
+                        -Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE };
+                for (int b = BINS - 1; b > 0; --b) {
+                    grow(sweep, binBounds, b);
+                    rightAreas[b] = area(sweep);
+                }
+                Arrays.fill(sweep, 0, 3, Double.MAX_VALUE);
+                Arrays.fill(sweep, 3, 6, -Double.MAX_VALUE);
+                int leftCount = 0;
+                for (int b = 0; b < BINS - 1; ++b) {
+                    grow(sweep, binBounds, b);
+                    leftCount += binCounts[b];
+                    if (leftCount == 0 || leftCount == count) continue;
+                    double cost = area(sweep) * leftCount + rightAreas[b + 1] * (count - leftCount);
+                    if (cost < bestCost) {
+                        bestCost = cost;
+                        bestAxis = axis;
+                        bestBin = b;
+                    }
+                }
+            }
+
+            if (bestAxis < 0) // all the centroids coincide - split in the middle
+                return from + count / 2;
+            double leafCost = count;
+            if (count <= 2 * LEAF_SIZE && TRAVERSAL_COST + bestCost / area(total) >= leafCost)
+                return -1;
+
+            double low = extent[bestAxis], size = extent[3 + bestAxis] - low;
+            int i = from, j = to - 1;
+            while (i <= j) {
+                if (bin(build.centroids[3 * i + bestAxis], low, size) <= bestBin) ++i;
+                else build.swap(i, j--);
+            }
+            return i;
+        }
+
+        /**
+         * Finds the bin of a centroid coordinate
+         *
+         * @param centroid the coordinate
+         * @param low      the lowest centroid coordinate
+         * @param size     the extent of the centroid coordinates
+         * @return the bin
+         */
+        private static int bin(double centroid, double low, double size) {
+            return Math.min(BINS - 1, (int) (BINS * (centroid - low) / size));
+        }
+
+        /**
+         * Grows bounds by the bounds of a bin
+         *
+         * @param bounds    the bounds
+         * @param binBounds the bin bounds
+         * @param b         the bin
+         */
+        private static void grow(double[] bounds, double[] binBounds, int b) {
+            for (int k = 0; k < 3; ++k) {
+                bounds[k] = Math.min(bounds[k], binBounds[6 * b + k]);
+                bounds[3 + k] = Math.max(bounds[3 + k], binBounds[6 * b + 3 + k]);
+            }
+        }
+
+        /**
+         * Calculates the half surface area of bounds
+         *
+         * @param bounds the bounds
+         * @return the half surface area, 0 for empty bounds
+         */
+        private static double area(double[] bounds) {
+            double dx = bounds[3] - bounds[0], dy = bounds[4] - bounds[1], dz = bounds[5] - bounds[2];
+            if (dx < 0 || dy < 0 || dz < 0) return 0;
+            return dx * dy + dy * dz + dz * dx;
+        }
+    }
+
+    /**
+     * Data of a spatial split build shared by its tasks
+     *
+     * @param objects  the bounded geometries
+     * @param shapes   the vertex coordinates of the polygons among the geometries - x, y, z
+     *                 of each vertex, null for other geometries
+     * @param rootArea the half surface area of the root box
+     */
+    private record SpatialBuild(Intersectable[] objects, double[][] shapes, double rootArea) {}
+
+    /**
+     * Builds the subtree of references to geometries with spatial splits. A reference has
+     * its own bounds (of the part of the geometry it refers to) and region of the space
+     * (of the spatial splits it was divided by)
+     */
+    private static final class SpatialSubtree extends RecursiveTask<Built> {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        /** The build data (the task is never serialized) */
+        private final transient SpatialBuild build;
+        /** The geometry indices of the references */
+        private final int[] refs;
+        /** The bounds of the references - min x, y, z and max x, y, z of each one */
+        private final double[] bounds;
+        /**
+         * The regions of the references - lower x, y, z (inclusive) and upper x, y, z
+         * (exclusive) of each one, infinite where it was not divided
+         */
+        private final double[] regions;
+        /** The budget of extra references of the subtree */
+        private final int budget;
+
+        /**
+         * Creates the task
+         *
+         * @param build   the build data
+         * @param refs    the geometry indices of the references
+         * @param bounds  the bounds of the references
+         * @param regions the regions of the references
+         * @param budget  the budget of extra references
+         */
+        SpatialSubtree(SpatialBuild build, int[] refs, double[] bounds, double[] regions, int budget) {
+            this.build = build;
+            this.refs = refs;
+            this.bounds = bounds;
+            this.regions = regions;
+            this.budget = budget;
+        }
+
+        @Override
+        protected Built compute() {
+            int count = refs.length;
+            if (count == 1) return new Built(reference(0), 0, 0);
+            if (count <= LEAF_SIZE) return leaf();
+
+            double[] total = { Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE,
+                    -Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE };
+            double[] extent = total.clone();
+            for (int i = 0; i < count; ++i) {
+                Subtree.grow(total, bounds, i);
+                for (int axis = 0; axis < 3; ++axis) {
+                    double centroid = centroid(i, axis);
+                    extent[axis] = Math.min(extent[axis], centroid);
+                    extent[3 + axis] = Math.max(extent[3 + axis], centroid);
+                }
+            }
+
+            // the best object split, and the overlap of its children
+            double objectCost = Double.MAX_VALUE;
+            int objectAxis = -1, objectBin = 0;
+            double overlap = Subtree.area(total);
+            int[] binCounts = new int[BINS];
+            double[] binBounds = new double[6 * BINS];
+            double[] rightBounds = new double[6 * BINS];
+            for (int axis = 0; axis < 3; ++axis) {
+                double size = extent[3 + axis] - extent[axis];
+                if (size <= 0) continue;
+                Arrays.fill(binCounts, 0);
+                clear(binBounds);
+                for (int i = 0; i < count; ++i) {
+                    int b = Subtree.bin(centroid(i, axis), extent[axis], size);
+                    ++binCounts[b];
+                    growBin(binBounds, b, bounds, i);
+                }
+                sweepRight(binBounds, rightBounds);
+                double[] left = empty();
+                int leftCount = 0;
+                for (int b = 0; b < BINS - 1; ++b) {
+                    Subtree.grow(left, binBounds, b);
+                    leftCount += binCounts[b];
+                    if (leftCount == 0 || leftCount == count) continue;
+                    double[] right = Arrays.copyOfRange(rightBounds, 6 * (b + 1), 6 * (b + 2));
+                    double cost = Subtree.area(left) * leftCount + Subtree.area(right) * (count - leftCount);
+                    if (cost < objectCost) {
+                        objectCost = cost;
+                        objectAxis = axis;
+                        objectBin = b;
+                        overlap = intersectionArea(left, right);
+                    }
+                }
+            }
+
+            // the best spatial split, where the object split children overlap
+            double spatialCost = Double.MAX_VALUE;
+            int spatialAxis = -1;
+            double spatialPlane = 0;
+            if (budget > 0 && overlap > SPATIAL_OVERLAP * build.rootArea()) {
+                int[] entries = new int[BINS], exits = new int[BINS];
+                double[] part = new double[6];
+                for (int axis = 0; axis < 3; ++axis) {
+                    double low = total[axis], size = total[3 + axis] - low;
+                    if (size <= 0) continue;
+                    Arrays.fill(entries, 0);
+                    Arrays.fill(exits, 0);
+                    clear(binBounds);
+                    for (int i = 0; i < count; ++i) {
+                        int first = Subtree.bin(bounds[6 * i + axis], low, size);
+                        int last = Subtree.bin(bounds[6 * i + 3 + axis], low, size);
+                        if (first == last)
+                            growBin(binBounds, first, bounds, i);
+                        else
+                            for (int b = first; b <= last; ++b)
+                                if (clip(i, axis, low + b * size / BINS, low + (b + 1) * size / BINS, part))
+                                    growBin(binBounds, b, part, 0);
+                        ++entries[first];
+                        ++exits[last];
+                    }
+                    sweepRight(binBounds, rightBounds);
+                    int[] rightCounts = new int[BINS + 1];
+                    for (int b = BINS - 1; b >= 0; --b) rightCounts[b] = rightCounts[b + 1] + exits[b];
+                    double[] left = empty();
+                    int leftCount = 0;
+                    for (int b = 0; b < BINS - 1; ++b) {
+                        Subtree.grow(left, binBounds, b);
+                        leftCount += entries[b];
+                        int rightCount = rightCounts[b + 1];
+                        if (leftCount == 0 || rightCount == 0 || leftCount + rightCount - count > budget) continue;
+                        double[] right = Arrays.copyOfRange(rightBounds, 6 * (b + 1), 6 * (b + 2));
+                        double cost = Subtree.area(left) * leftCount + Subtree.area(right) * rightCount;
+                        if (cost < spatialCost) {
+                            spatialCost = cost;
+                            spatialAxis = axis;
+                            spatialPlane = low + (b + 1) * size / BINS;
+                        }
+                    }
+                }
+            }
+
+            double bestCost = Math.min(objectCost, spatialCost);
+            if (count <= 2 * LEAF_SIZE && TRAVERSAL_COST + bestCost / Subtree.area(total) >= count)
+                return leaf();
+            SpatialSubtree[] children = spatialCost < objectCost ? splitSpace(spatialAxis, spatialPlane) : null;
+            if (children == null) children = splitObjects(objectAxis, objectBin, extent);
+
+            Built first, second;
+            if (count > SEQUENTIAL_THRESHOLD) {
+                children[0].fork();
+                second = children[1].compute();
+                first = children[0].join();
+            } else {
+                first = children[0].compute();
+                second = children[1].compute();
+            }
+            Geometries node = new Geometries(first.node(), second.node());
+            node.computeBoundingBox();
+            return new Built(node, first.nodes() + second.nodes() + 1,
+                    Math.max(first.depth(), second.depth()) + 1);
+        }
+
+        /**
+         * Splits the references by the centroid bins of the best object split (or in the
+         * middle if all the centroids coincide)
+         *
+         * @param axis   the split axis, -1 if all the centroids coincide
+         * @param bin    the last bin of the first part
+         * @param extent the extent of the centroids
+         * @return the subtrees of the parts
+         */
+        private SpatialSubtree[] splitObjects(int axis, int bin, double[] extent) {
+            int count = refs.length;
+            Parts parts = new Parts(count);
+            for (int i = 0; i < count; ++i) {
+                boolean left = axis < 0 ? i < count / 2
+                        : Subtree.bin(centroid(i, axis), extent[axis], extent[3 + axis] - extent[axis]) <= bin;
+                parts.add(left, refs[i], bounds, regions, i);
+            }
+            return parts.subtrees(build, budget);
+        }
+
+        /**
+         * Splits the references by a plane - the references crossing the plane are divided
+         * into references to their parts on both sides
+         *
+         * @param axis  the axis of the plane
+         * @param plane the coordinate of the plane
+         * @return the subtrees of the parts, or null if the split leaves a side empty or
+         *         exceeds the budget
+         */
+        private SpatialSubtree[] splitSpace(int axis, double plane) {
+            int count = refs.length;
+            Parts parts = new Parts(count);
+            double[] below = new double[6], above = new double[6];
+            double[] region = new double[6];
+            int extra = 0;
+            for (int i = 0; i < count; ++i) {
+                if (bounds[6 * i + 3 + axis] <= plane) {
+                    parts.add(true, refs[i], bounds, regions, i);
+                    continue;
+                }
+                if (bounds[6 * i + axis] >= plane) {
+                    parts.add(false, refs[i], bounds, regions, i);
+                    continue;
+                }
+                boolean hasBelow = clip(i, axis, Double.NEGATIVE_INFINITY, plane, below);
+                boolean hasAbove = clip(i, axis, plane, Double.POSITIVE_INFINITY, above);
+                if (hasBelow && hasAbove) {
+                    System.arraycopy(regions, 6 * i, region, 0, 6);
+                    region[3 + axis] = Math.min(region[3 + axis], plane);
+                    parts.add(true, refs[i], below, region, 0);
+                    System.arraycopy(regions, 6 * i, region, 0, 6);
+                    region[axis] = Math.max(region[axis], plane);
+                    parts.add(false, refs[i], above, region, 0);
+                    ++extra;
+                } else // the geometry doesn't cross the plane within its box
+                    parts.add(!hasAbove, refs[i], bounds, regions, i);
+            }
+            if (parts.leftCount == 0 || parts.rightCount == 0 || extra > budget) return null;
+            return parts.subtrees(build, budget - extra);
+        }
+
+        /**
+         * Calculates the bounds of the part of a reference within a slab along an axis
+         *
+         * @param i    the reference
+         * @param axis the axis of the slab
+         * @param low  the lower coordinate of the slab
+         * @param high the upper coordinate of the slab
+         * @param part receives the bounds of the part
+         * @return true if the part is not empty
+         */
+        private boolean clip(int i, int axis, double low, double high, double[] part) {
+            System.arraycopy(bounds, 6 * i, part, 0, 6);
+            part[axis] = Math.max(part[axis], low);
+            part[3 + axis] = Math.min(part[3 + axis], high);
+            if (part[axis] > part[3 + axis]) return false;
+            double[] shape = build.shapes()[refs[i]];
+            if (shape == null) return true;
+
+            // clip the polygon by the planes of the box (Sutherland-Hodgman)
+            int size = shape.length / 3;
+            double[] vertices = shape, clipped = new double[3 * (size + 6)];
+            for (int plane = 0; plane < 6 && size > 0; ++plane) {
+                int k = plane % 3;
+                double limit = part[plane];
+                boolean lower = plane < 3;
+                int amount = 0;
+                for (int v = 0; v < size; ++v) {
+                    int a = 3 * v, b = 3 * ((v + 1) % size);
+                    double da = lower ? vertices[a + k] - limit : limit - vertices[a + k];
+                    double db = lower ? vertices[b + k] - limit : limit - vertices[b + k];
+                    if (da >= 0) {
+                        System.arraycopy(vertices, a, clipped, 3 * amount++, 3);
+                    }
+                    if (da > 0 && db < 0 || da < 0 && db > 0) {
+                        double t = da / (da - db);
+                        for (int c = 0; c < 3; ++c)
+                            clipped[3 * amount + c] = vertices[a + c] + t * (vertices[b + c] - vertices[a + c]);
+                        clipped[3 * amount + k] = limit;
+                        ++amount;
+                    }
+                }
+                double[] swap = vertices == shape ? new double[clipped.length] : vertices;
+                vertices = clipped;
+                clipped = swap;
+                size = amount;
+            }
+            if (size == 0) return false;
+            double[] tight = empty();
+            for (int v = 0; v < size; ++v)
+                for (int c = 0; c < 3; ++c) {
+                    tight[c] = Math.min(tight[c], vertices[3 * v + c]);
+                    tight[3 + c] = Math.max(tight[3 + c], vertices[3 * v + c]);
+                }
+            for (int c = 0; c < 3; ++c) {
+                part[c] = Math.max(part[c], tight[c]);
+                part[3 + c] = Math.min(part[3 + c], tight[3 + c]);
+            }
+            return true;
+        }
+
+        /**
+         * Creates a leaf group of the references
+         *
+         * @return the leaf
+         */
+        private Built leaf() {
+            Intersectable[] children = new Intersectable[refs.length];
+            for (int i = 0; i < refs.length; ++i) children[i] = reference(i);
+            Geometries leaf = new Geometries(children);
+            leaf.computeBoundingBox();
+            return new Built(leaf, 1, 1);
+        }
+
+        /**
+         * Creates the geometry of a reference - the geometry itself, or its part within
+         * the region of the reference if it was divided by spatial splits
+         *
+         * @param i the reference
+         * @return the geometry
+         */
+        private Intersectable reference(int i) {
+            Intersectable object = build.objects()[refs[i]];
+            for (int k = 0; k < 6; ++k)
+                if (!Double.isInfinite(regions[6 * i + k]))
+                    return new Clipped(object, Arrays.copyOfRange(regions, 6 * i, 6 * i + 6),
+                            Arrays.copyOfRange(bounds, 6 * i, 6 * i + 6));
+            return object;
+        }
+
+        /**
+         * Calculates a centroid coordinate of the bounds of a reference
+         *
+         * @param i    the reference
+         * @param axis the axis
+         * @return the coordinate
+         */
+        private double centroid(int i, int axis) {
+            return (bounds[6 * i + axis] + bounds[6 * i + 3 + axis]) / 2;
+        }
+
+        /**
+         * Creates empty bounds
+         *
+         * @return the bounds
+         */
+        private static double[] empty() {
+            return new double[] { Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE,
+                    -Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE };
+        }
+
+        /**
+         * Empties the bounds of all the bins
+         *
+         * @param binBounds the bin bounds
+         */
+        private static void clear(double[] binBounds) {
+            for (int b = 0; b < BINS; ++b) {
+                Arrays.fill(binBounds, 6 * b, 6 * b + 3, Double.MAX_VALUE);
+                Arrays.fill(binBounds, 6 * b + 3, 6 * b + 6, -Double.MAX_VALUE);
+            }
+        }
+
+        /**
+         * Grows the bounds of a bin by bounds of a list
+         *
+         * @param binBounds the bin bounds
+         * @param b         the bin
+         * @param list      the list of bounds
+         * @param i         the index of the bounds in the list
+         */
+        private static void growBin(double[] binBounds, int b, double[] list, int i) {
+            for (int k = 0; k < 3; ++k) {
+                binBounds[6 * b + k] = Math.min(binBounds[6 * b + k], list[6 * i + k]);
+                binBounds[6 * b + 3 + k] = Math.max(binBounds[6 * b + 3 + k], list[6 * i + 3 + k]);
+            }
+        }
+
+        /**
+         * Calculates the bounds of the bins from each bin to the last one
+         *
+         * @param binBounds   the bin bounds
+         * @param rightBounds receives the bounds from each bin
+         */
+        private static void sweepRight(double[] binBounds, double[] rightBounds) {
+            double[] sweep = empty();
+            for (int b = BINS - 1; b >= 0; --b) {
+                Subtree.grow(sweep, binBounds, b);
+                System.arraycopy(sweep, 0, rightBounds, 6 * b, 6);
+            }
+        }
+
+        /**
+         * Calculates the half surface area of the intersection of two bounds
+         *
+         * @param a the first bounds
+         * @param b the second bounds
+         * @return the area, 0 if they don't intersect
+         */
+        private static double intersectionArea(double[] a, double[] b) {
+            double[] overlap = new double[6];
+            for (int k = 0; k < 3; ++k) {
+                overlap[k] = Math.max(a[k], b[k]);
+                overlap[3 + k] = Math.min(a[3 + k], b[3 + k]);
+            }
+            return Subtree.area(overlap);
+        }
+    }
+
+    /**
+     * The references of the two parts of a split
+     */
+    private static final class Parts {
+        /** The geometry indices of the references of both parts */
+        private final int[][] refs = new int[2][];
+        /** The bounds of the references of both parts */
+        private final double[][] bounds = new double[2][];
+        /** The regions of the references of both parts */
+        private final double[][] regions = new double[2][];
+        /** The amount of the references of the first part */
+        int leftCount = 0;
+        /** The amount of the references of the second part */
+        int rightCount = 0;
+
+        /**
+         * Creates the parts for the references of a node
+         *
+         * @param count the amount of the references of the node
+         */
+        Parts(int count) {
+            for (int side = 0; side < 2; ++side) {
+                refs[side] = new int[count];
+                bounds[side] = new double[6 * count];
+                regions[side] = new double[6 * count];
+            }
+        }
+
+        /**
+         * Adds a reference to a part
+         *
+         * @param left    true for the first part
+         * @param ref     the geometry index
+         * @param bounds  the list of bounds of the reference
+         * @param regions the list of regions of the reference
+         * @param i       the index of the reference in the lists
+         */
+        void add(boolean left, int ref, double[] bounds, double[] regions, int i) {
+            int side = left ? 0 : 1;
+            int at = left ? leftCount++ : rightCount++;
+            if (at == refs[side].length) {
+                refs[side] = Arrays.copyOf(refs[side], 2 * at);
+                this.bounds[side] = Arrays.copyOf(this.bounds[side], 12 * at);
+                this.regions[side] = Arrays.copyOf(this.regions[side], 12 * at);
+            }
+            refs[side][at] = ref;
+            System.arraycopy(bounds, 6 * i, this.bounds[side], 6 * at, 6);
+            System.arraycopy(regions, 6 * i, this.regions[side], 6 * at, 6);
+        }
+
+        /**
+         * Creates the subtrees of the parts - the budget is divided by their sizes
+         *
+         * @param build  the build data
+         * @param budget the budget of extra references of both parts
+         * @return the subtrees
+         */
+        SpatialSubtree[] subtrees(SpatialBuild build, int budget) {
+            int leftBudget = (int) ((long) budget * leftCount / (leftCount + rightCount));
+            return new SpatialSubtree[] {
+                    new SpatialSubtree(build, Arrays.copyOf(refs[0], leftCount),
+                            Arrays.copyOf(bounds[0], 6 * leftCount), Arrays.copyOf(regions[0], 6 * leftCount),
+                            leftBudget),
+                    new SpatialSubtree(build, Arrays.copyOf(refs[1], rightCount),
+                            Arrays.copyOf(bounds[1], 6 * rightCount), Arrays.copyOf(regions[1], 6 * rightCount),
+                            budget - leftBudget) };
+        }
+    }
+
+    /**
+     * Reference to the part of a geometry within a region of the space, made by spatial
+     * splits - only the intersections within the region are reported by the reference,
+     * so a geometry referred from both sides of a split has each intersection once.
+     * The box of the reference bounds the part only.
+     */
+    private static final class Clipped extends Intersectable {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        /** The geometry */
+        private final Intersectable object;
+        /**
+         * The region - lower x, y, z (inclusive) and upper x, y, z (exclusive),
+         * infinite where it is not limited
+         */
+        private final double[] region;
+
+        /**
+         * Creates the reference
+         *
+         * @param object the geometry
+         * @param region the region
+         * @param bounds the bounds of the part
+         */
+        Clipped(Intersectable object, double[] region, double[] bounds) {
+            this.object = object;
+            this.region = region;
+            box = new AABB(new Point(bounds[0], bounds[1], bounds[2]), new Point(bounds[3], bounds[4], bounds[5]));
+            bvhIsOn = true;
+        }
+
+        /**
+         * Checks whether a point is within the region
+         *
+         * @param point the point
+         * @return true if the point is within the region
+         */
+        private boolean contains(Point point) {
+            double x = point.getX(), y = point.getY(), z = point.getZ();
+            return x >= region[0] && y >= region[1] && z >= region[2]
+                    && x < region[3] && y < region[4] && z < region[5];
+        }
+
+        @Override
+        protected List<Intersection> calculateIntersectionsHelper(Ray ray) {
+            List<Intersection> list = object.calculateIntersectionsHelper(ray);
+            if (list == null) return null;
+            List<Intersection> inside = null;
+            for (Intersection intersection : list)
+                if (contains(intersection.point)) {
+                    if (inside == null) inside = new ArrayList<>(list.size());
+                    inside.add(intersection);
+                }
+            return inside;
+        }
+
+        @Override
+        protected boolean closestHitHelper(Ray ray, HitRecord hit) {
+            // a hit out of the region is found through another reference as well
+            return object.closestHitHelper(ray, hit);
+        }
+
+        @Override
+        public void computeBoundingBox() {
+            // the box of the part is set by the builder
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package geometries;
+
+import primitives.Point;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * On-disk cache of built hierarchies, so re-rendering a heavy scene (e.g. with other
+ * lights or another camera) doesn't rebuild its hierarchy.<br>
+ * A hierarchy depends only on the build method and on the bounding boxes of the
+ * geometries, so it is keyed by a SHA-256 hash of the method and of the class and the
+ * bounding box of every bounded geometry in order - any scene with the same key can
+ * reuse the hierarchy, whatever its materials. The hierarchy is kept in its compressed
+ * form (see {@link QuantizedBvh}) with the leaves referring to the geometries by their
+ * indices, and is reloaded by memory-mapping the file and bulk-copying the nodes.<br>
+ * The file is little endian:
+ * <ul>
+ * <li>header - magic "RTBV" and format version</li>
+ * <li>build metrics - references, nodes, depth and SAH cost</li>
+ * <li>the compressed hierarchy</li>
+ * </ul>
+ * A missing or unreadable file is rebuilt and rewritten. Hierarchies whose leaves are
+ * not the geometries themselves (split references of {@link BvhBuilder.Method#SBVH})
+ * are built without the cache.
+ */
+public final class BvhCache {
+    /** File magic number - "RTBV" */
+    private static final int MAGIC = 0x52544256;
+    /** Current format version */
+    private static final int VERSION = 1;
+    /** Size of the header and the build metrics */
+    static final int HEADER_SIZE = 5 * Integer.BYTES + Double.BYTES;
+    /** Cache file extension */
+    private static final String EXTENSION = ".bvh";
+
+    /** Don't let anyone instantiate this class. */
+    private BvhCache() {}
+
+    /**
+     * Builds the hierarchy of a group (see {@link BvhBuilder#build(Geometries, BvhBuilder.Method)}),
+     * or loads it from the cache. The group gets the compressed hierarchy and the
+     * unbounded geometries.
+     *
+     * @param geometries the group
+     * @param method     the build method
+     * @param directory  the cache directory, created if needed
+     * @return the build metrics - a loaded hierarchy has the metrics of its build and the
+     *         load time
+     * @throws IOException on I/O error of the cache directory or of writing the cache
+     */
+    public static BvhBuilder.Metrics build(Geometries geometries, BvhBuilder.Method method, Path directory)
+            throws IOException {
+        long start = System.nanoTime();
+        List<Intersectable> all = geometries.getGeometries();
+        all.parallelStream().forEach(Intersectable::initializebox);
+        Intersectable[] bounded = all.stream().filter(g -> g.box != null).toArray(Intersectable[]::new);
+        List<Intersectable> unbounded = all.stream().filter(g -> g.box == null).toList();
+        if (bounded.length == 0) return BvhBuilder.build(geometries, method);
+
+        Path file = directory.resolve(key(method, bounded) + EXTENSION);
+        if (Files.exists(file)) {
+            BvhBuilder.Metrics metrics = load(file, geometries, method, bounded, unbounded, start);
+            if (metrics != null) return metrics;
+        }
+
+        BvhBuilder.Metrics metrics = BvhBuilder.build(geometries, method);
+        List<QuantizedBvh> compressed = geometries.compressHierarchy();
+        if (compressed.size() == 1) save(file, metrics, compressed.getFirst(), bounded);
+        return metrics;
+    }
+
+    /**
+     * Calculates the cache key of geometries
+     *
+     * @param method  the build method
+     * @param bounded the bounded geometries with their bounding boxes
+     * @return the key - hexadecimal SHA-256 hash
+     */
+    static String key(BvhBuilder.Method method, Intersectable[] bounded) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+        digest.update(method.name().getBytes(StandardCharsets.UTF_8));
+        ByteBuffer buffer = ByteBuffer.allocate(6 * Double.BYTES);
+        for (Intersectable geometry : bounded) {
+            digest.update(geometry.getClass().getName().getBytes(StandardCharsets.UTF_8));
+            Point min = geometry.box.min, max = geometry.box.max;
+            buffer.clear();
+            buffer.putDouble(min.getX()).putDouble(min.getY()).putDouble(min.getZ())
+                    .putDouble(max.getX()).putDouble(max.getY()).putDouble(max.getZ());
+            digest.update(buffer.flip());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Loads a cached hierarchy into a group
+     *
+     * @param file       the cache file
+     * @param geometries the group
+     * @param method     the build method
+     * @param bounded    the bounded geometries of the group
+     * @param unbounded  the unbounded geometries of the group
+     * @param start      the start time of the load
+     * @return the build metrics, or null if the file can't be read
+     */
+    private static BvhBuilder.Metrics load(Path file, Geometries geometries, BvhBuilder.Method method,
+                                           Intersectable[] bounded, List<Intersectable> unbounded, long start) {
+        BvhBuilder.Metrics metrics;
+        QuantizedBvh hierarchy;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (in.remaining() < HEADER_SIZE || in.getInt() != MAGIC || in.getInt() != VERSION) return null;
+            int references = in.getInt(), nodes = in.getInt(), depth = in.getInt();
+            double sahCost = in.getDouble();
+            hierarchy = QuantizedBvh.read(in, bounded);
+            if (in.hasRemaining()) return null;
+            metrics = new BvhBuilder.Metrics(method, bounded.length, references, unbounded.size(), nodes, depth,
+                    sahCost, System.nanoTime() - start);
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            return null;
+        }
+        List<Intersectable> all = geometries.getGeometries();
+        all.clear();
+        all.add(hierarchy);
+        all.addAll(unbounded);
+        geometries.resetBounds();
+        return metrics;
+    }
+
+    /**
+     * Writes a hierarchy into the cache - through a temporary file, so a concurrent
+     * render never reads a partial file
+     *
+     * @param file      the cache file
+     * @param metrics   the build metrics
+     * @param hierarchy the compressed hierarchy
+     * @param bounded   the bounded geometries, whose indices the leaves refer to
+     * @throws IOException on I/O error
+     */
+    private static void save(Path file, BvhBuilder.Metrics metrics, QuantizedBvh hierarchy, Intersectable[] bounded)
+            throws IOException {
+        Map<Intersectable, Integer> indices = new IdentityHashMap<>(2 * bounded.length);
+        for (int i = 0; i < bounded.length; ++i)
+            indices.putIfAbsent(bounded[i], i);
+        if (!indices.keySet().containsAll(hierarchy.getGeometries())) return;
+
+        ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + hierarchy.serializedSize()).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(MAGIC).putInt(VERSION).putInt(metrics.references()).putInt(metrics.nodes())
+                .putInt(metrics.depth()).putDouble(metrics.sahCost());
+        hierarchy.write(out, indices);
+        out.flip();
+
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, "bvh", ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                while (out.hasRemaining()) channel.write(out);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+}
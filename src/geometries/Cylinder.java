@@ -4,6 +4,7 @@ import primitives.Point;
 import primitives.Ray;
 import primitives.Vector;
 
+import java.io.Serial;
 import java.util.List;
 
 import static primitives.Util.isZero;
@@ -12,6 +13,9 @@ import static primitives.Util.isZero;
  * class to represent a finite tube
  */
 public class Cylinder extends Tube{
+    @Serial
+    private static final long serialVersionUID = 1L;
+
     private final double height;
     /**
      * constructor to initialize a cylinder based on a ray ,radius and height
@@ -123,4 +127,13 @@ public class Cylinder extends Tube{
 
         box = new AABB(new Point(minX, minY, minZ), new Point(maxX, maxY, maxZ));
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns the height of the cylinder
+     *
+     * @return the height along the axis
+     */
+    public double getHeight() {
+        return height;
+    }
+}
@@ -0,0 +1,378 @@
+package geometries;
+
+import geometries.Intersectable.Intersection;
+import primitives.Point;
+import primitives.Ray;
+import primitives.Vector;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+import static geometries.Intersectable.MISS;
+
+/**
+ * Bounding volume hierarchy in flat arrays over the primitives of a compound geometry
+ * (the faces of a {@link Mesh}, the spheres of a {@link SphereSet}, the objects of a
+ * {@link TopLevelBvh}), which are known to it by their indices only.<br>
+ * The primitives are split at the median of their box centroids along the longest
+ * axis of the centroids' extent. The node bounds are kept in floats, rounded outwards.
+ * A ray visits the nodes by a stack - all the nodes it pierces for its intersections,
+ * or the nearer child first and only the nodes entered before the closest hit so far
+ * for its closest hit.<br>
+ * A geometry provides its primitives by implementing the bounds and the intersections
+ * of a primitive.
+ */
+abstract class FlatBvh implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    /** Traversal stack depth - enough for the depth of a median split hierarchy */
+    private static final int STACK_SIZE = 64;
+
+    /** Maximal amount of primitives in a leaf */
+    private final int leafSize;
+    /** Primitives in the order of the leaves */
+    private int[] order = new int[0];
+    /** Bounds of the nodes - min x, y, z and max x, y, z of each node */
+    private float[] nodeBounds = new float[0];
+    /**
+     * Data of the nodes - 2 per node: first primitive (in the leaf order) and amount
+     * of primitives of a leaf, or right child index and 0 of an inner node (the left
+     * child follows its parent)
+     */
+    private int[] nodeData = new int[0];
+    /** Amount of the nodes */
+    private int nodes = 0;
+
+    /**
+     * Creates an empty hierarchy, to be built by {@link #build(int)}
+     *
+     * @param leafSize maximal amount of primitives in a leaf
+     */
+    FlatBvh(int leafSize) {
+        this.leafSize = leafSize;
+    }
+
+    /**
+     * Calculates the bounding box of a primitive
+     *
+     * @param primitive the primitive index
+     * @param bounds    receives min x, y, z and max x, y, z of the primitive
+     */
+    abstract void bounds(int primitive, double[] bounds);
+
+    /**
+     * Adds the intersections of a ray with a primitive to a list
+     *
+     * @param primitive the primitive index
+     * @param ray       the ray
+     * @param list      the list of intersections, may be null
+     * @return the list with the intersections, or the original list if there are none
+     */
+    abstract List<Intersection> addIntersections(int primitive, Ray ray, List<Intersection> list);
+
+    /**
+     * Reports the closest intersection of a ray with a primitive to a hit record
+     *
+     * @param primitive the primitive index
+     * @param ray       the ray
+     * @param hit       the hit record
+     * @return true if the primitive is the closest hit so far
+     */
+    abstract boolean closestHit(int primitive, Ray ray, HitRecord hit);
+
+    /**
+     * Returns the amount of the nodes
+     *
+     * @return the amount of nodes, 0 if there are no primitives
+     */
+    int nodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns a coordinate of the bounds of the whole hierarchy
+     *
+     * @param index 0-2 for min x, y, z and 3-5 for max x, y, z
+     * @return the coordinate
+     */
+    double bound(int index) {
+        return nodeBounds[index];
+    }
+
+    /**
+     * Builds the hierarchy over primitives from scratch
+     *
+     * @param count the amount of primitives - indices 0 to count - 1
+     * @return the hierarchy
+     */
+    FlatBvh build(int count) {
+        order = new int[count];
+        double[] boxes = new double[6 * count];
+        float[] centroids = new float[3 * count];
+        double[] box = new double[6];
+        for (int primitive = 0; primitive < count; ++primitive) {
+            order[primitive] = primitive;
+            bounds(primitive, box);
+            System.arraycopy(box, 0, boxes, 6 * primitive, 6);
+            for (int axis = 0; axis < 3; ++axis)
+                centroids[3 * primitive + axis] = (float) ((box[axis] + box[3 + axis]) / 2);
+        }
+        int capacity = count == 0 ? 0 : 2 * ((count + leafSize - 1) / leafSize) + 1;
+        nodeBounds = new float[6 * capacity];
+        nodeData = new int[2 * capacity];
+        nodes = 0;
+        if (count > 0) buildNode(0, count, boxes, centroids);
+        nodeBounds = Arrays.copyOf(nodeBounds, 6 * nodes);
+        nodeData = Arrays.copyOf(nodeData, 2 * nodes);
+        return this;
+    }
+
+    /**
+     * Builds a node
+     *
+     * @param first     the first primitive of the node in the leaf order
+     * @param count     the amount of primitives of the node
+     * @param boxes     the bounds of the primitives
+     * @param centroids the box centroids of the primitives
+     */
+    private void buildNode(int first, int count, double[] boxes, float[] centroids) {
+        int node = nodes++;
+        if (6 * nodes > nodeBounds.length) {
+            nodeBounds = Arrays.copyOf(nodeBounds, 2 * nodeBounds.length);
+            nodeData = Arrays.copyOf(nodeData, 2 * nodeData.length);
+        }
+        float[] extent = { Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE,
+                -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE };
+        for (int i = first; i < first + count; ++i)
+            for (int axis = 0; axis < 3; ++axis) {
+                float centroid = centroids[3 * order[i] + axis];
+                if (centroid < extent[axis]) extent[axis] = centroid;
+                if (centroid > extent[3 + axis]) extent[3 + axis] = centroid;
+            }
+        setRangeBounds(node, first, count, boxes);
+        if (count <= leafSize) {
+            nodeData[2 * node] = first;
+            nodeData[2 * node + 1] = count;
+            return;
+        }
+
+        int axis = 0;
+        for (int a = 1; a < 3; ++a)
+            if (extent[3 + a] - extent[a] > extent[3 + axis] - extent[axis]) axis = a;
+        int half = count / 2;
+        select(first, first + count - 1, first + half, axis, centroids);
+        buildNode(first, half, boxes, centroids);
+        nodeData[2 * node] = nodes;
+        nodeData[2 * node + 1] = 0;
+        buildNode(first + half, count - half, boxes, centroids);
+    }
+
+    /**
+     * Sets the bounds of a node to the union of the bounds of a range of primitives,
+     * rounded outwards to floats
+     *
+     * @param node  the node index
+     * @param first the first primitive of the range in the leaf order
+     * @param count the amount of primitives of the range
+     * @param boxes the bounds of the primitives
+     */
+    private void setRangeBounds(int node, int first, int count, double[] boxes) {
+        double[] union = { Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE,
+                -Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE };
+        for (int i = first; i < first + count; ++i) {
+            int b = 6 * order[i];
+            for (int axis = 0; axis < 3; ++axis) {
+                union[axis] = Math.min(union[axis], boxes[b + axis]);
+                union[3 + axis] = Math.max(union[3 + axis], boxes[b + 3 + axis]);
+            }
+        }
+        int b = 6 * node;
+        for (int axis = 0; axis < 3; ++axis) {
+            float low = (float) union[axis], high = (float) union[3 + axis];
+            nodeBounds[b + axis] = low > union[axis] ? Math.nextDown(low) : low;
+            nodeBounds[b + 3 + axis] = high < union[3 + axis] ? Math.nextUp(high) : high;
+        }
+    }
+
+    /**
+     * Partially sorts a range of the leaf order so that the primitive at the k-th
+     * position has the k-th centroid coordinate along the axis, and the primitives
+     * before it have no greater coordinates (quickselect)
+     *
+     * @param left      the first position of the range
+     * @param right     the last position of the range
+     * @param k         the selected position
+     * @param axis      the axis of the centroid coordinate
+     * @param centroids the box centroids of the primitives
+     */
+    private void select(int left, int right, int k, int axis, float[] centroids) {
+        while (left < right) {
+            float pivot = centroids[3 * order[(left + right) >>> 1] + axis];
+            int i = left, j = right;
+            while (i <= j) {
+                while (centroids[3 * order[i] + axis] < pivot) ++i;
+                while (centroids[3 * order[j] + axis] > pivot) --j;
+                if (i <= j) {
+                    int tmp = order[i];
+                    order[i++] = order[j];
+                    order[j--] = tmp;
+                }
+            }
+            if (k <= j) right = j;
+            else if (k >= i) left = i;
+            else return;
+        }
+    }
+
+    /**
+     * Updates the node bounds from the current bounds of the primitives bottom-up
+     * (children always follow their parent), keeping the structure of the hierarchy
+     *
+     * @return the hierarchy
+     */
+    FlatBvh refit() {
+        double[] boxes = new double[6 * order.length];
+        double[] box = new double[6];
+        for (int primitive = 0; primitive < order.length; ++primitive) {
+            bounds(primitive, box);
+            System.arraycopy(box, 0, boxes, 6 * primitive, 6);
+        }
+        for (int node = nodes - 1; node >= 0; --node) {
+            int b = 6 * node, first = nodeData[2 * node], count = nodeData[2 * node + 1];
+            if (count != 0) {
+                setRangeBounds(node, first, count, boxes);
+                continue;
+            }
+            int left = 6 * (node + 1), right = 6 * first;
+            for (int axis = 0; axis < 3; ++axis) {
+                nodeBounds[b + axis] = Math.min(nodeBounds[left + axis], nodeBounds[right + axis]);
+                nodeBounds[b + 3 + axis] = Math.max(nodeBounds[left + 3 + axis], nodeBounds[right + 3 + axis]);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Adds the intersections of a ray with the primitives whose nodes it pierces to a
+     * list
+     *
+     * @param ray  the ray
+     * @param list the list of intersections, may be null
+     * @return the list with the intersections, or the original list if there are none
+     */
+    List<Intersection> calculateIntersections(Ray ray, List<Intersection> list) {
+        if (nodes == 0) return list;
+        Point head = ray.getHead();
+        Vector dir = ray.getDirection();
+        double ox = head.getX(), oy = head.getY(), oz = head.getZ();
+        double ix = 1 / dir.getX(), iy = 1 / dir.getY(), iz = 1 / dir.getZ();
+        int[] stack = new int[STACK_SIZE];
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            if (nodeEntry(node, ox, oy, oz, ix, iy, iz) == MISS) continue;
+            int first = nodeData[2 * node], count = nodeData[2 * node + 1];
+            if (count == 0) {
+                stack[top++] = first;
+                stack[top++] = node + 1;
+            } else
+                for (int i = first; i < first + count; ++i)
+                    list = addIntersections(order[i], ray, list);
+        }
+        return list;
+    }
+
+    /**
+     * Finds the closest hit of a ray with the primitives, visiting the nodes front to
+     * back and skipping the nodes entered beyond the closest hit so far
+     *
+     * @param ray the ray
+     * @param hit the record of the closest hit so far
+     * @return true if the record was updated by a closer hit
+     */
+    boolean closestHit(Ray ray, HitRecord hit) {
+        if (nodes == 0) return false;
+        Point head = ray.getHead();
+        Vector dir = ray.getDirection();
+        double ox = head.getX(), oy = head.getY(), oz = head.getZ();
+        double ix = 1 / dir.getX(), iy = 1 / dir.getY(), iz = 1 / dir.getZ();
+        int[] stack = new int[STACK_SIZE];
+        double[] entries = new double[STACK_SIZE];
+        int top = 0;
+        boolean found = false;
+        double entry = nodeEntry(0, ox, oy, oz, ix, iy, iz);
+        if (entry < hit.t) {
+            stack[top] = 0;
+            entries[top++] = entry;
+        }
+        while (top > 0) {
+            int node = stack[--top];
+            if (!(entries[top] < hit.t)) continue; // a closer hit was found meanwhile
+            int first = nodeData[2 * node], count = nodeData[2 * node + 1];
+            if (count == 0) {
+                // the nearer child is pushed last, to be visited first
+                int near = node + 1, far = first;
+                double nearEntry = nodeEntry(near, ox, oy, oz, ix, iy, iz);
+                double farEntry = nodeEntry(far, ox, oy, oz, ix, iy, iz);
+                if (farEntry < nearEntry) {
+                    near = first;
+                    far = node + 1;
+                    double swap = nearEntry;
+                    nearEntry = farEntry;
+                    farEntry = swap;
+                }
+                if (farEntry < hit.t) {
+                    stack[top] = far;
+                    entries[top++] = farEntry;
+                }
+                if (nearEntry < hit.t) {
+                    stack[top] = near;
+                    entries[top++] = nearEntry;
+                }
+            } else
+                for (int i = first; i < first + count; ++i)
+                    found |= closestHit(order[i], ray, hit);
+        }
+        return found;
+    }
+
+    /**
+     * Slab test of a ray against the bounds of a node
+     *
+     * @param node the node index
+     * @param ox   ray head x
+     * @param oy   ray head y
+     * @param oz   ray head z
+     * @param ix   inverse of ray direction x
+     * @param iy   inverse of ray direction y
+     * @param iz   inverse of ray direction z
+     * @return the entry distance of the ray into the node bounds (0 if it starts inside),
+     *         or {@link Intersectable#MISS} if the ray misses them
+     */
+    private double nodeEntry(int node, double ox, double oy, double oz, double ix, double iy, double iz) {
+        int b = 6 * node;
+        double near = 0, far = Double.MAX_VALUE;
+        double t1 = (nodeBounds[b] - ox) * ix, t2 = (nodeBounds[b + 3] - ox) * ix;
+        if (!Double.isNaN(t1) && !Double.isNaN(t2)) {
+            near = Math.max(near, Math.min(t1, t2));
+            far = Math.min(far, Math.max(t1, t2));
+        }
+        t1 = (nodeBounds[b + 1] - oy) * iy;
+        t2 = (nodeBounds[b + 4] - oy) * iy;
+        if (!Double.isNaN(t1) && !Double.isNaN(t2)) {
+            near = Math.max(near, Math.min(t1, t2));
+            far = Math.min(far, Math.max(t1, t2));
+        }
+        t1 = (nodeBounds[b + 2] - oz) * iz;
+        t2 = (nodeBounds[b + 5] - oz) * iz;
+        if (!Double.isNaN(t1) && !Double.isNaN(t2)) {
+            near = Math.max(near, Math.min(t1, t2));
+            far = Math.min(far, Math.max(t1, t2));
+        }
+        return near <= far ? near : MISS;
+    }
+}
@@ -3,12 +3,27 @@ package geometries;
 import primitives.Point;
 import primitives.Ray;
 
+import java.io.IOException;
+import java.io.Serial;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
 public class Geometries extends Intersectable {
-    private final List<Intersectable> geometries = new ArrayList<>();
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final ArrayList<Intersectable> geometries = new ArrayList<>();
+    /**
+     * Unbounded geometries (e.g. planes) of the group, tested by every ray - null if the
+     * group has none or its bounding box was not computed
+     */
+    private Intersectable[] unbounded = null;
+    /** Bounded geometries of a group with unbounded ones, tested only within {@link #boundedBox} */
+    private Intersectable[] bounded = null;
+    /** Bounding box of the bounded geometries of a group with unbounded ones */
+    private AABB boundedBox = null;
 
     /**
      * Constructor to initialize the list of geometries.
@@ -37,6 +52,7 @@ public class Geometries extends Intersectable {
         for (Intersectable geometry : geometries) {
             this.geometries.add(geometry);
         }
+        unbounded = null;
     }
 
     /**
@@ -51,6 +67,8 @@ public class Geometries extends Intersectable {
     public List<Intersection> calculateIntersectionsHelper(Ray ray) {
         if(bvhIsOn&&!intersects(ray))
             return null;// in Geometries
+        if (unbounded != null)
+            return calculateUnboundedIntersections(ray);
         List<Intersection> totalList = null;
         for (Intersectable geometry : geometries) {
             var list = geometry.calculateIntersections(ray);
@@ -62,17 +80,123 @@ public class Geometries extends Intersectable {
         }
         return totalList;
     }
+
+    @Override
+    protected boolean closestHitHelper(Ray ray, HitRecord hit) {
+        if (bvhIsOn && box != null && !(entryDistance(ray, box) < hit.t))
+            return false;
+        return closestHitWithin(ray, hit);
+    }
+
+    /**
+     * Finds the closest hit among the geometries of the group, once the ray is known to
+     * enter its bounding box. The sub-groups with bounding boxes are visited front to
+     * back - by the entry distance of the ray into their boxes - and each of them is
+     * skipped if a closer hit is known by the time it is reached.
+     *
+     * @param ray the ray
+     * @param hit the record of the closest hit so far
+     * @return true if the record was updated by a closer hit
+     */
+    private boolean closestHitWithin(Ray ray, HitRecord hit) {
+        int base = hit.pending;
+        boolean found = false;
+        if (unbounded == null) {
+            for (Intersectable geometry : geometries)
+                found |= closestHitOrPend(geometry, ray, hit, base);
+            return closestHitPending(ray, hit, base) || found;
+        }
+        for (Intersectable geometry : unbounded)
+            found |= geometry.closestHit(ray, hit);
+        if (bounded.length == 0 || !(entryDistance(ray, boundedBox) < hit.t))
+            return found;
+        for (Intersectable geometry : bounded)
+            found |= closestHitOrPend(geometry, ray, hit, base);
+        return closestHitPending(ray, hit, base) || found;
+    }
+
     /**
-     * Method to check if a ray intersects with any of the geometries.
+     * Finds the closest hit of a ray with a geometry of the group, unless it is a
+     * sub-group with a bounding box - which is added to the pending groups of the
+     * record if the ray enters its box before the closest hit so far
      *
-     * @param ray the ray to check for intersections
-     * @return true if the ray intersects with any geometry, false otherwise
+     * @param geometry the geometry
+     * @param ray      the ray
+     * @param hit      the record of the closest hit so far
+     * @param base     the position of the first pending group of the group
+     * @return true if the record was updated by a closer hit
+     */
+    private static boolean closestHitOrPend(Intersectable geometry, Ray ray, HitRecord hit, int base) {
+        if (!(geometry instanceof Geometries group) || !group.bvhIsOn || group.box == null)
+            return geometry.closestHit(ray, hit);
+        double entry = group.entryDistance(ray, group.box);
+        if (entry < hit.t) hit.addPending(base, group, entry);
+        return false;
+    }
+
+    /**
+     * Visits the pending groups of a group from the nearest, until the next one is
+     * entered beyond the closest hit so far
+     *
+     * @param ray  the ray
+     * @param hit  the record of the closest hit so far
+     * @param base the position of the first pending group of the group
+     * @return true if the record was updated by a closer hit
+     */
+    private static boolean closestHitPending(Ray ray, HitRecord hit, int base) {
+        boolean found = false;
+        for (int i = base, end = hit.pending; i < end && hit.pendingEntries[i] < hit.t; ++i) {
+            Geometries group = hit.pendingGroups[i];
+            Observer observer = getObserver();
+            if (observer != null)
+                observer.intersectionTested(group);
+            found |= group.closestHitWithin(ray, hit);
+        }
+        hit.pending = base;
+        return found;
+    }
+
+    /**
+     * Calculates the intersections of a group with unbounded geometries - these are
+     * tested by every ray, and the bounded ones only by rays within their bounding box
+     *
+     * @param ray the ray
+     * @return the intersections, or null if there are none
+     */
+    private List<Intersection> calculateUnboundedIntersections(Ray ray) {
+        List<Intersection> totalList = null;
+        for (Intersectable geometry : unbounded) {
+            var list = geometry.calculateIntersections(ray);
+            if (list != null)
+                if (totalList == null)
+                    totalList = new LinkedList<>(list);
+                else
+                    totalList.addAll(list);
+        }
+        if (bounded.length == 0 || !intersects(ray, boundedBox))
+            return totalList;
+        for (Intersectable geometry : bounded) {
+            var list = geometry.calculateIntersections(ray);
+            if (list != null)
+                if (totalList == null)
+                    totalList = new LinkedList<>(list);
+                else
+                    totalList.addAll(list);
+        }
+        return totalList;
+    }
+
+    /**
+     * Computes the bounding box of the group. Unbounded geometries (e.g. planes) make
+     * the group unbounded, so its parent group tests it by every ray - but then the
+     * bounded geometries of the group are tested only within their own bounding box.
      */
     @Override
     public void computeBoundingBox() {
         if (geometries.isEmpty()) return;
         geometries.forEach(Intersectable::initializebox);
         bvhIsOn=true;
+        unbounded = null;
         double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY, minZ = Double.POSITIVE_INFINITY;
         double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY, maxZ = Double.NEGATIVE_INFINITY;
 
@@ -88,32 +212,123 @@ public class Geometries extends Intersectable {
             if (max.getZ() > maxZ) maxZ = max.getZ();
         }
         box = new AABB(new Point(minX, minY, minZ), new Point(maxX, maxY, maxZ));
+        if (geometries.stream().noneMatch(g -> g.box == null))
+            return;
 
+        boundedBox = box;
+        box = null;
+        bounded = geometries.stream().filter(g -> g.box != null).toArray(Intersectable[]::new);
+        unbounded = geometries.stream().filter(g -> g.box == null).toArray(Intersectable[]::new);
     }
     /**
      * Method to create a hierarchy of geometries for efficient intersection calculations.
-     * This method recursively pairs geometries and computes their bounding boxes until only one geometry remains.
+     * The hierarchy is built in parallel by {@link BvhBuilder}, and replaces the geometries
+     * of the group together with the unbounded geometries, which stay outside of it.
+     *
+     * @return the build metrics
      */
-    public void createHierarchy() {
-        if (geometries.size()==1) {
-            geometries.getFirst().computeBoundingBox();
-        }
-        else {
-            List<Intersectable> newGeometries=new LinkedList<>();
-            for (int i = 0; i < geometries.size() - 1; i += 2) {
-                Geometries tmp = new Geometries(geometries.get(i), geometries.get(i + 1));
-                tmp.computeBoundingBox();
-               newGeometries.add(tmp);
-            }
-            if (geometries.size() % 2 == 1) {
-                geometries.getLast().computeBoundingBox();
-                newGeometries.add(geometries.getLast());
-            }
-            geometries.clear();
-            geometries.addAll(newGeometries); // Recursively create hierarchy until only one geometry remains
-            createHierarchy();
-        }
+    public BvhBuilder.Metrics createHierarchy() {
+        return BvhBuilder.build(this);
+    }
+
+    /**
+     * Method to create a hierarchy of geometries by a given build method (see
+     * {@link #createHierarchy()}).
+     *
+     * @param method the build method
+     * @return the build metrics
+     */
+    public BvhBuilder.Metrics createHierarchy(BvhBuilder.Method method) {
+        return BvhBuilder.build(this, method);
+    }
+
+    /**
+     * Method to create a hierarchy of geometries by a given build method, or to load it
+     * from a cache directory where a hierarchy of the same geometries was saved (see
+     * {@link BvhCache}). The hierarchy is kept compressed (see {@link QuantizedBvh}).
+     *
+     * @param method    the build method
+     * @param directory the cache directory
+     * @return the build metrics
+     * @throws IOException on I/O error of the cache
+     */
+    public BvhBuilder.Metrics createHierarchy(BvhBuilder.Method method, Path directory) throws IOException {
+        return BvhCache.build(this, method, directory);
+    }
+
+    /**
+     * Replaces the geometries by a two-level hierarchy over them - a top level over the
+     * geometries, each with its own bottom-level hierarchy (see {@link TopLevelBvh}).
+     *
+     * @return the top level, to be refit after moving instances between frames
+     */
+    public TopLevelBvh createTopLevel() {
+        TopLevelBvh top = new TopLevelBvh(geometries.toArray(new Intersectable[0])).build();
+        geometries.clear();
+        geometries.add(top);
+        resetBounds();
+        return top;
+    }
 
+    /**
+     * Replaces the bounded geometries by a k-d tree over them (see {@link KdTree}) - the
+     * unbounded geometries stay outside of it.
+     *
+     * @return the k-d tree
+     */
+    public KdTree createKdTree() {
+        geometries.forEach(Intersectable::initializebox);
+        KdTree tree = new KdTree(geometries.stream().filter(g -> g.box != null).toArray(Intersectable[]::new));
+        geometries.removeIf(g -> g.box != null);
+        geometries.addFirst(tree);
+        resetBounds();
+        return tree;
+    }
 
+    /**
+     * Replaces the bounded geometries by a hierarchical grid over them (see
+     * {@link AdaptiveGrid}) - the unbounded geometries stay outside of it.
+     *
+     * @return the grid
+     */
+    public AdaptiveGrid createGrid() {
+        geometries.forEach(Intersectable::initializebox);
+        AdaptiveGrid grid = new AdaptiveGrid(geometries.stream().filter(g -> g.box != null)
+                .toArray(Intersectable[]::new));
+        geometries.removeIf(g -> g.box != null);
+        geometries.addFirst(grid);
+        resetBounds();
+        return grid;
+    }
+
+    /**
+     * Replaces the hierarchies of the group (its sub-groups with bounding boxes, e.g. as
+     * built by {@link #createHierarchy()}) by their compressed form (see {@link QuantizedBvh}).
+     *
+     * @return the compressed hierarchies
+     */
+    public List<QuantizedBvh> compressHierarchy() {
+        geometries.forEach(Intersectable::initializebox);
+        List<QuantizedBvh> compressed = new ArrayList<>();
+        for (int i = 0; i < geometries.size(); ++i)
+            if (geometries.get(i) instanceof Geometries group && group.box != null
+                    && !group.getGeometries().isEmpty()) {
+                QuantizedBvh bvh = new QuantizedBvh(group);
+                geometries.set(i, bvh);
+                compressed.add(bvh);
+            }
+        if (!compressed.isEmpty()) resetBounds();
+        return compressed;
+    }
+
+    /**
+     * Discards the bounding box of the group after its geometries were replaced
+     */
+    void resetBounds() {
+        box = null;
+        bvhIsOn = false;
+        unbounded = null;
+        bounded = null;
+        boundedBox = null;
     }
-}
\ No newline at end of file
+}
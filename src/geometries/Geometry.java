@@ -3,6 +3,7 @@ package geometries;
 import primitives.*;
 import primitives.Vector;
 
+import java.io.Serial;
 import java.util.*;
 
 /**
@@ -13,6 +14,9 @@ import java.util.*;
  * </p>
  */
 public abstract class Geometry extends Intersectable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
     /**
      * The emission color of the geometry (the color it emits regardless of lighting).
      */
@@ -31,6 +35,17 @@ public abstract class Geometry extends Intersectable {
      */
     public abstract Vector getNormal(Point p);
 
+    /**
+     * Returns the geometry of a primitive within this geometry (e.g. a mesh face),
+     * created for the hit reported with its index
+     *
+     * @param id the primitive index
+     * @return the primitive geometry, this geometry if it has no primitives
+     */
+    Geometry primitive(int id) {
+        return this;
+    }
+
     /**
      * Gets the emission color of the geometry.
      *
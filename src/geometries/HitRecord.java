@@ -0,0 +1,198 @@
+package geometries;
+
+import geometries.Intersectable.Intersection;
+import primitives.Ray;
+
+import java.util.Arrays;
+
+/**
+ * Mutable record of the closest hit of a ray, filled by
+ * {@link Intersectable#closestHit(Ray, HitRecord)}.<br>
+ * The geometries report the ray parameter of their hits (with a primitive index and
+ * barycentric coordinates where they have them) into the record, which keeps only the
+ * closest one - no intersection objects or points are allocated while the hierarchy is
+ * traversed. The {@link Intersection} is created once, for the final closest hit.<br>
+ * A record is reused for all the rays of a thread, and is not thread safe.
+ */
+public final class HitRecord {
+    /** Initial capacity of the stack of entered instances */
+    private static final int PATH_CAPACITY = 4;
+    /** Initial capacity of the stack of groups pending a visit */
+    private static final int PENDING_CAPACITY = 64;
+
+    /** Ray parameter of the closest hit, infinity if there is none */
+    double t;
+    /** The hit geometry, null if there is no hit */
+    Geometry geometry;
+    /** Index of the hit primitive within the geometry (e.g. a mesh face), -1 if none */
+    int id;
+    /** First barycentric coordinate of the hit on a triangle */
+    double u;
+    /** Second barycentric coordinate of the hit on a triangle */
+    double v;
+    /** Scratch for the barycentric coordinates of a candidate hit */
+    final double[] uv = new double[2];
+
+    /** The instances entered by the traversal, outermost first */
+    private Instance[] path = new Instance[PATH_CAPACITY];
+    /** Amount of the entered instances */
+    private int depth = 0;
+    /** The instances of the closest hit, outermost first */
+    private Instance[] hitPath = new Instance[PATH_CAPACITY];
+    /** Amount of the instances of the closest hit */
+    private int hitDepth = 0;
+
+    /** Groups pending a visit by the traversal, in the order of their entry distances per node */
+    Geometries[] pendingGroups = new Geometries[PENDING_CAPACITY];
+    /** Entry distances of the ray into the pending groups */
+    double[] pendingEntries = new double[PENDING_CAPACITY];
+    /** Amount of the pending groups */
+    int pending = 0;
+
+    /**
+     * Creates an empty record
+     */
+    public HitRecord() {
+        reset();
+    }
+
+    /**
+     * Empties the record for a new ray
+     *
+     * @return the record
+     */
+    public HitRecord reset() {
+        t = Double.POSITIVE_INFINITY;
+        geometry = null;
+        id = -1;
+        depth = 0;
+        hitDepth = 0;
+        pending = 0;
+        return this;
+    }
+
+    /**
+     * Checks whether a hit was found
+     *
+     * @return true if there is a hit
+     */
+    public boolean isHit() {
+        return geometry != null;
+    }
+
+    /**
+     * Returns the ray parameter (distance along the ray) of the closest hit
+     *
+     * @return the distance, infinity if there is no hit
+     */
+    public double getT() {
+        return t;
+    }
+
+    /**
+     * Returns the first barycentric coordinate of the closest hit on a mesh face
+     *
+     * @return the first barycentric coordinate
+     */
+    public double getU() {
+        return u;
+    }
+
+    /**
+     * Returns the second barycentric coordinate of the closest hit on a mesh face
+     *
+     * @return the second barycentric coordinate
+     */
+    public double getV() {
+        return v;
+    }
+
+    /**
+     * Reports a hit - it is kept if it is closer than the current one
+     *
+     * @param t        the ray parameter of the hit (in the space of the reporting geometry)
+     * @param geometry the hit geometry
+     * @return true if the hit is the closest so far
+     */
+    boolean accept(double t, Geometry geometry) {
+        return accept(t, geometry, -1, 0, 0);
+    }
+
+    /**
+     * Reports a hit of a primitive within a geometry - it is kept if it is closer than
+     * the current one
+     *
+     * @param t        the ray parameter of the hit (in the space of the reporting geometry)
+     * @param geometry the hit geometry
+     * @param id       the index of the primitive within the geometry
+     * @param u        the first barycentric coordinate
+     * @param v        the second barycentric coordinate
+     * @return true if the hit is the closest so far
+     */
+    boolean accept(double t, Geometry geometry, int id, double u, double v) {
+        if (!(t > 0 && t < this.t)) return false;
+        this.t = t;
+        this.geometry = geometry;
+        this.id = id;
+        this.u = u;
+        this.v = v;
+        if (hitPath.length < depth) hitPath = new Instance[path.length];
+        System.arraycopy(path, 0, hitPath, 0, depth);
+        hitDepth = depth;
+        return true;
+    }
+
+    /**
+     * Enters an instance - the following hits are in its object space
+     *
+     * @param instance the instance
+     */
+    void enter(Instance instance) {
+        if (depth == path.length) path = Arrays.copyOf(path, 2 * depth);
+        path[depth++] = instance;
+    }
+
+    /**
+     * Leaves the last entered instance
+     */
+    void leave() {
+        --depth;
+    }
+
+    /**
+     * Adds a group to the pending groups, keeping the groups added since a given
+     * position ordered by their entry distances (the groups of a node are few)
+     *
+     * @param base  the position of the first group of the node
+     * @param group the group
+     * @param entry the entry distance of the ray into the group
+     */
+    void addPending(int base, Geometries group, double entry) {
+        if (pending == pendingGroups.length) {
+            pendingGroups = Arrays.copyOf(pendingGroups, 2 * pending);
+            pendingEntries = Arrays.copyOf(pendingEntries, 2 * pending);
+        }
+        int i = pending++;
+        for (; i > base && pendingEntries[i - 1] > entry; --i) {
+            pendingGroups[i] = pendingGroups[i - 1];
+            pendingEntries[i] = pendingEntries[i - 1];
+        }
+        pendingGroups[i] = group;
+        pendingEntries[i] = entry;
+    }
+
+    /**
+     * Creates the intersection of the closest hit - a hit primitive (e.g. a mesh face)
+     * gets its own geometry
+     *
+     * @param ray the ray that was traced
+     * @return the intersection, or null if there is no hit
+     */
+    public Intersection toIntersection(Ray ray) {
+        if (geometry == null) return null;
+        Geometry hit = id >= 0 ? geometry.primitive(id) : geometry;
+        for (int i = hitDepth - 1; i >= 0; --i)
+            hit = hitPath[i].place(hit);
+        return new Intersection(hit, ray.getPoint(t));
+    }
+}
@@ -0,0 +1,222 @@
+package geometries;
+
+import primitives.*;
+
+import java.io.Serial;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Placement of a shared object in the scene by an affine transformation.<br>
+ * Any number of instances may reference the same object (e.g. a single mesh with
+ * its own hierarchy), so the memory scales with the unique objects rather than with
+ * their copies, and the hierarchy of an object is built once for all its instances.
+ * A ray is intersected by transforming it into the object space, and the
+ * intersections found there are transformed back into the scene.
+ */
+public class Instance extends Intersectable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    /** The shared object */
+    private final Intersectable object;
+    /** The transformation from the object space into the scene */
+    private Transform toWorld;
+    /** The transformation from the scene into the object space */
+    private Transform toObject;
+
+    /**
+     * Creates an instance of an object
+     *
+     * @param object    the shared object
+     * @param transform the transformation from the object space into the scene
+     * @throws IllegalArgumentException if the transformation is singular
+     */
+    public Instance(Intersectable object, Transform transform) {
+        if (object == null) throw new IllegalArgumentException("Instanced object must not be null");
+        this.object = object;
+        assignTransform(transform);
+    }
+
+    /**
+     * Returns the shared object
+     *
+     * @return the object
+     */
+    public Intersectable getObject() {
+        return object;
+    }
+
+    /**
+     * Returns the transformation of the instance
+     *
+     * @return the transformation from the object space into the scene
+     */
+    public Transform getTransform() {
+        return toWorld;
+    }
+
+    /**
+     * Moves the instance. The bounding box (if already calculated) is recalculated
+     * from the bounding box of the shared object, which is not rebuilt.
+     *
+     * @param transform the transformation from the object space into the scene
+     * @return the instance
+     * @throws IllegalArgumentException if the transformation is singular
+     */
+    public Instance setTransform(Transform transform) {
+        assignTransform(transform);
+        if (box != null) computeBoundingBox();
+        return this;
+    }
+
+    /**
+     * Sets the transformation of the instance, keeping its bounding box
+     *
+     * @param transform the transformation from the object space into the scene
+     * @throws IllegalArgumentException if the transformation is singular
+     */
+    private void assignTransform(Transform transform) {
+        if (transform == null) throw new IllegalArgumentException("Transformation must not be null");
+        toObject = transform.inverse();
+        toWorld = transform;
+    }
+
+    @Override
+    protected List<Intersection> calculateIntersectionsHelper(Ray ray) {
+        if (bvhIsOn && !intersects(ray))
+            return null;
+        return place(object.calculateIntersections(toObject(ray)));
+    }
+
+    @Override
+    protected boolean closestHitHelper(Ray ray, HitRecord hit) {
+        if (bvhIsOn && !intersects(ray))
+            return false;
+        // the object space ray direction is normalized - its parameter is scaled
+        Vector direction = toObject.apply(ray.getDirection());
+        double scale = direction.length();
+        double closest = hit.t;
+        hit.t = closest * scale;
+        hit.enter(this);
+        boolean found = object.closestHit(new Ray(toObject.apply(ray.getHead()), direction), hit);
+        hit.leave();
+        hit.t = found ? hit.t / scale : closest;
+        return found;
+    }
+
+    /**
+     * Places an intersected geometry of the shared object by the instance
+     *
+     * @param geometry the intersected geometry of the shared object
+     * @return the placed geometry
+     */
+    Geometry place(Geometry geometry) {
+        return new Placed(geometry);
+    }
+
+    /**
+     * Transforms a ray from the scene into the object space
+     *
+     * @param ray the ray in the scene
+     * @return the ray in the object space
+     */
+    private Ray toObject(Ray ray) {
+        return new Ray(toObject.apply(ray.getHead()), toObject.apply(ray.getDirection()));
+    }
+
+    /**
+     * Transforms intersections found in the object space into the scene
+     *
+     * @param list the intersections in the object space, may be null
+     * @return the intersections in the scene, or null if there are none
+     */
+    private List<Intersection> place(List<Intersection> list) {
+        if (list == null) return null;
+        List<Intersection> result = new ArrayList<>(list.size());
+        for (Intersection intersection : list)
+            result.add(new Intersection(new Placed(intersection.geometry), toWorld.apply(intersection.point)));
+        return result;
+    }
+
+    /**
+     * Calculates the bounding box by transforming the corners of the bounding box of
+     * the shared object (which is calculated once for all its instances).
+     * An unbounded object gives an unbounded instance.
+     */
+    @Override
+    public void computeBoundingBox() {
+        synchronized (object) { // instances of a shared object may be built in parallel
+            object.initializebox();
+        }
+        AABB objectBox = object.box;
+        if (objectBox == null) {
+            box = null;
+            bvhIsOn = false;
+            return;
+        }
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY, minZ = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY, maxZ = Double.NEGATIVE_INFINITY;
+        for (int corner = 0; corner < 8; ++corner) {
+            Point p = toWorld.apply(new Point(
+                    (corner & 1) == 0 ? objectBox.min.getX() : objectBox.max.getX(),
+                    (corner & 2) == 0 ? objectBox.min.getY() : objectBox.max.getY(),
+                    (corner & 4) == 0 ? objectBox.min.getZ() : objectBox.max.getZ()));
+            minX = Math.min(minX, p.getX());
+            minY = Math.min(minY, p.getY());
+            minZ = Math.min(minZ, p.getZ());
+            maxX = Math.max(maxX, p.getX());
+            maxY = Math.max(maxY, p.getY());
+            maxZ = Math.max(maxZ, p.getZ());
+        }
+        box = new AABB(new Point(minX, minY, minZ), new Point(maxX, maxY, maxZ));
+        bvhIsOn = true;
+    }
+
+    /**
+     * An intersected geometry of the shared object as placed by the instance - its
+     * normals are transformed into the scene, and its emission and material are the
+     * geometry's own
+     */
+    private final class Placed extends Geometry {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        /** The intersected geometry of the shared object */
+        private final Geometry geometry;
+
+        /**
+         * Creates the placed geometry
+         *
+         * @param geometry the intersected geometry of the shared object
+         */
+        Placed(Geometry geometry) {
+            this.geometry = geometry;
+        }
+
+        @Override
+        public Vector getNormal(Point point) {
+            return toObject.applyTransposed(geometry.getNormal(toObject.apply(point))).normalize();
+        }
+
+        @Override
+        public Color getEmission() {
+            return geometry.getEmission();
+        }
+
+        @Override
+        public Material getMaterial() {
+            return geometry.getMaterial();
+        }
+
+        @Override
+        protected List<Intersection> calculateIntersectionsHelper(Ray ray) {
+            return place(geometry.calculateIntersections(toObject(ray)));
+        }
+
+        @Override
+        public void computeBoundingBox() {
+            // a placed geometry is never a member of a hierarchy
+        }
+    }
+}
@@ -3,20 +3,27 @@ package geometries;
 import lighting.LightSource;
 import primitives.*;
 
+import java.io.Serial;
+import java.io.Serializable;
 import java.util.List;
 
 /**
  * Abstract class to represent geometries that can be intersected by rays.
  * This class defines methods to find intersection points and details of intersections.
  */
-public abstract class Intersectable {
+public abstract class Intersectable implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
 
 
     /**
      * Class to represent an intersection between a ray and a geometry.
      * Stores the geometry, intersection point, material, and additional intersection details.
      */
-    public class AABB{
+    public class AABB implements Serializable {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
         public final Point min;
         public final Point max;
 
@@ -36,6 +43,41 @@ public abstract class Intersectable {
 
         if (!bvhIsOn || box == null)
             return true;
+        return intersects(ray, box);
+    }
+
+    /**
+     * Checks if a ray intersects a bounding box, reporting the test to the observer.
+     * @param ray    the ray to check for intersection
+     * @param bounds the bounding box
+     * @return true if the ray intersects the bounding box, false otherwise
+     */
+    boolean intersects(Ray ray, AABB bounds) {
+        return entryDistance(ray, bounds) != MISS;
+    }
+
+    /**
+     * Calculates the distance along a ray to its entry into a bounding box, reporting
+     * the test to the observer.
+     * @param ray    the ray
+     * @param bounds the bounding box
+     * @return the entry distance (0 if the ray starts inside), or {@link #MISS} if the ray misses the box
+     */
+    double entryDistance(Ray ray, AABB bounds) {
+        Observer observer = getObserver();
+        double entry = slabTest(ray, bounds);
+        if (observer != null)
+            observer.boxTested(entry != MISS);
+        return entry;
+    }
+
+    /**
+     * Slab test of a ray against a bounding box.
+     * @param ray the ray to check for intersection
+     * @param box the bounding box
+     * @return the entry distance (0 if the ray starts inside), or {@link #MISS} if the ray misses the box
+     */
+    private static double slabTest(Ray ray, AABB box) {
         Vector dir = ray.getDirection();
         Point p0 = ray.getHead();
         double tmin = (box.min.getX() - p0.getX()) / dir.getX();
@@ -53,7 +95,7 @@ public abstract class Intersectable {
             tymax = temp;
         }
         if ((tmin > tymax) || (tymin > tmax))
-            return false;
+            return MISS;
         if (tymin > tmin)
             tmin = tymin;
         if (tymax < tmax)
@@ -66,16 +108,79 @@ public abstract class Intersectable {
             tzmax = temp;
         }
         if ((tmin > tzmax) || (tzmin > tmax))
-            return false;
+            return MISS;
         if (tzmin > tmin)
             tmin = tzmin;
         if (tzmax < tmax)
             tmax = tzmax;
-        return true;
+        if (tmax < 0)
+            return MISS; // the box is behind the ray
+        return tmin > 0 ? tmin : 0;
     }
+
+    /** Entry distance of a ray that misses a bounding box */
+    static final double MISS = Double.POSITIVE_INFINITY;
+
     protected AABB box=null;
 
     protected boolean bvhIsOn = false;
+
+    /**
+     * Receiver of intersection test events, used for collecting render statistics.
+     * An observer is installed per thread and is reported to only while at least one
+     * observing session is active, so there is no bookkeeping at all otherwise.
+     */
+    public interface Observer {
+        /**
+         * Called once for every intersection calculation of a geometry (including
+         * the inner nodes of a hierarchy)
+         * @param geometry the tested geometry
+         */
+        void intersectionTested(Intersectable geometry);
+
+        /**
+         * Called once for every bounding box test
+         * @param hit true if the ray intersects the box, false if it was rejected
+         */
+        void boxTested(boolean hit);
+    }
+
+    /** Observer of the current thread */
+    private static final ThreadLocal<Observer> OBSERVER = new ThreadLocal<>();
+    /** Amount of active observing sessions - while zero no observer is consulted */
+    private static volatile int observingSessions = 0;
+
+    /**
+     * Starts an observing session - observers installed by {@link #setObserver(Observer)}
+     * are reported to until the matching {@link #stopObserving()}
+     */
+    public static synchronized void startObserving() {
+        ++observingSessions;
+    }
+
+    /**
+     * Ends an observing session started by {@link #startObserving()}
+     */
+    public static synchronized void stopObserving() {
+        if (observingSessions > 0) --observingSessions;
+    }
+
+    /**
+     * Installs an observer for the current thread
+     * @param observer the observer, or null to remove it
+     */
+    public static void setObserver(Observer observer) {
+        OBSERVER.set(observer);
+    }
+
+    /**
+     * Returns the observer of the current thread
+     * @return the observer, or null if there is no active observing session
+     */
+    public static Observer getObserver() {
+        return observingSessions == 0 ? null : OBSERVER.get();
+    }
+
     public static class Intersection {
         /**
          * The geometry that was intersected.
@@ -187,8 +292,42 @@ public abstract class Intersectable {
      * @return a list of intersection details
      */
     public final List<Intersection> calculateIntersections(Ray ray) {
+        Observer observer = getObserver();
+        if (observer != null)
+            observer.intersectionTested(this);
         return  calculateIntersectionsHelper(ray);
     }
+    /**
+     * Finds the closest hit of a ray with the geometry, if it is closer than the hit
+     * already in the record - without creating intersection objects.
+     * @param ray the ray to intersect with
+     * @param hit the record of the closest hit so far
+     * @return true if the record was updated by a closer hit
+     */
+    public final boolean closestHit(Ray ray, HitRecord hit) {
+        Observer observer = getObserver();
+        if (observer != null)
+            observer.intersectionTested(this);
+        return closestHitHelper(ray, hit);
+    }
+
+    /**
+     * Helper method to find the closest hit of a ray. By default it picks the closest
+     * of the calculated intersections - geometries override it to report their hits
+     * without creating intersection objects.
+     * @param ray the ray to intersect with
+     * @param hit the record of the closest hit so far
+     * @return true if the record was updated by a closer hit
+     */
+    protected boolean closestHitHelper(Ray ray, HitRecord hit) {
+        List<Intersection> list = calculateIntersectionsHelper(ray);
+        if (list == null) return false;
+        boolean found = false;
+        for (Intersection intersection : list)
+            found |= hit.accept(intersection.point.distance(ray.getHead()), intersection.geometry);
+        return found;
+    }
+
     /**
      * Returns the bounding box of the geometry.
      * @return the bounding box
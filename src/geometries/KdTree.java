@@ -0,0 +1,511 @@
+package geometries;
+
+import primitives.Point;
+import primitives.Ray;
+import primitives.Vector;
+
+import java.io.Serial;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * k-d tree over bounded geometries - an alternative to the bounding volume hierarchy,
+ * which often traces static scenes of many small geometries faster.<br>
+ * The tree splits space (not the geometries) by axis-aligned planes chosen by the
+ * surface area heuristic, so a geometry crossing a plane is referred from both of its
+ * sides. The nodes are 8 bytes each in a compact int array: an inner node holds its
+ * split axis, the index of its above child (its below child follows it) and the split
+ * plane as a float; a leaf holds the amount and the position of its geometry indices.
+ * The traversal visits the leaves pierced by the ray front to back with a small
+ * stack, and stops at the first leaf that contains the closest hit found so far.
+ * A geometry referred from several leaves is tested once per ray, by a mailbox of
+ * the last ray that tested each geometry. The stack and the mailbox are kept per
+ * thread, so a query allocates nothing beyond its intersections.
+ */
+public class KdTree extends Intersectable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    /** Cost of traversing an inner node, relatively to intersecting a geometry */
+    private static final double TRAVERSAL_COST = 1;
+    /** Cost of intersecting a geometry */
+    private static final double INTERSECTION_COST = 80;
+    /** Cost reduction of a split with an empty side */
+    private static final double EMPTY_BONUS = 0.5;
+    /** Amount of splits worse than a leaf before a leaf is made anyway */
+    private static final int MAX_BAD_REFINES = 3;
+    /** Maximal depth of the tree */
+    private static final int MAX_DEPTH = 64;
+    /** Tag of a leaf in the low bits of the first int of a node */
+    private static final int LEAF = 3;
+    /** Tag of the end edge of a geometry in an edge key */
+    private static final long END = 1L << 31;
+
+    /** The geometries */
+    private final Intersectable[] geometries;
+    /**
+     * The nodes - 2 ints per node: the split axis (0-2) or {@link #LEAF} in the low 2
+     * bits and the above child index or the amount of geometries of a leaf in the
+     * others, and the float bits of the split plane or the position of the geometry
+     * indices of a leaf
+     */
+    private int[] nodes = new int[64];
+    /** Amount of the nodes */
+    private int count = 0;
+    /** The geometry indices of the leaves */
+    private int[] leafGeometries = new int[64];
+    /** Amount of the geometry indices of the leaves */
+    private int references = 0;
+    /** The depth of the tree */
+    private int depth = 0;
+    /** The bounds of the tree - min x, y, z and max x, y, z */
+    private final double[] bounds = new double[6];
+    /** The traversal data of the rendering threads, created on the first query */
+    private transient volatile ThreadLocal<Traversal> traversals;
+
+    /**
+     * Builds the tree over geometries
+     *
+     * @param geometries the geometries
+     * @throws IllegalArgumentException if a geometry is unbounded
+     */
+    public KdTree(Intersectable... geometries) {
+        this.geometries = geometries.clone();
+        int n = geometries.length;
+        double[] boxes = new double[6 * n];
+        Arrays.fill(bounds, 0, 3, Double.POSITIVE_INFINITY);
+        Arrays.fill(bounds, 3, 6, Double.NEGATIVE_INFINITY);
+        for (int i = 0; i < n; ++i) {
+            Intersectable geometry = geometries[i];
+            geometry.initializebox();
+            if (geometry.box == null) throw new IllegalArgumentException("k-d tree geometries must be bounded");
+            double[] box = { geometry.box.min.getX(), geometry.box.min.getY(), geometry.box.min.getZ(),
+                    geometry.box.max.getX(), geometry.box.max.getY(), geometry.box.max.getZ() };
+            System.arraycopy(box, 0, boxes, 6 * i, 6);
+            for (int k = 0; k < 3; ++k) {
+                bounds[k] = Math.min(bounds[k], box[k]);
+                bounds[3 + k] = Math.max(bounds[3 + k], box[3 + k]);
+            }
+        }
+        if (n == 0) return;
+
+        int[] all = new int[n];
+        for (int i = 0; i < n; ++i) all[i] = i;
+        // deep enough to cut the empty space around small geometries - the heuristic stops sooner
+        int maxDepth = Math.min(MAX_DEPTH, 8 + 3 * (31 - Integer.numberOfLeadingZeros(n)));
+        new Builder(boxes, n).build(all, bounds.clone(), maxDepth, 0, 1);
+        nodes = Arrays.copyOf(nodes, 2 * count);
+        leafGeometries = Arrays.copyOf(leafGeometries, references);
+        box = new AABB(new Point(bounds[0], bounds[1], bounds[2]), new Point(bounds[3], bounds[4], bounds[5]));
+        bvhIsOn = true;
+    }
+
+    /**
+     * Returns the amount of the nodes
+     *
+     * @return the amount of nodes
+     */
+    public int nodes() {
+        return count;
+    }
+
+    /**
+     * Returns the depth of the tree
+     *
+     * @return the depth
+     */
+    public int depth() {
+        return depth;
+    }
+
+    /**
+     * Returns the amount of the references to the geometries from the leaves - more than
+     * the geometries when geometries cross split planes
+     *
+     * @return the amount of references
+     */
+    public int references() {
+        return references;
+    }
+
+    /**
+     * Returns the geometries
+     *
+     * @return unmodifiable list of the geometries
+     */
+    public List<Intersectable> getGeometries() {
+        return List.of(geometries);
+    }
+
+    /**
+     * Returns the traversal data of the current thread for a new ray
+     *
+     * @return the traversal data
+     */
+    private Traversal traversal() {
+        ThreadLocal<Traversal> local = traversals;
+        if (local == null) {
+            synchronized (this) {
+                if (traversals == null) traversals = ThreadLocal.withInitial(Traversal::new);
+                local = traversals;
+            }
+        }
+        Traversal traversal = local.get();
+        traversal.mailbox.next();
+        return traversal;
+    }
+
+    /**
+     * Clips a ray to the bounds of the tree
+     *
+     * @param ox    ray head x
+     * @param oy    ray head y
+     * @param oz    ray head z
+     * @param ix    inverse of ray direction x
+     * @param iy    inverse of ray direction y
+     * @param iz    inverse of ray direction z
+     * @param range receives the entry and the exit distances
+     * @return false if the ray misses the bounds
+     */
+    private boolean clip(double ox, double oy, double oz, double ix, double iy, double iz, double[] range) {
+        range[0] = 0;
+        range[1] = Double.POSITIVE_INFINITY;
+        return clip(0, ox, ix, range) && clip(1, oy, iy, range) && clip(2, oz, iz, range);
+    }
+
+    /**
+     * Clips a ray to the slab of the bounds along an axis
+     *
+     * @param axis    the axis
+     * @param origin  ray head coordinate
+     * @param inverse inverse of ray direction coordinate
+     * @param range   the entry and the exit distances, narrowed to the slab
+     * @return false if the ray misses the bounds
+     */
+    private boolean clip(int axis, double origin, double inverse, double[] range) {
+        double t1 = (bounds[axis] - origin) * inverse, t2 = (bounds[3 + axis] - origin) * inverse;
+        if (!Double.isNaN(t1) && !Double.isNaN(t2)) {
+            range[0] = Math.max(range[0], Math.min(t1, t2));
+            range[1] = Math.min(range[1], Math.max(t1, t2));
+        }
+        return range[0] <= range[1];
+    }
+
+    @Override
+    protected List<Intersection> calculateIntersectionsHelper(Ray ray) {
+        if (count == 0) return null;
+        Point head = ray.getHead();
+        Vector dir = ray.getDirection();
+        double ox = head.getX(), oy = head.getY(), oz = head.getZ();
+        double dx = dir.getX(), dy = dir.getY(), dz = dir.getZ();
+        double ix = 1 / dx, iy = 1 / dy, iz = 1 / dz;
+        Traversal traversal = traversal();
+        double[] range = traversal.range;
+        if (!clip(ox, oy, oz, ix, iy, iz, range)) return null;
+
+        Mailbox mailbox = traversal.mailbox;
+        int[] stack = traversal.stack;
+        double[] mins = traversal.mins, maxes = traversal.maxes;
+        List<Intersection> list = null;
+        int top = 0;
+        int node = 0;
+        double tMin = range[0], tMax = range[1];
+        while (true) {
+            int data = nodes[2 * node];
+            if ((data & LEAF) != LEAF) {
+                int axis = data & LEAF;
+                double split = Float.intBitsToFloat(nodes[2 * node + 1]);
+                double origin = axis == 0 ? ox : axis == 1 ? oy : oz;
+                double direction = axis == 0 ? dx : axis == 1 ? dy : dz;
+                double tPlane = (split - origin) * (axis == 0 ? ix : axis == 1 ? iy : iz);
+                boolean belowFirst = origin < split || origin == split && direction <= 0;
+                int first = belowFirst ? node + 1 : data >>> 2, second = belowFirst ? data >>> 2 : node + 1;
+                if (Double.isNaN(tPlane)) { // the ray is within the plane
+                    stack[top] = second;
+                    mins[top] = tMin;
+                    maxes[top++] = tMax;
+                    node = first;
+                } else if (tPlane > tMax || tPlane <= 0) node = first;
+                else if (tPlane < tMin) node = second;
+                else {
+                    stack[top] = second;
+                    mins[top] = tPlane;
+                    maxes[top++] = tMax;
+                    node = first;
+                    tMax = tPlane;
+                }
+                continue;
+            }
+            for (int i = nodes[2 * node + 1], end = i + (data >>> 2); i < end; ++i) {
+                int geometry = leafGeometries[i];
+                if (!mailbox.check(geometry)) continue;
+                var found = geometries[geometry].calculateIntersections(ray);
+                if (found == null) continue;
+                if (list == null) list = new ArrayList<>(found);
+                else list.addAll(found);
+            }
+            if (top == 0) return list;
+            node = stack[--top];
+            tMin = mins[top];
+            tMax = maxes[top];
+        }
+    }
+
+    @Override
+    protected boolean closestHitHelper(Ray ray, HitRecord hit) {
+        if (count == 0) return false;
+        Point head = ray.getHead();
+        Vector dir = ray.getDirection();
+        double ox = head.getX(), oy = head.getY(), oz = head.getZ();
+        double dx = dir.getX(), dy = dir.getY(), dz = dir.getZ();
+        double ix = 1 / dx, iy = 1 / dy, iz = 1 / dz;
+        Traversal traversal = traversal();
+        double[] range = traversal.range;
+        if (!clip(ox, oy, oz, ix, iy, iz, range) || !(range[0] < hit.t)) return false;
+
+        Mailbox mailbox = traversal.mailbox;
+        int[] stack = traversal.stack;
+        double[] mins = traversal.mins, maxes = traversal.maxes;
+        boolean found = false;
+        int top = 0;
+        int node = 0;
+        double tMin = range[0], tMax = range[1];
+        while (tMin <= hit.t) { // the nodes are visited front to back - the rest are beyond the hit
+            int data = nodes[2 * node];
+            if ((data & LEAF) != LEAF) {
+                int axis = data & LEAF;
+                double split = Float.intBitsToFloat(nodes[2 * node + 1]);
+                double origin = axis == 0 ? ox : axis == 1 ? oy : oz;
+                double direction = axis == 0 ? dx : axis == 1 ? dy : dz;
+                double tPlane = (split - origin) * (axis == 0 ? ix : axis == 1 ? iy : iz);
+                boolean belowFirst = origin < split || origin == split && direction <= 0;
+                int first = belowFirst ? node + 1 : data >>> 2, second = belowFirst ? data >>> 2 : node + 1;
+                if (Double.isNaN(tPlane)) { // the ray is within the plane
+                    stack[top] = second;
+                    mins[top] = tMin;
+                    maxes[top++] = tMax;
+                    node = first;
+                } else if (tPlane > tMax || tPlane <= 0) node = first;
+                else if (tPlane < tMin) node = second;
+                else {
+                    stack[top] = second;
+                    mins[top] = tPlane;
+                    maxes[top++] = tMax;
+                    node = first;
+                    tMax = tPlane;
+                }
+                continue;
+            }
+            for (int i = nodes[2 * node + 1], end = i + (data >>> 2); i < end; ++i) {
+                int geometry = leafGeometries[i];
+                if (mailbox.check(geometry)) found |= geometries[geometry].closestHit(ray, hit);
+            }
+            // early exit - a hit within the leaf is closer than anything in the next leaves
+            if (hit.t <= tMax || top == 0) break;
+            node = stack[--top];
+            tMin = mins[top];
+            tMax = maxes[top];
+        }
+        return found;
+    }
+
+    /**
+     * Traversal data of a rendering thread - the mailbox and the stack of the far
+     * children with their ranges of the ray, reused by all the rays of the thread
+     */
+    private final class Traversal {
+        /** The mailbox */
+        final Mailbox mailbox = new Mailbox(geometries.length);
+        /** The entry and the exit distances of the ray into the tree */
+        final double[] range = new double[2];
+        /** The far children to visit */
+        final int[] stack = new int[depth + 1];
+        /** The entry distances of the ray into the far children */
+        final double[] mins = new double[depth + 1];
+        /** The exit distances of the ray from the far children */
+        final double[] maxes = new double[depth + 1];
+    }
+
+    @Override
+    public void computeBoundingBox() {
+        // the box is computed by the build
+    }
+
+    /**
+     * Builds the nodes by the surface area heuristic - the split of each node is chosen
+     * by sweeping the sorted edges of the boxes of its geometries along each axis
+     */
+    private final class Builder {
+        /** The boxes of the geometries */
+        private final double[] boxes;
+        /** Edge keys - float position bits, end tag and geometry index */
+        private final long[] edges;
+
+        /**
+         * Creates the builder
+         *
+         * @param boxes      the boxes of the geometries
+         * @param geometries amount of the geometries
+         */
+        Builder(double[] boxes, int geometries) {
+            this.boxes = boxes;
+            edges = new long[2 * geometries];
+        }
+
+        /**
+         * Converts a float to an int of the same order
+         *
+         * @param value the float
+         * @return the ordered int
+         */
+        private static int ordered(float value) {
+            int bits = Float.floatToRawIntBits(value);
+            return bits ^ (bits >> 31 & 0x7FFFFFFF);
+        }
+
+        /**
+         * Converts an ordered int back to the float
+         *
+         * @param ordered the ordered int
+         * @return the float
+         */
+        private static float unordered(int ordered) {
+            return Float.intBitsToFloat(ordered ^ (ordered >> 31 & 0x7FFFFFFF));
+        }
+
+        /**
+         * Rounds a coordinate to a float not above it
+         *
+         * @param value the coordinate
+         * @return the float
+         */
+        private static float down(double value) {
+            float f = (float) value;
+            return f > value ? Math.nextDown(f) : f;
+        }
+
+        /**
+         * Rounds a coordinate to a float not below it
+         *
+         * @param value the coordinate
+         * @return the float
+         */
+        private static float up(double value) {
+            float f = (float) value;
+            return f < value ? Math.nextUp(f) : f;
+        }
+
+        /**
+         * Allocates a node
+         *
+         * @return the node index
+         */
+        private int allocate() {
+            if (2 * (count + 1) > nodes.length) nodes = Arrays.copyOf(nodes, 2 * nodes.length);
+            return count++;
+        }
+
+        /**
+         * Makes a leaf
+         *
+         * @param node    the node
+         * @param members the geometry indices
+         */
+        private void leaf(int node, int[] members) {
+            if (references + members.length > leafGeometries.length)
+                leafGeometries = Arrays.copyOf(leafGeometries, Math.max(2 * leafGeometries.length,
+                        references + members.length));
+            nodes[2 * node] = members.length << 2 | LEAF;
+            nodes[2 * node + 1] = references;
+            System.arraycopy(members, 0, leafGeometries, references, members.length);
+            references += members.length;
+        }
+
+        /**
+         * Builds a node and its subtree
+         *
+         * @param members     the geometry indices of the node
+         * @param nodeBounds  the bounds of the node
+         * @param levels      the levels left to split
+         * @param badRefines  the splits worse than a leaf above the node
+         * @param level       the depth of the node
+         */
+        void build(int[] members, double[] nodeBounds, int levels, int badRefines, int level) {
+            depth = Math.max(depth, level);
+            int node = allocate();
+            int n = members.length;
+            if (n <= 1 || levels == 0) {
+                leaf(node, members);
+                return;
+            }
+
+            double[] extent = { nodeBounds[3] - nodeBounds[0], nodeBounds[4] - nodeBounds[1],
+                    nodeBounds[5] - nodeBounds[2] };
+            double area = extent[0] * extent[1] + extent[0] * extent[2] + extent[1] * extent[2];
+            double leafCost = INTERSECTION_COST * n;
+            double bestCost = Double.POSITIVE_INFINITY;
+            int bestAxis = -1;
+            float bestSplit = 0;
+            for (int axis = 0; axis < 3; ++axis) {
+                if (!(area > 0) || !(extent[axis] > 0)) continue;
+                double min = nodeBounds[axis], max = nodeBounds[3 + axis];
+                for (int i = 0; i < n; ++i) {
+                    int member = members[i];
+                    long low = ordered(down(Math.max(boxes[6 * member + axis], min)));
+                    long high = ordered(up(Math.min(boxes[6 * member + 3 + axis], max)));
+                    edges[2 * i] = low << 32 | member;
+                    edges[2 * i + 1] = high << 32 | END | member;
+                }
+                Arrays.sort(edges, 0, 2 * n);
+
+                double d1 = extent[(axis + 1) % 3], d2 = extent[(axis + 2) % 3];
+                int below = 0, above = n;
+                for (int i = 0; i < 2 * n; ++i) {
+                    long edge = edges[i];
+                    boolean end = (edge & END) != 0;
+                    if (end) --above;
+                    float split = unordered((int) (edge >> 32));
+                    if (split > min && split < max) {
+                        double belowArea = d1 * d2 + (split - min) * (d1 + d2);
+                        double aboveArea = d1 * d2 + (max - split) * (d1 + d2);
+                        double bonus = below == 0 || above == 0 ? EMPTY_BONUS : 0;
+                        double cost = TRAVERSAL_COST + INTERSECTION_COST * (1 - bonus)
+                                * (belowArea * below + aboveArea * above) / area;
+                        if (cost < bestCost) {
+                            bestCost = cost;
+                            bestAxis = axis;
+                            bestSplit = split;
+                        }
+                    }
+                    if (!end) ++below;
+                }
+            }
+
+            if (bestCost > leafCost) ++badRefines;
+            if (bestAxis < 0 || bestCost > 4 * leafCost && n < 16 || badRefines == MAX_BAD_REFINES) {
+                leaf(node, members);
+                return;
+            }
+
+            // a geometry touching the plane from one side is referred only from that side
+            int[] belowMembers = new int[n], aboveMembers = new int[n];
+            int belowCount = 0, aboveCount = 0;
+            for (int member : members) {
+                float low = down(boxes[6 * member + bestAxis]), high = up(boxes[6 * member + 3 + bestAxis]);
+                boolean planar = low == bestSplit && high == bestSplit;
+                if (low < bestSplit || planar) belowMembers[belowCount++] = member;
+                if (high > bestSplit || planar) aboveMembers[aboveCount++] = member;
+            }
+            double[] belowBounds = nodeBounds.clone(), aboveBounds = nodeBounds.clone();
+            belowBounds[3 + bestAxis] = bestSplit;
+            aboveBounds[bestAxis] = bestSplit;
+
+            build(Arrays.copyOf(belowMembers, belowCount), belowBounds, levels - 1, badRefines, level + 1);
+            int aboveChild = count;
+            build(Arrays.copyOf(aboveMembers, aboveCount), aboveBounds, levels - 1, badRefines, level + 1);
+            nodes[2 * node] = aboveChild << 2 | bestAxis;
+            nodes[2 * node + 1] = Float.floatToRawIntBits(bestSplit);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package geometries;
+
+import java.util.Arrays;
+
+/**
+ * Mailbox of an acceleration structure that refers a geometry from several cells (see
+ * {@link KdTree} and {@link AdaptiveGrid}) - the last ray that tested each geometry, so
+ * each geometry is tested once per ray. A mailbox is used by a single thread.
+ */
+final class Mailbox {
+    /** The last ray that tested each geometry */
+    private final int[] rays;
+    /** The current ray */
+    private int ray = 0;
+
+    /**
+     * Creates a mailbox
+     *
+     * @param geometries amount of the geometries
+     */
+    Mailbox(int geometries) {
+        rays = new int[geometries];
+    }
+
+    /**
+     * Starts a new ray
+     */
+    void next() {
+        if (++ray == 0) { // wrapped around - forget the rays of the previous round
+            Arrays.fill(rays, 0);
+            ray = 1;
+        }
+    }
+
+    /**
+     * Checks whether a geometry is not yet tested by the current ray, and marks it as
+     * tested
+     *
+     * @param geometry the geometry index
+     * @return true if the geometry should be tested
+     */
+    boolean check(int geometry) {
+        if (rays[geometry] == ray) return false;
+        rays[geometry] = ray;
+        return true;
+    }
+}
@@ -0,0 +1,321 @@
+package geometries;
+
+import primitives.*;
+
+import java.io.Serial;
+import java.util.ArrayList;
+import java.util.List;
+
+import static primitives.Util.alignZero;
+import static primitives.Util.isZero;
+
+/**
+ * Compact triangle mesh - shared vertex coordinates and triangle vertex indices in
+ * primitive arrays, with a single material and emission for all the faces.<br>
+ * A mesh of a million triangles takes about 24MB instead of the hundreds of MB of
+ * separate {@link Triangle} objects. An intersection refers to a lightweight face
+ * object created only for the hit, which provides the face normal.<br>
+ * When the bounding box of the mesh is computed (CBR/BVH), an internal bounding
+ * volume hierarchy over the faces is built in flat arrays as well, so a ray tests
+ * only the faces near its path.
+ */
+public class Mesh extends Geometry {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    /** Maximal amount of faces in a leaf of the internal hierarchy */
+    private static final int LEAF_SIZE = 4;
+
+    /** Vertex coordinates - x, y, z of each vertex */
+    private final float[] vertices;
+    /** Vertex indices of the faces - 3 per face */
+    private final int[] indices;
+
+    /** The internal hierarchy of the faces, null if there is no hierarchy */
+    private Faces hierarchy = null;
+
+    /**
+     * Constructor of a mesh over vertex and index arrays (the arrays are used
+     * directly, not copied)
+     *
+     * @param vertices vertex coordinates - x, y, z of each vertex
+     * @param indices  vertex indices of the faces - 3 per face
+     * @throws IllegalArgumentException if the array sizes don't match or an index is out of range
+     */
+    public Mesh(float[] vertices, int[] indices) {
+        if (vertices.length % 3 != 0)
+            throw new IllegalArgumentException("Vertex coordinates must come in triples");
+        if (indices.length == 0 || indices.length % 3 != 0)
+            throw new IllegalArgumentException("A mesh must have faces of 3 vertex indices");
+        int count = vertices.length / 3;
+        for (int index : indices)
+            if (index < 0 || index >= count)
+                throw new IllegalArgumentException("Vertex index " + index + " is out of range");
+        this.vertices = vertices;
+        this.indices = indices;
+    }
+
+    /**
+     * Returns the vertex coordinates (not a copy - must not be modified)
+     *
+     * @return x, y, z of each vertex
+     */
+    public float[] getVertices() {
+        return vertices;
+    }
+
+    /**
+     * Returns the vertex indices of the faces (not a copy - must not be modified)
+     *
+     * @return 3 vertex indices per face
+     */
+    public int[] getIndices() {
+        return indices;
+    }
+
+    /**
+     * Returns the amount of faces
+     *
+     * @return the amount of triangles of the mesh
+     */
+    public int faces() {
+        return indices.length / 3;
+    }
+
+    /**
+     * Calculates the unit normal of a face
+     *
+     * @param face the face index
+     * @return the face normal
+     */
+    private Vector faceNormal(int face) {
+        int a = 3 * indices[3 * face], b = 3 * indices[3 * face + 1], c = 3 * indices[3 * face + 2];
+        Vector e1 = new Vector(vertices[b] - vertices[a], vertices[b + 1] - vertices[a + 1], vertices[b + 2] - vertices[a + 2]);
+        Vector e2 = new Vector(vertices[c] - vertices[a], vertices[c + 1] - vertices[a + 1], vertices[c + 2] - vertices[a + 2]);
+        return e1.crossProduct(e2).normalize();
+    }
+
+    /**
+     * Returns the normal of the face containing the point - the faces are searched
+     * one by one, intersections provide their face normal directly
+     *
+     * @param point a point on the mesh
+     * @return the face normal
+     */
+    @Override
+    public Vector getNormal(Point point) {
+        for (int face = 0; face < faces(); ++face) {
+            Vector normal = faceNormal(face);
+            int a = 3 * indices[3 * face];
+            Point v = new Point(vertices[a], vertices[a + 1], vertices[a + 2]);
+            if (isZero(point.equals(v) ? 0 : point.subtract(v).dotProduct(normal))) {
+                Ray ray = new Ray(point.add(normal), normal.scale(-1));
+                if (!Double.isNaN(intersectFace(face, ray))) return normal;
+            }
+        }
+        throw new IllegalArgumentException("The point is not on the mesh");
+    }
+
+    /**
+     * Intersects a ray with a face (Möller-Trumbore algorithm, the edges included)
+     *
+     * @param face the face index
+     * @param ray  the ray
+     * @return the ray parameter of the intersection, or NaN if there is none
+     */
+    private double intersectFace(int face, Ray ray) {
+        Point head = ray.getHead();
+        Vector dir = ray.getDirection();
+        return intersectFace(face, head.getX(), head.getY(), head.getZ(), dir.getX(), dir.getY(), dir.getZ(), null);
+    }
+
+    /**
+     * Intersects a ray given by its coordinates with a face (Möller-Trumbore algorithm,
+     * the edges included)
+     *
+     * @param face the face index
+     * @param ox   ray head x
+     * @param oy   ray head y
+     * @param oz   ray head z
+     * @param dx   ray direction x
+     * @param dy   ray direction y
+     * @param dz   ray direction z
+     * @param uv   receives the barycentric coordinates of the intersection, may be null
+     * @return the ray parameter of the intersection, or NaN if there is none
+     */
+    private double intersectFace(int face, double ox, double oy, double oz, double dx, double dy, double dz,
+                                 double[] uv) {
+        int a = 3 * indices[3 * face], b = 3 * indices[3 * face + 1], c = 3 * indices[3 * face + 2];
+        double e1x = vertices[b] - vertices[a], e1y = vertices[b + 1] - vertices[a + 1], e1z = vertices[b + 2] - vertices[a + 2];
+        double e2x = vertices[c] - vertices[a], e2y = vertices[c + 1] - vertices[a + 1], e2z = vertices[c + 2] - vertices[a + 2];
+        double px = dy * e2z - dz * e2y, py = dz * e2x - dx * e2z, pz = dx * e2y - dy * e2x;
+        double det = e1x * px + e1y * py + e1z * pz;
+        if (isZero(det)) return Double.NaN; // the ray is parallel to the face
+        double inv = 1 / det;
+        double sx = ox - vertices[a], sy = oy - vertices[a + 1], sz = oz - vertices[a + 2];
+        double u = (sx * px + sy * py + sz * pz) * inv;
+        if (u < 0 || u > 1) return Double.NaN;
+        double qx = sy * e1z - sz * e1y, qy = sz * e1x - sx * e1z, qz = sx * e1y - sy * e1x;
+        double v = (dx * qx + dy * qy + dz * qz) * inv;
+        if (v < 0 || u + v > 1) return Double.NaN;
+        double t = alignZero((e2x * qx + e2y * qy + e2z * qz) * inv);
+        if (!(t > 0)) return Double.NaN;
+        if (uv != null) {
+            uv[0] = u;
+            uv[1] = v;
+        }
+        return t;
+    }
+
+    /**
+     * Creates the face object of an intersection
+     *
+     * @param face the face index
+     * @return the face object
+     */
+    @Override
+    Geometry primitive(int face) {
+        return new Face(face);
+    }
+
+    /**
+     * Adds the intersection of a ray with a face to a list
+     *
+     * @param face the face index
+     * @param ray  the ray
+     * @param list the list of intersections, may be null
+     * @return the list with the intersection, or the original list if there is none
+     */
+    private List<Intersection> addIntersection(int face, Ray ray, List<Intersection> list) {
+        double t = intersectFace(face, ray);
+        if (Double.isNaN(t)) return list;
+        if (list == null) list = new ArrayList<>(2);
+        list.add(new Intersection(new Face(face), ray.getPoint(t)));
+        return list;
+    }
+
+    @Override
+    protected List<Intersection> calculateIntersectionsHelper(Ray ray) {
+        if (hierarchy != null) return hierarchy.calculateIntersections(ray, null);
+        List<Intersection> list = null;
+        for (int face = 0; face < faces(); ++face)
+            list = addIntersection(face, ray, list);
+        return list;
+    }
+
+    @Override
+    protected boolean closestHitHelper(Ray ray, HitRecord hit) {
+        if (hierarchy != null) return hierarchy.closestHit(ray, hit);
+        Point head = ray.getHead();
+        Vector dir = ray.getDirection();
+        double ox = head.getX(), oy = head.getY(), oz = head.getZ();
+        double dx = dir.getX(), dy = dir.getY(), dz = dir.getZ();
+        double[] uv = hit.uv;
+        boolean found = false;
+        for (int face = 0; face < faces(); ++face) {
+            double t = intersectFace(face, ox, oy, oz, dx, dy, dz, uv);
+            if (!Double.isNaN(t)) found |= hit.accept(t, this, face, uv[0], uv[1]);
+        }
+        return found;
+    }
+
+    /**
+     * Computes the bounding box of the mesh and builds the internal hierarchy of its faces
+     */
+    @Override
+    public void computeBoundingBox() {
+        hierarchy = new Faces();
+        hierarchy.build(faces());
+        box = new AABB(new Point(hierarchy.bound(0), hierarchy.bound(1), hierarchy.bound(2)),
+                new Point(hierarchy.bound(3), hierarchy.bound(4), hierarchy.bound(5)));
+        bvhIsOn = true;
+    }
+
+    /**
+     * The faces of the mesh as the primitives of its internal hierarchy
+     */
+    private final class Faces extends FlatBvh {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Creates the hierarchy of the faces, to be built
+         */
+        Faces() {
+            super(LEAF_SIZE);
+        }
+
+        @Override
+        void bounds(int face, double[] bounds) {
+            for (int axis = 0; axis < 3; ++axis) {
+                bounds[axis] = Double.MAX_VALUE;
+                bounds[3 + axis] = -Double.MAX_VALUE;
+                for (int corner = 0; corner < 3; ++corner) {
+                    float value = vertices[3 * indices[3 * face + corner] + axis];
+                    if (value < bounds[axis]) bounds[axis] = value;
+                    if (value > bounds[3 + axis]) bounds[3 + axis] = value;
+                }
+            }
+        }
+
+        @Override
+        List<Intersection> addIntersections(int face, Ray ray, List<Intersection> list) {
+            return addIntersection(face, ray, list);
+        }
+
+        @Override
+        boolean closestHit(int face, Ray ray, HitRecord hit) {
+            Point head = ray.getHead();
+            Vector dir = ray.getDirection();
+            double[] uv = hit.uv;
+            double t = intersectFace(face, head.getX(), head.getY(), head.getZ(), dir.getX(), dir.getY(), dir.getZ(), uv);
+            return !Double.isNaN(t) && hit.accept(t, Mesh.this, face, uv[0], uv[1]);
+        }
+    }
+
+    /**
+     * Face of the mesh referred by an intersection - provides the face normal and
+     * the material and emission of the mesh
+     */
+    private final class Face extends Geometry {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        /** The face index */
+        private final int face;
+
+        /**
+         * Creates the face object
+         *
+         * @param face the face index
+         */
+        Face(int face) {
+            this.face = face;
+        }
+
+        @Override
+        public Vector getNormal(Point point) {
+            return faceNormal(face);
+        }
+
+        @Override
+        public Color getEmission() {
+            return Mesh.this.getEmission();
+        }
+
+        @Override
+        public Material getMaterial() {
+            return Mesh.this.getMaterial();
+        }
+
+        @Override
+        protected List<Intersection> calculateIntersectionsHelper(Ray ray) {
+            return addIntersection(face, ray, null);
+        }
+
+        @Override
+        public void computeBoundingBox() {
+            // a face is never a member of a hierarchy
+        }
+    }
+}
@@ -4,6 +4,7 @@ import primitives.Point;
 import primitives.Ray;
 import primitives.Vector;
 
+import java.io.Serial;
 import java.util.List;
 
 import static primitives.Util.alignZero;
@@ -14,6 +15,9 @@ import static primitives.Util.isZero;
  * A plane is defined by a point on the plane and a normal vector perpendicular to the plane.
  */
 public class Plane extends Geometry {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
     private final Point q; // A point on the plane
     private final Vector normal; // The normal vector of the plane
 
@@ -87,6 +91,18 @@ public class Plane extends Geometry {
         return List.of(new Intersection(this,intersectionPoint));
     }
 
+    @Override
+    protected boolean closestHitHelper(Ray ray, HitRecord hit) {
+        Point head = ray.getHead();
+        Vector v = ray.getDirection();
+        double nv = alignZero(normal.getX() * v.getX() + normal.getY() * v.getY() + normal.getZ() * v.getZ());
+        if (nv == 0) return false; // The ray is parallel to the plane
+        double d = alignZero(normal.getX() * (q.getX() - head.getX()) + normal.getY() * (q.getY() - head.getY())
+                + normal.getZ() * (q.getZ() - head.getZ()));
+        if (d == 0) return false; // The ray starts on the plane
+        return hit.accept(alignZero(d / nv), this);
+    }
+
     /**
      * Method to compute the bounding box of the plane.
      * Since a plane extends infinitely, it does not have a finite bounding box.
@@ -99,4 +115,13 @@ public class Plane extends Geometry {
         // but for geometric calculations, the plane is infinite.
         box = null; // No bounding box for an infinite plane
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns the reference point of the plane
+     *
+     * @return a point on the plane
+     */
+    public Point getPoint() {
+        return q;
+    }
+}
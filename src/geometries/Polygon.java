@@ -4,6 +4,7 @@ import primitives.Point;
 import primitives.Ray;
 import primitives.Vector;
 
+import java.io.Serial;
 import java.util.List;
 
 import static java.lang.Math.abs;
@@ -16,9 +17,13 @@ import static primitives.Util.isZero;
  * @author Dan
  */
 public class Polygon extends Geometry {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
     /**
      * List of polygon's vertices
      */
+    @SuppressWarnings("serial") // an unmodifiable list by List.of(), which is serializable
     protected final List<Point> vertices;
     /**
      * Associated plane in which the polygon lays
@@ -148,4 +153,13 @@ public class Polygon extends Geometry {
         }
         box = new AABB(new Point(minX, minY, minZ), new Point(maxX, maxY, maxZ));
     }
+
+    /**
+     * Returns the vertices of the polygon
+     *
+     * @return the vertices in the order of the edge path
+     */
+    public List<Point> getVertices() {
+        return vertices;
+    }
 }
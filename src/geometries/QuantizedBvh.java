@@ -0,0 +1,601 @@
+package geometries;
+
+import primitives.Point;
+import primitives.Ray;
+import primitives.Vector;
+
+import java.io.Serial;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compressed form of a built bounding volume hierarchy - a binary hierarchy in a packed
+ * int array, with the bounds of the children of each node quantized to 8 bits per
+ * coordinate relative to the node bounds.<br>
+ * A node takes 24 bytes instead of the well over 100 bytes of a {@link Geometries} group
+ * with its list and box points, so giant hierarchies fit in the cache and in the heap.
+ * The quantized bounds are conservative - each decoded child box contains the true
+ * child box - so no intersection is lost, at the cost of a few extra box hits. Only the
+ * root box is kept exactly, and the boxes of the nodes are decoded along the traversal
+ * from their parents'.<br>
+ * The geometries referred by the leaves (including a {@link Mesh} with its own internal
+ * hierarchy) are kept as they are.
+ */
+public class QuantizedBvh extends Intersectable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    /** Amount of ints of a node */
+    private static final int NODE_INTS = 6;
+    /** Highest quantized coordinate */
+    private static final int QUANTUM = 255;
+    /** Maximal amount of geometries in a leaf */
+    private static final int MAX_LEAF = 0xFFFF;
+
+    /**
+     * The nodes - 6 ints per node: the quantized bounds of both children (min x, y, z
+     * and max x, y, z of the first child and then of the second child, a byte each, in
+     * 3 ints), the references of both children (an inner node index, or the complement
+     * of the first geometry of a leaf), and the amounts of geometries of both children
+     * (16 bits each - 0 for an inner node, and for the missing second child of a root
+     * leaf)
+     */
+    private final int[] nodes;
+    /** Amount of the nodes */
+    private final int count;
+    /** The geometries in the order of the leaves */
+    private final Intersectable[] leaves;
+    /** The exact root bounds - min x, y, z and max x, y, z */
+    private final double[] rootBounds;
+    /** The depth of the hierarchy */
+    private final int depth;
+    /** Traversal stack depth - the depth of the hierarchy with a margin */
+    private final int stackSize;
+
+    /**
+     * Compresses a built hierarchy
+     *
+     * @param root the hierarchy root - a group with a bounding box, whose groups with
+     *             bounding boxes are the nodes (see {@link Geometries#createHierarchy()})
+     * @throws IllegalArgumentException if the root has no bounding box
+     */
+    public QuantizedBvh(Intersectable root) {
+        this(Encoder.encode(root));
+    }
+
+    /**
+     * Creates the hierarchy encoded by an encoder
+     *
+     * @param encoder the encoder
+     */
+    private QuantizedBvh(Encoder encoder) {
+        this(Arrays.copyOf(encoder.nodes, NODE_INTS * encoder.count), encoder.leaves.toArray(new Intersectable[0]),
+                encoder.rootBounds, encoder.depth);
+    }
+
+    /**
+     * Creates the hierarchy from its packed nodes
+     *
+     * @param nodes      the nodes
+     * @param leaves     the geometries in the order of the leaves
+     * @param rootBounds the exact root bounds
+     * @param depth      the depth of the hierarchy
+     */
+    private QuantizedBvh(int[] nodes, Intersectable[] leaves, double[] rootBounds, int depth) {
+        this.nodes = nodes;
+        this.count = nodes.length / NODE_INTS;
+        this.leaves = leaves;
+        this.rootBounds = rootBounds;
+        this.depth = depth;
+        stackSize = 2 * depth + 2;
+        box = new AABB(new Point(rootBounds[0], rootBounds[1], rootBounds[2]),
+                new Point(rootBounds[3], rootBounds[4], rootBounds[5]));
+        bvhIsOn = true;
+    }
+
+    /**
+     * Size of the hierarchy written by {@link #write(ByteBuffer, Map)}
+     *
+     * @return the size in bytes
+     */
+    int serializedSize() {
+        return 3 * Integer.BYTES + 6 * Double.BYTES + Integer.BYTES * (nodes.length + leaves.length);
+    }
+
+    /**
+     * Writes the hierarchy - the amounts of nodes and leaf geometries, the depth, the
+     * root bounds, the nodes and the index of each leaf geometry
+     *
+     * @param out     the output
+     * @param indices the indices of the geometries (all the leaf geometries must have one)
+     */
+    void write(ByteBuffer out, Map<Intersectable, Integer> indices) {
+        out.putInt(count).putInt(leaves.length).putInt(depth);
+        for (double bound : rootBounds)
+            out.putDouble(bound);
+        out.asIntBuffer().put(nodes);
+        out.position(out.position() + Integer.BYTES * nodes.length);
+        for (Intersectable leaf : leaves)
+            out.putInt(indices.get(leaf));
+    }
+
+    /**
+     * Reads a hierarchy written by {@link #write(ByteBuffer, Map)}
+     *
+     * @param in         the input
+     * @param geometries the geometries by their indices
+     * @return the hierarchy
+     * @throws IllegalArgumentException if the hierarchy is corrupted
+     * @throws java.nio.BufferUnderflowException if the input is too short
+     */
+    static QuantizedBvh read(ByteBuffer in, Intersectable[] geometries) {
+        int count = in.getInt(), leafCount = in.getInt(), depth = in.getInt();
+        if (count <= 0 || leafCount <= 0 || depth <= 0 || depth > count)
+            throw new IllegalArgumentException("Corrupted hierarchy");
+        double[] rootBounds = new double[6];
+        for (int k = 0; k < 6; ++k)
+            rootBounds[k] = in.getDouble();
+        // the amounts are checked against the input before anything is allocated by them
+        if (((long) NODE_INTS * count + leafCount) * Integer.BYTES > in.remaining())
+            throw new IllegalArgumentException("Corrupted hierarchy size");
+        int[] nodes = new int[NODE_INTS * count];
+        in.asIntBuffer().get(nodes);
+        in.position(in.position() + Integer.BYTES * nodes.length);
+        Intersectable[] leaves = new Intersectable[leafCount];
+        for (int i = 0; i < leafCount; ++i) {
+            int index = in.getInt();
+            if (index < 0 || index >= geometries.length)
+                throw new IllegalArgumentException("Corrupted hierarchy leaf");
+            leaves[i] = geometries[index];
+        }
+        // the children follow their parents, so the levels of the nodes are found in one pass,
+        // and the traversal stacks sized by the depth must hold the real depth
+        int[] levels = new int[count];
+        levels[0] = 1;
+        for (int node = 0; node < count; ++node)
+            for (int c = 0; c < 2; ++c) {
+                int ref = nodes[NODE_INTS * node + 3 + c], leaf = nodes[NODE_INTS * node + 5] >>> (16 * c) & 0xFFFF;
+                if (ref >= 0 ? leaf != 0 || ref <= node || ref >= count : ~ref + leaf > leafCount)
+                    throw new IllegalArgumentException("Corrupted hierarchy node");
+                if (ref >= 0 && levels[node] > 0) {
+                    levels[ref] = Math.max(levels[ref], levels[node] + 1);
+                    if (levels[ref] > depth) throw new IllegalArgumentException("Corrupted hierarchy depth");
+                }
+            }
+        return new QuantizedBvh(nodes, leaves, rootBounds, depth);
+    }
+
+    /**
+     * Returns the amount of the nodes
+     *
+     * @return the amount of nodes
+     */
+    public int nodes() {
+        return count;
+    }
+
+    /**
+     * Returns the size of the node data
+     *
+     * @return the size of the nodes in bytes
+     */
+    public long bytes() {
+        return (long) Integer.BYTES * nodes.length;
+    }
+
+    /**
+     * Returns the geometries referred by the leaves
+     *
+     * @return unmodifiable list of the geometries in the order of the leaves
+     */
+    public List<Intersectable> getGeometries() {
+        return List.of(leaves);
+    }
+
+    /**
+     * Returns the bounds of a box in an array
+     *
+     * @param box the box
+     * @return min x, y, z and max x, y, z
+     */
+    private static double[] bounds(AABB box) {
+        return new double[] { box.min.getX(), box.min.getY(), box.min.getZ(),
+                box.max.getX(), box.max.getY(), box.max.getZ() };
+    }
+
+    /**
+     * Decodes a quantized coordinate within bounds
+     *
+     * @param q    the quantized coordinate
+     * @param low  the lower bound
+     * @param high the upper bound
+     * @return the coordinate
+     */
+    private static double decode(int q, double low, double high) {
+        return q == QUANTUM ? high : low + q * ((high - low) / QUANTUM);
+    }
+
+    /**
+     * Reads a quantized coordinate of a child of a node
+     *
+     * @param node  the node
+     * @param child the child - 0 or 1
+     * @param k     the coordinate - min x, y, z and max x, y, z
+     * @return the quantized coordinate
+     */
+    private int quantized(int node, int child, int k) {
+        int index = 6 * child + k;
+        return nodes[NODE_INTS * node + index / 4] >>> (8 * (index % 4)) & 0xFF;
+    }
+
+    /**
+     * Decodes the bounds of a child of a node
+     *
+     * @param node   the node
+     * @param child  the child - 0 or 1
+     * @param parent the decoded bounds of the node
+     * @param p      the position of the node bounds in their array
+     * @param out    receives the child bounds
+     * @param o      the position of the child bounds in their array
+     */
+    private void decodeChild(int node, int child, double[] parent, int p, double[] out, int o) {
+        for (int axis = 0; axis < 3; ++axis) {
+            double low = parent[p + axis], high = parent[p + 3 + axis];
+            out[o + axis] = decode(quantized(node, child, axis), low, high);
+            out[o + 3 + axis] = decode(quantized(node, child, 3 + axis), low, high);
+        }
+    }
+
+    /**
+     * Slab test of a ray against bounds
+     *
+     * @param b  the bounds array
+     * @param o  the position of the bounds in the array
+     * @param ox ray head x
+     * @param oy ray head y
+     * @param oz ray head z
+     * @param ix inverse of ray direction x
+     * @param iy inverse of ray direction y
+     * @param iz inverse of ray direction z
+     * @return the entry distance of the ray into the bounds (0 if it starts inside),
+     *         or {@link #MISS} if the ray misses them
+     */
+    private static double entry(double[] b, int o, double ox, double oy, double oz, double ix, double iy, double iz) {
+        double near = 0, far = Double.MAX_VALUE;
+        double t1 = (b[o] - ox) * ix, t2 = (b[o + 3] - ox) * ix;
+        if (!Double.isNaN(t1) && !Double.isNaN(t2)) {
+            near = Math.max(near, Math.min(t1, t2));
+            far = Math.min(far, Math.max(t1, t2));
+        }
+        t1 = (b[o + 1] - oy) * iy;
+        t2 = (b[o + 4] - oy) * iy;
+        if (!Double.isNaN(t1) && !Double.isNaN(t2)) {
+            near = Math.max(near, Math.min(t1, t2));
+            far = Math.min(far, Math.max(t1, t2));
+        }
+        t1 = (b[o + 2] - oz) * iz;
+        t2 = (b[o + 5] - oz) * iz;
+        if (!Double.isNaN(t1) && !Double.isNaN(t2)) {
+            near = Math.max(near, Math.min(t1, t2));
+            far = Math.min(far, Math.max(t1, t2));
+        }
+        return near <= far ? near : MISS;
+    }
+
+    /**
+     * Amount of geometries of a child of a node
+     *
+     * @param node  the node
+     * @param child the child - 0 or 1
+     * @return the amount of geometries of a leaf, 0 for an inner node
+     */
+    private int leafCount(int node, int child) {
+        return nodes[NODE_INTS * node + 5] >>> (16 * child) & 0xFFFF;
+    }
+
+    @Override
+    protected List<Intersection> calculateIntersectionsHelper(Ray ray) {
+        Point head = ray.getHead();
+        Vector dir = ray.getDirection();
+        double ox = head.getX(), oy = head.getY(), oz = head.getZ();
+        double ix = 1 / dir.getX(), iy = 1 / dir.getY(), iz = 1 / dir.getZ();
+        if (entry(rootBounds, 0, ox, oy, oz, ix, iy, iz) == MISS) return null;
+
+        List<Intersection> list = null;
+        int[] stack = new int[stackSize];
+        double[] boxes = new double[6 * stackSize];
+        int top = 0;
+        stack[top] = 0;
+        System.arraycopy(rootBounds, 0, boxes, 0, 6);
+        ++top;
+        double[] parent = new double[6], child = new double[6];
+        while (top > 0) {
+            int node = stack[--top];
+            // the slot of the node is reused by its children
+            System.arraycopy(boxes, 6 * top, parent, 0, 6);
+            int base = NODE_INTS * node;
+            for (int c = 0; c < 2; ++c) {
+                int leaf = leafCount(node, c), ref = nodes[base + 3 + c];
+                if (ref < 0 && leaf == 0) continue; // no second child
+                decodeChild(node, c, parent, 0, child, 0);
+                if (entry(child, 0, ox, oy, oz, ix, iy, iz) == MISS) continue;
+                if (leaf == 0) {
+                    stack[top] = ref;
+                    System.arraycopy(child, 0, boxes, 6 * top++, 6);
+                } else
+                    for (int i = ~ref; i < ~ref + leaf; ++i) {
+                        var intersections = leaves[i].calculateIntersections(ray);
+                        if (intersections == null) continue;
+                        if (list == null) list = new ArrayList<>(intersections);
+                        else list.addAll(intersections);
+                    }
+            }
+        }
+        return list;
+    }
+
+    @Override
+    protected boolean closestHitHelper(Ray ray, HitRecord hit) {
+        Point head = ray.getHead();
+        Vector dir = ray.getDirection();
+        double ox = head.getX(), oy = head.getY(), oz = head.getZ();
+        double ix = 1 / dir.getX(), iy = 1 / dir.getY(), iz = 1 / dir.getZ();
+        double rootEntry = entry(rootBounds, 0, ox, oy, oz, ix, iy, iz);
+        if (!(rootEntry < hit.t)) return false;
+
+        // the stack holds children - a node or a leaf with its decoded bounds and entry
+        int[] refs = new int[stackSize], leafCounts = new int[stackSize];
+        double[] entries = new double[stackSize], boxes = new double[6 * stackSize];
+        int top = 0;
+        refs[top] = 0;
+        leafCounts[top] = 0;
+        entries[top] = rootEntry;
+        System.arraycopy(rootBounds, 0, boxes, 0, 6);
+        ++top;
+        double[] children = new double[12];
+        double[] childEntries = new double[2];
+        boolean found = false;
+        while (top > 0) {
+            --top;
+            if (!(entries[top] < hit.t)) continue; // a closer hit was found meanwhile
+            int ref = refs[top], leaf = leafCounts[top];
+            if (leaf > 0) {
+                for (int i = ~ref; i < ~ref + leaf; ++i)
+                    found |= leaves[i].closestHit(ray, hit);
+                continue;
+            }
+            int node = ref, p = 6 * top, base = NODE_INTS * node;
+            for (int c = 0; c < 2; ++c) {
+                childEntries[c] = MISS;
+                if (nodes[base + 3 + c] < 0 && leafCount(node, c) == 0) continue; // no second child
+                decodeChild(node, c, boxes, p, children, 6 * c);
+                childEntries[c] = entry(children, 6 * c, ox, oy, oz, ix, iy, iz);
+            }
+            // the nearer child is pushed last, to be visited first
+            int near = childEntries[1] < childEntries[0] ? 1 : 0;
+            for (int c : new int[] { 1 - near, near })
+                if (childEntries[c] < hit.t) {
+                    refs[top] = nodes[base + 3 + c];
+                    leafCounts[top] = leafCount(node, c);
+                    entries[top] = childEntries[c];
+                    System.arraycopy(children, 6 * c, boxes, 6 * top, 6);
+                    ++top;
+                }
+        }
+        return found;
+    }
+
+    @Override
+    public void computeBoundingBox() {
+        // the box of the hierarchy root is kept from the compression
+    }
+
+    /**
+     * Encodes a hierarchy into the packed nodes
+     */
+    private static final class Encoder {
+        /** The nodes */
+        int[] nodes = new int[NODE_INTS * 16];
+        /** Amount of the nodes */
+        int count = 0;
+        /** The geometries in the order of the leaves */
+        final List<Intersectable> leaves = new ArrayList<>();
+        /** The depth of the hierarchy */
+        int depth = 0;
+        /** The exact root bounds */
+        double[] rootBounds;
+
+        /**
+         * Encodes a hierarchy
+         *
+         * @param root the hierarchy root
+         * @return the encoder holding the encoded hierarchy
+         * @throws IllegalArgumentException if the root has no bounding box
+         */
+        static Encoder encode(Intersectable root) {
+            root.initializebox();
+            if (root.box == null)
+                throw new IllegalArgumentException("Only a bounded hierarchy can be compressed");
+            Encoder encoder = new Encoder();
+            encoder.rootBounds = bounds(root.box);
+            encoder.encodeRoot(root, encoder.rootBounds);
+            return encoder;
+        }
+
+        /**
+         * Encodes the root of the hierarchy
+         *
+         * @param root   the root
+         * @param bounds the exact root bounds
+         */
+        private void encodeRoot(Intersectable root, double[] bounds) {
+            List<Intersectable> children = children(root);
+            while (children.size() == 1 && isNode(children.getFirst()))
+                children = children(children.getFirst());
+            if (isLeaf(children)) {
+                // a single root node with the leaf as its first child
+                depth = 1;
+                int node = allocate();
+                setChild(node, 0, children, bounds, bounds, 1);
+                nodes[NODE_INTS * node + 4] = -1;
+                return;
+            }
+            encode(children, bounds, 1);
+        }
+
+        /**
+         * Returns the children of a hierarchy node, a geometry is a leaf of itself
+         *
+         * @param node the node
+         * @return the children
+         */
+        private static List<Intersectable> children(Intersectable node) {
+            return isNode(node) ? ((Geometries) node).getGeometries() : List.of(node);
+        }
+
+        /**
+         * Checks whether a geometry is a node of the hierarchy
+         *
+         * @param geometry the geometry
+         * @return true for a group with a bounding box
+         */
+        private static boolean isNode(Intersectable geometry) {
+            return geometry instanceof Geometries group && group.box != null && !group.getGeometries().isEmpty();
+        }
+
+        /**
+         * Checks whether geometries make a leaf - none of them is a node, and they are few
+         * enough
+         *
+         * @param geometries the geometries
+         * @return true if they make a leaf
+         */
+        private static boolean isLeaf(List<Intersectable> geometries) {
+            return geometries.size() <= MAX_LEAF && geometries.stream().noneMatch(Encoder::isNode);
+        }
+
+        /**
+         * Allocates a node
+         *
+         * @return the node index
+         */
+        private int allocate() {
+            if (NODE_INTS * (count + 1) > nodes.length) nodes = Arrays.copyOf(nodes, 2 * nodes.length);
+            return count++;
+        }
+
+        /**
+         * Encodes an inner node over geometries - two children are split into the two
+         * children of the node, more are divided between two virtual nodes
+         *
+         * @param geometries the geometries of the node (at least 2)
+         * @param bounds     the decoded bounds of the node
+         * @param level      the depth of the node
+         * @return the node index
+         */
+        private int encode(List<Intersectable> geometries, double[] bounds, int level) {
+            depth = Math.max(depth, level);
+            int node = allocate();
+            int half = geometries.size() / 2;
+            List<List<Intersectable>> parts = geometries.size() == 2
+                    ? List.of(children(geometries.get(0)), children(geometries.get(1)))
+                    : List.of(geometries.subList(0, half), geometries.subList(half, geometries.size()));
+            for (int c = 0; c < 2; ++c)
+                setChild(node, c, parts.get(c), union(parts.get(c)), bounds, level);
+            return node;
+        }
+
+        /**
+         * Sets a child of a node - a leaf of geometries, or an inner node encoded after
+         * its bounds are quantized relative to the node bounds
+         *
+         * @param node       the node
+         * @param c          the child - 0 or 1
+         * @param geometries the geometries of the child
+         * @param exact      the exact bounds of the child
+         * @param bounds     the decoded bounds of the node
+         * @param level      the depth of the node
+         */
+        private void setChild(int node, int c, List<Intersectable> geometries, double[] exact, double[] bounds,
+                              int level) {
+            double[] decoded = new double[6];
+            for (int axis = 0; axis < 3; ++axis) {
+                double low = bounds[axis], high = bounds[3 + axis];
+                int qLow = quantize(exact[axis], low, high, false);
+                int qHigh = quantize(exact[3 + axis], low, high, true);
+                setQuantized(node, c, axis, qLow);
+                setQuantized(node, c, 3 + axis, qHigh);
+                decoded[axis] = decode(qLow, low, high);
+                decoded[3 + axis] = decode(qHigh, low, high);
+            }
+            while (geometries.size() == 1 && isNode(geometries.getFirst()))
+                geometries = children(geometries.getFirst());
+            int base = NODE_INTS * node;
+            if (isLeaf(geometries)) {
+                nodes[base + 3 + c] = ~leaves.size();
+                nodes[base + 5] |= geometries.size() << (16 * c);
+                leaves.addAll(geometries);
+            } else {
+                int child = encode(geometries, decoded, level + 1); // may grow the nodes array
+                nodes[base + 3 + c] = child;
+            }
+        }
+
+        /**
+         * Quantizes a coordinate within bounds conservatively - a lower coordinate is
+         * decoded to no more than the coordinate, and an upper one to no less
+         *
+         * @param value the coordinate
+         * @param low   the lower bound
+         * @param high  the upper bound
+         * @param upper true for an upper coordinate
+         * @return the quantized coordinate
+         */
+        private static int quantize(double value, double low, double high, boolean upper) {
+            double size = high - low;
+            if (!(size > 0)) return upper ? QUANTUM : 0;
+            double scaled = (value - low) / size * QUANTUM;
+            int q = (int) Math.max(0, Math.min(QUANTUM, upper ? Math.ceil(scaled) : Math.floor(scaled)));
+            if (upper)
+                while (q < QUANTUM && decode(q, low, high) < value) ++q;
+            else
+                while (q > 0 && decode(q, low, high) > value) --q;
+            return q;
+        }
+
+        /**
+         * Stores a quantized coordinate of a child of a node
+         *
+         * @param node  the node
+         * @param child the child - 0 or 1
+         * @param k     the coordinate - min x, y, z and max x, y, z
+         * @param q     the quantized coordinate
+         */
+        private void setQuantized(int node, int child, int k, int q) {
+            int index = 6 * child + k;
+            nodes[NODE_INTS * node + index / 4] |= q << (8 * (index % 4));
+        }
+
+        /**
+         * Calculates the union of the boxes of geometries
+         *
+         * @param geometries the geometries
+         * @return the bounds of the union
+         */
+        private static double[] union(List<Intersectable> geometries) {
+            double[] union = { Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE,
+                    -Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE };
+            for (Intersectable geometry : geometries) {
+                double[] b = bounds(geometry.box);
+                for (int k = 0; k < 3; ++k) {
+                    union[k] = Math.min(union[k], b[k]);
+                    union[3 + k] = Math.max(union[3 + k], b[3 + k]);
+                }
+            }
+            return union;
+        }
+    }
+}
@@ -1,10 +1,15 @@
 package geometries;
 
+import java.io.Serial;
+
 /**
  * interface class to define a geometry object that uses radius in its calculations
  */
 abstract public class RadialGeometry extends Geometry
 {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
     protected final double  radius;
 
     /**
@@ -14,4 +19,13 @@ abstract public class RadialGeometry extends Geometry
     public RadialGeometry(double r){
         radius = r;
     }
+
+    /**
+     * Returns the radius of the geometry
+     *
+     * @return the radius
+     */
+    public double getRadius() {
+        return radius;
+    }
 }
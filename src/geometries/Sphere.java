@@ -4,6 +4,7 @@ import primitives.Point;
 import primitives.Ray;
 import primitives.Vector;
 
+import java.io.Serial;
 import java.util.List;
 
 import static primitives.Util.*;
@@ -12,6 +13,9 @@ import static primitives.Util.*;
  * class to represent a sphere in the 3D space
  */
 public class Sphere extends RadialGeometry {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
     private final Point center;
 
     /**
@@ -74,6 +78,18 @@ public class Sphere extends RadialGeometry {
             return null; // no intersection
         }
     }
+    @Override
+    protected boolean closestHitHelper(Ray ray, HitRecord hit) {
+        Point head = ray.getHead();
+        Vector dir = ray.getDirection();
+        double ux = center.getX() - head.getX(), uy = center.getY() - head.getY(), uz = center.getZ() - head.getZ();
+        double tm = dir.getX() * ux + dir.getY() * uy + dir.getZ() * uz;
+        double d2 = ux * ux + uy * uy + uz * uz - tm * tm;
+        if (d2 >= radius * radius) return false; // no intersection
+        double th = Math.sqrt(radius * radius - d2);
+        return hit.accept(tm - th, this) || hit.accept(tm + th, this);
+    }
+
     @Override
     public void computeBoundingBox() {
         bvhIsOn = true;
@@ -83,4 +99,13 @@ public class Sphere extends RadialGeometry {
                center.subtract(rad),center.add(new Vector(rad.getXyz()))
         );
     }
+
+    /**
+     * Returns the center of the sphere
+     *
+     * @return the center point
+     */
+    public Point getCenter() {
+        return center;
+    }
 }
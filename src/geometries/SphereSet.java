@@ -0,0 +1,319 @@
+package geometries;
+
+import primitives.*;
+
+import java.io.Serial;
+import java.util.ArrayList;
+import java.util.List;
+
+import static primitives.Util.alignZero;
+import static primitives.Util.isZero;
+
+/**
+ * Compact set of spheres - centers and radii in primitive arrays, with a single
+ * material and emission for all the spheres, for clouds of tens of thousands to
+ * millions of particles or bubbles.<br>
+ * A set of a million spheres takes about 16MB instead of the hundreds of MB of
+ * separate {@link Sphere} objects, and is intersected by a tight loop over the arrays
+ * without virtual calls or vector allocations. An intersection refers to a
+ * lightweight sphere object created only for the hit, which provides the normal.<br>
+ * When the bounding box of the set is computed (CBR/BVH), an internal bounding
+ * volume hierarchy over the spheres is built in flat arrays as well, so a ray tests
+ * only the spheres near its path.
+ */
+public class SphereSet extends Geometry {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    /** Maximal amount of spheres in a leaf of the internal hierarchy */
+    private static final int LEAF_SIZE = 4;
+
+    /** Sphere centers - x, y, z of each sphere */
+    private final float[] centers;
+    /** Sphere radii */
+    private final float[] radii;
+
+    /** The internal hierarchy of the spheres, null if there is no hierarchy */
+    private Members hierarchy = null;
+
+    /**
+     * Constructor of a sphere set over center and radius arrays (the arrays are used
+     * directly, not copied)
+     *
+     * @param centers sphere centers - x, y, z of each sphere
+     * @param radii   sphere radii
+     * @throws IllegalArgumentException if the array sizes don't match or a radius is not positive
+     */
+    public SphereSet(float[] centers, float[] radii) {
+        if (radii.length == 0)
+            throw new IllegalArgumentException("A sphere set must have spheres");
+        if (centers.length != 3 * radii.length)
+            throw new IllegalArgumentException("Each sphere must have a center of 3 coordinates");
+        for (float radius : radii)
+            if (!(radius > 0))
+                throw new IllegalArgumentException("Sphere radius must be positive");
+        this.centers = centers;
+        this.radii = radii;
+    }
+
+    /**
+     * Returns the sphere centers (not a copy - must not be modified)
+     *
+     * @return x, y, z of each sphere center
+     */
+    public float[] getCenters() {
+        return centers;
+    }
+
+    /**
+     * Returns the sphere radii (not a copy - must not be modified)
+     *
+     * @return the radius of each sphere
+     */
+    public float[] getRadii() {
+        return radii;
+    }
+
+    /**
+     * Returns the amount of spheres
+     *
+     * @return the amount of spheres of the set
+     */
+    public int spheres() {
+        return radii.length;
+    }
+
+    /**
+     * Calculates the unit normal of a sphere at a point
+     *
+     * @param sphere the sphere index
+     * @param point  a point on the sphere
+     * @return the normal
+     */
+    private Vector sphereNormal(int sphere, Point point) {
+        int c = 3 * sphere;
+        return new Vector(point.getX() - centers[c], point.getY() - centers[c + 1],
+                point.getZ() - centers[c + 2]).normalize();
+    }
+
+    /**
+     * Returns the normal of the sphere containing the point - the spheres are searched
+     * one by one, intersections provide their sphere normal directly
+     *
+     * @param point a point on the set
+     * @return the sphere normal
+     */
+    @Override
+    public Vector getNormal(Point point) {
+        for (int sphere = 0; sphere < spheres(); ++sphere) {
+            int c = 3 * sphere;
+            double dx = point.getX() - centers[c], dy = point.getY() - centers[c + 1], dz = point.getZ() - centers[c + 2];
+            if (isZero(Math.sqrt(dx * dx + dy * dy + dz * dz) - radii[sphere]))
+                return sphereNormal(sphere, point);
+        }
+        throw new IllegalArgumentException("The point is not on the sphere set");
+    }
+
+    /**
+     * Intersects a ray given by its coordinates with a sphere - the ray direction must
+     * be normalized
+     *
+     * @param sphere the sphere index
+     * @param ox     ray head x
+     * @param oy     ray head y
+     * @param oz     ray head z
+     * @param dx     ray direction x
+     * @param dy     ray direction y
+     * @param dz     ray direction z
+     * @param far    true for the far intersection, false for the near one
+     * @return the ray parameter of the intersection, or NaN if the ray misses the sphere
+     */
+    private double intersectSphere(int sphere, double ox, double oy, double oz, double dx, double dy, double dz,
+                                   boolean far) {
+        int c = 3 * sphere;
+        double ux = centers[c] - ox, uy = centers[c + 1] - oy, uz = centers[c + 2] - oz;
+        double tm = dx * ux + dy * uy + dz * uz;
+        double r = radii[sphere];
+        double th2 = r * r - (ux * ux + uy * uy + uz * uz - tm * tm);
+        if (!(th2 > 0)) return Double.NaN; // no intersection or tangent
+        double th = Math.sqrt(th2);
+        return alignZero(far ? tm + th : tm - th);
+    }
+
+    /**
+     * Adds the intersections of a ray with a sphere to a list
+     *
+     * @param sphere the sphere index
+     * @param ray    the ray
+     * @param list   the list of intersections, may be null
+     * @return the list with the intersections, or the original list if there are none
+     */
+    private List<Intersection> addIntersections(int sphere, Ray ray, List<Intersection> list) {
+        Point head = ray.getHead();
+        Vector dir = ray.getDirection();
+        double ox = head.getX(), oy = head.getY(), oz = head.getZ();
+        double dx = dir.getX(), dy = dir.getY(), dz = dir.getZ();
+        double t2 = intersectSphere(sphere, ox, oy, oz, dx, dy, dz, true);
+        if (!(t2 > 0)) return list;
+        if (list == null) list = new ArrayList<>(2);
+        double t1 = intersectSphere(sphere, ox, oy, oz, dx, dy, dz, false);
+        Member member = new Member(sphere);
+        if (t1 > 0) list.add(new Intersection(member, ray.getPoint(t1)));
+        list.add(new Intersection(member, ray.getPoint(t2)));
+        return list;
+    }
+
+    /**
+     * Creates the sphere object of an intersection
+     *
+     * @param sphere the sphere index
+     * @return the sphere object
+     */
+    @Override
+    Geometry primitive(int sphere) {
+        return new Member(sphere);
+    }
+
+    @Override
+    protected List<Intersection> calculateIntersectionsHelper(Ray ray) {
+        if (hierarchy != null) return hierarchy.calculateIntersections(ray, null);
+        List<Intersection> list = null;
+        for (int sphere = 0; sphere < spheres(); ++sphere)
+            list = addIntersections(sphere, ray, list);
+        return list;
+    }
+
+    /**
+     * Reports the closest intersection of a ray with a sphere to a hit record
+     *
+     * @param sphere the sphere index
+     * @param ox     ray head x
+     * @param oy     ray head y
+     * @param oz     ray head z
+     * @param dx     ray direction x
+     * @param dy     ray direction y
+     * @param dz     ray direction z
+     * @param hit    the hit record
+     * @return true if the sphere is the closest hit so far
+     */
+    private boolean hitSphere(int sphere, double ox, double oy, double oz, double dx, double dy, double dz,
+                              HitRecord hit) {
+        int c = 3 * sphere;
+        double ux = centers[c] - ox, uy = centers[c + 1] - oy, uz = centers[c + 2] - oz;
+        double tm = dx * ux + dy * uy + dz * uz;
+        double r = radii[sphere];
+        double th2 = r * r - (ux * ux + uy * uy + uz * uz - tm * tm);
+        if (!(th2 > 0) || tm - hit.t > r) return false; // missed, or entirely beyond the closest hit
+        double th = Math.sqrt(th2);
+        return hit.accept(alignZero(tm - th), this, sphere, 0, 0)
+                || hit.accept(alignZero(tm + th), this, sphere, 0, 0);
+    }
+
+    @Override
+    protected boolean closestHitHelper(Ray ray, HitRecord hit) {
+        if (hierarchy != null) return hierarchy.closestHit(ray, hit);
+        Point head = ray.getHead();
+        Vector dir = ray.getDirection();
+        double ox = head.getX(), oy = head.getY(), oz = head.getZ();
+        double dx = dir.getX(), dy = dir.getY(), dz = dir.getZ();
+        boolean found = false;
+        for (int sphere = 0; sphere < spheres(); ++sphere)
+            found |= hitSphere(sphere, ox, oy, oz, dx, dy, dz, hit);
+        return found;
+    }
+
+    /**
+     * Computes the bounding box of the set and builds the internal hierarchy of its spheres
+     */
+    @Override
+    public void computeBoundingBox() {
+        hierarchy = new Members();
+        hierarchy.build(spheres());
+        box = new AABB(new Point(hierarchy.bound(0), hierarchy.bound(1), hierarchy.bound(2)),
+                new Point(hierarchy.bound(3), hierarchy.bound(4), hierarchy.bound(5)));
+        bvhIsOn = true;
+    }
+
+    /**
+     * The spheres of the set as the primitives of its internal hierarchy
+     */
+    private final class Members extends FlatBvh {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Creates the hierarchy of the spheres, to be built
+         */
+        Members() {
+            super(LEAF_SIZE);
+        }
+
+        @Override
+        void bounds(int sphere, double[] bounds) {
+            double radius = radii[sphere];
+            for (int axis = 0; axis < 3; ++axis) {
+                double center = centers[3 * sphere + axis];
+                bounds[axis] = center - radius;
+                bounds[3 + axis] = center + radius;
+            }
+        }
+
+        @Override
+        List<Intersection> addIntersections(int sphere, Ray ray, List<Intersection> list) {
+            return SphereSet.this.addIntersections(sphere, ray, list);
+        }
+
+        @Override
+        boolean closestHit(int sphere, Ray ray, HitRecord hit) {
+            Point head = ray.getHead();
+            Vector dir = ray.getDirection();
+            return hitSphere(sphere, head.getX(), head.getY(), head.getZ(), dir.getX(), dir.getY(), dir.getZ(), hit);
+        }
+    }
+
+    /**
+     * Sphere of the set referred by an intersection - provides the sphere normal and
+     * the material and emission of the set
+     */
+    private final class Member extends Geometry {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        /** The sphere index */
+        private final int sphere;
+
+        /**
+         * Creates the sphere object
+         *
+         * @param sphere the sphere index
+         */
+        Member(int sphere) {
+            this.sphere = sphere;
+        }
+
+        @Override
+        public Vector getNormal(Point point) {
+            return sphereNormal(sphere, point);
+        }
+
+        @Override
+        public Color getEmission() {
+            return SphereSet.this.getEmission();
+        }
+
+        @Override
+        public Material getMaterial() {
+            return SphereSet.this.getMaterial();
+        }
+
+        @Override
+        protected List<Intersection> calculateIntersectionsHelper(Ray ray) {
+            return addIntersections(sphere, ray, null);
+        }
+
+        @Override
+        public void computeBoundingBox() {
+            // a member is never a member of a hierarchy
+        }
+    }
+}
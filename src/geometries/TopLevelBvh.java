@@ -0,0 +1,232 @@
+package geometries;
+
+import primitives.Point;
+import primitives.Ray;
+
+import java.io.Serial;
+import java.util.*;
+
+/**
+ * Top level of a two-level bounding volume hierarchy - a hierarchy over whole objects
+ * (typically {@link Instance}s), each with its own bottom-level hierarchy.<br>
+ * Building the top level builds the bottom level of every distinct object once (a
+ * {@link Geometries} group gets its own hierarchy, a {@link Mesh} its internal one, and
+ * instances share the hierarchy of their shared object). When objects move between
+ * frames (see {@link Instance#setTransform}), {@link #refit()} updates the node bounds
+ * bottom-up without rebuilding either level.<br>
+ * Unbounded objects (e.g. planes) are kept aside and tested by every ray.
+ */
+public class TopLevelBvh extends Intersectable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    /** Maximal amount of objects in a leaf */
+    private static final int LEAF_SIZE = 2;
+
+    /** The objects */
+    private final ArrayList<Intersectable> objects = new ArrayList<>();
+    /** The bounded objects - the primitives of the hierarchy */
+    private Intersectable[] bounded = new Intersectable[0];
+    /** The unbounded objects - tested by every ray */
+    private Intersectable[] unbounded = new Intersectable[0];
+    /** The hierarchy of the bounded objects, null if it is not built */
+    private BoundedObjects hierarchy = null;
+
+    /**
+     * Creates the top level over objects
+     *
+     * @param objects the objects
+     */
+    public TopLevelBvh(Intersectable... objects) {
+        this.objects.addAll(Arrays.asList(objects));
+    }
+
+    /**
+     * Adds objects - the hierarchy must be built again
+     *
+     * @param objects the objects
+     * @return the top level
+     */
+    public TopLevelBvh add(Intersectable... objects) {
+        this.objects.addAll(Arrays.asList(objects));
+        hierarchy = null;
+        box = null;
+        bvhIsOn = false;
+        return this;
+    }
+
+    /**
+     * Returns the objects
+     *
+     * @return unmodifiable list of the objects
+     */
+    public List<Intersectable> getObjects() {
+        return Collections.unmodifiableList(objects);
+    }
+
+    /**
+     * Returns the amount of the top level nodes
+     *
+     * @return the amount of nodes, 0 if the hierarchy is not built
+     */
+    public int nodes() {
+        return hierarchy == null ? 0 : hierarchy.nodes();
+    }
+
+    @Override
+    protected List<Intersection> calculateIntersectionsHelper(Ray ray) {
+        List<Intersection> list = null;
+        if (hierarchy == null) {
+            for (Intersectable object : objects)
+                list = addIntersections(object, ray, list);
+            return list;
+        }
+        for (Intersectable object : unbounded)
+            list = addIntersections(object, ray, list);
+        return hierarchy.calculateIntersections(ray, list);
+    }
+
+    @Override
+    protected boolean closestHitHelper(Ray ray, HitRecord hit) {
+        boolean found = false;
+        if (hierarchy == null) {
+            for (Intersectable object : objects)
+                found |= object.closestHit(ray, hit);
+            return found;
+        }
+        for (Intersectable object : unbounded)
+            found |= object.closestHit(ray, hit);
+        return hierarchy.closestHit(ray, hit) || found;
+    }
+
+    /**
+     * Adds the intersections of a ray with an object to a list
+     *
+     * @param object the object
+     * @param ray    the ray
+     * @param list   the list, may be null
+     * @return the list with the intersections, null if there are none at all
+     */
+    private static List<Intersection> addIntersections(Intersectable object, Ray ray, List<Intersection> list) {
+        var found = object.calculateIntersections(ray);
+        if (found == null) return list;
+        if (list == null) return new ArrayList<>(found);
+        list.addAll(found);
+        return list;
+    }
+
+    /**
+     * Builds both levels of the hierarchy (see {@link #build()})
+     */
+    @Override
+    public void computeBoundingBox() {
+        build();
+    }
+
+    /**
+     * Builds the bottom level of every distinct object that has no hierarchy yet, and
+     * the top level over all the objects from scratch
+     *
+     * @return the top level
+     */
+    public TopLevelBvh build() {
+        Set<Intersectable> built = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<Intersectable> boundedList = new ArrayList<>(), unboundedList = new ArrayList<>();
+        for (Intersectable object : objects) {
+            buildBottomLevel(object, built);
+            (object.box == null ? unboundedList : boundedList).add(object);
+        }
+        bounded = boundedList.toArray(new Intersectable[0]);
+        unbounded = unboundedList.toArray(new Intersectable[0]);
+        hierarchy = new BoundedObjects();
+        hierarchy.build(bounded.length);
+        updateBox();
+        return this;
+    }
+
+    /**
+     * Builds the bottom-level hierarchy of an object unless it already has one
+     *
+     * @param object the object
+     * @param built  the objects already visited by the current build
+     */
+    private static void buildBottomLevel(Intersectable object, Set<Intersectable> built) {
+        if (object instanceof Instance instance) {
+            if (built.add(instance.getObject())) buildBottomLevel(instance.getObject(), built);
+            instance.computeBoundingBox();
+            return;
+        }
+        if (object.box != null) return;
+        if (object instanceof Geometries group && group.getGeometries().size() > 1) group.createHierarchy();
+        object.computeBoundingBox();
+    }
+
+    /**
+     * Updates the node bounds from the current bounding boxes of the objects, keeping
+     * the structure of both levels - for objects moved since the build (an
+     * {@link Instance} updates its own box when it is moved). The hierarchy quality
+     * degrades as objects move far from their places at the build, then a new
+     * {@link #build()} is due.
+     *
+     * @return the top level
+     * @throws IllegalStateException if the hierarchy is not built, or a bounded object has become unbounded
+     */
+    public TopLevelBvh refit() {
+        if (hierarchy == null) throw new IllegalStateException("Top level hierarchy is not built");
+        hierarchy.refit();
+        updateBox();
+        return this;
+    }
+
+    /**
+     * Updates the bounding box of the whole top level from the bounds of its hierarchy
+     */
+    private void updateBox() {
+        if (hierarchy.nodes() == 0 || unbounded.length > 0) {
+            box = null;
+            bvhIsOn = false;
+        } else {
+            box = new AABB(new Point(hierarchy.bound(0), hierarchy.bound(1), hierarchy.bound(2)),
+                    new Point(hierarchy.bound(3), hierarchy.bound(4), hierarchy.bound(5)));
+            bvhIsOn = true;
+        }
+    }
+
+    /**
+     * The bounded objects as the primitives of the top level hierarchy
+     */
+    private final class BoundedObjects extends FlatBvh {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Creates the hierarchy of the bounded objects, to be built
+         */
+        BoundedObjects() {
+            super(LEAF_SIZE);
+        }
+
+        @Override
+        void bounds(int object, double[] bounds) {
+            AABB objectBox = bounded[object].box;
+            if (objectBox == null)
+                throw new IllegalStateException("Object has become unbounded - the hierarchy must be built again");
+            bounds[0] = objectBox.min.getX();
+            bounds[1] = objectBox.min.getY();
+            bounds[2] = objectBox.min.getZ();
+            bounds[3] = objectBox.max.getX();
+            bounds[4] = objectBox.max.getY();
+            bounds[5] = objectBox.max.getZ();
+        }
+
+        @Override
+        List<Intersection> addIntersections(int object, Ray ray, List<Intersection> list) {
+            return TopLevelBvh.addIntersections(bounded[object], ray, list);
+        }
+
+        @Override
+        boolean closestHit(int object, Ray ray, HitRecord hit) {
+            return bounded[object].closestHit(ray, hit);
+        }
+    }
+}
@@ -4,12 +4,16 @@ import primitives.Point;
 import primitives.Ray;
 
 
+import java.io.Serial;
 import java.util.List;
 
 /**
  * this class will represent a triangular shape in the space
  */
 public class Triangle extends Polygon {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
     public Triangle(Point p1, Point p2, Point p3) {
         super(p1, p2, p3);
     }
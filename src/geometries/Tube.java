@@ -4,6 +4,7 @@ import primitives.Point;
 import primitives.Ray;
 import primitives.Vector;
 
+import java.io.Serial;
 import java.util.List;
 
 import static primitives.Util.isZero;
@@ -12,6 +13,9 @@ import static primitives.Util.isZero;
  * class to represent a tube as a geometry object
  */
 public class Tube extends RadialGeometry{
+    @Serial
+    private static final long serialVersionUID = 1L;
+
     protected final Ray axis;
 
     /**
@@ -97,4 +101,13 @@ public class Tube extends RadialGeometry{
         // Tube is infinite; no finite bounding box.
         box = null;
     }
+
+    /**
+     * Returns the axis of the tube
+     *
+     * @return the axis ray
+     */
+    public Ray getAxis() {
+        return axis;
+    }
 }
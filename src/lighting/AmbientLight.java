@@ -2,6 +2,8 @@ package lighting;
 
 import primitives.Color;
 
+import java.io.Serial;
+
 import static primitives.Color.BLACK;
 
 /**
@@ -10,6 +12,9 @@ import static primitives.Color.BLACK;
  * simulating indirect scattered light.
  */
 public class AmbientLight extends Light {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
     /**
      * A constant representing no ambient light (black).
      */
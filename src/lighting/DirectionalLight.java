@@ -2,17 +2,27 @@ package lighting;
 
 import primitives.*;
 
+import java.io.Serial;
+
 /**
  * The DirectionalLight class represents a light source with parallel rays,
  * like sunlight, defined by a direction and intensity.
  * The light's intensity does not decrease with distance.
  */
 public class DirectionalLight extends Light implements LightSource {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
     /**
      * The direction of the light rays.
      */
     private final Vector direction;
 
+    /**
+     * The light sample, the same at every point.
+     */
+    private final LightSample sample;
+
     /**
      * Constructor to initialize the directional light with intensity and direction.
      *
@@ -22,6 +32,7 @@ public class DirectionalLight extends Light implements LightSource {
     public DirectionalLight(Color intensity, Vector direction) {
         super(intensity);
         this.direction = direction.normalize();
+        this.sample = new LightSample(this.direction, Double.POSITIVE_INFINITY, intensity);
     }
 
     /**
@@ -51,4 +62,24 @@ public class DirectionalLight extends Light implements LightSource {
     public double getDistance(Point p) {
         return Double.POSITIVE_INFINITY; // Directional light is considered to be infinitely far away
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns the light sample, which is the same at every point for a directional light.
+     *
+     * @param p the point to sample the light at
+     * @return the light sample
+     */
+    @Override
+    public LightSample sample(Point p) {
+        return sample;
+    }
+
+    /**
+     * Returns the direction of the light rays
+     *
+     * @return the normalized direction
+     */
+    public Vector getDirection() {
+        return direction;
+    }
+}
@@ -4,6 +4,7 @@ import primitives.Color;
 import primitives.Point;
 import primitives.Vector;
 
+import java.io.Serial;
 import java.util.concurrent.ThreadLocalRandom;
 
 import static primitives.Vector.AXIS_Y;
@@ -14,6 +15,9 @@ import static primitives.Vector.AXIS_Z;
  * The light emits from a disk surface, allowing for more realistic soft shadows.
  */
 public class DiskLight extends SpotLight {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
     private final double radius;
 
     /**
@@ -60,4 +64,13 @@ public class DiskLight extends SpotLight {
                 .add(vRight.scale(x))
                 .add(vUp.scale(y));
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns the radius of the light disk
+     *
+     * @return the disk radius
+     */
+    public double getRadius() {
+        return radius;
+    }
+}
@@ -2,11 +2,17 @@ package lighting;
 
 import primitives.Color;
 
+import java.io.Serial;
+import java.io.Serializable;
+
 /**
  * The Light class represents a base light with a specific color intensity.
  * This class is intended to be extended by specific types of lights.
  */
-class Light {
+class Light implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
     /**
      * The color intensity of the light.
      */
@@ -0,0 +1,17 @@
+package lighting;
+
+import primitives.Color;
+import primitives.Vector;
+
+import java.io.Serializable;
+
+/**
+ * The light arriving from a light source to a point, calculated in one call by
+ * {@link LightSource#sample(primitives.Point)}.
+ *
+ * @param direction the normalized direction from the light source to the point
+ * @param distance  the distance from the light source to the point
+ * @param intensity the color intensity of the light at the point
+ */
+public record LightSample(Vector direction, double distance, Color intensity) implements Serializable {
+}
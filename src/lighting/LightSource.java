@@ -30,6 +30,17 @@ public interface LightSource {
      */
     double getDistance(Point p);
 
+    /**
+     * Returns the direction, the distance and the intensity of the light at the specified point
+     * at once. Light sources should override it to share the calculations of the three.
+     *
+     * @param p the point to sample the light at
+     * @return the light sample at the point
+     */
+    default LightSample sample(Point p) {
+        return new LightSample(getL(p), getDistance(p), getIntensity(p));
+    }
+
     /**
      * Returns the radius of the light source.
      *
@@ -2,11 +2,16 @@ package lighting;
 
 import primitives.*;
 
+import java.io.Serial;
+
 /**
  * The PointLight class represents a point light source in 3D space.
  * The light's intensity decreases with distance according to attenuation factors.
  */
 public class PointLight extends Light implements LightSource {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
     /**
      * The position of the point light in 3D space.
      */
@@ -51,9 +56,17 @@ public class PointLight extends Light implements LightSource {
      */
     @Override
     public Color getIntensity(Point p) {
-        double d = position.distance(p);
-        double attenuation = 1.0 / (kC + kL * d + kQ * d * d);
-        return intensity.scale(attenuation);
+        return attenuated(position.distance(p));
+    }
+
+    /**
+     * Calculates the intensity of the light at a given distance from it
+     *
+     * @param d the distance from the light
+     * @return the attenuated color intensity
+     */
+    private Color attenuated(double d) {
+        return intensity.scale(1.0 / (kC + kL * d + kQ * d * d));
     }
 
     /**
@@ -72,6 +85,20 @@ public class PointLight extends Light implements LightSource {
         return position.distance(p);
     }
 
+    /**
+     * Samples the light at a given point, calculating the distance to the light once
+     * for the direction and the attenuation.
+     *
+     * @param p the point to sample the light at
+     * @return the light sample at the point
+     */
+    @Override
+    public LightSample sample(Point p) {
+        Vector l = p.subtract(position);
+        double d = l.length();
+        return new LightSample(l.scale(1 / d), d, attenuated(d));
+    }
+
     /**
      * Sets the constant attenuation factor.
      *
@@ -105,4 +132,30 @@ public class PointLight extends Light implements LightSource {
         return this;
     }
 
-}
\ No newline at end of file
+    /**
+     * Returns the constant attenuation factor
+     *
+     * @return the constant attenuation factor
+     */
+    public double getKc() {
+        return kC;
+    }
+
+    /**
+     * Returns the linear attenuation factor
+     *
+     * @return the linear attenuation factor
+     */
+    public double getKl() {
+        return kL;
+    }
+
+    /**
+     * Returns the quadratic attenuation factor
+     *
+     * @return the quadratic attenuation factor
+     */
+    public double getKq() {
+        return kQ;
+    }
+}
@@ -4,6 +4,7 @@ import primitives.Color;
 import primitives.Point;
 import primitives.Vector;
 
+import java.io.Serial;
 import java.util.concurrent.ThreadLocalRandom;
 
 import static primitives.Vector.AXIS_Y;
@@ -14,6 +15,9 @@ import static primitives.Vector.AXIS_Z;
  * The light emits from a sphere surface, allowing for more realistic soft shadows.
  */
 public class SphereLight extends PointLight {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
     private final double radius;
 
     /**
@@ -52,4 +56,13 @@ public class SphereLight extends PointLight {
 
         return getPosition().add(new Vector(x, y, z));
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns the radius of the light sphere
+     *
+     * @return the sphere radius
+     */
+    public double getRadius() {
+        return radius;
+    }
+}
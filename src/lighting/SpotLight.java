@@ -2,6 +2,7 @@ package lighting;
 
 import primitives.*;
 
+import java.io.Serial;
 import java.util.concurrent.ThreadLocalRandom;
 
 /**
@@ -13,6 +14,9 @@ import java.util.concurrent.ThreadLocalRandom;
  * </p>
  */
 public class SpotLight extends PointLight {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
     /**
      * The normalized direction vector of the spotlight beam.
      */
@@ -45,9 +49,31 @@ public class SpotLight extends PointLight {
      */
     @Override
     public Color getIntensity(Point p) {
-        double projection = Math.max(0, direction.dotProduct(super.getL(p)));
-        double factor = Math.pow(projection, narrowBeam);
-        return super.getIntensity(p).scale(factor);
+        return super.getIntensity(p).scale(beam(super.getL(p)));
+    }
+
+    /**
+     * Samples the light at a given point, reusing the direction of the point light
+     * for the beam factor.
+     *
+     * @param p the point to sample the light at
+     * @return the light sample at the point
+     */
+    @Override
+    public LightSample sample(Point p) {
+        LightSample sample = super.sample(p);
+        return new LightSample(sample.direction(), sample.distance(),
+                sample.intensity().scale(beam(sample.direction())));
+    }
+
+    /**
+     * Calculates the beam factor of the light in a given direction
+     *
+     * @param l the normalized direction from the light
+     * @return the beam factor
+     */
+    private double beam(Vector l) {
+        return Math.pow(Math.max(0, direction.dotProduct(l)), narrowBeam);
     }
 
     /**
@@ -105,4 +131,22 @@ public class SpotLight extends PointLight {
         // For a spotlight, we can return the position as the surface point
         return super.getRandomPointOnSurface();
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns the direction of the spotlight
+     *
+     * @return the normalized direction
+     */
+    public Vector getDirection() {
+        return direction;
+    }
+
+    /**
+     * Returns the narrow beam exponent of the spotlight
+     *
+     * @return the narrow beam exponent
+     */
+    public double getNarrowBeam() {
+        return narrowBeam;
+    }
+}
@@ -1,11 +1,17 @@
 package primitives;
 
+import java.io.Serial;
+import java.io.Serializable;
+
 /**
  * The Material class represents the optical properties of a surface,
  * including ambient, diffusive, and specular reflection coefficients,
  * as well as the shininess factor for specular highlights.
  */
-public class Material {
+public class Material implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
     /**
      * Ambient reflection coefficient.
      */
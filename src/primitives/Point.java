@@ -1,10 +1,15 @@
 package primitives;
 
+import java.io.Serial;
+import java.io.Serializable;
+
 /**
  * The Point class represents a point in a 3D space.
  * It provides methods to perform various operations such as addition, subtraction, and distance calculation.
  */
-public class Point {
+public class Point implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
 
     /**
      * A constant representing the origin point (0, 0, 0).
@@ -2,6 +2,8 @@ package primitives;
 
 import geometries.Intersectable;
 
+import java.io.Serial;
+import java.io.Serializable;
 import java.util.List;
 
 import static primitives.Util.isZero;
@@ -11,7 +13,10 @@ import geometries.Intersectable.Intersection;
  * The Ray class represents a ray in 3D space, defined by a starting point (head) and a direction vector.
  * Rays are used for geometric calculations such as intersections with objects.
  */
-public class Ray {
+public class Ray implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
     // Constants for ray tracing calculations
     private static final double DELTA = 0.1;
 
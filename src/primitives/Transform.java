@@ -0,0 +1,171 @@
+package primitives;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+import static primitives.Util.isZero;
+
+/**
+ * Affine transformation of the 3D space - a linear 3x3 part followed by a translation.<br>
+ * Transformations are immutable and are composed by {@link #then(Transform)}.
+ */
+public final class Transform implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    /** The identity transformation */
+    public static final Transform IDENTITY = new Transform(new double[]{1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0});
+
+    /** The rows of the 3x4 matrix, row major - {@code [a b c tx, d e f ty, g h i tz]} */
+    private final double[] m;
+
+    /**
+     * Creates a transformation of a 3x4 matrix
+     *
+     * @param m the matrix, row major
+     */
+    private Transform(double[] m) {
+        this.m = m;
+    }
+
+    /**
+     * Creates a translation
+     *
+     * @param offset the translation vector
+     * @return the translation
+     */
+    public static Transform translation(Vector offset) {
+        return new Transform(new double[]{1, 0, 0, offset.getX(), 0, 1, 0, offset.getY(), 0, 0, 1, offset.getZ()});
+    }
+
+    /**
+     * Creates a uniform scaling around the origin
+     *
+     * @param factor the scale factor
+     * @return the scaling
+     * @throws IllegalArgumentException if the factor is zero
+     */
+    public static Transform scaling(double factor) {
+        return scaling(factor, factor, factor);
+    }
+
+    /**
+     * Creates a scaling around the origin
+     *
+     * @param sx the scale factor along the X axis
+     * @param sy the scale factor along the Y axis
+     * @param sz the scale factor along the Z axis
+     * @return the scaling
+     * @throws IllegalArgumentException if any factor is zero
+     */
+    public static Transform scaling(double sx, double sy, double sz) {
+        if (isZero(sx) || isZero(sy) || isZero(sz))
+            throw new IllegalArgumentException("Scale factors must not be zero");
+        return new Transform(new double[]{sx, 0, 0, 0, 0, sy, 0, 0, 0, 0, sz, 0});
+    }
+
+    /**
+     * Creates a rotation around an axis through the origin (right hand rule)
+     *
+     * @param axis  the rotation axis
+     * @param angle the rotation angle in degrees
+     * @return the rotation
+     */
+    public static Transform rotation(Vector axis, double angle) {
+        Vector u = axis.normalize();
+        double x = u.getX(), y = u.getY(), z = u.getZ();
+        double radians = Math.toRadians(angle);
+        double c = Math.cos(radians), s = Math.sin(radians), t = 1 - c;
+        return new Transform(new double[]{
+                t * x * x + c, t * x * y - s * z, t * x * z + s * y, 0,
+                t * x * y + s * z, t * y * y + c, t * y * z - s * x, 0,
+                t * x * z - s * y, t * y * z + s * x, t * z * z + c, 0});
+    }
+
+    /**
+     * Composes a transformation applied after this one
+     *
+     * @param next the transformation to apply after this one
+     * @return the composed transformation
+     */
+    public Transform then(Transform next) {
+        double[] a = next.m, b = m, r = new double[12];
+        for (int row = 0; row < 3; ++row) {
+            int i = 4 * row;
+            for (int col = 0; col < 4; ++col)
+                r[i + col] = a[i] * b[col] + a[i + 1] * b[4 + col] + a[i + 2] * b[8 + col];
+            r[i + 3] += a[i + 3];
+        }
+        return new Transform(r);
+    }
+
+    /**
+     * Calculates the inverse transformation
+     *
+     * @return the inverse transformation
+     * @throws IllegalArgumentException if the transformation is singular
+     */
+    public Transform inverse() {
+        double a = m[0], b = m[1], c = m[2], d = m[4], e = m[5], f = m[6], g = m[8], h = m[9], i = m[10];
+        double c00 = e * i - f * h, c01 = c * h - b * i, c02 = b * f - c * e;
+        double det = a * c00 + b * (f * g - d * i) + c * (d * h - e * g);
+        if (isZero(det))
+            throw new IllegalArgumentException("Singular transformation has no inverse");
+        double k = 1 / det;
+        double[] r = {
+                c00 * k, c01 * k, c02 * k, 0,
+                (f * g - d * i) * k, (a * i - c * g) * k, (c * d - a * f) * k, 0,
+                (d * h - e * g) * k, (b * g - a * h) * k, (a * e - b * d) * k, 0};
+        for (int row = 0; row < 3; ++row) {
+            int j = 4 * row;
+            r[j + 3] = -(r[j] * m[3] + r[j + 1] * m[7] + r[j + 2] * m[11]);
+        }
+        return new Transform(r);
+    }
+
+    /**
+     * Transforms a point
+     *
+     * @param p the point
+     * @return the transformed point
+     */
+    public Point apply(Point p) {
+        double x = p.getX(), y = p.getY(), z = p.getZ();
+        return new Point(m[0] * x + m[1] * y + m[2] * z + m[3],
+                m[4] * x + m[5] * y + m[6] * z + m[7],
+                m[8] * x + m[9] * y + m[10] * z + m[11]);
+    }
+
+    /**
+     * Transforms a direction vector (the translation doesn't apply to it)
+     *
+     * @param v the vector
+     * @return the transformed vector
+     */
+    public Vector apply(Vector v) {
+        double x = v.getX(), y = v.getY(), z = v.getZ();
+        return new Vector(m[0] * x + m[1] * y + m[2] * z,
+                m[4] * x + m[5] * y + m[6] * z,
+                m[8] * x + m[9] * y + m[10] * z);
+    }
+
+    /**
+     * Transforms a vector by the transposed linear part of the transformation.<br>
+     * Applied on the inverse transformation it maps the normals of a transformed
+     * surface, which otherwise stop being orthogonal to a non-uniformly scaled surface.
+     *
+     * @param v the vector
+     * @return the transformed vector (not normalized)
+     */
+    public Vector applyTransposed(Vector v) {
+        double x = v.getX(), y = v.getY(), z = v.getZ();
+        return new Vector(m[0] * x + m[4] * y + m[8] * z,
+                m[1] * x + m[5] * y + m[9] * z,
+                m[2] * x + m[6] * y + m[10] * z);
+    }
+
+    @Override
+    public String toString() {
+        return "Transform" + java.util.Arrays.toString(m);
+    }
+}
@@ -1,5 +1,6 @@
 package primitives;
 
+import java.io.Serial;
 import java.util.Objects;
 
 /**
@@ -7,6 +8,8 @@ import java.util.Objects;
  * It provides methods to perform various vector operations such as addition, scaling, dot product, and cross product.
  */
 public class Vector extends Point {
+    @Serial
+    private static final long serialVersionUID = 1L;
 
     public static Vector AXIS_X = new Vector(1, 0, 0);
     public static Vector AXIS_Y = new Vector(0, 1, 0);
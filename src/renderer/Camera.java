@@ -1,10 +1,15 @@
 
 package renderer;
+import geometries.BvhBuilder;
 import primitives.*;
 import scene.Scene;
 
+import java.io.*;
+import java.nio.file.Path;
 import java.util.LinkedList;
 import java.util.MissingResourceException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.IntStream;
 
 
@@ -14,13 +19,19 @@ import static primitives.Util.isZero;
  * Class representing a camera in 3D space.
  * The camera is defined by its position, orientation vectors, and view plane parameters.
  */
-public class Camera implements Cloneable {
+public class Camera implements Cloneable, Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
     private Point p0; // The position of the camera in 3D space
     private Vector vto, vup, vright; // Orientation vectors: towards, up, and right
     private double viewPlaneHeight = 0.0, // Height of the view plane
             viewPlaneWidth = 0.0, // Width of the view plane
             distance = 0.0; // Distance from the camera to the view plane
-    ImageWriter imageWriter; // Image writer for rendering the camera view
+    transient ImageWriter imageWriter; // Image writer for rendering the camera view
+    transient FrameBuffer frameBuffer; // Frame buffer of the rendered image, written by the image writer
+    private ToneMapping toneMapping = ToneMapping.CLAMP; // Tone mapping of the written image
+    private int compressionLevel = -1; // Deflate compression level of the png files, -1 for the default
     RayTracerBase traceRay; // Ray tracer for rendering the scene
     private int nX = 1, nY = 1; // Resolution of the view plane (number of pixels in X and Y directions)
     /** Amount of threads to use fore rendering image by the camera */
@@ -42,7 +53,52 @@ public class Camera implements Cloneable {
      * <li>debug print of progress percentage in Console window/tab</li>
      * </ul>
      */
-    private PixelManager pixelManager;
+    private transient PixelManager pixelManager;
+    /** Flag of collecting render statistics while rendering */
+    private boolean collectStats = false;
+    /** Time of building the geometries hierarchy (CBR/BVH) in nanoseconds */
+    private long hierarchyNanos = 0;
+    /** Metrics of the geometries hierarchy build, null if there is no hierarchy */
+    private transient BvhBuilder.Metrics hierarchyMetrics = null;
+    /** Statistics of the last rendering, null if statistics are not collected */
+    private transient RenderStats renderStats = null;
+    /** Metric of the diagnostic per-pixel cost heatmap, null if there is no heatmap */
+    private HeatmapMetric heatmapMetric = null;
+    /** Per-pixel cost heatmap of the last rendering, null if not enabled */
+    transient CostHeatmap heatmap = null;
+    /**
+     * Samples per pixel to reach by progressive rendering<br>
+     * if it is zero - the image is rendered in a single pass
+     */
+    private int progressiveSamples = 0;
+    /** Time budget of progressive rendering in seconds, zero for unlimited time */
+    private double timeBudget = 0;
+    /** Name of the snapshot image flushed during progressive rendering, null for no snapshots */
+    private String snapshotName = null;
+    /** Minimal interval between progressive rendering snapshots in seconds */
+    private double snapshotInterval = 0;
+    /** Pixel stride of the first (coarse) progressive rendering pass - a power of 2 */
+    private static final int COARSE_STRIDE = 8;
+    /** Flag of a request to stop the rendering in progress */
+    private volatile boolean stopRequested = false;
+    /** Time of the last snapshot (System.nanoTime) */
+    private volatile long lastSnapshot = 0;
+    /** Name of the png image streamed while rendering, null if the image is rendered in memory */
+    private String streamName = null;
+    /** Amount of pixel rows in a band of the streamed image */
+    private int bandHeight = 0;
+    /** Checkpoint file of a tiled rendering, null if there is no checkpoint */
+    private transient Path checkpointFile = null;
+    /** Interval of forcing the checkpoint to the storage in seconds */
+    private double checkpointInterval = 0;
+    /** Flag of resuming the rendering from an existing checkpoint */
+    private boolean resume = false;
+    /** Tile width and height in pixels for checkpointed rendering */
+    private static final int TILE_SIZE = 32;
+    /** Port of the distributed rendering coordinator, zero if the image is rendered locally */
+    private int coordinatorPort = 0;
+    /** Time limit of a tile lease of distributed rendering in seconds, zero for unlimited time */
+    private double leaseTimeout = 0;
 
     /**
      * Builder class for constructing a Camera object step by step.
@@ -165,7 +221,14 @@ public class Camera implements Cloneable {
                 this.camera .traceRay = new SimpleRayTracer(scene);;
             }
             if(type == RayTracerType.GRID){
-                this.camera .traceRay = null;;
+                long start = System.nanoTime();
+                this.camera.traceRay = new GridRayTracer(scene);
+                camera.hierarchyNanos += System.nanoTime() - start;
+            }
+            if(type == RayTracerType.KDTREE){
+                long start = System.nanoTime();
+                this.camera.traceRay = new KdTreeRayTracer(scene);
+                camera.hierarchyNanos += System.nanoTime() - start;
             }
             return this;
         }
@@ -202,12 +265,202 @@ public class Camera implements Cloneable {
             return this;
         }
         public Builder enableCBR(){
+            long start = System.nanoTime();
             camera.traceRay.enableCBR();
+            camera.hierarchyNanos += System.nanoTime() - start;
             return this;
         }
         public Builder enableBVH() {
-            camera.traceRay.createHierarchy();
+            return enableBVH(BvhBuilder.Method.SAH);
+        }
+
+        /**
+         * Builds the hierarchy of the scene geometries by a given method - the build
+         * time and the SAH cost of the hierarchy are available from
+         * {@link Camera#getHierarchyMetrics()}
+         * @param method the build method ({@link BvhBuilder.Method#LBVH} builds fastest,
+         *               {@link BvhBuilder.Method#SAH} builds the best hierarchy,
+         *               {@link BvhBuilder.Method#SBVH} splits large overlapping geometries)
+         * @return builder object itself
+         */
+        public Builder enableBVH(BvhBuilder.Method method) {
+            if (method == null) throw new IllegalArgumentException("Hierarchy build method must not be null");
+            long start = System.nanoTime();
+            camera.hierarchyMetrics = camera.traceRay.createHierarchy(method);
+            camera.hierarchyNanos += System.nanoTime() - start;
+            return this;
+        }
+
+        /**
+         * Builds the hierarchy of the scene geometries by a given method, or loads it from
+         * a cache directory where a previous render of the same geometries saved it, so
+         * repeated renders of a heavy scene start tracing almost immediately (see
+         * {@link geometries.BvhCache})
+         * @param method    the build method
+         * @param directory the cache directory
+         * @return builder object itself
+         * @throws IllegalStateException on I/O error of the cache
+         */
+        public Builder enableBVH(BvhBuilder.Method method, Path directory) {
+            if (method == null) throw new IllegalArgumentException("Hierarchy build method must not be null");
+            if (directory == null) throw new IllegalArgumentException("Hierarchy cache directory must not be null");
+            long start = System.nanoTime();
+            try {
+                camera.hierarchyMetrics = camera.traceRay.createHierarchy(method, directory);
+            } catch (IOException e) {
+                throw new IllegalStateException("I/O error of the hierarchy cache " + directory, e);
+            }
+            camera.hierarchyNanos += System.nanoTime() - start;
+            return this;
+        }
+
+        /**
+         * Enables collecting render statistics (ray counts, intersection tests, box tests,
+         * recursion depths and phase times). The statistics are available from
+         * {@link Camera#getRenderStats()} after rendering
+         * @return builder object itself
+         */
+        public Builder enableRenderStats() {
+            camera.collectStats = true;
+            return this;
+        }
 
+        /**
+         * Enables progressive rendering: the image is refined by successive passes -
+         * coarse pixel stride passes down to every pixel, and then additional jittered
+         * samples per pixel which are averaged (anti-aliasing, smoother soft shadows).
+         * The rendering stops when each pixel has the requested amount of samples,
+         * when the time budget is exhausted or when {@link Camera#stopRendering()} is called
+         * @param samples    samples per pixel to reach (1 and more)
+         * @param timeBudget time budget in seconds, 0 for unlimited time
+         * @return builder object itself
+         */
+        public Builder setProgressive(int samples, double timeBudget) {
+            if (samples < 1) throw new IllegalArgumentException("Samples per pixel must be positive");
+            if (timeBudget < 0) throw new IllegalArgumentException("Time budget must be non-negative");
+            camera.progressiveSamples = samples;
+            camera.timeBudget = timeBudget;
+            return this;
+        }
+
+        /**
+         * Sets snapshots of progressive rendering: the image rendered so far is written
+         * after each pass and whenever the interval has elapsed since the last snapshot
+         * @param imageName the name of the snapshot png file
+         * @param interval  minimal interval between snapshots in seconds
+         * @return builder object itself
+         */
+        public Builder setSnapshots(String imageName, double interval) {
+            if (imageName == null) throw new IllegalArgumentException("Snapshot image name must not be null");
+            if (interval < 0) throw new IllegalArgumentException("interval parameter must be non-negative");
+            camera.snapshotName = imageName;
+            camera.snapshotInterval = interval;
+            return this;
+        }
+
+        /**
+         * Sets streaming output: the image is rendered band by band, and each band
+         * of rows is written into the png file as soon as it is rendered - the memory
+         * needed is bounded by the band size regardless of the resolution.<br>
+         * The image is written by {@link Camera#renderImage()}, so it can't be written
+         * or modified afterwards. Streaming doesn't support progressive rendering, the
+         * heatmap and tone mapping other than {@link ToneMapping#CLAMP}
+         * @param imageName  the name of the png file
+         * @param bandHeight the amount of pixel rows in a band
+         * @return builder object itself
+         */
+        public Builder setStreamingOutput(String imageName, int bandHeight) {
+            if (imageName == null) throw new IllegalArgumentException("Image name must not be null");
+            if (bandHeight < 1) throw new IllegalArgumentException("Band height must be positive");
+            camera.streamName = imageName;
+            camera.bandHeight = bandHeight;
+            return this;
+        }
+
+        /**
+         * Sets a render checkpoint: the image is rendered by tiles, each finished tile is
+         * saved into a memory-mapped checkpoint file, and the file is forced to the storage
+         * periodically. With resume, the finished tiles of an existing checkpoint are
+         * restored and only the missing tiles are rendered - the checkpoint must come from
+         * the same scene, camera and resolution. The checkpoint is left in place after the
+         * rendering, so it must be deleted before rendering a changed scene.<br>
+         * Checkpointed rendering doesn't support progressive rendering and streaming output
+         * @param file     the checkpoint file
+         * @param interval interval of forcing the checkpoint to the storage in seconds
+         * @param resume   true to resume from an existing checkpoint (if there is one)
+         * @return builder object itself
+         */
+        public Builder setCheckpoint(Path file, double interval, boolean resume) {
+            if (file == null) throw new IllegalArgumentException("Checkpoint file must not be null");
+            if (interval < 0) throw new IllegalArgumentException("interval parameter must be non-negative");
+            camera.checkpointFile = file;
+            camera.checkpointInterval = interval;
+            camera.resume = resume;
+            return this;
+        }
+
+        /**
+         * Sets distributed rendering: the camera becomes a coordinator listening on the
+         * port for {@link RenderWorker} processes. Each connected worker receives the
+         * serialized camera with its scene, and then tiles are leased to the workers one
+         * by one and their rendered pixels are assembled into the image. A tile leased to
+         * a worker that disconnects or exceeds the lease timeout is leased again to another
+         * worker. {@link Camera#renderImage()} returns when all the tiles are rendered
+         * (or {@link Camera#stopRendering()} is called), and fails if all the workers are
+         * lost and no worker connects within half a minute.<br>
+         * The workers trust the coordinator (the job is a serialized Java object), so the
+         * port must be reachable from a trusted network only.<br>
+         * Distributed rendering doesn't support progressive rendering, streaming output,
+         * checkpoints and the heatmap
+         * @param port         the coordinator's TCP port
+         * @param leaseTimeout time limit of rendering a tile by a worker in seconds,
+         *                     0 for unlimited time (a tile is leased again only if its
+         *                     worker disconnects)
+         * @return builder object itself
+         */
+        public Builder setDistributed(int port, double leaseTimeout) {
+            if (port < 1 || port > 0xFFFF) throw new IllegalArgumentException("Port must be in range 1..65535");
+            if (leaseTimeout < 0) throw new IllegalArgumentException("Lease timeout must be non-negative");
+            camera.coordinatorPort = port;
+            camera.leaseTimeout = leaseTimeout;
+            return this;
+        }
+
+        /**
+         * Sets the tone mapping operator applied when the image is written
+         * @param toneMapping the tone mapping operator
+         * @return builder object itself
+         */
+        public Builder setToneMapping(ToneMapping toneMapping) {
+            if (toneMapping == null) throw new IllegalArgumentException("Tone mapping must not be null");
+            camera.toneMapping = toneMapping;
+            return this;
+        }
+
+        /**
+         * Sets the deflate compression level of the written png files - lower levels
+         * write faster, higher levels write smaller files
+         * @param level the level 0 (fastest) to 9 (smallest), or -1 for the default
+         * @return builder object itself
+         */
+        public Builder setCompressionLevel(int level) {
+            if (level < -1 || level > 9) throw new IllegalArgumentException("Compression level must be in range -1..9");
+            camera.compressionLevel = level;
+            return this;
+        }
+
+        /**
+         * Enables the diagnostic per-pixel cost heatmap. The cost of each pixel is
+         * recorded while rendering, and {@link Camera#writeToImage(String)} writes a
+         * false-color heatmap image named &lt;imageName&gt;_heatmap alongside the image.<br>
+         * Counting intersection tests uses the render statistics, so they are
+         * collected as well with {@link HeatmapMetric#INTERSECTIONS}
+         * @param metric the recorded per-pixel cost
+         * @return builder object itself
+         */
+        public Builder enableHeatmap(HeatmapMetric metric) {
+            if (metric == null) throw new IllegalArgumentException("Heatmap metric must not be null");
+            camera.heatmapMetric = metric;
             return this;
         }
 
@@ -243,8 +496,25 @@ public class Camera implements Cloneable {
                 throw new IllegalArgumentException("Resolution must be positive");
             }
 
+            if (camera.checkpointFile != null && (camera.progressiveSamples > 0 || camera.streamName != null))
+                throw new IllegalArgumentException("Checkpoint doesn't support progressive rendering and streaming");
+            if (camera.coordinatorPort != 0 && (camera.progressiveSamples > 0 || camera.streamName != null
+                    || camera.checkpointFile != null || camera.heatmapMetric != null))
+                throw new IllegalArgumentException(
+                        "Distributed rendering doesn't support progressive rendering, streaming, checkpoint and heatmap");
+            if (camera.streamName != null) {
+                if (camera.progressiveSamples > 0 || camera.heatmapMetric != null)
+                    throw new IllegalArgumentException("Streaming output doesn't support progressive rendering and heatmap");
+                if (camera.toneMapping != ToneMapping.CLAMP)
+                    throw new IllegalArgumentException("Streaming output supports clamping tone mapping only");
+            }
+
             camera.vright = camera.vto.crossProduct(camera.vup).normalize();
-            camera.imageWriter= new ImageWriter(camera.nX, camera.nY);
+            if (camera.streamName == null) {
+                camera.frameBuffer = new FrameBuffer(camera.nX, camera.nY);
+                camera.imageWriter = new ImageWriter(camera.frameBuffer).setToneMapping(camera.toneMapping)
+                        .setCompressionLevel(camera.compressionLevel);
+            }
             if (camera.traceRay == null) {
                 setRayTracer(null,RayTracerType.SIMPLE);
             }
@@ -286,6 +556,20 @@ public class Camera implements Cloneable {
      * @return The constructed ray
      */
     public Ray constructRay(int nX, int nY, int j, int i) {
+        return constructRay(nX, nY, (double) j, i);
+    }
+
+    /**
+     * Constructs a ray through a point of the view plane given in pixel coordinates,
+     * where whole numbers are the centers of the pixels
+     *
+     * @param nX The number of horizontal pixels
+     * @param nY The number of vertical pixels
+     * @param j  The column coordinate
+     * @param i  The row coordinate
+     * @return The constructed ray
+     */
+    private Ray constructRay(int nX, int nY, double j, double i) {
         Point pc = p0.add(vto.scale(distance));
         Point pIJ = pc;
         double xJ = (j - (nX - 1) / 2.0) * (viewPlaneWidth / nX);
@@ -340,12 +624,64 @@ public class Camera implements Cloneable {
      */
     public Camera renderImage() {
         pixelManager = new PixelManager(nY, nX, printInterval);
+        heatmap = heatmapMetric == null ? null : new CostHeatmap(heatmapMetric, nX, nY);
+        renderStats = collectStats || heatmapMetric == HeatmapMetric.INTERSECTIONS ? new RenderStats() : null;
+        if (renderStats == null)
+            return renderImageByThreads();
+
+        if (hierarchyNanos != 0) renderStats.recordPhase("hierarchy", hierarchyNanos);
+        long start = System.nanoTime();
+        renderStats.start();
+        try {
+            renderImageByThreads();
+        } finally {
+            renderStats.finish();
+        }
+        renderStats.recordPhase("render", System.nanoTime() - start);
+        return this;
+    }
+
+    /**
+     * Renders the image according to the multi-threading setting
+     * @return the camera object itself
+     */
+    private Camera renderImageByThreads() {
+        if (streamName != null) return renderImageStreaming();
+        if (progressiveSamples > 0) return renderImageProgressive();
+        if (checkpointFile != null) return renderImageCheckpointed();
+        if (coordinatorPort != 0) return renderImageDistributed();
         return switch (threadsCount) {
             case 0 -> renderImageNoThreads();
             case -1 -> renderImageStream();
             default -> renderImageRawThreads();
         };
     }
+
+    /**
+     * Requests to stop the rendering in progress (progressive or checkpointed rendering only).
+     * The rendering returns as soon as the pixels (tiles) being rendered are done,
+     * leaving the image rendered so far
+     */
+    public void stopRendering() {
+        stopRequested = true;
+    }
+
+    /**
+     * Returns the statistics of the last rendering
+     * @return the render statistics, or null if they were not enabled in the builder
+     *         or the image was not rendered yet
+     */
+    public RenderStats getRenderStats() {
+        return renderStats;
+    }
+
+    /**
+     * Returns the metrics of the geometries hierarchy build
+     * @return the build metrics, or null if the hierarchy was not built by the builder
+     */
+    public BvhBuilder.Metrics getHierarchyMetrics() {
+        return hierarchyMetrics;
+    }
     /**
      * Prints a grid on the view plane for debugging purposes.
      *
@@ -354,6 +690,7 @@ public class Camera implements Cloneable {
      * @return The Camera instance for method chaining
      */
     public Camera printGrid(int interval,Color color) {
+        checkInMemory();
         for (int i = 0; i < nX; i++) {
             for (int j = 0; j < nY ; j++) {
                 if(i % interval == 0 || j % interval == 0)
@@ -370,17 +707,308 @@ public class Camera implements Cloneable {
      * @return The Camera instance for method chaining
      */
     public Camera writeToImage(String imageName) {
+        checkInMemory();
+        long start = System.nanoTime();
         imageWriter.writeToImage(imageName);
+        if (renderStats != null) renderStats.recordPhase("write", System.nanoTime() - start);
+        if (heatmap != null) heatmap.writeToImage(imageName + "_heatmap");
         return this;
     }
+    /**
+     * Writes the rendered image to a file in the requested format.
+     * The HDR formats keep the linear colors without clamping (printed white is 1.0)
+     *
+     * @param imageName The name of the image file (without extension)
+     * @param format    The image file format
+     * @return The Camera instance for method chaining
+     */
+    public Camera writeToImage(String imageName, ImageFormat format) {
+        if (format == ImageFormat.PNG) return writeToImage(imageName);
+        checkInMemory();
+        long start = System.nanoTime();
+        imageWriter.writeToImage(imageName, format);
+        if (renderStats != null) renderStats.recordPhase("write", System.nanoTime() - start);
+        return this;
+    }
+    /**
+     * Checks that the image is rendered in memory (not streamed) before accessing it
+     */
+    private void checkInMemory() {
+        if (streamName != null)
+            throw new IllegalStateException("The image is streamed into " + streamName + " while rendering");
+    }
+
     void castRay(int x, int y) {
+        frameBuffer.setPixel(x, y, tracePixel(x, y));
+    }
+
+    /**
+     * Traces the ray through the center of a pixel, recording the statistics, the
+     * heatmap and the progress
+     * @param x the pixel column
+     * @param y the pixel row
+     * @return the color of the pixel
+     */
+    private Color tracePixel(int x, int y) {
+        RenderStats stats = renderStats;
+        if (stats != null) stats.attach();
+        Color color;
+        try {
+            if (heatmap == null)
+                color = traceRay.traceRay(constructRay(nX, nY, x, y));
+            else {
+                long before = heatmapCounter();
+                color = traceRay.traceRay(constructRay(nX, nY, x, y));
+                heatmap.record(x, y, heatmapCounter() - before);
+            }
+        } finally {
+            if (stats != null) stats.detach();
+        }
+        pixelManager.pixelDone();
+        return color;
+    }
+
+    /**
+     * Render image tile by tile with a memory-mapped checkpoint, see
+     * {@link Builder#setCheckpoint(Path, double, boolean)}
+     * @return the camera object itself
+     */
+    private Camera renderImageCheckpointed() {
+        stopRequested = false;
+        try (RenderCheckpoint checkpoint = new RenderCheckpoint(checkpointFile, nX, nY, TILE_SIZE, resume)) {
+            checkpoint.restore(frameBuffer);
+            AtomicLong lastForce = new AtomicLong(System.nanoTime());
+            long interval = (long) (checkpointInterval * 1e9);
+            IntStream tiles = IntStream.range(0, checkpoint.tiles());
+            if (threadsCount != 0) tiles = tiles.parallel();
+            tiles.filter(tile -> !checkpoint.isDone(tile)).forEach(tile -> {
+                if (stopRequested) return;
+                checkpoint.forEachPixel(tile, this::castRay);
+                checkpoint.saveTile(tile, frameBuffer);
+                long last = lastForce.get(), now = System.nanoTime();
+                if (now - last >= interval && lastForce.compareAndSet(last, now))
+                    checkpoint.force();
+            });
+        } catch (IOException e) {
+            throw new IllegalStateException("I/O error of the checkpoint " + checkpointFile, e);
+        }
+        return this;
+    }
+
+    /**
+     * Render image by leasing its tiles to worker processes, see
+     * {@link Builder#setDistributed(int, double)}
+     * @return the camera object itself
+     */
+    private Camera renderImageDistributed() {
+        stopRequested = false;
+        try (RenderCoordinator coordinator = new RenderCoordinator(coordinatorPort, toJob(), nX, nY, TILE_SIZE,
+                                                                   leaseTimeout)) {
+            coordinator.render(frameBuffer, () -> stopRequested);
+        } catch (IOException e) {
+            throw new IllegalStateException("I/O error of the distributed rendering coordinator", e);
+        }
+        return this;
+    }
+
+    /**
+     * Serializes the camera with its ray tracer and scene into a rendering job of the workers
+     * @return the serialized job
+     * @throws IOException if the scene can't be serialized
+     */
+    byte[] toJob() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(this);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Deserializes a rendering job of a worker
+     * @param job the serialized job
+     * @return the camera ready to render tiles
+     * @throws IOException if the job is corrupted
+     */
+    static Camera fromJob(byte[] job) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(job))) {
+            Camera camera = (Camera) in.readObject();
+            camera.pixelManager = new PixelManager(camera.nY, camera.nX, 0);
+            return camera;
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Invalid rendering job", e);
+        }
+    }
+
+    /**
+     * Renders a rectangular tile of the image (for a worker of distributed rendering)
+     * @param x0     the tile's left pixel column
+     * @param y0     the tile's top pixel row
+     * @param width  the tile width in pixels
+     * @param height the tile height in pixels
+     * @param rgb    the output - RGB components of the tile pixels, row by row
+     */
+    void renderTile(int x0, int y0, int width, int height, float[] rgb) {
+        IntStream rows = IntStream.range(0, height);
+        if (threadsCount != 0) rows = rows.parallel();
+        rows.forEach(i -> {
+            for (int j = 0; j < width; ++j) {
+                Double3 c = tracePixel(x0 + j, y0 + i).getRgb();
+                int index = 3 * (i * width + j);
+                rgb[index] = (float) c.d1();
+                rgb[index + 1] = (float) c.d2();
+                rgb[index + 2] = (float) c.d3();
+            }
+        });
+    }
 
-        Ray ray = constructRay(nX, nY, x, y);
+    /**
+     * Render image band by band, streaming each band into the png file as soon as
+     * it is rendered, see {@link Builder#setStreamingOutput(String, int)}
+     * @return the camera object itself
+     */
+    private Camera renderImageStreaming() {
+        FrameBuffer band = new FrameBuffer(nX, Math.min(bandHeight, nY));
+        int[] row = new int[nX];
+        try (PngWriter png = new PngWriter(ImageWriter.imageFile(streamName + ".png"), nX, nY, compressionLevel)) {
+            for (int top = 0; top < nY; top += bandHeight) {
+                final int first = top;
+                int rows = Math.min(bandHeight, nY - top);
+                IntStream bandRows = IntStream.range(0, rows);
+                if (threadsCount != 0) bandRows = bandRows.parallel();
+                bandRows.forEach(i -> {
+                    for (int j = 0; j < nX; ++j)
+                        band.setPixel(j, i, tracePixel(j, first + i));
+                });
+                for (int i = 0; i < rows; ++i) {
+                    band.quantizeRow(i, ToneMapping.CLAMP, 0, row);
+                    png.writeRow(row);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("I/O error while streaming the image " + streamName, e);
+        }
+        return this;
+    }
 
-        Color color = traceRay.traceRay(ray);
-        imageWriter.writePixel(x, y, color);
+    /**
+     * Render image progressively by refinement passes, see {@link Builder#setProgressive(int, double)}
+     * @return the camera object itself
+     */
+    private Camera renderImageProgressive() {
+        stopRequested = false;
+        frameBuffer.clear();
+        pixelManager = new PixelManager(nY * progressiveSamples, nX, printInterval);
+        long deadline = timeBudget == 0 ? Long.MAX_VALUE : System.nanoTime() + (long) (timeBudget * 1e9);
+        lastSnapshot = System.nanoTime();
+
+        for (int stride = COARSE_STRIDE; stride >= 1 && !stopped(deadline); stride /= 2)
+            renderPass(stride, false, deadline);
+        for (int pass = 1; pass < progressiveSamples && !stopped(deadline); ++pass)
+            renderPass(1, true, deadline);
+        if (snapshotName != null) writeSnapshot();
+        return this;
+    }
+
+    /**
+     * Checks whether the progressive rendering must stop
+     * @param deadline the time budget deadline (System.nanoTime)
+     * @return true if stop was requested or the deadline has passed
+     */
+    private boolean stopped(long deadline) {
+        return stopRequested || System.nanoTime() - deadline > 0;
+    }
+
+    /**
+     * Renders one progressive pass over the pixels in the given stride. A refinement
+     * pass samples only pixels that have no sample yet, and fills the rest of each
+     * stride block with the sampled color as a preview
+     * @param stride   the pixel stride
+     * @param jitter   true for an additional samples pass with jittered rays
+     * @param deadline the time budget deadline (System.nanoTime)
+     */
+    private void renderPass(int stride, boolean jitter, long deadline) {
+        IntStream rows = IntStream.iterate(0, i -> i < nY, i -> i + stride);
+        if (threadsCount != 0) rows = rows.parallel();
+        rows.forEach(i -> {
+            for (int j = 0; j < nX && !stopped(deadline); j += stride) {
+                if (!jitter && frameBuffer.samples(j, i) > 0) continue;
+                Color color = samplePixel(j, i, jitter);
+                if (!jitter && stride > 1) fillBlock(j, i, stride, color);
+            }
+            if (snapshotName != null && System.nanoTime() - lastSnapshot >= snapshotInterval * 1e9)
+                writeSnapshot();
+        });
+        if (snapshotName != null && !stopped(deadline)) writeSnapshot();
+    }
+
+    /**
+     * Takes one more sample of a pixel and accumulates it in the frame buffer
+     * @param x      the pixel column
+     * @param y      the pixel row
+     * @param jitter true for a ray through a random point of the pixel, false for its center
+     * @return the color of the sample
+     */
+    private Color samplePixel(int x, int y, boolean jitter) {
+        RenderStats stats = renderStats;
+        if (stats != null) stats.attach();
+        double dx = 0, dy = 0;
+        if (jitter) {
+            dx = ThreadLocalRandom.current().nextDouble() - 0.5;
+            dy = ThreadLocalRandom.current().nextDouble() - 0.5;
+        }
+        Color sample;
+        try {
+            long before = heatmap == null ? 0 : heatmapCounter();
+            sample = traceRay.traceRay(constructRay(nX, nY, x + dx, y + dy));
+            if (heatmap != null) heatmap.record(x, y, heatmapCounter() - before);
+        } finally {
+            if (stats != null) stats.detach();
+        }
+        frameBuffer.addSample(x, y, sample);
         pixelManager.pixelDone();
+        return sample;
+    }
+
+    /**
+     * Fills the not yet sampled pixels of a stride block with a preview color
+     * @param x      the block's top left pixel column
+     * @param y      the block's top left pixel row
+     * @param stride the block size
+     * @param color  the preview color
+     */
+    private void fillBlock(int x, int y, int stride, Color color) {
+        for (int i = y; i < Math.min(y + stride, nY); ++i)
+            for (int j = x; j < Math.min(x + stride, nX); ++j)
+                frameBuffer.setPreview(j, i, color);
+    }
+
+    /**
+     * Writes a snapshot of the progressive rendering so far
+     */
+    private synchronized void writeSnapshot() {
+        lastSnapshot = System.nanoTime();
+        imageWriter.writeToImage(snapshotName);
+    }
+
+    /**
+     * Returns the amount of samples taken for a pixel by the last progressive rendering
+     * @param x the pixel column
+     * @param y the pixel row
+     * @return the amount of samples
+     */
+    int getSamples(int x, int y) {
+        return frameBuffer.samples(x, y);
+    }
+
+    /**
+     * Returns the current value of the heatmap metric counter of the current thread
+     * @return nanoseconds or intersection tests according to the heatmap metric
+     */
+    private long heatmapCounter() {
+        return heatmap.metric == HeatmapMetric.TIME ? System.nanoTime() : renderStats.threadTests();
     }
+
     /**
      * Render image using multi-threading by parallel streaming
      * @return the camera object itself
@@ -0,0 +1,97 @@
+package renderer;
+
+import primitives.Color;
+
+import java.util.Arrays;
+
+/**
+ * Per-pixel rendering cost buffer for the diagnostic heatmap render.<br>
+ * Each pixel is written by exactly one rendering thread, so no synchronization
+ * is needed. The heatmap is written as a false-color image: blue for the cheapest
+ * pixels through cyan, green and yellow to red for the most expensive ones.
+ */
+final class CostHeatmap {
+    /** The recorded metric */
+    final HeatmapMetric metric;
+    /** Horizontal resolution */
+    private final int nX;
+    /** Vertical resolution */
+    private final int nY;
+    /** Costs of the pixels, row by row */
+    private final double[] costs;
+
+    /**
+     * Percentile of the costs that is mapped to the hottest color - keeps few
+     * extreme pixels (e.g. JIT warm-up at the beginning of the render) from
+     * flattening the rest of the map
+     */
+    private static final double SATURATION_PERCENTILE = 0.99;
+
+    /** Color ramp of the heatmap from the cheapest to the most expensive */
+    private static final Color[] RAMP = {
+            new Color(0, 0, 255), new Color(0, 255, 255), new Color(0, 255, 0),
+            new Color(255, 255, 0), new Color(255, 0, 0) };
+
+    /**
+     * Creates an empty heatmap
+     * @param metric the recorded metric
+     * @param nX     the horizontal resolution
+     * @param nY     the vertical resolution
+     */
+    CostHeatmap(HeatmapMetric metric, int nX, int nY) {
+        this.metric = metric;
+        this.nX = nX;
+        this.nY = nY;
+        costs = new double[nX * nY];
+    }
+
+    /**
+     * Records the cost of a pixel (added to its previous cost, e.g. for multiple samples)
+     * @param x    the pixel column
+     * @param y    the pixel row
+     * @param cost the cost in the units of the metric
+     */
+    void record(int x, int y, double cost) {
+        costs[y * nX + x] += cost;
+    }
+
+    /**
+     * Returns the recorded cost of a pixel
+     * @param x the pixel column
+     * @param y the pixel row
+     * @return the cost in the units of the metric
+     */
+    double cost(int x, int y) {
+        return costs[y * nX + x];
+    }
+
+    /**
+     * Writes the false-color heatmap into a png file
+     * @param imageName the name of the png file
+     */
+    void writeToImage(String imageName) {
+        double[] sorted = costs.clone();
+        Arrays.sort(sorted);
+        double min = sorted[0];
+        double max = sorted[(int) ((sorted.length - 1) * SATURATION_PERCENTILE)];
+        double range = max > min ? max - min : 1;
+
+        ImageWriter writer = new ImageWriter(nX, nY);
+        for (int y = 0; y < nY; ++y)
+            for (int x = 0; x < nX; ++x)
+                writer.writePixel(x, y, heat(Math.min(1, (cost(x, y) - min) / range)));
+        writer.writeToImage(imageName);
+    }
+
+    /**
+     * Maps a normalized cost to a color of the ramp
+     * @param t the normalized cost in range 0..1
+     * @return the heat color
+     */
+    private static Color heat(double t) {
+        double position = t * (RAMP.length - 1);
+        int i = Math.min((int) position, RAMP.length - 2);
+        double f = position - i;
+        return RAMP[i].scale(1 - f).add(RAMP[i + 1].scale(f));
+    }
+}
@@ -0,0 +1,187 @@
+package renderer;
+
+import java.util.Arrays;
+
+import primitives.Color;
+import primitives.Double3;
+
+/**
+ * Frame buffer of a rendered image - linear (not clamped) RGB components of the
+ * pixels in a primitive float array, row by row, 3 components per pixel.<br>
+ * A pixel may accumulate several samples - its color is the average of the
+ * samples. Tone mapping and quantization into 8 bits are applied only once, when
+ * the image is written.<br>
+ * Different threads may write different pixels concurrently without synchronization.
+ */
+final class FrameBuffer {
+   /** Horizontal resolution of the image - number of pixels in row */
+   private final int     nX;
+   /** Vertical resolution of the image - number of pixels in column */
+   private final int     nY;
+   /** Sums of the samples' RGB components of the pixels, row by row */
+   private final float[] rgb;
+   /** Amount of samples of each pixel, row by row */
+   private final int[]   samples;
+
+   /**
+    * Frame buffer constructor of a black image without samples
+    * @param nX amount of pixels by Width
+    * @param nY amount of pixels by height
+    */
+   FrameBuffer(int nX, int nY) {
+      this.nX = nX;
+      this.nY = nY;
+      rgb     = new float[3 * nX * nY];
+      samples = new int[nX * nY];
+   }
+
+   /**
+    * View Plane X axis resolution
+    * @return the amount of horizontal pixels
+    */
+   int nX() { return nX; }
+
+   /**
+    * View Plane Y axis resolution
+    * @return the amount of vertical pixels
+    */
+   int nY() { return nY; }
+
+   /**
+    * Sets the color of a pixel as its only sample
+    * @param x     X axis index of the pixel
+    * @param y     Y axis index of the pixel
+    * @param color the color of the pixel
+    */
+   void setPixel(int x, int y, Color color) {
+      int index = y * nX + x;
+      store(index, color.getRgb());
+      samples[index] = 1;
+   }
+
+   /**
+    * Sets the linear RGB components of a pixel as its only sample
+    * @param x X axis index of the pixel
+    * @param y Y axis index of the pixel
+    * @param r red component
+    * @param g green component
+    * @param b blue component
+    */
+   void setPixel(int x, int y, float r, float g, float b) {
+      int index = y * nX + x;
+      rgb[3 * index]     = r;
+      rgb[3 * index + 1] = g;
+      rgb[3 * index + 2] = b;
+      samples[index]     = 1;
+   }
+
+   /**
+    * Adds a sample to a pixel (a preview color of a pixel without samples is replaced)
+    * @param  x     X axis index of the pixel
+    * @param  y     Y axis index of the pixel
+    * @param  color the color of the sample
+    * @return       the amount of samples of the pixel including the new one
+    */
+   int addSample(int x, int y, Color color) {
+      int     index = y * nX + x;
+      Double3 c     = color.getRgb();
+      if (samples[index] == 0)
+         store(index, c);
+      else {
+         rgb[3 * index]     += (float) c.d1();
+         rgb[3 * index + 1] += (float) c.d2();
+         rgb[3 * index + 2] += (float) c.d3();
+      }
+      return ++samples[index];
+   }
+
+   /**
+    * Sets a preview color of a pixel that has no samples yet (otherwise ignored)
+    * @param x     X axis index of the pixel
+    * @param y     Y axis index of the pixel
+    * @param color the preview color
+    */
+   void setPreview(int x, int y, Color color) {
+      int index = y * nX + x;
+      if (samples[index] == 0) store(index, color.getRgb());
+   }
+
+   /**
+    * Stores RGB components of a pixel
+    * @param index the pixel index
+    * @param c     the components
+    */
+   private void store(int index, Double3 c) {
+      rgb[3 * index]     = (float) c.d1();
+      rgb[3 * index + 1] = (float) c.d2();
+      rgb[3 * index + 2] = (float) c.d3();
+   }
+
+   /**
+    * Returns the amount of samples of a pixel
+    * @param  x X axis index of the pixel
+    * @param  y Y axis index of the pixel
+    * @return   the amount of samples
+    */
+   int samples(int x, int y) { return samples[y * nX + x]; }
+
+   /**
+    * Returns a linear RGB component of a pixel - the average of its samples
+    * @param  x         X axis index of the pixel
+    * @param  y         Y axis index of the pixel
+    * @param  component 0 for red, 1 for green, 2 for blue
+    * @return           the component value
+    */
+   float component(int x, int y, int component) {
+      int index = y * nX + x;
+      int n     = samples[index];
+      float sum = rgb[3 * index + component];
+      return n > 1 ? sum / n : sum;
+   }
+
+   /**
+    * Removes all the samples and colors
+    */
+   void clear() {
+      Arrays.fill(rgb, 0f);
+      Arrays.fill(samples, 0);
+   }
+
+   /**
+    * Finds the brightest pixel component of the image (the white point for tone mapping)
+    * @return the maximal component value
+    */
+   double maxComponent() {
+      double max = 0;
+      for (int y = 0; y < nY; ++y)
+         for (int x = 0; x < nX; ++x)
+            for (int c = 0; c < 3; ++c)
+               max = Math.max(max, component(x, y, c));
+      return max;
+   }
+
+   /**
+    * Tone maps and quantizes a row of pixels into packed 8-bit RGB integers
+    * @param y       Y axis index of the row
+    * @param mapping the tone mapping operator
+    * @param white   the white point of the tone mapping
+    * @param packed  the output array of at least nX elements
+    */
+   void quantizeRow(int y, ToneMapping mapping, double white, int[] packed) {
+      for (int x = 0; x < nX; ++x)
+         packed[x] = quantize(mapping.map(component(x, y, 0), white)) << 16
+               | quantize(mapping.map(component(x, y, 1), white)) << 8
+               | quantize(mapping.map(component(x, y, 2), white));
+   }
+
+   /**
+    * Quantizes a display component into 8 bits (truncated and clamped like
+    * {@link Color#getColor()})
+    * @param  value the component value
+    * @return       the 8-bit component
+    */
+   private static int quantize(double value) {
+      int q = (int) value;
+      return q > 255 ? 255 : q;
+   }
+}
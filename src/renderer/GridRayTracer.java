@@ -0,0 +1,39 @@
+package renderer;
+
+import geometries.AdaptiveGrid;
+import scene.Scene;
+
+import java.io.Serial;
+
+/**
+ * Ray tracer accelerated by a hierarchical grid over the scene geometries (see
+ * {@link AdaptiveGrid}), for scenes of unevenly spread geometries. The shading is the
+ * same as of {@link SimpleRayTracer}.
+ */
+public class GridRayTracer extends SimpleRayTracer {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    /** The grid over the bounded geometries of the scene */
+    private final AdaptiveGrid grid;
+
+    /**
+     * Constructor - builds the grid over the bounded geometries of the scene, which
+     * replaces them in the scene geometries
+     *
+     * @param scene the scene to be rendered
+     */
+    public GridRayTracer(Scene scene) {
+        super(scene);
+        grid = scene == null ? null : scene.geometries.createGrid();
+    }
+
+    /**
+     * Returns the grid of the scene
+     *
+     * @return the grid
+     */
+    public AdaptiveGrid getGrid() {
+        return grid;
+    }
+}
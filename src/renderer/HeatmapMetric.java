@@ -0,0 +1,11 @@
+package renderer;
+
+/**
+ * Per-pixel cost metrics of the diagnostic heatmap render
+ */
+public enum HeatmapMetric {
+   /** Wall-clock time of casting the pixel's ray, in nanoseconds */
+   TIME,
+   /** Amount of intersection tests (hierarchy nodes included) done for the pixel */
+   INTERSECTIONS
+}
@@ -0,0 +1,13 @@
+package renderer;
+
+/**
+ * Image file formats written by the camera
+ */
+public enum ImageFormat {
+   /** 8-bit tone mapped PNG */
+   PNG,
+   /** Linear 32-bit float Portable Float Map */
+   PFM,
+   /** Linear Radiance RGBE with run-length encoding */
+   HDR
+}
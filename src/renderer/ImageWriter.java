@@ -1,9 +1,13 @@
 package renderer;
 
 import java.awt.image.BufferedImage;
-import java.io.*;
-
-import javax.imageio.ImageIO;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 import primitives.Color;
 
@@ -11,7 +15,9 @@ import primitives.Color;
  * Image writer class combines accumulation of pixel color matrix and finally
  * producing a non-optimized jpeg image from this matrix. The class although is
  * responsible of holding image related parameters of View Plane - pixel matrix
- * size and resolution
+ * size and resolution.<br>
+ * The pixel colors are kept linear in a {@link FrameBuffer}; tone mapping and
+ * quantization into 8 bits are done once when the image file is written
  * @author Dan
  */
 final class ImageWriter {
@@ -26,8 +32,25 @@ final class ImageWriter {
     */
    private static final String FOLDER_PATH = System.getProperty("user.dir") + "/images";
 
+   /**
+    * Color component value of the printed white - HDR files are written linear
+    * with the printed white as 1.0
+    */
+   private static final float  WHITE       = 255f;
+
+   /**
+    * Target amount of raw image bytes in a band of rows compressed independently by
+    * the parallel PNG encoder - large enough to keep the compression ratio loss of
+    * the band boundaries negligible
+    */
+   private static final int    PNG_BAND_BYTES = 1 << 18;
+
    /** Image generation buffer (the matrix of the pixels) */
-   private final BufferedImage image;
+   private final FrameBuffer   frameBuffer;
+   /** Tone mapping operator applied when the image is written */
+   private ToneMapping         toneMapping = ToneMapping.CLAMP;
+   /** Deflate compression level of png files (0-9, or -1 for the default) */
+   private int                 compressionLevel = -1;
 
    // ***************** Constructors ********************** //
    /**
@@ -36,10 +59,17 @@ final class ImageWriter {
     * @param nY amount of pixels by height
     */
    ImageWriter(int nX, int nY) {
-      this.nX = nX;
-      this.nY = nY;
+      this(new FrameBuffer(nX, nY));
+   }
 
-      image   = new BufferedImage(nX, nY, BufferedImage.TYPE_INT_RGB);
+   /**
+    * Image Writer constructor over an existing frame buffer
+    * @param frameBuffer the frame buffer holding the pixels
+    */
+   ImageWriter(FrameBuffer frameBuffer) {
+      this.nX          = frameBuffer.nX();
+      this.nY          = frameBuffer.nY();
+      this.frameBuffer = frameBuffer;
    }
 
    // ***************** Getters ********************** //
@@ -55,22 +85,208 @@ final class ImageWriter {
     */
    int nX() { return nX; }
 
+   /**
+    * The frame buffer holding the pixels
+    * @return the frame buffer
+    */
+   FrameBuffer frameBuffer() { return frameBuffer; }
+
+   /**
+    * Sets the tone mapping operator applied when the image is written
+    * @param  toneMapping the tone mapping operator
+    * @return             the image writer itself
+    */
+   ImageWriter setToneMapping(ToneMapping toneMapping) {
+      this.toneMapping = toneMapping;
+      return this;
+   }
+
+   /**
+    * Sets the deflate compression level of png files
+    * @param  compressionLevel the level 0 (fastest) to 9 (smallest), or -1 for the default
+    * @return                  the image writer itself
+    */
+   ImageWriter setCompressionLevel(int compressionLevel) {
+      this.compressionLevel = compressionLevel;
+      return this;
+   }
+
    // ***************** Operations ******************** //
 
    /**
-    * Function writeToImage produces unoptimized png file of the image according
-    * to pixel color matrix in the directory of the project
+    * Function writeToImage produces png file of the image according to pixel color
+    * matrix in the directory of the project. Bands of rows are filtered and
+    * compressed in parallel
     * @param imageName the name of png file
     */
    void writeToImage(String imageName) {
+      double white = toneMapping == ToneMapping.CLAMP ? 0 : frameBuffer.maxComponent();
+      int    rows  = Math.max(1, PNG_BAND_BYTES / (3 * nX + 1));
       try {
-         File file = new File(FOLDER_PATH + '/' + imageName + ".png");
-         ImageIO.write(image, "png", file);
+         PngWriter.writeParallel(imageFile(imageName + ".png"), frameBuffer, toneMapping, white, compressionLevel, rows);
+      } catch (IOException e) {
+         throw new IllegalStateException("I/O error - may be missing directory " + FOLDER_PATH, e);
+      }
+   }
+
+   /**
+    * Writes the image in the requested format into the directory of the project
+    * @param imageName the name of the file (without extension)
+    * @param format    the image file format
+    */
+   void writeToImage(String imageName, ImageFormat format) {
+      switch (format) {
+         case PNG -> writeToImage(imageName);
+         case PFM -> writeToPfm(imageName);
+         case HDR -> writeToHdr(imageName);
+      }
+   }
+
+   /**
+    * Writes the linear (not tone mapped) image into a Portable Float Map file -
+    * 32-bit little endian float RGB, rows from bottom to top
+    * @param imageName the name of pfm file
+    */
+   void writeToPfm(String imageName) {
+      try (FileChannel channel = openChannel(imageName + ".pfm")) {
+         writeFully(channel, ByteBuffer.wrap(("PF\n" + nX + " " + nY + "\n-1.0\n").getBytes(StandardCharsets.US_ASCII)));
+         ByteBuffer row = ByteBuffer.allocateDirect(nX * 3 * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+         for (int y = nY - 1; y >= 0; --y) {
+            row.clear();
+            for (int x = 0; x < nX; ++x)
+               for (int c = 0; c < 3; ++c)
+                  row.putFloat(frameBuffer.component(x, y, c) / WHITE);
+            row.flip();
+            writeFully(channel, row);
+         }
+      } catch (IOException e) {
+         throw new IllegalStateException("I/O error - may be missing directory " + FOLDER_PATH, e);
+      }
+   }
+
+   /**
+    * Writes the linear (not tone mapped) image into a Radiance RGBE (.hdr) file
+    * with run-length encoded scanlines
+    * @param imageName the name of hdr file
+    */
+   void writeToHdr(String imageName) {
+      try (FileChannel channel = openChannel(imageName + ".hdr")) {
+         String header = "#?RADIANCE\nFORMAT=32-bit_rle_rgbe\n\n-Y " + nY + " +X " + nX + "\n";
+         writeFully(channel, ByteBuffer.wrap(header.getBytes(StandardCharsets.US_ASCII)));
+         byte[][]   rgbe = new byte[4][nX];
+         // worst case of the encoding: 4 bytes header + one count byte per 128 literal bytes
+         ByteBuffer line = ByteBuffer.allocateDirect(4 + 4 * (nX + nX / 128 + 1));
+         for (int y = 0; y < nY; ++y) {
+            for (int x = 0; x < nX; ++x)
+               toRgbe(frameBuffer.component(x, y, 0) / WHITE, frameBuffer.component(x, y, 1) / WHITE,
+                      frameBuffer.component(x, y, 2) / WHITE, rgbe, x);
+            line.clear();
+            encodeScanline(rgbe, line);
+            line.flip();
+            writeFully(channel, line);
+         }
       } catch (IOException e) {
          throw new IllegalStateException("I/O error - may be missing directory " + FOLDER_PATH, e);
       }
    }
 
+   /**
+    * Converts a linear RGB color into the shared exponent RGBE representation
+    * @param r    red component
+    * @param g    green component
+    * @param b    blue component
+    * @param rgbe the output - 4 arrays of red, green, blue and exponent bytes
+    * @param x    the index in the output arrays
+    */
+   private static void toRgbe(float r, float g, float b, byte[][] rgbe, int x) {
+      float max = Math.max(r, Math.max(g, b));
+      if (max < 1e-32f) {
+         rgbe[0][x] = rgbe[1][x] = rgbe[2][x] = rgbe[3][x] = 0;
+         return;
+      }
+      // max = m * 2^e where 0.5 <= m < 1
+      int    e     = Math.getExponent(max) + 1;
+      double scale = Math.scalb(256.0, -e);
+      rgbe[0][x] = (byte) (int) (r * scale);
+      rgbe[1][x] = (byte) (int) (g * scale);
+      rgbe[2][x] = (byte) (int) (b * scale);
+      rgbe[3][x] = (byte) (e + 128);
+   }
+
+   /**
+    * Encodes a scanline in the new Radiance run-length encoding - each of the
+    * four components is encoded separately by runs (count above 128) and literal
+    * dumps (count up to 128). Scanlines that are too short or too long for the
+    * encoding are written flat
+    * @param rgbe the scanline components
+    * @param out  the output buffer
+    */
+   private void encodeScanline(byte[][] rgbe, ByteBuffer out) {
+      if (nX < 8 || nX > 0x7fff) {
+         for (int x = 0; x < nX; ++x)
+            out.put(rgbe[0][x]).put(rgbe[1][x]).put(rgbe[2][x]).put(rgbe[3][x]);
+         return;
+      }
+      out.put((byte) 2).put((byte) 2).put((byte) (nX >> 8)).put((byte) (nX & 0xFF));
+      for (byte[] component : rgbe) {
+         int x = 0;
+         while (x < nX) {
+            // find the next run of at least 4 equal bytes
+            int runStart = x, runLength = 0;
+            while (runStart < nX) {
+               runLength = 1;
+               while (runLength < 127 && runStart + runLength < nX
+                      && component[runStart + runLength] == component[runStart])
+                  ++runLength;
+               if (runLength >= 4) break;
+               runStart += runLength;
+            }
+            if (runLength < 4) runStart = nX;
+            // literal dump up to the run
+            while (x < runStart) {
+               int count = Math.min(128, runStart - x);
+               out.put((byte) count).put(component, x, count);
+               x += count;
+            }
+            if (runStart < nX) {
+               out.put((byte) (128 + runLength)).put(component[runStart]);
+               x = runStart + runLength;
+            }
+         }
+      }
+   }
+
+   /**
+    * Opens a file of the images directory for writing (replacing an existing one)
+    * @param  fileName    the file name with extension
+    * @return             the channel
+    * @throws IOException on I/O error
+    */
+   private static FileChannel openChannel(String fileName) throws IOException {
+      return FileChannel.open(imageFile(fileName), StandardOpenOption.CREATE,
+                              StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+   }
+
+   /**
+    * Path of a file in the images directory
+    * @param  fileName the file name with extension
+    * @return          the file path
+    */
+   static Path imageFile(String fileName) {
+      return Path.of(FOLDER_PATH, fileName);
+   }
+
+   /**
+    * Writes all the remaining bytes of a buffer into a channel
+    * @param  channel     the channel
+    * @param  buffer      the buffer
+    * @throws IOException on I/O error
+    */
+   private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+      while (buffer.hasRemaining())
+         channel.write(buffer);
+   }
+
    /**
     * The function writePixel writes a color of a specific pixel into pixel color
     * matrix
@@ -78,6 +294,21 @@ final class ImageWriter {
     * @param yIndex Y axis index of the pixel
     * @param color  final color of the pixel
     */
-   void writePixel(int xIndex, int yIndex, Color color) { image.setRGB(xIndex, yIndex, color.getColor().getRGB()); }
+   void writePixel(int xIndex, int yIndex, Color color) { frameBuffer.setPixel(xIndex, yIndex, color); }
+
+   /**
+    * Tone maps and quantizes the frame buffer into an 8-bit image
+    * @return the image
+    */
+   BufferedImage toImage() {
+      BufferedImage image = new BufferedImage(nX, nY, BufferedImage.TYPE_INT_RGB);
+      double        white = toneMapping == ToneMapping.CLAMP ? 0 : frameBuffer.maxComponent();
+      int[]         row   = new int[nX];
+      for (int y = 0; y < nY; ++y) {
+         frameBuffer.quantizeRow(y, toneMapping, white, row);
+         image.setRGB(0, y, nX, 1, row, 0, nX);
+      }
+      return image;
+   }
 
 }
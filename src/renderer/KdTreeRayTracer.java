@@ -0,0 +1,39 @@
+package renderer;
+
+import geometries.KdTree;
+import scene.Scene;
+
+import java.io.Serial;
+
+/**
+ * Ray tracer accelerated by a k-d tree over the scene geometries (see {@link KdTree}),
+ * an alternative to the bounding volume hierarchy for static scenes of many small
+ * geometries. The shading is the same as of {@link SimpleRayTracer}.
+ */
+public class KdTreeRayTracer extends SimpleRayTracer {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    /** The k-d tree over the bounded geometries of the scene */
+    private final KdTree kdTree;
+
+    /**
+     * Constructor - builds the k-d tree over the bounded geometries of the scene, which
+     * replaces them in the scene geometries
+     *
+     * @param scene the scene to be rendered
+     */
+    public KdTreeRayTracer(Scene scene) {
+        super(scene);
+        kdTree = scene == null ? null : scene.geometries.createKdTree();
+    }
+
+    /**
+     * Returns the k-d tree of the scene
+     *
+     * @return the k-d tree
+     */
+    public KdTree getKdTree() {
+        return kdTree;
+    }
+}
@@ -0,0 +1,407 @@
+package renderer;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.IntStream;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * PNG encoder for 8-bit RGB images, in two flavors:
+ * <ul>
+ * <li>streaming - an object of the class writes the image scanline by scanline as
+ * the rows are provided, so only the current and the previous rows are held in
+ * memory regardless of the image size</li>
+ * <li>parallel - {@link #writeParallel} encodes a whole frame buffer by bands of
+ * rows in parallel (pigz style): each band is filtered and deflated independently,
+ * primed with the previous band's data as a dictionary, and the compressed bands
+ * are concatenated into a single zlib stream</li>
+ * </ul>
+ * Each scanline is filtered by the filter type with minimal sum of absolute
+ * differences, and the deflated data is written as a sequence of IDAT chunks.
+ */
+final class PngWriter implements Closeable {
+   /** PNG file signature */
+   static final byte[]      SIGNATURE  = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+   /** Maximal length of the data of an IDAT chunk */
+   private static final int CHUNK_SIZE = 1 << 16;
+   /** Deflate window size - the maximal dictionary of a band */
+   private static final int WINDOW     = 1 << 15;
+   /** Modulus of Adler-32 checksum */
+   private static final int ADLER_BASE = 65521;
+
+   /** Horizontal resolution of the image */
+   private final int          nX;
+   /** Vertical resolution of the image */
+   private final int          nY;
+   /** Amount of rows written so far */
+   private int                rows     = 0;
+   /** The output file stream */
+   private final OutputStream file;
+   /** Deflating stream of the filtered scanlines into IDAT chunks */
+   private final DeflaterOutputStream idat;
+   /** Deflater of the image data */
+   private final Deflater     deflater;
+   /** Current row bytes (RGB) */
+   private byte[]             current;
+   /** Previous row bytes (RGB), zeros for the first row */
+   private byte[]             previous;
+   /** Filtered row - filter type byte followed by the filtered bytes */
+   private final byte[]       filtered;
+   /** Candidate filtered row while choosing the filter */
+   private final byte[]       candidate;
+
+   /**
+    * Creates the PNG file and writes its header
+    * @param  path        the file path
+    * @param  nX          the horizontal resolution
+    * @param  nY          the vertical resolution
+    * @param  level       deflate compression level (0-9, or -1 for the default)
+    * @throws IOException on I/O error
+    */
+   PngWriter(Path path, int nX, int nY, int level) throws IOException {
+      this.nX   = nX;
+      this.nY   = nY;
+      file      = new BufferedOutputStream(Files.newOutputStream(path), CHUNK_SIZE);
+      current   = new byte[3 * nX];
+      previous  = new byte[3 * nX];
+      filtered  = new byte[3 * nX + 1];
+      candidate = new byte[3 * nX + 1];
+      deflater  = new Deflater(level);
+      file.write(SIGNATURE);
+      writeChunk(file, "IHDR", header(nX, nY));
+      idat = new DeflaterOutputStream(new ChunkStream(), deflater, CHUNK_SIZE);
+   }
+
+   /**
+    * Builds the IHDR chunk data of an 8-bit RGB non-interlaced image
+    * @param  nX the horizontal resolution
+    * @param  nY the vertical resolution
+    * @return    the chunk data
+    */
+   static byte[] header(int nX, int nY) {
+      return new byte[] { (byte) (nX >>> 24), (byte) (nX >>> 16), (byte) (nX >>> 8), (byte) nX, //
+                          (byte) (nY >>> 24), (byte) (nY >>> 16), (byte) (nY >>> 8), (byte) nY, //
+                          8, 2, 0, 0, 0 };
+   }
+
+   /**
+    * Writes the next row of the image
+    * @param  packed      the row pixels as packed RGB integers
+    * @throws IOException on I/O error
+    */
+   void writeRow(int[] packed) throws IOException {
+      if (rows == nY) throw new IllegalStateException("All the " + nY + " rows were already written");
+      for (int x = 0; x < nX; ++x) {
+         current[3 * x]     = (byte) (packed[x] >> 16);
+         current[3 * x + 1] = (byte) (packed[x] >> 8);
+         current[3 * x + 2] = (byte) packed[x];
+      }
+      filterRow(current, previous, filtered, candidate);
+      idat.write(filtered);
+      byte[] tmp = previous;
+      previous = current;
+      current  = tmp;
+      ++rows;
+   }
+
+   /**
+    * Filters a scanline by the filter type with the minimal sum of absolute
+    * (signed) differences
+    * @param current   the scanline bytes
+    * @param previous  the previous scanline bytes (zeros for the first scanline)
+    * @param filtered  the output - filter type followed by the filtered bytes
+    * @param candidate work array of the size of the output
+    */
+   static void filterRow(byte[] current, byte[] previous, byte[] filtered, byte[] candidate) {
+      long best = Long.MAX_VALUE;
+      for (int type = 0; type < 5; ++type) {
+         candidate[0] = (byte) type;
+         long sum = 0;
+         for (int i = 0; i < current.length; ++i) {
+            int a = i >= 3 ? current[i - 3] & 0xFF : 0;
+            int b = previous[i] & 0xFF;
+            int c = i >= 3 ? previous[i - 3] & 0xFF : 0;
+            int predictor = switch (type) {
+               case 1 -> a;
+               case 2 -> b;
+               case 3 -> (a + b) >> 1;
+               case 4 -> paeth(a, b, c);
+               default -> 0;
+            };
+            byte value = (byte) (current[i] - predictor);
+            candidate[i + 1] = value;
+            sum += Math.abs(value);
+         }
+         if (sum < best) {
+            best = sum;
+            System.arraycopy(candidate, 0, filtered, 0, filtered.length);
+         }
+      }
+   }
+
+   /**
+    * The Paeth predictor of PNG filter type 4
+    * @param  a left byte
+    * @param  b upper byte
+    * @param  c upper left byte
+    * @return   the predicted byte
+    */
+   private static int paeth(int a, int b, int c) {
+      int p  = a + b - c;
+      int pa = Math.abs(p - a), pb = Math.abs(p - b), pc = Math.abs(p - c);
+      if (pa <= pb && pa <= pc) return a;
+      return pb <= pc ? b : c;
+   }
+
+   /**
+    * Finishes the image data, writes the end chunk and closes the file
+    * @throws IOException on I/O error, or if not all the rows were written
+    */
+   @Override
+   public void close() throws IOException {
+      try {
+         idat.finish();
+         writeChunk(file, "IEND", new byte[0]);
+         if (rows != nY) throw new IOException("Only " + rows + " of " + nY + " rows were written");
+      } finally {
+         deflater.end();
+         file.close();
+      }
+   }
+
+   /**
+    * Encodes a whole frame buffer into a PNG file, filtering and deflating bands of
+    * rows in parallel
+    * @param  path         the file path
+    * @param  frameBuffer  the frame buffer
+    * @param  mapping      the tone mapping operator
+    * @param  white        the white point of the tone mapping
+    * @param  level        deflate compression level (0-9, or -1 for the default)
+    * @param  rowsPerBand  amount of rows in an independently compressed band
+    * @throws IOException  on I/O error
+    */
+   static void writeParallel(Path path, FrameBuffer frameBuffer, ToneMapping mapping, double white, int level,
+                             int rowsPerBand) throws IOException {
+      int nX    = frameBuffer.nX();
+      int nY    = frameBuffer.nY();
+      int bands = (nY + rowsPerBand - 1) / rowsPerBand;
+
+      // filter the bands - each band quantizes its rows and the row above it
+      byte[][] filtered = new byte[bands][];
+      IntStream.range(0, bands).parallel().forEach(band -> {
+         int    first    = band * rowsPerBand;
+         int    rows     = Math.min(rowsPerBand, nY - first);
+         int    rowSize  = 3 * nX + 1;
+         byte[] data     = new byte[rows * rowSize];
+         int[]  packed   = new int[nX];
+         byte[] previous = new byte[3 * nX], current = new byte[3 * nX];
+         byte[] row      = new byte[rowSize], candidate = new byte[rowSize];
+         if (first > 0) toBytes(frameBuffer, first - 1, mapping, white, packed, previous);
+         for (int i = 0; i < rows; ++i) {
+            toBytes(frameBuffer, first + i, mapping, white, packed, current);
+            filterRow(current, previous, row, candidate);
+            System.arraycopy(row, 0, data, i * rowSize, rowSize);
+            byte[] tmp = previous;
+            previous = current;
+            current  = tmp;
+         }
+         filtered[band] = data;
+      });
+
+      // deflate the bands - each one primed by the end of the previous band
+      byte[][] deflated = new byte[bands][];
+      long[]   adlers   = new long[bands];
+      IntStream.range(0, bands).parallel().forEach(band -> {
+         Deflater deflater = new Deflater(level, true);
+         try {
+            if (band > 0) {
+               byte[] dictionary = filtered[band - 1];
+               int    length     = Math.min(WINDOW, dictionary.length);
+               deflater.setDictionary(dictionary, dictionary.length - length, length);
+            }
+            deflater.setInput(filtered[band]);
+            if (band == bands - 1) deflater.finish();
+            ByteArrayOutputStream out    = new ByteArrayOutputStream(filtered[band].length / 4 + 64);
+            byte[]                buffer = new byte[CHUNK_SIZE];
+            int                   flush  = band == bands - 1 ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH;
+            while (true) {
+               int size = deflater.deflate(buffer, 0, buffer.length, flush);
+               out.write(buffer, 0, size);
+               if (band == bands - 1 ? deflater.finished() : size < buffer.length && deflater.needsInput()) break;
+            }
+            deflated[band] = out.toByteArray();
+         } finally {
+            deflater.end();
+         }
+         Adler32 adler = new Adler32();
+         adler.update(filtered[band]);
+         adlers[band] = adler.getValue();
+      });
+
+      long adler = adlers[0];
+      for (int band = 1; band < bands; ++band)
+         adler = adler32Combine(adler, adlers[band], filtered[band].length);
+
+      try (OutputStream file = new BufferedOutputStream(Files.newOutputStream(path), CHUNK_SIZE)) {
+         file.write(SIGNATURE);
+         writeChunk(file, "IHDR", header(nX, nY));
+         ChunkedOutput idat = new ChunkedOutput(file);
+         idat.write(new byte[] { 0x78, (byte) 0xDA });
+         for (byte[] data : deflated)
+            idat.write(data);
+         idat.write(new byte[] { (byte) (adler >>> 24), (byte) (adler >>> 16), (byte) (adler >>> 8), (byte) adler });
+         idat.flush();
+         writeChunk(file, "IEND", new byte[0]);
+      }
+   }
+
+   /**
+    * Tone maps and quantizes a frame buffer row into RGB bytes
+    * @param frameBuffer the frame buffer
+    * @param y           the row index
+    * @param mapping     the tone mapping operator
+    * @param white       the white point of the tone mapping
+    * @param packed      work array for the packed RGB integers
+    * @param bytes       the output RGB bytes
+    */
+   private static void toBytes(FrameBuffer frameBuffer, int y, ToneMapping mapping, double white, int[] packed,
+                               byte[] bytes) {
+      frameBuffer.quantizeRow(y, mapping, white, packed);
+      for (int x = 0; x < packed.length; ++x) {
+         bytes[3 * x]     = (byte) (packed[x] >> 16);
+         bytes[3 * x + 1] = (byte) (packed[x] >> 8);
+         bytes[3 * x + 2] = (byte) packed[x];
+      }
+   }
+
+   /**
+    * Combines Adler-32 checksums of two consecutive blocks of data (as zlib's adler32_combine)
+    * @param  adler1 checksum of the first block
+    * @param  adler2 checksum of the second block
+    * @param  length2 length of the second block
+    * @return        checksum of the concatenated blocks
+    */
+   static long adler32Combine(long adler1, long adler2, long length2) {
+      long remainder = length2 % ADLER_BASE;
+      long sum1      = adler1 & 0xFFFF;
+      long sum2      = remainder * sum1 % ADLER_BASE;
+      sum1 += (adler2 & 0xFFFF) + ADLER_BASE - 1;
+      sum2 += ((adler1 >> 16) & 0xFFFF) + ((adler2 >> 16) & 0xFFFF) + ADLER_BASE - remainder;
+      if (sum1 >= ADLER_BASE) sum1 -= ADLER_BASE;
+      if (sum1 >= ADLER_BASE) sum1 -= ADLER_BASE;
+      if (sum2 >= 2L * ADLER_BASE) sum2 -= 2L * ADLER_BASE;
+      if (sum2 >= ADLER_BASE) sum2 -= ADLER_BASE;
+      return sum2 << 16 | sum1;
+   }
+
+   /**
+    * Writes a PNG chunk - length, type, data and CRC
+    * @param  out         the output stream
+    * @param  type        the chunk type
+    * @param  data        the chunk data
+    * @throws IOException on I/O error
+    */
+   static void writeChunk(OutputStream out, String type, byte[] data) throws IOException {
+      writeChunk(out, type, data, 0, data.length);
+   }
+
+   /**
+    * Writes a PNG chunk - length, type, data and CRC
+    * @param  out         the output stream
+    * @param  type        the chunk type
+    * @param  data        the chunk data array
+    * @param  offset      the offset of the data in the array
+    * @param  length      the length of the data
+    * @throws IOException on I/O error
+    */
+   static void writeChunk(OutputStream out, String type, byte[] data, int offset, int length) throws IOException {
+      byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+      CRC32  crc       = new CRC32();
+      crc.update(typeBytes);
+      crc.update(data, offset, length);
+      writeInt(out, length);
+      out.write(typeBytes);
+      out.write(data, offset, length);
+      writeInt(out, (int) crc.getValue());
+   }
+
+   /**
+    * Writes a big endian 32-bit integer
+    * @param  out         the output stream
+    * @param  value       the integer
+    * @throws IOException on I/O error
+    */
+   private static void writeInt(OutputStream out, int value) throws IOException {
+      out.write(value >>> 24);
+      out.write(value >>> 16);
+      out.write(value >>> 8);
+      out.write(value);
+   }
+
+   /**
+    * Output stream that wraps the deflated data written into it by IDAT chunks
+    */
+   private final class ChunkStream extends OutputStream {
+      @Override
+      public void write(int b) throws IOException {
+         write(new byte[] { (byte) b }, 0, 1);
+      }
+
+      @Override
+      public void write(byte[] b, int offset, int length) throws IOException {
+         while (length > 0) {
+            int size = Math.min(length, CHUNK_SIZE);
+            writeChunk(file, "IDAT", b, offset, size);
+            offset += size;
+            length -= size;
+         }
+      }
+   }
+
+   /**
+    * Output stream that gathers the data written into it into full-size IDAT chunks
+    */
+   private static final class ChunkedOutput extends OutputStream {
+      /** The file stream */
+      private final OutputStream file;
+      /** The data of the current chunk */
+      private final byte[]       chunk = new byte[CHUNK_SIZE];
+      /** Length of the data of the current chunk */
+      private int                length = 0;
+
+      /**
+       * Creates the stream
+       * @param file the file stream
+       */
+      ChunkedOutput(OutputStream file) { this.file = file; }
+
+      @Override
+      public void write(int b) throws IOException {
+         write(new byte[] { (byte) b }, 0, 1);
+      }
+
+      @Override
+      public void write(byte[] b, int offset, int size) throws IOException {
+         while (size > 0) {
+            int part = Math.min(size, CHUNK_SIZE - length);
+            System.arraycopy(b, offset, chunk, length, part);
+            length += part;
+            offset += part;
+            size   -= part;
+            if (length == CHUNK_SIZE) flush();
+         }
+      }
+
+      @Override
+      public void flush() throws IOException {
+         if (length == 0) return;
+         writeChunk(file, "IDAT", chunk, 0, length);
+         length = 0;
+      }
+   }
+}
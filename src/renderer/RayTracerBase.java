@@ -1,11 +1,20 @@
 package renderer;
 
+import geometries.BvhBuilder;
 import primitives.*;
 import scene.Scene;
+
+import java.io.IOException;
+import java.io.Serial;
+import java.io.Serializable;
+import java.nio.file.Path;
 /** * Abstract base class for ray tracing in a 3D scene.
  * This class provides a structure for ray tracing algorithms and can be extended to implement specific ray tracing logic.
  */
-public abstract class RayTracerBase {
+public abstract class RayTracerBase implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
     /** The scene in which the ray tracing will occur. */
     protected Scene scene;
     /**
@@ -31,4 +40,27 @@ public abstract class RayTracerBase {
     public void createHierarchy() {
         scene.geometries.createHierarchy();
     }
+
+    /**
+     * Builds the hierarchy of the scene geometries by a given build method
+     *
+     * @param method the build method
+     * @return the build metrics
+     */
+    public BvhBuilder.Metrics createHierarchy(BvhBuilder.Method method) {
+        return scene.geometries.createHierarchy(method);
+    }
+
+    /**
+     * Builds the hierarchy of the scene geometries by a given build method, or loads it
+     * from a cache directory (see {@link geometries.BvhCache})
+     *
+     * @param method    the build method
+     * @param directory the cache directory
+     * @return the build metrics
+     * @throws IOException on I/O error of the cache
+     */
+    public BvhBuilder.Metrics createHierarchy(BvhBuilder.Method method, Path directory) throws IOException {
+        return scene.geometries.createHierarchy(method, directory);
+    }
 }
@@ -6,6 +6,8 @@ package renderer;
 public enum RayTracerType {
    /** Simple (basic) ray tracer */
    SIMPLE,
-   /** Ray tracer using regular grid */
-   GRID
+   /** Ray tracer using a regular grid whose dense cells are subdivided */
+   GRID,
+   /** Ray tracer using a k-d tree built by the surface area heuristic */
+   KDTREE
 }
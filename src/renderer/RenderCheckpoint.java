@@ -0,0 +1,196 @@
+package renderer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Memory-mapped checkpoint of a tiled rendering. The file holds a header, a
+ * completion flag per tile and the linear RGB components of all the pixels.<br>
+ * A finished tile is copied into the mapped file and then flagged, so saving it
+ * costs only a memory copy - the operating system writes the pages back, and
+ * {@link #force()} is called periodically to bound what may be lost on a crash.
+ * A rendering resumed from the checkpoint restores the finished tiles and
+ * renders only the missing ones.<br>
+ * Large images are mapped by several segments of whole pixel rows, since a
+ * single mapping is limited to 2GB.
+ */
+final class RenderCheckpoint implements Closeable {
+   /** File magic number - "RCKP" */
+   private static final int MAGIC         = 0x52434B50;
+   /** File format version */
+   private static final int VERSION       = 1;
+   /** Header size - magic, version, nX, nY, tile size */
+   private static final int HEADER_SIZE   = 5 * Integer.BYTES;
+   /** Bytes of a pixel - 3 float components */
+   private static final int PIXEL_SIZE    = 3 * Float.BYTES;
+   /** Maximal size of a data segment mapping */
+   private static final int SEGMENT_LIMIT = 1 << 30;
+
+   /** Horizontal resolution of the image */
+   private final int                nX;
+   /** Vertical resolution of the image */
+   private final int                nY;
+   /** Tile width and height in pixels */
+   private final int                tileSize;
+   /** Amount of tiles in a row of tiles */
+   private final int                tilesX;
+   /** Total amount of tiles */
+   private final int                tiles;
+   /** Pixel rows in a data segment */
+   private final int                rowsPerSegment;
+   /** The file channel */
+   private final FileChannel        channel;
+   /** Mapping of the header and the tile flags */
+   private final MappedByteBuffer   flags;
+   /** Mappings of the pixel data segments */
+   private final MappedByteBuffer[] segments;
+
+   /**
+    * Opens or creates a checkpoint file
+    * @param  file        the checkpoint file
+    * @param  nX          the horizontal resolution
+    * @param  nY          the vertical resolution
+    * @param  tileSize    the tile width and height in pixels
+    * @param  resume      true to keep the finished tiles of an existing checkpoint,
+    *                     false to start a new one
+    * @throws IOException on I/O error
+    * @throws IllegalStateException if the existing checkpoint doesn't match the
+    *                               resolution or the tile size
+    */
+   RenderCheckpoint(Path file, int nX, int nY, int tileSize, boolean resume) throws IOException {
+      this.nX        = nX;
+      this.nY        = nY;
+      this.tileSize  = tileSize;
+      tilesX         = (nX + tileSize - 1) / tileSize;
+      tiles          = tilesX * ((nY + tileSize - 1) / tileSize);
+      rowsPerSegment = Math.max(1, SEGMENT_LIMIT / (nX * PIXEL_SIZE));
+
+      boolean existing = resume && Files.exists(file);
+      if (!existing) Files.deleteIfExists(file);
+      channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      try {
+         int flagsSize = (HEADER_SIZE + tiles + 3) & ~3;
+         flags = channel.map(FileChannel.MapMode.READ_WRITE, 0, flagsSize);
+         if (existing) checkHeader(file);
+         else flags.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, nX).putInt(12, nY).putInt(16, tileSize);
+
+         segments = new MappedByteBuffer[(nY + rowsPerSegment - 1) / rowsPerSegment];
+         for (int i = 0; i < segments.length; ++i) {
+            int rows = Math.min(rowsPerSegment, nY - i * rowsPerSegment);
+            segments[i] = channel.map(FileChannel.MapMode.READ_WRITE,
+                                      flagsSize + (long) i * rowsPerSegment * nX * PIXEL_SIZE,
+                                      (long) rows * nX * PIXEL_SIZE);
+            segments[i].order(ByteOrder.nativeOrder());
+         }
+      } catch (IOException | RuntimeException e) {
+         channel.close();
+         throw e;
+      }
+   }
+
+   /**
+    * Checks that an existing checkpoint matches the rendering
+    * @param file the checkpoint file (for the error message)
+    */
+   private void checkHeader(Path file) {
+      if (flags.getInt(0) != MAGIC || flags.getInt(4) != VERSION)
+         throw new IllegalStateException(file + " is not a render checkpoint");
+      if (flags.getInt(8) != nX || flags.getInt(12) != nY || flags.getInt(16) != tileSize)
+         throw new IllegalStateException("Checkpoint " + file + " doesn't match the resolution or the tile size");
+   }
+
+   /**
+    * Total amount of tiles
+    * @return the amount of tiles
+    */
+   int tiles() { return tiles; }
+
+   /**
+    * Checks whether a tile is finished
+    * @param  tile the tile index
+    * @return      true if the tile is finished
+    */
+   boolean isDone(int tile) { return flags.get(HEADER_SIZE + tile) != 0; }
+
+   /**
+    * Calls an action for each pixel of a tile
+    * @param tile   the tile index
+    * @param action the action receiving pixel column and row
+    */
+   void forEachPixel(int tile, PixelAction action) {
+      int x0 = (tile % tilesX) * tileSize, y0 = (tile / tilesX) * tileSize;
+      for (int y = y0; y < Math.min(y0 + tileSize, nY); ++y)
+         for (int x = x0; x < Math.min(x0 + tileSize, nX); ++x)
+            action.apply(x, y);
+   }
+
+   /**
+    * Action on a pixel of a tile
+    */
+   @FunctionalInterface
+   interface PixelAction {
+      /**
+       * Applies the action on a pixel
+       * @param x the pixel column
+       * @param y the pixel row
+       */
+      void apply(int x, int y);
+   }
+
+   /**
+    * Saves a finished tile - copies its pixels into the mapped file and flags it
+    * @param tile        the tile index
+    * @param frameBuffer the frame buffer holding the tile
+    */
+   void saveTile(int tile, FrameBuffer frameBuffer) {
+      forEachPixel(tile, (x, y) -> {
+         MappedByteBuffer segment = segments[y / rowsPerSegment];
+         int              offset  = ((y % rowsPerSegment) * nX + x) * PIXEL_SIZE;
+         segment.putFloat(offset, frameBuffer.component(x, y, 0));
+         segment.putFloat(offset + Float.BYTES, frameBuffer.component(x, y, 1));
+         segment.putFloat(offset + 2 * Float.BYTES, frameBuffer.component(x, y, 2));
+      });
+      flags.put(HEADER_SIZE + tile, (byte) 1);
+   }
+
+   /**
+    * Restores the pixels of all the finished tiles into a frame buffer
+    * @param  frameBuffer the frame buffer
+    * @return             the amount of restored tiles
+    */
+   int restore(FrameBuffer frameBuffer) {
+      int restored = 0;
+      for (int tile = 0; tile < tiles; ++tile) {
+         if (!isDone(tile)) continue;
+         forEachPixel(tile, (x, y) -> {
+            MappedByteBuffer segment = segments[y / rowsPerSegment];
+            int              offset  = ((y % rowsPerSegment) * nX + x) * PIXEL_SIZE;
+            frameBuffer.setPixel(x, y, segment.getFloat(offset), segment.getFloat(offset + Float.BYTES),
+                                 segment.getFloat(offset + 2 * Float.BYTES));
+         });
+         ++restored;
+      }
+      return restored;
+   }
+
+   /**
+    * Forces the mapped checkpoint to be written to the storage
+    */
+   synchronized void force() {
+      for (MappedByteBuffer segment : segments)
+         segment.force();
+      flags.force();
+   }
+
+   @Override
+   public void close() throws IOException {
+      force();
+      channel.close();
+   }
+}
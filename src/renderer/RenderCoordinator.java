@@ -0,0 +1,296 @@
+package renderer;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Coordinator of distributed rendering - leases the tiles of an image to
+ * {@link RenderWorker} processes connected over TCP and assembles their pixels
+ * into the frame buffer.<br>
+ * The protocol (big endian, by data streams) on each connection:
+ * <ol>
+ * <li>coordinator: job length and the serialized job (see {@link Camera#toJob()})</li>
+ * <li>worker: the job length, once the job is loaded</li>
+ * <li>coordinator: lease - tile index, left column, top row, width and height</li>
+ * <li>worker: tile index and the RGB float components of the tile pixels row by row</li>
+ * <li>steps 3-4 are repeated until the coordinator sends tile index -1</li>
+ * </ol>
+ * Each connection is served by its own thread holding at most one lease. If the
+ * worker disconnects or doesn't return the tile within the lease timeout, the
+ * connection is dropped and the tile returns to the pending tiles to be leased
+ * to another worker. The lease timeout applies once the worker has loaded the job,
+ * so loading a heavy scene doesn't count against its first tile. If all the workers
+ * are lost and no other worker connects for a while, the rendering fails.
+ */
+final class RenderCoordinator implements Closeable {
+   /** Tile index sent to a worker when there are no more tiles */
+   static final int          NO_TILE     = -1;
+   /** Polling interval of waiting for tiles and for the rendering end in milliseconds */
+   private static final long POLL_MILLIS = 100;
+   /** Time of waiting for a worker after all the workers were lost in milliseconds */
+   static final long         WORKER_WAIT_MILLIS = 30_000;
+
+   /** The listening socket */
+   private final ServerSocket  server;
+   /** The serialized rendering job */
+   private final byte[]        job;
+   /** Horizontal resolution of the image */
+   private final int           nX;
+   /** Vertical resolution of the image */
+   private final int           nY;
+   /** Tile width and height in pixels */
+   private final int           tileSize;
+   /** Amount of tiles in a row of tiles */
+   private final int           tilesX;
+   /** Total amount of tiles */
+   private final int           tiles;
+   /** Lease timeout in milliseconds, 0 for unlimited time */
+   private final int           leaseMillis;
+   /** Time of waiting for a worker after all the workers were lost in milliseconds */
+   private final long          workerWaitMillis;
+   /** Tiles waiting to be leased */
+   private final LinkedBlockingQueue<Integer> pending = new LinkedBlockingQueue<>();
+   /** Finished tiles flags */
+   private final boolean[]     done;
+   /** Amount of finished tiles */
+   private int                 doneCount   = 0;
+   /** Amount of tiles leased again after a worker was lost */
+   private int                 released    = 0;
+   /** Amount of connected workers */
+   private int                 workers     = 0;
+   /** Time all the connected workers were lost by {@link System#nanoTime()}, 0 while a worker is connected */
+   private long                lostTime    = 0;
+   /** Open worker connections - closed when the rendering ends */
+   private final List<Socket>  connections = new ArrayList<>();
+   /** The frame buffer being assembled */
+   private FrameBuffer         frameBuffer;
+
+   /**
+    * Opens the coordinator's listening socket
+    * @param  port         the TCP port
+    * @param  job          the serialized rendering job
+    * @param  nX           the horizontal resolution
+    * @param  nY           the vertical resolution
+    * @param  tileSize     the tile width and height in pixels
+    * @param  leaseTimeout time limit of rendering a tile by a worker in seconds,
+    *                      0 for unlimited time
+    * @throws IOException  if the port can't be listened
+    */
+   RenderCoordinator(int port, byte[] job, int nX, int nY, int tileSize, double leaseTimeout) throws IOException {
+      this(port, job, nX, nY, tileSize, leaseTimeout, WORKER_WAIT_MILLIS);
+   }
+
+   /**
+    * Opens the coordinator's listening socket
+    * @param  port             the TCP port
+    * @param  job              the serialized rendering job
+    * @param  nX               the horizontal resolution
+    * @param  nY               the vertical resolution
+    * @param  tileSize         the tile width and height in pixels
+    * @param  leaseTimeout     time limit of rendering a tile by a worker in seconds,
+    *                          0 for unlimited time
+    * @param  workerWaitMillis time of waiting for a worker after all the workers were
+    *                          lost in milliseconds
+    * @throws IOException      if the port can't be listened
+    */
+   RenderCoordinator(int port, byte[] job, int nX, int nY, int tileSize, double leaseTimeout,
+                     long workerWaitMillis) throws IOException {
+      this.job      = job;
+      this.nX       = nX;
+      this.nY       = nY;
+      this.tileSize = tileSize;
+      tilesX        = (nX + tileSize - 1) / tileSize;
+      tiles         = tilesX * ((nY + tileSize - 1) / tileSize);
+      leaseMillis   = (int) Math.ceil(leaseTimeout * 1000);
+      this.workerWaitMillis = workerWaitMillis;
+      done          = new boolean[tiles];
+      server        = new ServerSocket(port);
+   }
+
+   /**
+    * Renders the image by the connecting workers - returns when all the tiles are
+    * assembled into the frame buffer or when stop is requested
+    * @param  frameBuffer the frame buffer of the image
+    * @param  stop        the stop request flag supplier
+    * @return             the amount of tiles leased again after a worker was lost
+    * @throws IOException if all the workers were lost and no worker connected within
+    *                     the waiting time, while tiles are still pending
+    */
+   int render(FrameBuffer frameBuffer, BooleanSupplier stop) throws IOException {
+      this.frameBuffer = frameBuffer;
+      for (int tile = 0; tile < tiles; ++tile)
+         pending.add(tile);
+
+      Thread acceptor = new Thread(this::acceptWorkers, "render coordinator");
+      acceptor.setDaemon(true);
+      acceptor.start();
+      synchronized (this) {
+         try {
+            while (doneCount < tiles && !stop.getAsBoolean()) {
+               if (lostTime != 0 && System.nanoTime() - lostTime > workerWaitMillis * 1_000_000)
+                  throw new IOException("All the workers are lost, " + (tiles - doneCount)
+                                        + " tiles are not rendered");
+               wait(POLL_MILLIS);
+            }
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }
+         return released;
+      }
+   }
+
+   /**
+    * Accepts the worker connections (until the listening socket is closed) and
+    * starts a serving thread for each one
+    */
+   private void acceptWorkers() {
+      try {
+         while (true) {
+            Socket socket = server.accept();
+            synchronized (connections) {
+               connections.add(socket);
+            }
+            Thread thread = new Thread(() -> serve(socket), "render worker " + socket.getRemoteSocketAddress());
+            thread.setDaemon(true);
+            thread.start();
+         }
+      } catch (IOException ignored) {
+         // the listening socket is closed at the end of the rendering
+      }
+   }
+
+   /**
+    * Serves a worker connection - sends the job and leases tiles until all the
+    * tiles are done or the worker is lost
+    * @param socket the worker connection
+    */
+   private void serve(Socket socket) {
+      int lease = NO_TILE;
+      workerConnected();
+      try (socket) {
+         DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+         DataInputStream  in  = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+         out.writeInt(job.length);
+         out.write(job);
+         out.flush();
+         // loading the job takes as long as it takes - the lease timeout is of the tiles only
+         if (in.readInt() != job.length) throw new IOException("Worker failed to load the job");
+         socket.setSoTimeout(leaseMillis);
+         while ((lease = nextTile()) != NO_TILE) {
+            int x0 = (lease % tilesX) * tileSize, y0 = (lease / tilesX) * tileSize;
+            int width = Math.min(tileSize, nX - x0), height = Math.min(tileSize, nY - y0);
+            out.writeInt(lease);
+            out.writeInt(x0);
+            out.writeInt(y0);
+            out.writeInt(width);
+            out.writeInt(height);
+            out.flush();
+
+            if (in.readInt() != lease) throw new IOException("Worker returned a wrong tile");
+            float[] rgb = new float[3 * width * height];
+            for (int i = 0; i < rgb.length; ++i)
+               rgb[i] = in.readFloat();
+            store(lease, x0, y0, width, height, rgb);
+            lease = NO_TILE;
+         }
+         out.writeInt(NO_TILE);
+         out.flush();
+      } catch (IOException e) {
+         // the worker is lost - its tile is leased to another one
+         if (lease != NO_TILE) release(lease);
+      } finally {
+         workerLost();
+      }
+   }
+
+   /**
+    * Counts a connected worker
+    */
+   private synchronized void workerConnected() {
+      ++workers;
+      lostTime = 0;
+   }
+
+   /**
+    * Counts a lost (or finished) worker, and notes the time if no worker is left
+    */
+   private synchronized void workerLost() {
+      if (--workers == 0) lostTime = System.nanoTime();
+   }
+
+   /**
+    * Takes the next tile to lease, waiting while all the remaining tiles are leased
+    * @return the tile index, or {@link #NO_TILE} if all the tiles are done
+    * @throws SocketException if the rendering was stopped
+    */
+   private int nextTile() throws SocketException {
+      try {
+         while (!finished()) {
+            Integer tile = pending.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            if (tile != null) return tile;
+            if (server.isClosed()) throw new SocketException("Rendering is stopped");
+         }
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new SocketException("Interrupted");
+      }
+      return NO_TILE;
+   }
+
+   /**
+    * Checks whether all the tiles are done
+    * @return true if all the tiles are done
+    */
+   private synchronized boolean finished() { return doneCount == tiles; }
+
+   /**
+    * Returns a lost worker's tile to the pending tiles
+    * @param tile the tile index
+    */
+   private synchronized void release(int tile) {
+      if (done[tile]) return;
+      pending.add(tile);
+      ++released;
+   }
+
+   /**
+    * Stores the pixels of a rendered tile into the frame buffer (a tile rendered
+    * twice after a lost lease is stored once)
+    * @param tile   the tile index
+    * @param x0     the tile's left pixel column
+    * @param y0     the tile's top pixel row
+    * @param width  the tile width in pixels
+    * @param height the tile height in pixels
+    * @param rgb    RGB components of the tile pixels, row by row
+    */
+   private synchronized void store(int tile, int x0, int y0, int width, int height, float[] rgb) {
+      if (done[tile]) return;
+      for (int i = 0; i < height; ++i)
+         for (int j = 0; j < width; ++j) {
+            int index = 3 * (i * width + j);
+            frameBuffer.setPixel(x0 + j, y0 + i, rgb[index], rgb[index + 1], rgb[index + 2]);
+         }
+      done[tile] = true;
+      if (++doneCount == tiles) notifyAll();
+   }
+
+   /**
+    * Stops listening and drops all the worker connections
+    * @throws IOException on I/O error
+    */
+   @Override
+   public void close() throws IOException {
+      server.close();
+      synchronized (connections) {
+         for (Socket socket : connections)
+            socket.close();
+      }
+   }
+}
@@ -0,0 +1,302 @@
+package renderer;
+
+import geometries.Geometries;
+import geometries.Intersectable;
+
+import java.util.*;
+
+/**
+ * Render statistics collected by a camera while rendering an image.<br>
+ * Each rendering thread counts into its own private RenderStats object (no
+ * synchronization on the hot path), and all of them are merged into the main
+ * object when the rendering is finished. The collected data:
+ * <ul>
+ * <li>amount of traced rays per ray type</li>
+ * <li>intersection tests per geometry class (inner hierarchy nodes are
+ * {@link Geometries})</li>
+ * <li>bounding box tests and rejections</li>
+ * <li>recursion depth histogram of color calculation</li>
+ * <li>time per rendering phase</li>
+ * </ul>
+ * When statistics are disabled no RenderStats object exists and nothing is counted.
+ */
+public class RenderStats implements Intersectable.Observer {
+    /**
+     * Types of the traced rays
+     */
+    public enum RayType {
+        /** Ray from the camera through a pixel */
+        PRIMARY,
+        /** Ray from a surface point towards a light source */
+        SHADOW,
+        /** Reflected ray */
+        REFLECTION,
+        /** Refracted (transparency) ray */
+        REFRACTION
+    }
+
+    /** Amount of rays per ray type */
+    private final long[] rays = new long[RayType.values().length];
+    /** Amount of intersection tests per geometry class */
+    private final Map<Class<?>, long[]> intersectionTests = new HashMap<>();
+    /** Total amount of intersection tests of all the geometry classes */
+    private long totalTests = 0;
+    /** Amount of bounding box tests */
+    private long boxTests = 0;
+    /** Amount of bounding box tests that rejected the ray */
+    private long boxRejections = 0;
+    /** Amount of color calculations per recursion depth (index 1 is the first hit) */
+    private long[] depthHistogram = new long[16];
+    /** Time of each rendering phase in nanoseconds, by insertion order */
+    private final Map<String, Long> phaseNanos = new LinkedHashMap<>();
+
+    /** Per-thread statistics of the rendering threads (main object only) */
+    private final ThreadLocal<RenderStats> local;
+    /** All the per-thread statistics objects created so far (main object only) */
+    private final List<RenderStats> threads;
+
+    /**
+     * Creates main (empty) render statistics object
+     */
+    public RenderStats() {
+        local = ThreadLocal.withInitial(this::newThreadStats);
+        threads = new ArrayList<>();
+    }
+
+    /**
+     * Creates a per-thread statistics object
+     * @param unused differentiates from the public constructor
+     */
+    private RenderStats(boolean unused) {
+        local = null;
+        threads = null;
+    }
+
+    /**
+     * Creates and registers a statistics object for the current thread
+     * @return the new per-thread statistics
+     */
+    private RenderStats newThreadStats() {
+        RenderStats stats = new RenderStats(true);
+        synchronized (threads) {
+            threads.add(stats);
+        }
+        return stats;
+    }
+
+    /**
+     * Returns the statistics object of the current thread, if statistics are collected
+     * @return the per-thread statistics, or null if statistics are disabled
+     */
+    static RenderStats current() {
+        return Intersectable.getObserver() instanceof RenderStats stats ? stats : null;
+    }
+
+    /**
+     * Starts collecting - from now on the intersection tests of the threads attached
+     * by {@link #attach()} (until {@link #detach()}) are counted
+     */
+    void start() {
+        Intersectable.startObserving();
+    }
+
+    /**
+     * Attaches the current thread to this statistics object
+     */
+    void attach() {
+        Intersectable.setObserver(local.get());
+    }
+
+    /**
+     * Detaches the current thread from this statistics object - a pooled rendering
+     * thread must not keep reporting into it when it serves another rendering
+     */
+    void detach() {
+        Intersectable.setObserver(null);
+    }
+
+    /**
+     * Returns the total amount of intersection tests counted so far by the current thread
+     * (the thread must be attached)
+     * @return the amount of tests
+     */
+    long threadTests() {
+        return local.get().totalTests;
+    }
+
+    /**
+     * Stops collecting and merges all the per-thread statistics into this object
+     */
+    void finish() {
+        Intersectable.stopObserving();
+        synchronized (threads) {
+            for (RenderStats stats : threads)
+                merge(stats);
+            threads.clear();
+        }
+    }
+
+    /**
+     * Adds the counters of another statistics object into this one
+     * @param other the statistics to add
+     */
+    private void merge(RenderStats other) {
+        for (int i = 0; i < rays.length; ++i)
+            rays[i] += other.rays[i];
+        other.intersectionTests.forEach((type, count) ->
+                intersectionTests.computeIfAbsent(type, t -> new long[1])[0] += count[0]);
+        totalTests += other.totalTests;
+        boxTests += other.boxTests;
+        boxRejections += other.boxRejections;
+        for (int i = 0; i < other.depthHistogram.length; ++i)
+            if (other.depthHistogram[i] != 0) countDepth(i, other.depthHistogram[i]);
+    }
+
+    /**
+     * Counts a traced ray
+     * @param type the type of the ray
+     */
+    void countRay(RayType type) {
+        ++rays[type.ordinal()];
+    }
+
+    /**
+     * Counts a color calculation at some recursion depth
+     * @param depth the recursion depth (1 for the first hit)
+     */
+    void countDepth(int depth) {
+        countDepth(depth, 1);
+    }
+
+    /**
+     * Adds an amount of color calculations at some recursion depth
+     * @param depth the recursion depth
+     * @param amount the amount to add
+     */
+    private void countDepth(int depth, long amount) {
+        if (depth >= depthHistogram.length)
+            depthHistogram = Arrays.copyOf(depthHistogram, Math.max(depth + 1, depthHistogram.length * 2));
+        depthHistogram[depth] += amount;
+    }
+
+    /**
+     * Records the duration of a rendering phase (accumulated if recorded more than once)
+     * @param phase the name of the phase
+     * @param nanos the duration in nanoseconds
+     */
+    void recordPhase(String phase, long nanos) {
+        phaseNanos.merge(phase, nanos, Long::sum);
+    }
+
+    @Override
+    public void intersectionTested(Intersectable geometry) {
+        intersectionTests.computeIfAbsent(geometry.getClass(), t -> new long[1])[0]++;
+        ++totalTests;
+    }
+
+    @Override
+    public void boxTested(boolean hit) {
+        ++boxTests;
+        if (!hit) ++boxRejections;
+    }
+
+    /**
+     * Returns the amount of traced rays of a type
+     * @param type the ray type
+     * @return the amount of rays
+     */
+    public long getRays(RayType type) {
+        return rays[type.ordinal()];
+    }
+
+    /**
+     * Returns the amount of intersection tests of a geometry class
+     * @param type the geometry class
+     * @return the amount of tests
+     */
+    public long getIntersectionTests(Class<? extends Intersectable> type) {
+        long[] count = intersectionTests.get(type);
+        return count == null ? 0 : count[0];
+    }
+
+    /**
+     * Returns the amount of intersection tests of all the primitives (hierarchy nodes excluded)
+     * @return the amount of tests
+     */
+    public long getPrimitiveTests() {
+        long sum = 0;
+        for (var entry : intersectionTests.entrySet())
+            if (entry.getKey() != Geometries.class) sum += entry.getValue()[0];
+        return sum;
+    }
+
+    /**
+     * Returns the amount of visited hierarchy nodes
+     * @return the amount of nodes
+     */
+    public long getNodesVisited() {
+        return getIntersectionTests(Geometries.class);
+    }
+
+    /**
+     * Returns the amount of bounding box tests
+     * @return the amount of tests
+     */
+    public long getBoxTests() {
+        return boxTests;
+    }
+
+    /**
+     * Returns the amount of bounding box tests that rejected the ray
+     * @return the amount of rejections
+     */
+    public long getBoxRejections() {
+        return boxRejections;
+    }
+
+    /**
+     * Returns the amount of color calculations at some recursion depth
+     * @param depth the recursion depth (1 for the first hit)
+     * @return the amount of color calculations
+     */
+    public long getDepthCount(int depth) {
+        return depth < depthHistogram.length ? depthHistogram[depth] : 0;
+    }
+
+    /**
+     * Returns the duration of a rendering phase
+     * @param phase the name of the phase
+     * @return the duration in nanoseconds, 0 if the phase was not recorded
+     */
+    public long getPhaseNanos(String phase) {
+        return phaseNanos.getOrDefault(phase, 0L);
+    }
+
+    /**
+     * Produces a human-readable report of the statistics
+     * @return the report
+     */
+    public String report() {
+        StringBuilder sb = new StringBuilder("Render statistics\n");
+        sb.append("  rays:\n");
+        for (RayType type : RayType.values())
+            sb.append(String.format("    %-12s %,d%n", type.name().toLowerCase(), getRays(type)));
+        sb.append("  intersection tests:\n");
+        intersectionTests.entrySet().stream()
+                .sorted(Comparator.comparing(e -> e.getKey().getSimpleName()))
+                .forEach(e -> sb.append(String.format("    %-12s %,d%n", e.getKey().getSimpleName(), e.getValue()[0])));
+        sb.append(String.format("  BVH nodes visited: %,d%n", getNodesVisited()));
+        sb.append(String.format("  box tests: %,d (rejected %,d)%n", boxTests, boxRejections));
+        sb.append("  recursion depth:\n");
+        for (int i = 0; i < depthHistogram.length; ++i)
+            if (depthHistogram[i] != 0) sb.append(String.format("    %-12d %,d%n", i, depthHistogram[i]));
+        sb.append("  phases:\n");
+        phaseNanos.forEach((phase, nanos) -> sb.append(String.format("    %-12s %.3f s%n", phase, nanos / 1e9)));
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return report();
+    }
+}
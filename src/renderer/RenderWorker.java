@@ -0,0 +1,109 @@
+package renderer;
+
+import java.io.*;
+import java.net.ConnectException;
+import java.net.Socket;
+import java.net.SocketException;
+
+/**
+ * Worker process of distributed rendering - connects to a coordinator camera (see
+ * {@link Camera.Builder#setDistributed(int, double)}), receives the camera with its
+ * scene, and renders the tiles leased to it until the image is done.<br>
+ * A worker trusts its coordinator - the job is a serialized Java object.<br>
+ * Usage: {@code java renderer.RenderWorker <coordinator host> <port>}
+ */
+public final class RenderWorker {
+   /** Time of retrying to connect to a coordinator that is not listening yet in milliseconds */
+   private static final long CONNECT_MILLIS = 10_000;
+   /** Interval between connection retries in milliseconds */
+   private static final long RETRY_MILLIS   = 100;
+
+   /** The coordinator host */
+   private final String host;
+   /** The coordinator port */
+   private final int    port;
+
+   /**
+    * Creates a worker of a coordinator
+    * @param host the coordinator host name or address
+    * @param port the coordinator port
+    */
+   public RenderWorker(String host, int port) {
+      if (host == null) throw new IllegalArgumentException("Host must not be null");
+      if (port < 1 || port > 0xFFFF) throw new IllegalArgumentException("Port must be in range 1..65535");
+      this.host = host;
+      this.port = port;
+   }
+
+   /**
+    * Connects to the coordinator and renders the leased tiles until the coordinator
+    * has no more tiles or closes the connection
+    * @return             the amount of tiles rendered by the worker
+    * @throws IOException if the coordinator can't be reached or the job is invalid
+    */
+   public int run() throws IOException {
+      try (Socket socket = connect()) {
+         DataInputStream  in  = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+         DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+         byte[]           job = new byte[in.readInt()];
+         in.readFully(job);
+         Camera camera = Camera.fromJob(job);
+         out.writeInt(job.length);
+         out.flush();
+
+         int rendered = 0;
+         try {
+            int tile;
+            while ((tile = in.readInt()) != RenderCoordinator.NO_TILE) {
+               int x0 = in.readInt(), y0 = in.readInt(), width = in.readInt(), height = in.readInt();
+               float[] rgb = new float[3 * width * height];
+               camera.renderTile(x0, y0, width, height, rgb);
+               out.writeInt(tile);
+               for (float component : rgb)
+                  out.writeFloat(component);
+               out.flush();
+               ++rendered;
+            }
+         } catch (EOFException | SocketException e) {
+            // the coordinator has finished (or stopped) the image and dropped the connection
+         }
+         return rendered;
+      }
+   }
+
+   /**
+    * Connects to the coordinator, retrying for a while if it is not listening yet
+    * @return             the connection
+    * @throws IOException if the coordinator can't be reached
+    */
+   private Socket connect() throws IOException {
+      long deadline = System.currentTimeMillis() + CONNECT_MILLIS;
+      while (true) {
+         try {
+            return new Socket(host, port);
+         } catch (ConnectException e) {
+            if (System.currentTimeMillis() > deadline) throw e;
+            try {
+               Thread.sleep(RETRY_MILLIS);
+            } catch (InterruptedException ie) {
+               Thread.currentThread().interrupt();
+               throw e;
+            }
+         }
+      }
+   }
+
+   /**
+    * Runs a worker process
+    * @param args the coordinator host and port
+    * @throws IOException if the coordinator can't be reached or the job is invalid
+    */
+   public static void main(String[] args) throws IOException {
+      if (args.length != 2) {
+         System.err.println("Usage: java renderer.RenderWorker <coordinator host> <port>");
+         System.exit(1);
+      }
+      int rendered = new RenderWorker(args[0], Integer.parseInt(args[1])).run();
+      System.out.println("Rendered " + rendered + " tiles");
+   }
+}
@@ -0,0 +1,79 @@
+package renderer;
+
+import geometries.Intersectable.Intersection;
+import lighting.LightSample;
+import lighting.LightSource;
+import primitives.*;
+
+import static primitives.Util.alignZero;
+import static primitives.Util.isZero;
+
+/**
+ * The shading state of a hit, built once per hit and reused for all the light sources.<br>
+ * The normal, the view direction and the material of the hit are calculated once, and
+ * each light source is sampled once (direction, distance and intensity together) when it
+ * is set by {@link #setLightSource(LightSource)}.
+ */
+final class ShadingContext {
+    /** The shaded intersection */
+    final Intersection intersection;
+    /** The hit point */
+    final Point point;
+    /** The normal of the geometry at the hit point */
+    final Vector normal;
+    /** The direction of the ray that hit the point */
+    final Vector direction;
+    /** The dot product of the normal and the ray direction */
+    final double dxn;
+    /** The material of the hit geometry */
+    final Material material;
+
+    /** The current light source */
+    LightSource lightSource;
+    /** The sample of the current light source at the hit point */
+    LightSample light;
+    /** The dot product of the current light direction and the normal */
+    double ldxn;
+
+    /**
+     * Creates the context of a preprocessed intersection
+     *
+     * @param intersection the intersection with its normal and ray direction
+     */
+    private ShadingContext(Intersection intersection) {
+        this.intersection = intersection;
+        this.point = intersection.point;
+        this.normal = intersection.normal;
+        this.direction = intersection.direction;
+        this.dxn = intersection.dxn;
+        this.material = intersection.material;
+    }
+
+    /**
+     * Creates the shading context of a hit, calculating the normal at the hit point once.
+     * The normal and the ray direction are stored in the intersection as well.
+     *
+     * @param intersection the hit
+     * @param direction    the direction of the ray that hit the point
+     * @return the context, or null if the ray is tangent to the surface at the hit point
+     */
+    static ShadingContext of(Intersection intersection, Vector direction) {
+        intersection.direction = direction;
+        intersection.normal = intersection.geometry.getNormal(intersection.point);
+        intersection.dxn = intersection.normal.dotProduct(direction);
+        return isZero(intersection.dxn) ? null : new ShadingContext(intersection);
+    }
+
+    /**
+     * Sets the current light source and samples it at the hit point
+     *
+     * @param lightSource the light source
+     * @return true if the light is on the side of the surface seen by the ray
+     */
+    boolean setLightSource(LightSource lightSource) {
+        this.lightSource = lightSource;
+        light = lightSource.sample(point);
+        ldxn = light.direction().dotProduct(normal);
+        return alignZero(ldxn * dxn) > 0;
+    }
+}
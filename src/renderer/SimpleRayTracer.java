@@ -5,8 +5,11 @@ import renderer.SoftShadowsUtil;
 import scene.Scene;
 import primitives.*;
 
+import java.io.Serial;
 import java.util.List;
+import geometries.HitRecord;
 import geometries.Intersectable.Intersection;
+import renderer.RenderStats.RayType;
 
 import static primitives.Util.*;
 import static renderer.SoftShadowsUtil.generateBeamToArea;
@@ -16,9 +19,14 @@ import static renderer.SoftShadowsUtil.generateBeamToArea;
  * Calculates color at intersection points using ambient, diffusive, and specular lighting.
  */
 public class SimpleRayTracer extends RayTracerBase {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
     private static final int MAX_CALC_COLOR_LEVEL = 10;
     private static final double MIN_CALC_COLOR_K = 0.001;
     private static final Double3 INITIAL_K = Double3.ONE;
+    /** Reusable record of the closest hit of each rendering thread */
+    private static final ThreadLocal<HitRecord> HIT_RECORD = ThreadLocal.withInitial(HitRecord::new);
     // Number of samples for soft shadows MP1
     private static int NUM_SAMPLES = 200;
     // Flag to enable soft shadows MP1
@@ -42,21 +50,21 @@ public class SimpleRayTracer extends RayTracerBase {
      * Checks if the intersection point is unshaded by any geometry.
      * This method is used to determine if the intersection point is in shadow.
      *
-     * @param intersection The intersection data
+     * @param context The shading context with the current light source
      * @return True if the intersection point is unshaded, false otherwise
      */
-    private boolean unshaded(Intersection intersection) {
-        Vector pointToLight = intersection.lightDirection.scale(-1);
-        Ray shadowRay = new Ray(intersection.point, pointToLight, intersection.normal);
+    private boolean unshaded(ShadingContext context) {
+        Vector pointToLight = context.light.direction().scale(-1);
+        Ray shadowRay = new Ray(context.point, pointToLight, context.normal);
         var shadowIntersections = scene.geometries.findIntersections(shadowRay);
-        double lightDistance = intersection.lightSource.getDistance(intersection.point);
+        double lightDistance = context.light.distance();
         if (shadowIntersections == null) {
             // No intersections with other geometries, the point is unshaded
             return true;
         }
         for (Point shadowIntersection : shadowIntersections) {
             // Check if the intersection point is closer than the light source
-            if (shadowIntersection.distance(intersection.point) < lightDistance) {
+            if (shadowIntersection.distance(context.point) < lightDistance) {
                 return false; // The point is in shadow
             }
         }
@@ -67,22 +75,23 @@ public class SimpleRayTracer extends RayTracerBase {
      * Calculates the transparency factor (ktr) for the intersection point.
      * Determines how much light passes through transparent objects between the point and the light source.
      *
-     * @param intersection The intersection data
+     * @param context The shading context with the current light source
      * @return The transparency factor as Double3
      */
-    private Double3 transparency(Intersection intersection) {
-        Vector pointToLight = intersection.lightDirection.scale(-1);
-        Ray shadowRay = new Ray(intersection.point, pointToLight, intersection.normal);
+    private Double3 transparency(ShadingContext context) {
+        Vector pointToLight = context.light.direction().scale(-1);
+        Ray shadowRay = new Ray(context.point, pointToLight, context.normal);
+        countRay(RayType.SHADOW);
         var shadowIntersections = scene.geometries.calculateIntersections(shadowRay);
         Double3 ktr = Double3.ONE;
-        double lightDistance = intersection.lightSource.getDistance(intersection.point);
+        double lightDistance = context.light.distance();
         if (shadowIntersections == null) {
             // No intersections with other geometries, the point is unshaded
             return ktr;
         }
         for (Intersection shadowIntersection : shadowIntersections) {
             // Check if the intersection point is closer than the light source
-            if (shadowIntersection.point.distance(intersection.point) < lightDistance) {
+            if (shadowIntersection.point.distance(context.point) < lightDistance) {
                 ktr = ktr.product(shadowIntersection.material.kT);
                 if (ktr.lowerThan(MIN_CALC_COLOR_K))
                     return Double3.ZERO; // The point is in shadow
@@ -95,30 +104,31 @@ public class SimpleRayTracer extends RayTracerBase {
      * Calculates the transparency factor (ktr) for the intersection point using soft shadows.
      * This method samples multiple directions to simulate soft shadows.
      *
-     * @param intersection The intersection data
+     * @param context The shading context with the current light source
      * @param numSamples The number of samples to take for soft shadow calculation
      * @return The average transparency factor as Double3
      */
-    private Double3 softTransparency(Intersection intersection, int numSamples) {
-        if (intersection.point == null) {
+    private Double3 softTransparency(ShadingContext context, int numSamples) {
+        if (context.point == null) {
             return Double3.ZERO; // No intersection point, return zero transparency
         }
-        if(intersection.lightSource.getRandomPointOnSurface() == null) {
+        if(context.lightSource.getRandomPointOnSurface() == null) {
             // If the light source does not have a surface, use the standard transparency calculation
-            return transparency(intersection);
+            return transparency(context);
         }
-        List<Vector> beam = generateBeamToArea(intersection.lightSource, intersection.point, numSamples);
+        List<Vector> beam = generateBeamToArea(context.lightSource, context.point, numSamples);
         Double3 ktrSum = Double3.ZERO;
+        double lightDistance = context.light.distance();
 
         for (Vector dir : beam) {
-            Ray shadowRay = new Ray(intersection.point, dir, intersection.normal);
+            Ray shadowRay = new Ray(context.point, dir, context.normal);
+            countRay(RayType.SHADOW);
             var intersections = scene.geometries.calculateIntersections(shadowRay);
             Double3 ktr = Double3.ONE;
 
             if (intersections != null) {
                 for (Intersection shadowIntersection : intersections) {
-                    double lightDistance = intersection.lightSource.getDistance(intersection.point);
-                    if (shadowIntersection.point.distance(intersection.point) < lightDistance) {
+                    if (shadowIntersection.point.distance(context.point) < lightDistance) {
                         ktr = ktr.product(shadowIntersection.material.kT);
                         if (ktr.lowerThan(MIN_CALC_COLOR_K)) break;
                     }
@@ -138,36 +148,34 @@ public class SimpleRayTracer extends RayTracerBase {
      * @return The closest intersection point, or null if no intersection is found
      */
     private Intersection findClosestIntersection(Ray ray){
-        List<Intersection> intersections = scene.geometries.calculateIntersections(ray);
-        if (intersections == null || intersections.isEmpty()) {
-            return null; // No intersection found
-        }
-        return ray.findClosestIntersection(intersections); // Return the closest intersection
+        HitRecord hit = HIT_RECORD.get().reset();
+        scene.geometries.closestHit(ray, hit);
+        return hit.toIntersection(ray); // Only the closest hit becomes an intersection
     }
 
     /**
      * Constructs a reflected ray at the intersection point.
      *
-     * @param intersection The intersection data
+     * @param context The shading context of the intersection
      * @return The reflected ray
      */
-    private Ray constructReflectedRay(Intersection intersection) {
-        Vector v = intersection.direction;
-        Vector n = intersection.normal;
-        double nv = n.dotProduct(v);
+    private Ray constructReflectedRay(ShadingContext context) {
+        Vector v = context.direction;
+        Vector n = context.normal;
+        double nv = context.dxn;
         if (isZero(nv)) return null;
         Vector r = v.subtract(n.scale(2 * nv)).normalize();
-        return new Ray(intersection.point, r, n);
+        return new Ray(context.point, r, n);
     }
 
     /**
      * Constructs a refracted (transparency) ray at the intersection point.
      *
-     * @param intersection The intersection data
+     * @param context The shading context of the intersection
      * @return The refracted ray
      */
-    private Ray constructRefractedRay(Intersection intersection) {
-        return new Ray(intersection.point, intersection.direction, intersection.normal);
+    private Ray constructRefractedRay(ShadingContext context) {
+        return new Ray(context.point, context.direction, context.normal);
     }
 
     /**
@@ -179,6 +187,7 @@ public class SimpleRayTracer extends RayTracerBase {
      */
     @Override
     public Color traceRay(Ray ray) {
+        countRay(RayType.PRIMARY);
         // Get the closest intersection point
         Intersection closestPoint = findClosestIntersection(ray);
         return calcColor(closestPoint, ray);
@@ -192,117 +201,96 @@ public class SimpleRayTracer extends RayTracerBase {
      * @return The computed color at the intersection
      */
     private Color calcColor(Intersection intersection, Ray ray) {
-        if (intersection == null || !preprocessIntersection(intersection, ray.getDirection())) {
+        ShadingContext context = intersection == null ? null : ShadingContext.of(intersection, ray.getDirection());
+        if (context == null) {
             // If the ray is inside the geometry, return the ambient light color
             return Color.BLACK;
         }
-        return calcColor(intersection, MAX_CALC_COLOR_LEVEL, INITIAL_K)
-                .add(scene.ambientLight.getIntensity().scale(intersection.geometry.getMaterial().kA));
+        return calcColor(context, MAX_CALC_COLOR_LEVEL, INITIAL_K)
+                .add(scene.ambientLight.getIntensity().scale(context.material.kA));
     }
 
     /**
      * Recursively calculates the color at the intersection, including global effects.
      *
-     * @param intersection The intersection data
+     * @param context The shading context of the intersection
      * @param level The recursion level
      * @param k The accumulated attenuation factor
      * @return The computed color at the intersection
      */
-    private Color calcColor(Intersection intersection, int level, Double3 k) {
-        Color color = calcColorLocalEffects(intersection, k);
+    private Color calcColor(ShadingContext context, int level, Double3 k) {
+        RenderStats stats = RenderStats.current();
+        if (stats != null) stats.countDepth(MAX_CALC_COLOR_LEVEL - level + 1);
+        Color color = calcColorLocalEffects(context, k);
         if (level == 1) return color;
-        return color.add(calcGlobalEffects(intersection, level, k));
+        return color.add(calcGlobalEffects(context, level, k));
     }
 
     /**
      * Calculates the global lighting effects (reflection and refraction) at the intersection.
      *
-     * @param intersection The intersection data
+     * @param context The shading context of the intersection
      * @param level The recursion level
      * @param k The accumulated attenuation factor
      * @return The color contribution from global effects
      */
-    private Color calcGlobalEffects(Intersection intersection, int level, Double3 k) {
-        return calcGlobalEffect(constructRefractedRay(intersection),
-                level, k, intersection.material.kT)
-                .add(calcGlobalEffect(constructReflectedRay(intersection),
-                        level, k, intersection.material.kR));
+    private Color calcGlobalEffects(ShadingContext context, int level, Double3 k) {
+        return calcGlobalEffect(constructRefractedRay(context), RayType.REFRACTION,
+                level, k, context.material.kT)
+                .add(calcGlobalEffect(constructReflectedRay(context), RayType.REFLECTION,
+                        level, k, context.material.kR));
     }
 
     /**
      * Calculates the color contribution from a single global effect (reflection or refraction).
      *
      * @param ray The reflected or refracted ray
+     * @param type The type of the ray (for render statistics)
      * @param level The recursion level
      * @param k The accumulated attenuation factor
      * @param kx The reflection or refraction coefficient
      * @return The color contribution from the effect
      */
-    private Color calcGlobalEffect(Ray ray, int level, Double3 k, Double3 kx) {
+    private Color calcGlobalEffect(Ray ray, RayType type, int level, Double3 k, Double3 kx) {
         Double3 kkx = k.product(kx);
         if (kkx.lowerThan(MIN_CALC_COLOR_K)) return Color.BLACK;
+        countRay(type);
         Intersection intersection = findClosestIntersection(ray);
         if (intersection == null) return scene.backgroundColor.scale(kx);
-        return preprocessIntersection(intersection, ray.getDirection())
-                ? calcColor(intersection, level - 1, kkx).scale(kx) : Color.BLACK;
-    }
-
-    /**
-     * Preprocesses the intersection by updating its normal and direction.
-     * Determines if the ray is inside the geometry.
-     *
-     * @param intersection The intersection to preprocess
-     * @param direction The direction of the incoming ray
-     * @return True if the ray is outside the geometry, false otherwise
-     */
-    public boolean preprocessIntersection(Intersection intersection, Vector direction) {
-        intersection.direction = direction;
-        intersection.normal = intersection.geometry.getNormal(intersection.point);
-        intersection.dxn = intersection.normal.dotProduct(direction);
-        if (isZero(intersection.dxn)) {
-            // If the ray is inside the geometry, reverse the normal
-            return false;
-        }
-        return true;
+        ShadingContext context = ShadingContext.of(intersection, ray.getDirection());
+        return context != null ? calcColor(context, level - 1, kkx).scale(kx) : Color.BLACK;
     }
 
     /**
-     * Sets the light source and computes the light direction for the intersection.
-     * Checks if the light is on the correct side of the surface.
+     * Counts a traced ray in the render statistics of the current thread, if collected
      *
-     * @param intersection The intersection to update
-     * @param lightSource The light source being considered
-     * @return True if the light contributes to the intersection, false otherwise
+     * @param type The type of the ray
      */
-    public boolean setLightSource(Intersection intersection, LightSource lightSource) {
-        intersection.lightSource = lightSource;
-        intersection.lightDirection = lightSource.getL(intersection.point);
-
-        intersection.ldxn = intersection.lightDirection.dotProduct(intersection.geometry.getNormal(intersection.point));
-
-        return (alignZero(intersection.ldxn * intersection.dxn) > 0);
+    private static void countRay(RayType type) {
+        RenderStats stats = RenderStats.current();
+        if (stats != null) stats.countRay(type);
     }
 
     /**
      * Calculates the local lighting effects (diffusive and specular) at the intersection.
+     * Each light source is sampled once for its direction, distance and intensity.
      *
-     * @param intersection The intersection data
+     * @param context The shading context of the intersection
      * @param k The accumulated attenuation factor
      * @return The color contribution from all light sources
      */
-    private Color calcColorLocalEffects(Intersection intersection, Double3 k) {
-        Material material = intersection.geometry.getMaterial();
-        Color color = intersection.geometry.getEmission();
+    private Color calcColorLocalEffects(ShadingContext context, Double3 k) {
+        Color color = context.intersection.geometry.getEmission();
         for (LightSource lightSource : scene.lights) {
-            if (setLightSource(intersection, lightSource)) {
-                Double3 ktr = softShadowsEnabled ? softTransparency(intersection, NUM_SAMPLES) : transparency(intersection);
+            if (context.setLightSource(lightSource)) {
+                Double3 ktr = softShadowsEnabled ? softTransparency(context, NUM_SAMPLES) : transparency(context);
                 if (ktr.product(k).lowerThan(MIN_CALC_COLOR_K)) {
                     continue; // The point is in shadow
                 }
                 color = color.add(
-                        lightSource.getIntensity(intersection.point).scale(ktr)
-                                .scale(calcDiffusive(intersection)
-                                        .add(calcSpecular(intersection))));
+                        context.light.intensity().scale(ktr)
+                                .scale(calcDiffusive(context)
+                                        .add(calcSpecular(context))));
             }
         }
         return color;
@@ -311,23 +299,23 @@ public class SimpleRayTracer extends RayTracerBase {
     /**
      * Calculates the diffusive reflection component at the intersection.
      *
-     * @param intersection The intersection data
+     * @param context The shading context with the current light source
      * @return The diffusive reflection coefficient
      */
-    private Double3 calcDiffusive(Intersection intersection) {
-        return intersection.geometry.getMaterial().kD.scale(Math.abs(intersection.ldxn));
+    private Double3 calcDiffusive(ShadingContext context) {
+        return context.material.kD.scale(Math.abs(context.ldxn));
     }
 
     /**
      * Calculates the specular reflection component at the intersection.
      *
-     * @param intersection The intersection data
+     * @param context The shading context with the current light source
      * @return The specular reflection coefficient
      */
-    private Double3 calcSpecular(Intersection intersection) {
-        Vector r = intersection.lightDirection.subtract(intersection.normal.scale(2 * intersection.ldxn)).normalize();
-        double rdxn = r.dotProduct(intersection.direction);
-        return intersection.material.kS.scale(Math.pow(Math.max(0, -1 * rdxn), intersection.material.nSh));
+    private Double3 calcSpecular(ShadingContext context) {
+        Vector r = context.light.direction().subtract(context.normal.scale(2 * context.ldxn)).normalize();
+        double rdxn = r.dotProduct(context.direction);
+        return context.material.kS.scale(Math.pow(Math.max(0, -1 * rdxn), context.material.nSh));
     }
 
 }
\ No newline at end of file
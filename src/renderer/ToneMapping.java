@@ -0,0 +1,35 @@
+package renderer;
+
+/**
+ * Tone mapping operators applied when the frame buffer is quantized into an
+ * 8-bit image. Color components are in the range 0..255 for printed white and
+ * may be higher (for lights)
+ */
+public enum ToneMapping {
+   /** Components above 255 are clamped to 255 (no tone mapping) */
+   CLAMP {
+      @Override
+      double map(double component, double white) { return component; }
+   },
+   /**
+    * Extended Reinhard operator - compresses the highlights smoothly so that the
+    * brightest component of the image (the white point) is mapped to 255
+    */
+   REINHARD {
+      @Override
+      double map(double component, double white) {
+         if (white <= 255) return component;
+         double v = component / 255;
+         double w = white / 255;
+         return 255 * v * (1 + v / (w * w)) / (1 + v);
+      }
+   };
+
+   /**
+    * Maps a linear color component into the display range
+    * @param  component the color component
+    * @param  white     the brightest component of the image
+    * @return           the mapped component (quantized and clamped by the caller)
+    */
+   abstract double map(double component, double white);
+}
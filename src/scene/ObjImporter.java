@@ -0,0 +1,456 @@
+package scene;
+
+import geometries.Intersectable;
+import geometries.Mesh;
+import primitives.Color;
+import primitives.Double3;
+import primitives.Material;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Importer of Wavefront OBJ files (with MTL material libraries) into compact
+ * {@link Mesh} geometries - one mesh per material, all sharing one vertex array.<br>
+ * The file is memory-mapped and split at line boundaries into chunks that are
+ * parsed in parallel. The tokenizer works directly on the mapped bytes - numbers
+ * are parsed without creating strings, and vertices and faces go into primitive
+ * arrays - so only material names allocate objects.<br>
+ * Supported: {@code v} (positions), {@code f} (polygons are triangulated as fans,
+ * {@code v/vt/vn} forms and negative relative indices), {@code usemtl} and
+ * {@code mtllib}. Texture coordinates, normals, groups and smoothing are ignored.
+ * From MTL: {@code Ka}, {@code Kd}, {@code Ks}, {@code Ns}, {@code Ke} (emission)
+ * and {@code d}/{@code Tr} (transparency).
+ */
+public final class ObjImporter {
+    /** Target chunk size of parallel parsing in bytes */
+    private static final int CHUNK_BYTES = 1 << 20;
+    /** Powers of 10 for number parsing */
+    private static final double[] POW10 = new double[40];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; ++i) POW10[i] = POW10[i - 1] * 10;
+    }
+
+    /** Don't let anyone instantiate this class. */
+    private ObjImporter() {}
+
+    /**
+     * Result of an import
+     *
+     * @param meshes   the meshes - one per material
+     * @param vertices the amount of vertices
+     * @param faces    the amount of triangles (after triangulation)
+     * @param nanos    the import time in nanoseconds
+     */
+    public record Result(List<Mesh> meshes, int vertices, int faces, long nanos) {}
+
+    /**
+     * Imports an OBJ file and adds its meshes to the scene geometries
+     *
+     * @param scene the scene
+     * @param file  the OBJ file
+     * @return the import result
+     * @throws IOException on I/O error or on malformed file
+     */
+    public static Result importInto(Scene scene, Path file) throws IOException {
+        Result result = load(file);
+        scene.geometries.add(result.meshes().toArray(new Intersectable[0]));
+        return result;
+    }
+
+    /**
+     * Imports an OBJ file
+     *
+     * @param file the OBJ file
+     * @return the import result
+     * @throws IOException on I/O error or on malformed file
+     */
+    public static Result load(Path file) throws IOException {
+        return load(file, (int) Math.max(1, Files.size(file) / CHUNK_BYTES));
+    }
+
+    /**
+     * Imports an OBJ file by the given amount of parallel chunks
+     *
+     * @param file   the OBJ file
+     * @param chunks the amount of chunks
+     * @return the import result
+     * @throws IOException on I/O error or on malformed file
+     */
+    static Result load(Path file, int chunks) throws IOException {
+        long start = System.nanoTime();
+        ByteBuffer data;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) throw new IOException("OBJ file " + file + " is larger than 2GB");
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        int size = data.limit();
+        int[] bounds = new int[chunks + 1];
+        bounds[chunks] = size;
+        for (int k = 1; k < chunks; ++k) {
+            int p = Math.max((int) ((long) size * k / chunks), bounds[k - 1]);
+            while (p > 0 && p < size && data.get(p - 1) != '\n') ++p;
+            bounds[k] = p;
+        }
+        Chunk[] parsed = new Chunk[chunks];
+        IntStream.range(0, chunks).parallel()
+                .forEach(k -> parsed[k] = new Chunk(data, bounds[k], bounds[k + 1]).parse());
+
+        // merge the chunks in the file order
+        int vertexCount = 0;
+        for (Chunk chunk : parsed) vertexCount += chunk.vertexCount / 3;
+        float[] vertices = new float[3 * vertexCount];
+        Map<String, IntArray> faces = new LinkedHashMap<>();
+        Set<String> libraries = new LinkedHashSet<>();
+        String material = "";
+        int base = 0;
+        for (Chunk chunk : parsed) {
+            System.arraycopy(chunk.vertices, 0, vertices, 3 * base, chunk.vertexCount);
+            libraries.addAll(chunk.libraries);
+            int switchIndex = 0;
+            for (int i = 0; i < chunk.indices.size; ++i) {
+                while (switchIndex < chunk.switchFaces.size && chunk.switchFaces.data[switchIndex] * 3 == i)
+                    material = chunk.switchNames.get(switchIndex++);
+                int index = chunk.indices.data[i];
+                if (chunk.relative.get(i)) index += base;
+                if (index < 0 || index >= vertexCount) throw new IOException("Vertex index out of range in " + file);
+                faces.computeIfAbsent(material, name -> new IntArray()).add(index);
+            }
+            while (switchIndex < chunk.switchFaces.size)
+                material = chunk.switchNames.get(switchIndex++);
+            base += chunk.vertexCount / 3;
+        }
+
+        Map<String, MtlEntry> materials = new HashMap<>();
+        Path directory = file.toAbsolutePath().getParent();
+        for (String library : libraries) {
+            Path path = directory.resolve(library);
+            if (Files.exists(path)) readMtl(path, materials);
+        }
+
+        List<Mesh> meshes = new ArrayList<>();
+        int faceCount = 0;
+        for (var entry : faces.entrySet()) {
+            Mesh mesh = new Mesh(vertices, Arrays.copyOf(entry.getValue().data, entry.getValue().size));
+            MtlEntry mtl = materials.get(entry.getKey());
+            if (mtl != null) mesh.setMaterial(mtl.material).setEmission(mtl.emission);
+            meshes.add(mesh);
+            faceCount += mesh.faces();
+        }
+        return new Result(meshes, vertexCount, faceCount, System.nanoTime() - start);
+    }
+
+    /**
+     * Material and emission of an MTL material
+     */
+    private static final class MtlEntry {
+        /** The material */
+        final Material material = new Material();
+        /** The emission */
+        Color emission = Color.BLACK;
+    }
+
+    /**
+     * Reads an MTL material library
+     *
+     * @param file      the MTL file
+     * @param materials the materials by name - the read ones are added
+     * @throws IOException on I/O error
+     */
+    private static void readMtl(Path file, Map<String, MtlEntry> materials) throws IOException {
+        MtlEntry current = null;
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            String[] tokens = line.trim().split("\\s+");
+            if (tokens.length < 2 || tokens[0].startsWith("#")) continue;
+            if (tokens[0].equals("newmtl")) {
+                current = new MtlEntry();
+                materials.put(line.trim().substring(6).trim(), current);
+                continue;
+            }
+            if (current == null) continue;
+            switch (tokens[0]) {
+                case "Ka" -> current.material.setkA(triad(tokens));
+                case "Kd" -> current.material.setkD(triad(tokens));
+                case "Ks" -> current.material.setkS(triad(tokens));
+                case "Ns" -> current.material.setnSh((int) Math.round(Double.parseDouble(tokens[1])));
+                case "Ke" -> {
+                    Double3 emission = triad(tokens);
+                    current.emission = new Color(255 * emission.d1(), 255 * emission.d2(), 255 * emission.d3());
+                }
+                case "d" -> current.material.setkT(1 - Double.parseDouble(tokens[1]));
+                case "Tr" -> current.material.setkT(Double.parseDouble(tokens[1]));
+                default -> { }
+            }
+        }
+    }
+
+    /**
+     * Parses the color triad of an MTL statement (a single value means a gray)
+     *
+     * @param tokens the statement tokens
+     * @return the triad
+     */
+    private static Double3 triad(String[] tokens) {
+        double r = Double.parseDouble(tokens[1]);
+        return tokens.length < 4 ? new Double3(r)
+                : new Double3(r, Double.parseDouble(tokens[2]), Double.parseDouble(tokens[3]));
+    }
+
+    /**
+     * Growable array of ints
+     */
+    private static final class IntArray {
+        /** The elements */
+        int[] data = new int[64];
+        /** Amount of the elements */
+        int size = 0;
+
+        /**
+         * Appends an element
+         *
+         * @param value the element
+         */
+        void add(int value) {
+            if (size == data.length) data = Arrays.copyOf(data, 2 * size);
+            data[size++] = value;
+        }
+    }
+
+    /**
+     * Parsing state and result of a chunk of the file
+     */
+    private static final class Chunk {
+        /** The file data */
+        private final ByteBuffer data;
+        /** Current position */
+        private int position;
+        /** End of the chunk */
+        private final int end;
+
+        /** Vertex coordinates of the chunk */
+        float[] vertices = new float[192];
+        /** Amount of vertex coordinates */
+        int vertexCount = 0;
+        /**
+         * Vertex indices of the triangles - absolute (0-based), or relative to the
+         * chunk's first vertex if flagged in {@link #relative}
+         */
+        final IntArray indices = new IntArray();
+        /** Flags of the indices relative to the chunk's first vertex */
+        final BitSet relative = new BitSet();
+        /** Triangle indices at which the material is switched */
+        final IntArray switchFaces = new IntArray();
+        /** Names of the switched materials */
+        final List<String> switchNames = new ArrayList<>();
+        /** Material libraries of the chunk */
+        final List<String> libraries = new ArrayList<>();
+        /** Vertex indices of the current polygon */
+        private final IntArray polygon = new IntArray();
+
+        /**
+         * Creates the chunk parser
+         *
+         * @param data  the file data
+         * @param start the first byte of the chunk
+         * @param end   the end of the chunk
+         */
+        Chunk(ByteBuffer data, int start, int end) {
+            this.data = data;
+            this.position = start;
+            this.end = end;
+        }
+
+        /**
+         * Parses the chunk line by line
+         *
+         * @return the chunk itself
+         */
+        Chunk parse() {
+            while (position < end) {
+                skipBlanks();
+                if (position >= end) break;
+                byte first = data.get(position);
+                byte second = position + 1 < end ? data.get(position + 1) : (byte) '\n';
+                if (first == 'v' && isBlank(second)) {
+                    ++position;
+                    parseVertex();
+                } else if (first == 'f' && isBlank(second)) {
+                    ++position;
+                    parseFace();
+                } else if (keyword("usemtl")) {
+                    switchFaces.add(indices.size / 3);
+                    switchNames.add(restOfLine());
+                } else if (keyword("mtllib"))
+                    libraries.add(restOfLine());
+                skipLine();
+            }
+            return this;
+        }
+
+        /**
+         * Checks whether a blank (space or tab) byte
+         *
+         * @param b the byte
+         * @return true if blank
+         */
+        private static boolean isBlank(byte b) {
+            return b == ' ' || b == '\t';
+        }
+
+        /** Skips blanks */
+        private void skipBlanks() {
+            while (position < end && isBlank(data.get(position))) ++position;
+        }
+
+        /** Skips to the beginning of the next line */
+        private void skipLine() {
+            while (position < end && data.get(position++) != '\n') ;
+        }
+
+        /**
+         * Checks for a keyword followed by a blank at the position and skips it
+         *
+         * @param keyword the keyword
+         * @return true if the keyword is found
+         */
+        private boolean keyword(String keyword) {
+            int length = keyword.length();
+            if (position + length >= end || !isBlank(data.get(position + length))) return false;
+            for (int i = 0; i < length; ++i)
+                if (data.get(position + i) != keyword.charAt(i)) return false;
+            position += length;
+            return true;
+        }
+
+        /**
+         * Reads the rest of the line as a trimmed string
+         *
+         * @return the string
+         */
+        private String restOfLine() {
+            skipBlanks();
+            int start = position, stop = position;
+            while (stop < end && data.get(stop) != '\n' && data.get(stop) != '\r') ++stop;
+            while (stop > start && isBlank(data.get(stop - 1))) --stop;
+            byte[] bytes = new byte[stop - start];
+            data.get(start, bytes);
+            position = stop;
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /** Parses the coordinates of a vertex statement */
+        private void parseVertex() {
+            if (vertexCount + 3 > vertices.length) vertices = Arrays.copyOf(vertices, 2 * vertices.length);
+            for (int i = 0; i < 3; ++i) {
+                skipBlanks();
+                vertices[vertexCount + i] = (float) parseNumber();
+            }
+            vertexCount += 3;
+        }
+
+        /** Parses a face statement and triangulates it as a fan */
+        private void parseFace() {
+            polygon.size = 0;
+            while (true) {
+                skipBlanks();
+                if (position >= end) break;
+                byte b = data.get(position);
+                if (b != '-' && (b < '0' || b > '9')) break;
+                polygon.add((int) parseInteger());
+                // skip the texture and normal indices
+                while (position < end && !isBlank(data.get(position)) && data.get(position) != '\n'
+                        && data.get(position) != '\r') ++position;
+            }
+            for (int i = 1; i + 1 < polygon.size; ++i) {
+                addIndex(polygon.data[0]);
+                addIndex(polygon.data[i]);
+                addIndex(polygon.data[i + 1]);
+            }
+        }
+
+        /**
+         * Adds a face vertex index - positive indices are absolute (1-based),
+         * negative ones are relative to the last vertex
+         *
+         * @param index the OBJ index
+         */
+        private void addIndex(int index) {
+            if (index < 0) {
+                relative.set(indices.size);
+                indices.add(vertexCount / 3 + index);
+            } else
+                indices.add(index - 1);
+        }
+
+        /**
+         * Parses an integer
+         *
+         * @return the integer
+         */
+        private long parseInteger() {
+            boolean negative = data.get(position) == '-';
+            if (negative) ++position;
+            long value = 0;
+            byte b;
+            while (position < end && (b = data.get(position)) >= '0' && b <= '9') {
+                value = 10 * value + (b - '0');
+                ++position;
+            }
+            return negative ? -value : value;
+        }
+
+        /**
+         * Parses a decimal number with an optional fraction and exponent
+         *
+         * @return the number
+         */
+        private double parseNumber() {
+            boolean negative = false;
+            if (position < end && (data.get(position) == '-' || data.get(position) == '+'))
+                negative = data.get(position++) == '-';
+            long mantissa = 0;
+            int scale = 0, digits = 0;
+            byte b;
+            while (position < end && (b = data.get(position)) >= '0' && b <= '9') {
+                if (digits < 18) {
+                    mantissa = 10 * mantissa + (b - '0');
+                    if (mantissa != 0) ++digits;
+                } else ++scale;
+                ++position;
+            }
+            if (position < end && data.get(position) == '.') {
+                ++position;
+                while (position < end && (b = data.get(position)) >= '0' && b <= '9') {
+                    if (digits < 18) {
+                        mantissa = 10 * mantissa + (b - '0');
+                        if (mantissa != 0) ++digits;
+                        --scale;
+                    }
+                    ++position;
+                }
+            }
+            if (position < end && (data.get(position) == 'e' || data.get(position) == 'E')) {
+                ++position;
+                boolean negativeExponent = false;
+                if (position < end && (data.get(position) == '-' || data.get(position) == '+'))
+                    negativeExponent = data.get(position++) == '-';
+                int exponent = (int) parseInteger();
+                scale += negativeExponent ? -exponent : exponent;
+            }
+            double value = mantissa;
+            if (scale > 0) value *= scale < POW10.length ? POW10[scale] : Math.pow(10, scale);
+            else if (scale < 0) value /= -scale < POW10.length ? POW10[-scale] : Math.pow(10, -scale);
+            return negative ? -value : value;
+        }
+    }
+}
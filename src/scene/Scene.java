@@ -6,14 +6,20 @@ import lighting.AmbientLight;
 import lighting.LightSource;
 import primitives.Color;
 
+import java.io.Serial;
+import java.io.Serializable;
 import java.util.LinkedList;
 import java.util.List;
 
-public class Scene {
+public class Scene implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
     public String name;
     public Color backgroundColor = Color.BLACK;
     public AmbientLight ambientLight = new AmbientLight(AmbientLight.NONE);
     public Geometries geometries = new Geometries();
+    @SuppressWarnings("serial") // the list must be serializable (e.g. LinkedList) to ship the scene to workers
     public List<LightSource> lights = new LinkedList<>();
 
     /**
@@ -0,0 +1,541 @@
+package scene;
+
+import geometries.*;
+import lighting.*;
+import primitives.*;
+import renderer.Camera;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Versioned binary scene file - the geometries, materials and lights of a scene and
+ * optionally the camera view, so scenes can be saved and shipped without code.<br>
+ * The file is little endian and every item is aligned to 4 bytes:
+ * <ul>
+ * <li>header - magic "RTSC" and format version</li>
+ * <li>scene - name (length and UTF-8 bytes padded to 4), background color and
+ * ambient light intensity</li>
+ * <li>view - a flag and the camera view (see {@link View})</li>
+ * <li>lights - amount and each light by its type tag and parameters</li>
+ * <li>geometries - tree of groups (tag, amount and children) and geometries
+ * (tag, emission, material and shape parameters)</li>
+ * </ul>
+ * A mesh is written as its raw vertex and index arrays, and the reader memory-maps
+ * the file and decodes the arrays in bulk, so even a mesh of a million triangles
+ * is loaded with a few bulk copies.
+ */
+public final class SceneFile {
+    /** File magic number - "RTSC" */
+    private static final int MAGIC = 0x52545343;
+    /** Current format version - files of newer versions are rejected */
+    static final int VERSION = 1;
+    /** Size of the write buffer */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Geometry tags */
+    private static final int GROUP = 0, SPHERE = 1, PLANE = 2, POLYGON = 3, TRIANGLE = 4, TUBE = 5,
+            CYLINDER = 6, MESH = 7;
+    /** Light tags */
+    private static final int POINT_LIGHT = 1, SPOT_LIGHT = 2, DISK_LIGHT = 3, SPHERE_LIGHT = 4,
+            DIRECTIONAL_LIGHT = 5;
+
+    /** Don't let anyone instantiate this class. */
+    private SceneFile() {}
+
+    /**
+     * Camera view stored with a scene
+     *
+     * @param location  the camera position
+     * @param direction the towards direction
+     * @param up        the up direction (orthogonal to the towards direction)
+     * @param distance  the view plane distance
+     * @param width     the view plane width
+     * @param height    the view plane height
+     * @param nX        the horizontal resolution
+     * @param nY        the vertical resolution
+     */
+    public record View(Point location, Vector direction, Vector up, double distance, double width,
+                       double height, int nX, int nY) {
+        /**
+         * Sets the view on a camera builder
+         *
+         * @param builder the camera builder
+         * @return the builder
+         */
+        public Camera.Builder applyTo(Camera.Builder builder) {
+            return builder.setLocation(location).setDirection(direction, up)
+                    .setVpDistance(distance).setVpSize(width, height).setResolution(nX, nY);
+        }
+    }
+
+    /**
+     * Content of a scene file
+     *
+     * @param scene the scene
+     * @param view  the camera view, null if the file has no view
+     */
+    public record Content(Scene scene, View view) {}
+
+    // ***************** Writing ********************** //
+
+    /**
+     * Writes a scene into a file
+     *
+     * @param file  the file path
+     * @param scene the scene
+     * @param view  the camera view, may be null
+     * @throws IOException              on I/O error
+     * @throws IllegalArgumentException if the scene has a geometry or a light that
+     *                                  the format doesn't support
+     */
+    public static void write(Path file, Scene scene, View view) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Output out = new Output(channel);
+            out.putInt(MAGIC).putInt(VERSION);
+            out.putString(scene.name == null ? "" : scene.name);
+            out.putColor(scene.backgroundColor).putColor(scene.ambientLight.getIntensity());
+
+            out.putInt(view == null ? 0 : 1);
+            if (view != null)
+                out.putPoint(view.location()).putPoint(view.direction()).putPoint(view.up())
+                        .putDouble(view.distance()).putDouble(view.width()).putDouble(view.height())
+                        .putInt(view.nX()).putInt(view.nY());
+
+            out.putInt(scene.lights.size());
+            for (LightSource light : scene.lights)
+                writeLight(out, light);
+
+            writeGeometry(out, scene.geometries);
+            out.flush();
+        }
+    }
+
+    /**
+     * Writes a light
+     *
+     * @param out   the output
+     * @param light the light
+     * @throws IOException on I/O error
+     */
+    private static void writeLight(Output out, LightSource light) throws IOException {
+        switch (light) {
+            case DirectionalLight directional -> out.putInt(DIRECTIONAL_LIGHT)
+                    .putColor(directional.getIntensity()).putPoint(directional.getDirection());
+            case PointLight point -> {
+                int tag = point instanceof DiskLight ? DISK_LIGHT
+                        : point instanceof SpotLight ? SPOT_LIGHT
+                        : point instanceof SphereLight ? SPHERE_LIGHT : POINT_LIGHT;
+                out.putInt(tag).putColor(point.getIntensity()).putPoint(point.getPosition())
+                        .putDouble(point.getKc()).putDouble(point.getKl()).putDouble(point.getKq());
+                if (point instanceof SpotLight spot)
+                    out.putPoint(spot.getDirection()).putDouble(spot.getNarrowBeam());
+                if (point instanceof DiskLight disk) out.putDouble(disk.getRadius());
+                if (point instanceof SphereLight sphere) out.putDouble(sphere.getRadius());
+            }
+            default -> throw new IllegalArgumentException("Unsupported light " + light.getClass().getName());
+        }
+    }
+
+    /**
+     * Writes a geometry or a group of geometries (recursively)
+     *
+     * @param out      the output
+     * @param geometry the geometry
+     * @throws IOException on I/O error
+     */
+    private static void writeGeometry(Output out, Intersectable geometry) throws IOException {
+        if (geometry instanceof Geometries group) {
+            List<Intersectable> children = group.getGeometries();
+            out.putInt(GROUP).putInt(children.size());
+            for (Intersectable child : children)
+                writeGeometry(out, child);
+            return;
+        }
+        switch (geometry) {
+            case Sphere sphere -> writeCommon(out.putInt(SPHERE), sphere)
+                    .putPoint(sphere.getCenter()).putDouble(sphere.getRadius());
+            case Plane plane -> writeCommon(out.putInt(PLANE), plane)
+                    .putPoint(plane.getPoint()).putPoint(plane.getNormal(null));
+            case Triangle triangle -> {
+                writeCommon(out.putInt(TRIANGLE), triangle);
+                for (Point vertex : triangle.getVertices()) out.putPoint(vertex);
+            }
+            case Polygon polygon -> {
+                writeCommon(out.putInt(POLYGON), polygon).putInt(polygon.getVertices().size());
+                for (Point vertex : polygon.getVertices()) out.putPoint(vertex);
+            }
+            case Cylinder cylinder -> writeCommon(out.putInt(CYLINDER), cylinder)
+                    .putPoint(cylinder.getAxis().getHead()).putPoint(cylinder.getAxis().getDirection())
+                    .putDouble(cylinder.getRadius()).putDouble(cylinder.getHeight());
+            case Tube tube -> writeCommon(out.putInt(TUBE), tube)
+                    .putPoint(tube.getAxis().getHead()).putPoint(tube.getAxis().getDirection())
+                    .putDouble(tube.getRadius());
+            case Mesh mesh -> {
+                float[] vertices = mesh.getVertices();
+                int[] indices = mesh.getIndices();
+                writeCommon(out.putInt(MESH), mesh).putInt(vertices.length).putInt(indices.length);
+                out.putFloats(vertices);
+                out.putInts(indices);
+            }
+            default -> throw new IllegalArgumentException("Unsupported geometry " + geometry.getClass().getName());
+        }
+    }
+
+    /**
+     * Writes the emission and the material of a geometry
+     *
+     * @param out      the output
+     * @param geometry the geometry
+     * @return the output
+     * @throws IOException on I/O error
+     */
+    private static Output writeCommon(Output out, Geometry geometry) throws IOException {
+        Material material = geometry.getMaterial();
+        return out.putColor(geometry.getEmission())
+                .putDouble3(material.kA).putDouble3(material.kD).putDouble3(material.kS)
+                .putDouble3(material.kR).putDouble3(material.kT).putInt(material.nSh);
+    }
+
+    /**
+     * Buffered little endian output into a file channel
+     */
+    private static final class Output {
+        /** The file channel */
+        private final FileChannel channel;
+        /** The write buffer */
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        /**
+         * Creates the output
+         *
+         * @param channel the file channel
+         */
+        Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Makes room in the buffer, writing its content into the channel if needed
+         *
+         * @param bytes the needed room (up to the buffer size)
+         * @throws IOException on I/O error
+         */
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) flush();
+        }
+
+        /**
+         * Writes the buffer content into the channel
+         *
+         * @throws IOException on I/O error
+         */
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+
+        /**
+         * Writes an int
+         *
+         * @param value the value
+         * @return the output
+         * @throws IOException on I/O error
+         */
+        Output putInt(int value) throws IOException {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+            return this;
+        }
+
+        /**
+         * Writes a double
+         *
+         * @param value the value
+         * @return the output
+         * @throws IOException on I/O error
+         */
+        Output putDouble(double value) throws IOException {
+            ensure(Double.BYTES);
+            buffer.putDouble(value);
+            return this;
+        }
+
+        /**
+         * Writes a triad of doubles
+         *
+         * @param value the triad
+         * @return the output
+         * @throws IOException on I/O error
+         */
+        Output putDouble3(Double3 value) throws IOException {
+            return putDouble(value.d1()).putDouble(value.d2()).putDouble(value.d3());
+        }
+
+        /**
+         * Writes a color
+         *
+         * @param color the color
+         * @return the output
+         * @throws IOException on I/O error
+         */
+        Output putColor(Color color) throws IOException {
+            return putDouble3(color.getRgb());
+        }
+
+        /**
+         * Writes a point (or a vector)
+         *
+         * @param point the point
+         * @return the output
+         * @throws IOException on I/O error
+         */
+        Output putPoint(Point point) throws IOException {
+            return putDouble3(point.getXyz());
+        }
+
+        /**
+         * Writes a string - length and UTF-8 bytes padded to 4
+         *
+         * @param value the string
+         * @return the output
+         * @throws IOException on I/O error
+         */
+        Output putString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            int padded = (bytes.length + 3) & ~3;
+            for (int i = 0; i < padded; ++i) {
+                ensure(1);
+                buffer.put(i < bytes.length ? bytes[i] : 0);
+            }
+            return this;
+        }
+
+        /**
+         * Writes an array of floats in bulk
+         *
+         * @param values the array
+         * @throws IOException on I/O error
+         */
+        void putFloats(float[] values) throws IOException {
+            for (int offset = 0; offset < values.length; ) {
+                ensure(Float.BYTES);
+                int count = Math.min(values.length - offset, buffer.remaining() / Float.BYTES);
+                buffer.asFloatBuffer().put(values, offset, count);
+                buffer.position(buffer.position() + count * Float.BYTES);
+                offset += count;
+            }
+        }
+
+        /**
+         * Writes an array of ints in bulk
+         *
+         * @param values the array
+         * @throws IOException on I/O error
+         */
+        void putInts(int[] values) throws IOException {
+            for (int offset = 0; offset < values.length; ) {
+                ensure(Integer.BYTES);
+                int count = Math.min(values.length - offset, buffer.remaining() / Integer.BYTES);
+                buffer.asIntBuffer().put(values, offset, count);
+                buffer.position(buffer.position() + count * Integer.BYTES);
+                offset += count;
+            }
+        }
+    }
+
+    // ***************** Reading ********************** //
+
+    /**
+     * Reads a scene file by mapping it into memory
+     *
+     * @param file the file path
+     * @return the scene and the camera view
+     * @throws IOException on I/O error, or if the file is not a scene file of a
+     *                     supported version or is corrupted
+     */
+    public static Content read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("Scene file " + file + " is larger than 2GB");
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (in.remaining() < 2 * Integer.BYTES || in.getInt() != MAGIC)
+                throw new IOException(file + " is not a scene file");
+            int version = in.getInt();
+            if (version < 1 || version > VERSION)
+                throw new IOException("Unsupported scene file version " + version);
+
+            Scene scene = new Scene(readString(in)).setBackgroundColor(readColor(in));
+            scene.setAmbientLight(readColor(in));
+            View view = in.getInt() == 0 ? null
+                    : new View(readPoint(in), readVector(in), readVector(in), in.getDouble(), in.getDouble(),
+                    in.getDouble(), in.getInt(), in.getInt());
+
+            for (int count = in.getInt(); count > 0; --count)
+                scene.lights.add(readLight(in));
+
+            if (!(readGeometry(in) instanceof Geometries geometries))
+                throw new IOException("Scene geometries must be a group");
+            scene.setGeometries(geometries);
+            return new Content(scene, view);
+        } catch (java.nio.BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Corrupted scene file " + file, e);
+        }
+    }
+
+    /**
+     * Reads a light
+     *
+     * @param in the input
+     * @return the light
+     * @throws IOException on unknown light tag
+     */
+    private static LightSource readLight(ByteBuffer in) throws IOException {
+        int tag = in.getInt();
+        Color intensity = readColor(in);
+        if (tag == DIRECTIONAL_LIGHT) return new DirectionalLight(intensity, readVector(in));
+        Point position = readPoint(in);
+        double kC = in.getDouble(), kL = in.getDouble(), kQ = in.getDouble();
+        PointLight light = switch (tag) {
+            case POINT_LIGHT -> new PointLight(intensity, position);
+            case SPHERE_LIGHT -> new SphereLight(intensity, position, in.getDouble());
+            case SPOT_LIGHT, DISK_LIGHT -> {
+                Vector direction = readVector(in);
+                double narrowBeam = in.getDouble();
+                SpotLight spot = tag == SPOT_LIGHT ? new SpotLight(intensity, position, direction)
+                        : new DiskLight(intensity, position, direction, in.getDouble());
+                yield spot.setNarrowBeam(narrowBeam);
+            }
+            default -> throw new IOException("Unknown light tag " + tag);
+        };
+        return light.setKc(kC).setKl(kL).setKq(kQ);
+    }
+
+    /**
+     * Reads a geometry or a group of geometries (recursively)
+     *
+     * @param in the input
+     * @return the geometry
+     * @throws IOException on unknown geometry tag
+     */
+    private static Intersectable readGeometry(ByteBuffer in) throws IOException {
+        int tag = in.getInt();
+        if (tag == GROUP) {
+            Geometries group = new Geometries();
+            for (int count = in.getInt(); count > 0; --count)
+                group.add(readGeometry(in));
+            return group;
+        }
+        Color emission = readColor(in);
+        Material material = new Material().setkA(readDouble3(in)).setkD(readDouble3(in)).setkS(readDouble3(in))
+                .setkR(readDouble3(in)).setkT(readDouble3(in)).setnSh(in.getInt());
+        Geometry geometry = switch (tag) {
+            case SPHERE -> new Sphere(readPoint(in), in.getDouble());
+            case PLANE -> new Plane(readPoint(in), readVector(in));
+            case TRIANGLE -> new Triangle(readPoint(in), readPoint(in), readPoint(in));
+            case POLYGON -> {
+                Point[] vertices = new Point[readLength(in, 3 * Double.BYTES)];
+                for (int i = 0; i < vertices.length; ++i) vertices[i] = readPoint(in);
+                yield new Polygon(vertices);
+            }
+            case TUBE -> new Tube(new Ray(readPoint(in), readVector(in)), in.getDouble());
+            case CYLINDER -> new Cylinder(new Ray(readPoint(in), readVector(in)), in.getDouble(), in.getDouble());
+            case MESH -> {
+                int vertexCount = in.getInt(), indexCount = in.getInt();
+                if (vertexCount < 0 || indexCount < 0
+                        || ((long) vertexCount + indexCount) * Integer.BYTES > in.remaining())
+                    throw new IllegalArgumentException("Corrupted mesh size");
+                float[] vertices = new float[vertexCount];
+                int[] indices = new int[indexCount];
+                in.slice(in.position(), vertices.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN)
+                        .asFloatBuffer().get(vertices);
+                in.position(in.position() + vertices.length * Float.BYTES);
+                in.slice(in.position(), indices.length * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN)
+                        .asIntBuffer().get(indices);
+                in.position(in.position() + indices.length * Integer.BYTES);
+                yield new Mesh(vertices, indices);
+            }
+            default -> throw new IOException("Unknown geometry tag " + tag);
+        };
+        return geometry.setEmission(emission).setMaterial(material);
+    }
+
+    /**
+     * Reads a string - UTF-8 bytes padded to 4
+     *
+     * @param in the input
+     * @return the string
+     */
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[readLength(in, 1)];
+        in.get(bytes);
+        in.position(in.position() + (-bytes.length & 3));
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the length of an array, checking that the input has its elements before
+     * the array is allocated
+     *
+     * @param in          the input
+     * @param elementSize the size of an element in bytes
+     * @return the length
+     * @throws IllegalArgumentException if the length is negative or beyond the input
+     */
+    private static int readLength(ByteBuffer in, int elementSize) {
+        int length = in.getInt();
+        if (length < 0 || (long) length * elementSize > in.remaining())
+            throw new IllegalArgumentException("Corrupted length " + length);
+        return length;
+    }
+
+    /**
+     * Reads a triad of doubles
+     *
+     * @param in the input
+     * @return the triad
+     */
+    private static Double3 readDouble3(ByteBuffer in) {
+        return new Double3(in.getDouble(), in.getDouble(), in.getDouble());
+    }
+
+    /**
+     * Reads a color
+     *
+     * @param in the input
+     * @return the color
+     */
+    private static Color readColor(ByteBuffer in) {
+        return new Color(in.getDouble(), in.getDouble(), in.getDouble());
+    }
+
+    /**
+     * Reads a point
+     *
+     * @param in the input
+     * @return the point
+     */
+    private static Point readPoint(ByteBuffer in) {
+        return new Point(readDouble3(in));
+    }
+
+    /**
+     * Reads a vector
+     *
+     * @param in the input
+     * @return the vector
+     */
+    private static Vector readVector(ByteBuffer in) {
+        return new Vector(readDouble3(in));
+    }
+}
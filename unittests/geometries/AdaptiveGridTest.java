@@ -0,0 +1,143 @@
+package geometries;
+
+import org.junit.jupiter.api.Test;
+import primitives.*;
+
+import java.util.Random;
+
+import static geometries.SameHits.assertSameHits;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link geometries.AdaptiveGrid}.
+ */
+class AdaptiveGridTest {
+    /**
+     * Creates a non-uniform scene - a dense cluster of small spheres within the shared
+     * random geometries, and a few large spheres and polygons spanning many cells
+     *
+     * @param seed the random seed
+     * @return the scene geometries
+     */
+    private static Intersectable[] scene(long seed) {
+        Random random = new Random(seed);
+        Intersectable[] geometries = new Intersectable[1504];
+        for (int i = 0; i < 1000; ++i)
+            geometries[i] = new Sphere(new Point(random.nextDouble() * 4 - 2, random.nextDouble() * 4 - 2,
+                    -random.nextDouble() * 4 - 40), 0.05 + random.nextDouble() * 0.1);
+        System.arraycopy(SameHits.scene(seed, 500), 0, geometries, 1000, 500);
+        geometries[1500] = new Sphere(new Point(20, 20, -70), 15);
+        geometries[1501] = new Sphere(new Point(-25, 10, -90), 20);
+        geometries[1502] = new Polygon(new Point(-50, -50, -110), new Point(50, -50, -110),
+                new Point(50, 50, -110), new Point(-50, 50, -110));
+        geometries[1503] = new Polygon(new Point(-40, -40, -30), new Point(-40, 40, -100),
+                new Point(-30, 40, -100), new Point(-30, -40, -30));
+        return geometries;
+    }
+
+    /**
+     * Creates a scene of heavily overlapping large spheres
+     *
+     * @param seed the random seed
+     * @return the scene geometries
+     */
+    private static Intersectable[] overlapping(long seed) {
+        Random random = new Random(seed);
+        Intersectable[] geometries = new Intersectable[200];
+        for (int i = 0; i < geometries.length; ++i)
+            geometries[i] = new Sphere(new Point(random.nextDouble() * 100 - 50, random.nextDouble() * 100 - 50,
+                    -random.nextDouble() * 100 - 20), 20 + random.nextDouble() * 20);
+        return geometries;
+    }
+
+    /**
+     * Test method for {@link geometries.AdaptiveGrid#AdaptiveGrid(Intersectable...)}.
+     */
+    @Test
+    void testConstructor() {
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: Unbounded geometry
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveGrid(new Plane(Point.ZERO, Vector.AXIS_Z)));
+        // TC02: Non-uniform scene - the cells of the cluster are subdivided
+        AdaptiveGrid grid = new AdaptiveGrid(scene(1));
+        assertTrue(grid.grids() > 1, "Dense cells must be subdivided");
+        assertTrue(grid.cells() < 20 * 1504, "Empty space must not take many cells");
+
+        // =============== Boundary Values Tests ==================
+        // TC10: Single geometry - a single grid
+        assertEquals(1, new AdaptiveGrid(new Sphere(Point.ZERO, 1)).grids(), "Wrong amount of grids");
+        // TC11: No geometries
+        assertEquals(0, new AdaptiveGrid().cells(), "Wrong amount of cells");
+        // TC12: Heavily overlapping large spheres - the subdivisions don't separate them
+        grid = new AdaptiveGrid(overlapping(1));
+        assertTrue(grid.grids() < 50, "Overlapping cells must not be subdivided");
+        assertTrue(grid.references() < 100 * 200, "Subdivisions must not multiply the references");
+        // TC13: Concentric spheres - each covers the cells of the smaller ones
+        Intersectable[] concentric = new Intersectable[300];
+        for (int i = 0; i < concentric.length; ++i)
+            concentric[i] = new Sphere(new Point(0, 0, -100), 1 + i * 0.2);
+        assertTrue(new AdaptiveGrid(concentric).grids() < 10, "Covered cells must not be subdivided");
+    }
+
+    /**
+     * Test method for {@link geometries.AdaptiveGrid#calculateIntersections(Ray)} and
+     * {@link geometries.AdaptiveGrid#closestHit(Ray, HitRecord)}.
+     */
+    @Test
+    void testIntersections() {
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: The grid finds the hits of the flat geometries, each geometry once
+        Intersectable[] geometries = scene(2);
+        assertSameHits(new Geometries(geometries), new AdaptiveGrid(geometries), 2000);
+        // TC02: The grid of a group replaces its bounded geometries, next to the unbounded ones
+        Geometries group = new Geometries(scene(3));
+        group.add(new Plane(new Point(0, 0, -200), Vector.AXIS_Z));
+        Geometries flat = new Geometries(scene(3));
+        flat.add(new Plane(new Point(0, 0, -200), Vector.AXIS_Z));
+        group.createGrid();
+        assertEquals(2, group.getGeometries().size(), "Group must have the grid and the plane");
+        assertSameHits(flat, group, 1000);
+        // TC03: A large geometry spanning many cells is tested once per ray
+        Sphere large = new Sphere(new Point(0, 0, -50), 30);
+        Intersectable[] spread = scene(4);
+        spread[1501] = large;
+        AdaptiveGrid grid = new AdaptiveGrid(spread);
+        int[] tested = { 0 };
+        Intersectable.setObserver(new Intersectable.Observer() {
+            @Override
+            public void intersectionTested(Intersectable geometry) {
+                if (geometry == large) ++tested[0];
+            }
+
+            @Override
+            public void boxTested(boolean hit) {
+            }
+        });
+        Intersectable.startObserving();
+        try {
+            grid.calculateIntersections(new Ray(new Point(0, 0, 10), new Vector(0.01, 0.01, -1)));
+            assertEquals(1, tested[0], "Large sphere must be tested once");
+        } finally {
+            Intersectable.stopObserving();
+            Intersectable.setObserver(null);
+        }
+
+        // =============== Boundary Values Tests ==================
+        // TC10: Coinciding geometries - the dense cell can't be separated
+        Intersectable[] same = new Intersectable[20];
+        for (int i = 0; i < same.length; ++i)
+            same[i] = new Sphere(new Point(0, 0, -10), 2);
+        assertSameHits(new Geometries(same), new AdaptiveGrid(same), 200);
+        // TC11: Flat scene - the geometries are in a single plane
+        Intersectable[] cells = new Intersectable[64];
+        for (int i = 0; i < cells.length; ++i) {
+            int x = i % 8 - 4, y = i / 8 - 4;
+            cells[i] = new Polygon(new Point(x, y, -5), new Point(x + 0.9, y, -5), new Point(x + 0.9, y + 0.9, -5),
+                    new Point(x, y + 0.9, -5));
+        }
+        assertSameHits(new Geometries(cells), new AdaptiveGrid(cells), 500);
+        // TC12: Heavily overlapping large spheres
+        Intersectable[] overlapping = overlapping(2);
+        assertSameHits(new Geometries(overlapping), new AdaptiveGrid(overlapping), 500);
+    }
+}
@@ -0,0 +1,233 @@
+package geometries;
+
+import org.junit.jupiter.api.Test;
+import primitives.*;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link geometries.BvhBuilder}.
+ */
+class BvhBuilderTest {
+    /**
+     * Creates spheres scattered randomly (by a fixed seed) in a cube
+     * @param count the amount of spheres
+     * @return the spheres
+     */
+    static Sphere[] spheres(int count) {
+        Random random = new Random(5785);
+        Sphere[] spheres = new Sphere[count];
+        for (int i = 0; i < count; ++i)
+            spheres[i] = new Sphere(new Point(random.nextDouble() * 100, random.nextDouble() * 100,
+                    random.nextDouble() * 100), 0.5 + random.nextDouble());
+        return spheres;
+    }
+
+    /**
+     * Describes the structure of a hierarchy by the indices of its geometries
+     * @param node    the hierarchy node
+     * @param indices the indices of the geometries
+     * @return the description
+     */
+    private static String describe(Intersectable node, Map<Intersectable, Integer> indices) {
+        if (!(node instanceof Geometries group)) return String.valueOf(indices.get(node));
+        StringBuilder sb = new StringBuilder("(");
+        for (Intersectable child : group.getGeometries())
+            sb.append(describe(child, indices)).append(' ');
+        return sb.append(')').toString();
+    }
+
+    /**
+     * Builds the hierarchy of a group of spheres
+     * @param spheres     the spheres
+     * @param parallelism the amount of threads
+     * @return the group
+     */
+    private static Geometries build(Sphere[] spheres, int parallelism) {
+        return build(spheres, BvhBuilder.Method.SAH, parallelism);
+    }
+
+    /**
+     * Builds the hierarchy of a group of spheres by a method
+     * @param spheres     the spheres
+     * @param method      the build method
+     * @param parallelism the amount of threads
+     * @return the group
+     */
+    private static Geometries build(Sphere[] spheres, BvhBuilder.Method method, int parallelism) {
+        Geometries geometries = new Geometries(spheres);
+        BvhBuilder.Metrics metrics = BvhBuilder.build(geometries, method, parallelism);
+        assertEquals(method, metrics.method(), "Wrong build method");
+        assertEquals(spheres.length, metrics.primitives(), "Wrong amount of primitives");
+        assertTrue(metrics.nodes() > 0 && metrics.depth() > 0, "Hierarchy must have nodes");
+        assertTrue(metrics.sahCost() > 1, "SAH cost must be calculated");
+        assertTrue(metrics.nanos() > 0, "Build time must be measured");
+        return geometries;
+    }
+
+    /**
+     * Asserts that a hierarchy finds the same intersections as a flat group
+     * @param flat      the flat group
+     * @param hierarchy the hierarchy
+     */
+    private static void assertSameIntersections(Geometries flat, Geometries hierarchy) {
+        Random random = new Random(56);
+        for (int i = 0; i < 200; ++i) {
+            Ray ray = new Ray(new Point(-10, random.nextDouble() * 100, random.nextDouble() * 100),
+                    new Vector(1, random.nextDouble() - 0.5, random.nextDouble() - 0.5));
+            List<Point> expected = flat.findIntersections(ray);
+            List<Point> actual = hierarchy.findIntersections(ray);
+            assertEquals(expected == null ? 0 : expected.size(), actual == null ? 0 : actual.size(),
+                    "Wrong amount of intersections");
+            if (expected != null) assertTrue(actual.containsAll(expected), "Wrong intersections");
+        }
+    }
+
+    /**
+     * Test method for {@link geometries.BvhBuilder#build(Geometries, int)}.
+     */
+    @Test
+    void testBuild() {
+        Sphere[] spheres = spheres(2000);
+        Map<Intersectable, Integer> indices = new IdentityHashMap<>();
+        for (int i = 0; i < spheres.length; ++i) indices.put(spheres[i], i);
+        Geometries flat = new Geometries(spheres);
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: The hierarchy doesn't depend on the amount of threads
+        Geometries single = build(spheres, 1);
+        Geometries parallel = build(spheres, 4);
+        assertEquals(describe(single, indices), describe(parallel, indices),
+                "Hierarchy must not depend on the amount of threads");
+        // TC02: The hierarchy finds the same intersections as the flat group
+        assertSameIntersections(flat, parallel);
+        // TC03: Unbounded geometries are kept outside the hierarchy
+        Plane plane = new Plane(new Point(0, -5, 0), Vector.AXIS_Y);
+        Geometries withPlane = new Geometries(spheres[0], spheres[1], spheres[2], plane);
+        BvhBuilder.Metrics metrics = BvhBuilder.build(withPlane, 2);
+        assertEquals(1, metrics.unbounded(), "Wrong amount of unbounded geometries");
+        assertSame(plane, withPlane.getGeometries().getLast(), "Plane must be outside the hierarchy");
+        assertEquals(List.of(new Point(500, -5, 0)),
+                withPlane.findIntersections(new Ray(new Point(500, 0, 0), new Vector(0, -1, 0))),
+                "Plane must be intersected far from the hierarchy");
+
+        // =============== Boundary Values Tests ==================
+        // TC10: Single geometry
+        Geometries one = new Geometries(spheres[0]);
+        assertEquals(0, BvhBuilder.build(one, 1).nodes(), "Single geometry needs no nodes");
+        assertEquals(List.of(spheres[0]), one.getGeometries(), "Single geometry must stay");
+        // TC11: Coinciding geometries
+        Sphere[] same = new Sphere[10];
+        for (int i = 0; i < same.length; ++i) same[i] = new Sphere(Point.ZERO, 1);
+        Geometries coinciding = new Geometries(same);
+        BvhBuilder.build(coinciding, 1);
+        assertEquals(20, coinciding.findIntersections(new Ray(new Point(-5, 0, 0), Vector.AXIS_X)).size(),
+                "Coinciding geometries must all be intersected");
+        // TC12: Non-positive amount of threads
+        assertThrows(IllegalArgumentException.class, () -> BvhBuilder.build(new Geometries(spheres), 0));
+    }
+
+    /**
+     * Test method for {@link geometries.BvhBuilder#build(Geometries, BvhBuilder.Method, int)} by
+     * {@link geometries.BvhBuilder.Method#LBVH}.
+     */
+    @Test
+    void testBuildLinear() {
+        Sphere[] spheres = spheres(20000);
+        Map<Intersectable, Integer> indices = new IdentityHashMap<>();
+        for (int i = 0; i < spheres.length; ++i) indices.put(spheres[i], i);
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: The linear hierarchy doesn't depend on the amount of threads
+        Geometries single = build(spheres, BvhBuilder.Method.LBVH, 1);
+        Geometries parallel = build(spheres, BvhBuilder.Method.LBVH, 4);
+        assertEquals(describe(single, indices), describe(parallel, indices),
+                "Hierarchy must not depend on the amount of threads");
+        // TC02: The linear hierarchy finds the same intersections as the flat group
+        assertSameIntersections(new Geometries(spheres), parallel);
+        // TC03: The SAH hierarchy is not more costly than the linear one
+        Geometries sah = new Geometries(spheres);
+        Geometries linear = new Geometries(spheres);
+        assertTrue(BvhBuilder.build(sah, BvhBuilder.Method.SAH).sahCost()
+                        <= BvhBuilder.build(linear, BvhBuilder.Method.LBVH).sahCost(),
+                "SAH hierarchy must not be more costly than the linear one");
+
+        // =============== Boundary Values Tests ==================
+        // TC10: Coinciding geometries have equal codes
+        Sphere[] same = new Sphere[10];
+        for (int i = 0; i < same.length; ++i) same[i] = new Sphere(Point.ZERO, 1);
+        Geometries coinciding = new Geometries(same);
+        assertEquals(9, BvhBuilder.build(coinciding, BvhBuilder.Method.LBVH, 1).nodes(),
+                "Binary hierarchy of 10 geometries must have 9 inner nodes");
+        assertEquals(20, coinciding.findIntersections(new Ray(new Point(-5, 0, 0), Vector.AXIS_X)).size(),
+                "Coinciding geometries must all be intersected");
+        // TC11: Two geometries
+        Geometries two = new Geometries(spheres[0], spheres[1]);
+        assertEquals(1, BvhBuilder.build(two, BvhBuilder.Method.LBVH, 1).nodes(), "Wrong amount of nodes");
+    }
+
+    /**
+     * Creates long thin triangles crossing each other randomly (by a fixed seed) in a cube
+     * @param count the amount of triangles
+     * @return the triangles
+     */
+    static Triangle[] slivers(int count) {
+        Random random = new Random(5786);
+        Triangle[] triangles = new Triangle[count];
+        for (int i = 0; i < count; ++i) {
+            Point a = new Point(random.nextDouble() * 100, random.nextDouble() * 100, random.nextDouble() * 100);
+            Point b = new Point(random.nextDouble() * 100, random.nextDouble() * 100, random.nextDouble() * 100);
+            triangles[i] = new Triangle(a, b, a.add(new Vector(random.nextDouble() + 0.5, 1, random.nextDouble())));
+        }
+        return triangles;
+    }
+
+    /**
+     * Test method for {@link geometries.BvhBuilder#buildSpatial(Geometries, double, int)}.
+     */
+    @Test
+    void testBuildSpatial() {
+        Triangle[] triangles = slivers(500);
+        Geometries flat = new Geometries(triangles);
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: Spatial splits refer to split geometries from both sides, within the budget
+        Geometries spatial = new Geometries(triangles);
+        BvhBuilder.Metrics metrics = BvhBuilder.buildSpatial(spatial, 0.5, 4);
+        assertEquals(BvhBuilder.Method.SBVH, metrics.method(), "Wrong build method");
+        assertEquals(triangles.length, metrics.primitives(), "Wrong amount of primitives");
+        assertTrue(metrics.references() > triangles.length, "Geometries must be split");
+        assertTrue(metrics.references() <= 1.5 * triangles.length, "References must be within the budget");
+        // TC02: The spatial hierarchy finds each intersection once, like the flat group
+        assertSameIntersections(flat, spatial);
+        HitRecord flatHit = new HitRecord(), spatialHit = new HitRecord();
+        Random random = new Random(57);
+        for (int i = 0; i < 500; ++i) {
+            Ray ray = new Ray(new Point(-10, random.nextDouble() * 100, random.nextDouble() * 100),
+                    new Vector(1, random.nextDouble() - 0.5, random.nextDouble() - 0.5));
+            assertEquals(flat.closestHit(ray, flatHit.reset()), spatial.closestHit(ray, spatialHit.reset()),
+                    "Wrong closest hit");
+            assertEquals(flatHit.getT(), spatialHit.getT(), 1e-9, "Wrong closest hit distance");
+        }
+        // TC03: The spatial hierarchy is not more costly than the object one
+        Geometries object = new Geometries(triangles);
+        assertTrue(metrics.sahCost() <= BvhBuilder.build(object, BvhBuilder.Method.SAH, 4).sahCost(),
+                "Spatial hierarchy must not be more costly than the object one");
+        // TC04: The spatial hierarchy doesn't depend on the amount of threads
+        BvhBuilder.Metrics single = BvhBuilder.buildSpatial(new Geometries(triangles), 0.5, 1);
+        assertEquals(metrics.references(), single.references(), "Hierarchy must not depend on the amount of threads");
+        assertEquals(metrics.sahCost(), single.sahCost(), "Hierarchy must not depend on the amount of threads");
+
+        // =============== Boundary Values Tests ==================
+        // TC10: No budget - no spatial splits
+        assertEquals(triangles.length, BvhBuilder.buildSpatial(new Geometries(triangles), 0, 1).references(),
+                "Geometries must not be split without a budget");
+        // TC11: Negative budget
+        assertThrows(IllegalArgumentException.class, () -> BvhBuilder.buildSpatial(new Geometries(triangles), -1, 1));
+    }
+}
@@ -0,0 +1,124 @@
+package geometries;
+
+import org.junit.jupiter.api.Test;
+import primitives.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static geometries.SameHits.assertSameHits;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link geometries.BvhCache}.
+ */
+class BvhCacheTest {
+    /** Delta for the comparison of distances */
+    private static final double DELTA = 1e-7;
+
+    /**
+     * Creates a scene of the shared random geometries and a plane
+     *
+     * @param seed the random seed
+     * @return the scene geometries
+     */
+    private static Geometries scene(long seed) {
+        Geometries geometries = new Geometries(SameHits.scene(seed, 1000));
+        geometries.add(new Plane(new Point(0, 0, -200), Vector.AXIS_Z));
+        return geometries;
+    }
+
+    /**
+     * Lists the cache files of a directory
+     *
+     * @param directory the cache directory
+     * @return the files
+     * @throws IOException on I/O error
+     */
+    private static List<Path> files(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.toList();
+        }
+    }
+
+    /**
+     * Test method for
+     * {@link geometries.BvhCache#build(Geometries, BvhBuilder.Method, Path)}.
+     *
+     * @throws IOException on I/O error
+     */
+    @Test
+    void testBuild() throws IOException {
+        Path directory = Files.createTempDirectory("bvh").resolve("cache");
+        Geometries flat = scene(1);
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: First build saves the hierarchy
+        Geometries built = scene(1);
+        BvhBuilder.Metrics metrics = BvhCache.build(built, BvhBuilder.Method.SAH, directory);
+        assertEquals(1, files(directory).size(), "Hierarchy must be saved");
+        assertEquals(1000, metrics.primitives(), "Wrong amount of primitives");
+        // TC02: Next build of the same geometries loads the hierarchy, with the metrics of its build
+        Geometries loaded = scene(1);
+        BvhBuilder.Metrics reloaded = BvhCache.build(loaded, BvhBuilder.Method.SAH, directory);
+        assertEquals(1, files(directory).size(), "Hierarchy must be loaded");
+        assertEquals(metrics.nodes(), reloaded.nodes(), "Wrong amount of nodes");
+        assertEquals(metrics.sahCost(), reloaded.sahCost(), DELTA, "Wrong SAH cost");
+        assertEquals(2, loaded.getGeometries().size(), "Group must have the hierarchy and the plane");
+        assertInstanceOf(QuantizedBvh.class, loaded.getGeometries().getFirst(), "Hierarchy must be compressed");
+        // TC03: The loaded hierarchy finds the hits of the flat geometries
+        assertSameHits(flat, loaded, 1000);
+        // TC04: Other geometries or another method have their own hierarchies
+        BvhCache.build(scene(2), BvhBuilder.Method.SAH, directory);
+        BvhCache.build(scene(1), BvhBuilder.Method.LBVH, directory);
+        assertEquals(3, files(directory).size(), "Each hierarchy must be saved");
+
+        // =============== Boundary Values Tests ==================
+        // TC10: Corrupted cache file is rebuilt
+        Path file = files(directory).getFirst();
+        Files.write(file, new byte[] { 1, 2, 3 });
+        Geometries rebuilt = scene(1);
+        BvhCache.build(rebuilt, BvhBuilder.Method.SAH, directory);
+        BvhCache.build(scene(2), BvhBuilder.Method.SAH, directory);
+        BvhCache.build(scene(1), BvhBuilder.Method.LBVH, directory);
+        assertTrue(Files.size(file) > 3, "Corrupted hierarchy must be rewritten");
+        // TC11: Cache file with a corrupted amount of nodes is rebuilt
+        List<Path> previous = files(directory);
+        BvhCache.build(scene(3), BvhBuilder.Method.SAH, directory);
+        Path saved = files(directory).stream().filter(f -> !previous.contains(f)).findFirst().orElseThrow();
+        for (int count : new int[] { Integer.MAX_VALUE, 0x40000000 }) {
+            byte[] content = Files.readAllBytes(saved);
+            // the amount of nodes of the hierarchy follows the header
+            ByteBuffer.wrap(content).order(ByteOrder.LITTLE_ENDIAN).putInt(BvhCache.HEADER_SIZE, count);
+            Files.write(saved, content);
+            Geometries recovered = scene(3);
+            BvhCache.build(recovered, BvhBuilder.Method.SAH, directory);
+            assertInstanceOf(QuantizedBvh.class, recovered.getGeometries().getFirst(), "Hierarchy must be rebuilt");
+            assertFalse(Arrays.equals(content, Files.readAllBytes(saved)), "Corrupted hierarchy must be rewritten");
+        }
+        // TC12: Only unbounded geometries - nothing to cache
+        Geometries planes = new Geometries(new Plane(Point.ZERO, Vector.AXIS_Z));
+        BvhCache.build(planes, BvhBuilder.Method.SAH, directory);
+        assertEquals(4, files(directory).size(), "No hierarchy must be saved");
+        // TC13: Cache file with a hierarchy deeper than its stored depth is rebuilt
+        byte[] content = Files.readAllBytes(saved);
+        // the depth of the hierarchy follows the amounts of nodes and leaf geometries
+        ByteBuffer.wrap(content).order(ByteOrder.LITTLE_ENDIAN).putInt(BvhCache.HEADER_SIZE + 2 * Integer.BYTES, 1);
+        Files.write(saved, content);
+        Geometries deep = scene(3);
+        BvhCache.build(deep, BvhBuilder.Method.SAH, directory);
+        assertFalse(Arrays.equals(content, Files.readAllBytes(saved)), "Corrupted hierarchy must be rewritten");
+        assertSameHits(scene(3), deep, 200);
+
+        for (Path cached : files(directory))
+            Files.delete(cached);
+        Files.delete(directory);
+        Files.delete(directory.getParent());
+    }
+}
@@ -52,4 +52,86 @@ class GeometriesTest {
         List<Point> expectedIntersections13 = emptyGeometries.findIntersections(ray131);
         assertNull(expectedIntersections13, "Expected no intersection points");
     }
-}
\ No newline at end of file
+
+    /**
+     * Test method for {@link geometries.Geometries#computeBoundingBox()} with unbounded geometries.
+     */
+    @Test
+    void testUnboundedGeometries() {
+        Sphere sphere = new Sphere(new Point(0, 0, -10), 1);
+        Plane floor = new Plane(new Point(0, -5, 0), new Vector(0, 1, 0));
+        Geometries group = new Geometries(sphere, floor);
+        Geometries scene = new Geometries(group, new Sphere(new Point(10, 0, -10), 1));
+        scene.computeBoundingBox();
+        Ray farFloor = new Ray(new Point(100, 0, 100), new Vector(0, -1, 0));
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: Unbounded geometry out of the bounded geometries box is intersected
+        assertEquals(List.of(new Point(100, -5, 100)), scene.findIntersections(farFloor),
+                "Plane must be intersected out of the spheres' box");
+        // TC02: Bounded geometries of a group with unbounded ones are still intersected
+        assertEquals(3, scene.findIntersections(new Ray(new Point(0, 5, -10), new Vector(0, -1, 0))).size(),
+                "Wrong number of intersection points");
+
+        // =============== Boundary Values Tests ==================
+        // TC10: Group of unbounded geometries only
+        Geometries planes = new Geometries(floor, new Plane(new Point(0, 5, 0), new Vector(0, 1, 0)));
+        planes.computeBoundingBox();
+        assertEquals(List.of(new Point(100, 5, 105)),
+                planes.findIntersections(new Ray(new Point(100, 0, 100), new Vector(0, 1, 1))),
+                "Upper plane must be intersected");
+        assertEquals(List.of(new Point(100, -5, 105)),
+                planes.findIntersections(new Ray(new Point(100, 0, 100), new Vector(0, -1, 1))),
+                "Lower plane must be intersected");
+    }
+
+    /**
+     * Test method for {@link geometries.Geometries#closestHit(Ray, HitRecord)} by a hierarchy -
+     * the nearer groups are visited first, and the farther ones are skipped.
+     */
+    @Test
+    void testClosestHitOrder() {
+        Sphere[] row = new Sphere[1024];
+        for (int i = 0; i < row.length; ++i) row[i] = new Sphere(new Point(3 * i, 0, 0), 1);
+        Geometries geometries = new Geometries(row);
+        geometries.createHierarchy();
+        HitRecord hit = new HitRecord();
+        int[] tested = { 0 };
+        Intersectable.setObserver(new Intersectable.Observer() {
+            @Override
+            public void intersectionTested(Intersectable geometry) {
+                ++tested[0];
+            }
+
+            @Override
+            public void boxTested(boolean hit) {
+            }
+        });
+        Intersectable.startObserving();
+        try {
+            // ============ Equivalence Partitions Tests ==============
+            // TC01: Ray along the row from its start visits only the groups near the first sphere
+            assertTrue(geometries.closestHit(new Ray(new Point(-10, 0, 0), Vector.AXIS_X), hit.reset()),
+                    "Ray must hit the row");
+            assertEquals(9, hit.getT(), 1e-10, "Wrong closest hit");
+            assertTrue(tested[0] < 50, "Farther groups must be skipped, tested " + tested[0]);
+            // TC02: Ray along the row from its end visits only the groups near the last sphere
+            tested[0] = 0;
+            assertTrue(geometries.closestHit(new Ray(new Point(3 * 1023 + 10, 0, 0), new Vector(-1, 0, 0)),
+                    hit.reset()), "Ray must hit the row");
+            assertEquals(9, hit.getT(), 1e-10, "Wrong closest hit");
+            assertTrue(tested[0] < 50, "Farther groups must be skipped, tested " + tested[0]);
+
+            // =============== Boundary Values Tests ==================
+            // TC10: Ray starting inside the hierarchy box, between spheres
+            tested[0] = 0;
+            assertTrue(geometries.closestHit(new Ray(new Point(1501.5, 0, 0), new Vector(-1, 0, 0)), hit.reset()),
+                    "Ray must hit the row");
+            assertEquals(0.5, hit.getT(), 1e-10, "Wrong closest hit");
+            assertTrue(tested[0] < 50, "Farther groups must be skipped, tested " + tested[0]);
+        } finally {
+            Intersectable.stopObserving();
+            Intersectable.setObserver(null);
+        }
+    }
+}
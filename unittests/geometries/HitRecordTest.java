@@ -0,0 +1,87 @@
+package geometries;
+
+import org.junit.jupiter.api.Test;
+import primitives.*;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link geometries.HitRecord} and {@link Intersectable#closestHit(Ray, HitRecord)}.
+ */
+class HitRecordTest {
+    /** Delta for the comparison of coordinates */
+    private static final double DELTA = 1e-7;
+
+    /**
+     * Creates a scene of all kinds of geometries
+     * @return the scene geometries
+     */
+    private static Geometries scene() {
+        Mesh grid = MeshTest.grid(4);
+        return new Geometries(
+                new Sphere(new Point(0, 0, -50), 10),
+                new Sphere(new Point(25, 5, -60), 8),
+                new Plane(new Point(0, -20, 0), Vector.AXIS_Y),
+                new Triangle(new Point(-30, -10, -40), new Point(-10, -10, -40), new Point(-20, 10, -40)),
+                new Polygon(new Point(10, 10, -30), new Point(20, 10, -30), new Point(20, 20, -30),
+                        new Point(10, 20, -30)),
+                new Cylinder(new Ray(new Point(-25, -20, -70), Vector.AXIS_Y), 4, 30),
+                grid,
+                new Instance(grid, Transform.scaling(5).then(Transform.rotation(Vector.AXIS_X, 60))
+                        .then(Transform.translation(new Vector(-10, 15, -45)))));
+    }
+
+    /**
+     * Test method for {@link Intersectable#closestHit(Ray, HitRecord)}.
+     */
+    @Test
+    void testClosestHit() {
+        Geometries flat = scene();
+        Geometries hierarchy = scene();
+        hierarchy.createHierarchy();
+        HitRecord hit = new HitRecord();
+        Random random = new Random(1);
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: The closest hit is the closest of all the intersections, with the same normal
+        int hits = 0;
+        for (int i = 0; i < 2000; ++i) {
+            Ray ray = new Ray(new Point(random.nextDouble() * 4, random.nextDouble() * 4, 10),
+                    new Vector(random.nextDouble() - 0.5, random.nextDouble() - 0.5, -1));
+            var all = flat.calculateIntersections(ray);
+            Intersectable.Intersection expected = all == null ? null : ray.findClosestIntersection(all);
+            for (Geometries geometries : new Geometries[] { flat, hierarchy }) {
+                geometries.closestHit(ray, hit.reset());
+                Intersectable.Intersection actual = hit.toIntersection(ray);
+                if (expected == null) {
+                    assertNull(actual, "Ray must have no hit");
+                    continue;
+                }
+                assertNotNull(actual, "Ray must have a hit");
+                assertEquals(expected.point.distance(ray.getHead()), hit.getT(), DELTA, "Wrong hit distance");
+                assertEquals(0, expected.point.distance(actual.point), DELTA, "Wrong hit point");
+                assertEquals(1, expected.geometry.getNormal(expected.point)
+                        .dotProduct(actual.geometry.getNormal(actual.point)), DELTA, "Wrong hit normal");
+                assertEquals(expected.geometry.getClass(), actual.geometry.getClass(), "Wrong hit geometry");
+                ++hits;
+            }
+        }
+        assertTrue(hits > 1000, "Most of the rays must hit");
+
+        // =============== Boundary Values Tests ==================
+        // TC10: A farther hit doesn't replace the closest one
+        Sphere sphere = new Sphere(new Point(0, 0, -10), 1);
+        hit.reset();
+        assertTrue(sphere.closestHit(new Ray(Point.ZERO, new Vector(0, 0, -1)), hit), "Sphere must be hit");
+        assertFalse(new Sphere(new Point(0, 0, -20), 1).closestHit(new Ray(Point.ZERO, new Vector(0, 0, -1)), hit),
+                "Farther sphere must not replace the closest hit");
+        assertEquals(9, hit.getT(), DELTA, "Wrong closest distance");
+        // TC11: Barycentric coordinates of a mesh face hit
+        Mesh mesh = new Mesh(new float[] { 0, 0, 0, 1, 0, 0, 0, 1, 0 }, new int[] { 0, 1, 2 });
+        mesh.closestHit(new Ray(new Point(0.25, 0.5, 1), new Vector(0, 0, -1)), hit.reset());
+        assertEquals(0.25, hit.getU(), DELTA, "Wrong first barycentric coordinate");
+        assertEquals(0.5, hit.getV(), DELTA, "Wrong second barycentric coordinate");
+    }
+}
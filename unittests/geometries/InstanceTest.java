@@ -0,0 +1,97 @@
+package geometries;
+
+import org.junit.jupiter.api.Test;
+import primitives.*;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link geometries.Instance} and {@link primitives.Transform}.
+ */
+class InstanceTest {
+    /** Delta for the comparison of coordinates */
+    private static final double DELTA = 1e-9;
+
+    /**
+     * Asserts that two points are equal up to {@link #DELTA}
+     * @param expected the expected point
+     * @param actual   the actual point
+     * @param message  the failure message
+     */
+    private static void assertPoint(Point expected, Point actual, String message) {
+        assertEquals(expected.getX(), actual.getX(), DELTA, message);
+        assertEquals(expected.getY(), actual.getY(), DELTA, message);
+        assertEquals(expected.getZ(), actual.getZ(), DELTA, message);
+    }
+
+    /**
+     * Test method for {@link primitives.Transform}.
+     */
+    @Test
+    void testTransform() {
+        Transform transform = Transform.scaling(2, 3, 4).then(Transform.rotation(Vector.AXIS_Z, 90))
+                .then(Transform.translation(new Vector(1, 2, 3)));
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: Composition applies the transformations in order
+        assertPoint(new Point(-2, 4, 7), transform.apply(new Point(1, 1, 1)), "Wrong transformed point");
+        // TC02: The inverse transformation restores the point
+        assertPoint(new Point(1, 1, 1), transform.inverse().apply(transform.apply(new Point(1, 1, 1))),
+                "Wrong inverse transformation");
+        // TC03: A direction is not translated
+        assertPoint(new Point(0, 2, 0), transform.apply(new Vector(1, 0, 0)), "Wrong transformed vector");
+
+        // =============== Boundary Values Tests ==================
+        // TC10: A singular transformation has no inverse
+        assertThrows(IllegalArgumentException.class, () -> Transform.scaling(1, 0, 1));
+    }
+
+    /**
+     * Test method for {@link geometries.Instance#findIntersections(primitives.Ray)}.
+     */
+    @Test
+    void testFindIntersections() {
+        Sphere sphere = new Sphere(Point.ZERO, 1);
+        Instance moved = new Instance(sphere, Transform.translation(new Vector(5, 0, 0)));
+        Instance stretched = new Instance(sphere, Transform.scaling(2, 1, 1));
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: Ray through a translated instance
+        List<Point> result = moved.findIntersections(new Ray(new Point(5, 0, -5), Vector.AXIS_Z));
+        assertNotNull(result, "Ray must intersect the translated instance");
+        assertEquals(2, result.size(), "Wrong number of points");
+        List<Point> sorted = result.stream().sorted((a, b) -> Double.compare(a.getZ(), b.getZ())).toList();
+        assertPoint(new Point(5, 0, -1), sorted.get(0), "Wrong first point");
+        assertPoint(new Point(5, 0, 1), sorted.get(1), "Wrong second point");
+        // TC02: Ray missing a translated instance that would hit the shared object
+        assertNull(moved.findIntersections(new Ray(new Point(0, 0, -5), Vector.AXIS_Z)),
+                "Ray must miss the translated instance");
+        // TC03: Ray through a scaled instance
+        result = stretched.findIntersections(new Ray(new Point(-5, 0, 0), Vector.AXIS_X));
+        assertNotNull(result, "Ray must intersect the scaled instance");
+        assertEquals(2, result.size(), "Wrong number of points");
+        assertEquals(4, result.get(0).distance(result.get(1)), DELTA, "Wrong scaled diameter");
+        // TC04: Normal of a non-uniformly scaled instance stays orthogonal to its surface
+        Point point = new Point(Math.sqrt(2), Math.sqrt(0.5), 0);
+        Intersectable.Intersection hit = stretched
+                .calculateIntersections(new Ray(new Point(Math.sqrt(2), 5, 0), new Vector(0, -1, 0))).stream()
+                .filter(i -> i.point.getY() > 0).findFirst().orElseThrow();
+        assertPoint(point, hit.point, "Wrong point on the scaled instance");
+        assertPoint(new Vector(1, 2, 0).normalize(), hit.geometry.getNormal(hit.point), "Wrong normal");
+        // TC05: Material and emission are the shared object's
+        sphere.setEmission(new Color(10, 20, 30));
+        assertSame(sphere.getEmission(), hit.geometry.getEmission(), "Wrong emission");
+
+        // =============== Boundary Values Tests ==================
+        // TC10: Bounding box of a moved instance follows the transformation of the shared box
+        moved.computeBoundingBox();
+        assertPoint(new Point(4, -1, -1), moved.box.min, "Wrong box minimum");
+        assertPoint(new Point(6, 1, 1), moved.box.max, "Wrong box maximum");
+        moved.setTransform(Transform.translation(new Vector(0, 5, 0)));
+        assertPoint(new Point(-1, 4, -1), moved.box.min, "Box must follow the moved instance");
+        assertNull(moved.findIntersections(new Ray(new Point(5, 0, -5), Vector.AXIS_Z)),
+                "Ray must miss the moved instance");
+    }
+}
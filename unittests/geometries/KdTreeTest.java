@@ -0,0 +1,79 @@
+package geometries;
+
+import org.junit.jupiter.api.Test;
+import primitives.*;
+
+import static geometries.SameHits.assertSameHits;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link geometries.KdTree}.
+ */
+class KdTreeTest {
+    /** Delta for the comparison of distances */
+    private static final double DELTA = 1e-7;
+
+    /**
+     * Test method for {@link geometries.KdTree#KdTree(Intersectable...)}.
+     */
+    @Test
+    void testConstructor() {
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: Unbounded geometry
+        assertThrows(IllegalArgumentException.class, () -> new KdTree(new Plane(Point.ZERO, Vector.AXIS_Z)));
+        // TC02: Many geometries - a deep tree, large geometries are referred from several leaves
+        KdTree tree = new KdTree(SameHits.scene(1, 2000));
+        assertTrue(tree.depth() > 5, "Tree must be split");
+        assertTrue(tree.references() > 2000, "Large geometries must cross split planes");
+
+        // =============== Boundary Values Tests ==================
+        // TC10: Single geometry - a leaf
+        assertEquals(1, new KdTree(new Sphere(Point.ZERO, 1)).nodes(), "Wrong amount of nodes");
+        // TC11: No geometries
+        assertEquals(0, new KdTree().nodes(), "Wrong amount of nodes");
+    }
+
+    /**
+     * Test method for {@link geometries.KdTree#calculateIntersections(Ray)} and
+     * {@link geometries.KdTree#closestHit(Ray, HitRecord)}.
+     */
+    @Test
+    void testIntersections() {
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: The tree finds the hits of the flat geometries, each geometry once
+        Intersectable[] geometries = SameHits.scene(2, 2000);
+        assertSameHits(new Geometries(geometries), new KdTree(geometries), 2000);
+        // TC02: The tree of a group replaces its bounded geometries, next to the unbounded ones
+        Geometries group = new Geometries(SameHits.scene(3, 2000));
+        group.add(new Plane(new Point(0, 0, -200), Vector.AXIS_Z));
+        Geometries flat = new Geometries(SameHits.scene(3, 2000));
+        flat.add(new Plane(new Point(0, 0, -200), Vector.AXIS_Z));
+        group.createKdTree();
+        assertEquals(2, group.getGeometries().size(), "Group must have the tree and the plane");
+        assertSameHits(flat, group, 1000);
+
+        // =============== Boundary Values Tests ==================
+        // TC10: Coinciding geometries - no split separates them
+        Intersectable[] same = { new Sphere(new Point(0, 0, -10), 2), new Sphere(new Point(0, 0, -10), 2),
+                new Sphere(new Point(0, 0, -10), 2) };
+        assertSameHits(new Geometries(same), new KdTree(same), 200);
+        // TC11: Rays within the split planes - the planes of the polygon edges
+        Intersectable[] cells = new Intersectable[9];
+        for (int i = 0; i < 8; ++i)
+            cells[i] = new Polygon(new Point(i, 0, -5), new Point(i + 1, 0, -5), new Point(i + 1, 1, -5),
+                    new Point(i, 1, -5));
+        cells[8] = new Sphere(new Point(3, 0.5, -2), 0.5);
+        Geometries flatCells = new Geometries(cells);
+        KdTree tree = new KdTree(cells);
+        HitRecord expected = new HitRecord(), actual = new HitRecord();
+        for (int x = 0; x <= 8; ++x) {
+            Ray ray = new Ray(new Point(x, 0.5, 0), new Vector(0, 0, -1));
+            var all = flatCells.calculateIntersections(ray);
+            var found = tree.calculateIntersections(ray);
+            assertEquals(all == null ? 0 : all.size(), found == null ? 0 : found.size(), "Wrong intersections");
+            assertEquals(flatCells.closestHit(ray, expected.reset()), tree.closestHit(ray, actual.reset()),
+                    "Wrong closest hit");
+            assertEquals(expected.getT(), actual.getT(), DELTA, "Wrong closest hit distance");
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package geometries;
+
+import org.junit.jupiter.api.Test;
+import primitives.Point;
+import primitives.Ray;
+import primitives.Vector;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link geometries.Mesh}.
+ */
+class MeshTest {
+    /**
+     * Builds a mesh of a square grid on the plane z=0 - two triangles per unit cell
+     * @param n the amount of cells along each axis
+     * @return the mesh
+     */
+    static Mesh grid(int n) {
+        float[] vertices = new float[3 * (n + 1) * (n + 1)];
+        for (int y = 0; y <= n; ++y)
+            for (int x = 0; x <= n; ++x) {
+                vertices[3 * (y * (n + 1) + x)] = x;
+                vertices[3 * (y * (n + 1) + x) + 1] = y;
+            }
+        int[] indices = new int[6 * n * n];
+        int i = 0;
+        for (int y = 0; y < n; ++y)
+            for (int x = 0; x < n; ++x) {
+                int v = y * (n + 1) + x;
+                indices[i++] = v;
+                indices[i++] = v + 1;
+                indices[i++] = v + n + 1;
+                indices[i++] = v + 1;
+                indices[i++] = v + n + 2;
+                indices[i++] = v + n + 1;
+            }
+        return new Mesh(vertices, indices);
+    }
+
+    /**
+     * Test method for {@link geometries.Mesh#Mesh(float[], int[])}.
+     */
+    @Test
+    void testConstructor() {
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: Correct mesh
+        assertEquals(2 * 3 * 3, grid(3).faces(), "Wrong amount of faces");
+        // TC02: Index out of range
+        assertThrows(IllegalArgumentException.class,
+                () -> new Mesh(new float[] { 0, 0, 0, 1, 0, 0, 0, 1, 0 }, new int[] { 0, 1, 3 }));
+
+        // =============== Boundary Values Tests ==================
+        // TC10: Incomplete face
+        assertThrows(IllegalArgumentException.class,
+                () -> new Mesh(new float[] { 0, 0, 0, 1, 0, 0, 0, 1, 0 }, new int[] { 0, 1 }));
+    }
+
+    /**
+     * Test method for {@link geometries.Mesh#getNormal(primitives.Point)}.
+     */
+    @Test
+    void testGetNormal() {
+        Mesh mesh = grid(2);
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: Normal of a point on a face
+        assertEquals(new Vector(0, 0, 1), mesh.getNormal(new Point(1.2, 0.3, 0)), "Wrong mesh normal");
+        // TC02: Normal of the face of an intersection
+        var intersections = mesh.calculateIntersections(new Ray(new Point(0.7, 1.6, 5), new Vector(0, 0, -1)));
+        assertEquals(new Vector(0, 0, 1), intersections.getFirst().geometry.getNormal(null), "Wrong face normal");
+    }
+
+    /**
+     * Test method for {@link geometries.Mesh#findIntersections(primitives.Ray)}.
+     */
+    @Test
+    void testFindIntersections() {
+        Mesh mesh = grid(20);
+        Vector down = new Vector(0, 0, -1);
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: Ray crosses a face inside the mesh (1 point)
+        assertEquals(List.of(new Point(3.3, 7.6, 0)), mesh.findIntersections(new Ray(new Point(3.3, 7.6, 1), down)),
+                "Wrong intersection");
+        // TC02: Ray misses the mesh (0 points)
+        assertNull(mesh.findIntersections(new Ray(new Point(-1, 3, 1), down)), "Ray misses the mesh");
+        // TC03: Ray starts beyond the mesh (0 points)
+        assertNull(mesh.findIntersections(new Ray(new Point(3, 3, -1), down)), "Ray starts beyond the mesh");
+
+        // TC04: The internal hierarchy finds the same intersections as testing all the faces
+        Mesh bvh = grid(20);
+        bvh.computeBoundingBox();
+        for (int i = 0; i < 200; ++i) {
+            Point head = new Point(-2 + 0.13 * i, -1 + 0.117 * i, 3);
+            Ray ray = new Ray(head, new Vector(0.3, 0.2, -1));
+            var expected = mesh.findIntersections(ray);
+            var actual = bvh.findIntersections(ray);
+            assertEquals(expected == null, actual == null, "Wrong hierarchy intersections");
+            if (expected != null)
+                assertTrue(expected.containsAll(actual) && actual.containsAll(expected), "Wrong hierarchy intersections");
+        }
+
+        // =============== Boundary Values Tests ==================
+        // TC10: Ray parallel to the mesh (0 points)
+        assertNull(bvh.findIntersections(new Ray(new Point(1, 1, 0), new Vector(1, 0, 0))), "Ray is parallel");
+        // TC11: Ray through a vertex hits the mesh
+        assertNotNull(bvh.findIntersections(new Ray(new Point(4, 5, 1), down)), "Ray through a vertex");
+    }
+}
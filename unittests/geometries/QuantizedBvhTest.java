@@ -0,0 +1,77 @@
+package geometries;
+
+import org.junit.jupiter.api.Test;
+import primitives.*;
+
+import static geometries.SameHits.assertSameHits;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link geometries.QuantizedBvh}.
+ */
+class QuantizedBvhTest {
+    /**
+     * Creates a scene of the shared random geometries and a mesh
+     *
+     * @param seed the random seed
+     * @return the scene geometries
+     */
+    private static Geometries scene(long seed) {
+        Geometries geometries = new Geometries(SameHits.scene(seed, 500));
+        geometries.add(MeshTest.grid(8));
+        return geometries;
+    }
+
+    /**
+     * Test method for {@link geometries.QuantizedBvh#QuantizedBvh(Intersectable)}.
+     */
+    @Test
+    void testConstructor() {
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: Unbounded geometry
+        assertThrows(IllegalArgumentException.class,
+                () -> new QuantizedBvh(new Geometries(new Plane(Point.ZERO, Vector.AXIS_Z))));
+        // TC02: Built hierarchy - a node is 24 bytes
+        Geometries hierarchy = scene(1);
+        hierarchy.createHierarchy();
+        QuantizedBvh bvh = new QuantizedBvh(hierarchy.getGeometries().getFirst());
+        assertTrue(bvh.nodes() > 100, "Wrong amount of nodes");
+        assertEquals(24L * bvh.nodes(), bvh.bytes(), "Wrong node size");
+        assertEquals(501, bvh.getGeometries().size(), "Every geometry must be in a leaf");
+
+        // =============== Boundary Values Tests ==================
+        // TC10: Single geometry
+        assertEquals(1, new QuantizedBvh(new Geometries(new Sphere(Point.ZERO, 1))).nodes(), "Wrong amount of nodes");
+    }
+
+    /**
+     * Test method for {@link geometries.QuantizedBvh#calculateIntersections(Ray)} and
+     * {@link geometries.QuantizedBvh#closestHit(Ray, HitRecord)}.
+     */
+    @Test
+    void testIntersections() {
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: Compressed SAH hierarchy finds the hits of the flat geometries
+        Geometries flat = scene(2);
+        Geometries hierarchy = scene(2);
+        hierarchy.createHierarchy();
+        hierarchy.add(new Plane(new Point(0, 0, -200), Vector.AXIS_Z));
+        flat.add(new Plane(new Point(0, 0, -200), Vector.AXIS_Z));
+        assertEquals(1, hierarchy.compressHierarchy().size(), "Hierarchy must be compressed");
+        assertSameHits(flat, hierarchy, 2000);
+        // TC02: Compressed unbuilt groups - nested groups of several geometries each
+        Geometries nested = new Geometries(scene(3), scene(4), new Sphere(new Point(0, 0, -30), 5));
+        assertSameHits(new Geometries(scene(3), scene(4), new Sphere(new Point(0, 0, -30), 5)),
+                new QuantizedBvh(nested), 500);
+
+        // =============== Boundary Values Tests ==================
+        // TC10: Single geometry
+        Geometries sphere = new Geometries(new Sphere(new Point(0, 0, -10), 2));
+        assertSameHits(sphere, new QuantizedBvh(sphere), 200);
+        // TC11: Coinciding geometries - the child boxes have no extent relative to their parent
+        Geometries same = new Geometries(new Sphere(new Point(0, 0, -10), 2), new Sphere(new Point(0, 0, -10), 2),
+                new Sphere(new Point(0, 0, -10), 2));
+        same.createHierarchy();
+        assertSameHits(same, new QuantizedBvh(same.getGeometries().getFirst()), 200);
+    }
+}
@@ -0,0 +1,70 @@
+package geometries;
+
+import primitives.*;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Shared scene and comparison of the acceleration structures with the flat geometries
+ * they accelerate, for the unit tests of the acceleration structures.
+ */
+final class SameHits {
+    /** Delta for the comparison of distances */
+    private static final double DELTA = 1e-7;
+
+    /** Don't let anyone instantiate this class. */
+    private SameHits() {
+    }
+
+    /**
+     * Creates a scene of random small spheres and triangles in front of the rays of
+     * {@link #assertSameHits}, and a few large triangles crossing many others
+     *
+     * @param seed  the random seed
+     * @param count amount of geometries
+     * @return the scene geometries
+     */
+    static Intersectable[] scene(long seed, int count) {
+        Random random = new Random(seed);
+        Intersectable[] geometries = new Intersectable[count];
+        for (int i = 0; i < count; ++i) {
+            Point center = new Point(random.nextDouble() * 100 - 50, random.nextDouble() * 100 - 50,
+                    -random.nextDouble() * 100 - 20);
+            double size = i % 100 == 0 ? 40 : 2;
+            geometries[i] = i % 3 == 0
+                    ? new Sphere(center, 0.3 + random.nextDouble())
+                    : new Triangle(center, center.add(new Vector(random.nextDouble() * size + 0.1, 0, 0)),
+                    center.add(new Vector(0, random.nextDouble() * size + 0.1, random.nextDouble())));
+        }
+        return geometries;
+    }
+
+    /**
+     * Checks that an acceleration structure finds the same intersections and closest
+     * hits as the flat geometries, for random rays shot from above the origin down the
+     * Z axis
+     *
+     * @param flat  the flat geometries
+     * @param accel the acceleration structure
+     * @param rays  amount of random rays
+     */
+    static void assertSameHits(Geometries flat, Intersectable accel, int rays) {
+        Random random = new Random(7);
+        HitRecord expected = new HitRecord(), actual = new HitRecord();
+        int hits = 0;
+        for (int i = 0; i < rays; ++i) {
+            Ray ray = new Ray(new Point(random.nextDouble() * 20 - 10, random.nextDouble() * 20 - 10, 10),
+                    new Vector(random.nextDouble() - 0.5, random.nextDouble() - 0.5, -1));
+            var all = flat.calculateIntersections(ray);
+            var found = accel.calculateIntersections(ray);
+            assertEquals(all == null ? 0 : all.size(), found == null ? 0 : found.size(), "Wrong intersections");
+            assertEquals(flat.closestHit(ray, expected.reset()), accel.closestHit(ray, actual.reset()),
+                    "Wrong closest hit");
+            assertEquals(expected.getT(), actual.getT(), DELTA, "Wrong closest hit distance");
+            if (expected.isHit()) ++hits;
+        }
+        assertTrue(hits > 0, "Some rays must hit");
+    }
+}
@@ -0,0 +1,113 @@
+package geometries;
+
+import org.junit.jupiter.api.Test;
+import primitives.*;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link geometries.SphereSet}.
+ */
+class SphereSetTest {
+    /** Delta for the comparison of coordinates */
+    private static final double DELTA = 1e-5;
+
+    /**
+     * Test method for {@link geometries.SphereSet#SphereSet(float[], float[])}.
+     */
+    @Test
+    void testConstructor() {
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: Correct sphere set
+        assertDoesNotThrow(() -> new SphereSet(new float[] { 0, 0, 0, 1, 2, 3 }, new float[] { 1, 2 }),
+                "Failed constructing a correct sphere set");
+        // TC02: Center without all its coordinates
+        assertThrows(IllegalArgumentException.class,
+                () -> new SphereSet(new float[] { 0, 0, 0, 1, 2 }, new float[] { 1, 2 }));
+
+        // =============== Boundary Values Tests ==================
+        // TC10: Zero radius
+        assertThrows(IllegalArgumentException.class, () -> new SphereSet(new float[] { 0, 0, 0 }, new float[] { 0 }));
+        // TC11: No spheres
+        assertThrows(IllegalArgumentException.class, () -> new SphereSet(new float[0], new float[0]));
+    }
+
+    /**
+     * Test method for {@link geometries.SphereSet#getNormal(Point)}.
+     */
+    @Test
+    void testGetNormal() {
+        SphereSet set = new SphereSet(new float[] { 0, 0, 0, 10, 0, 0 }, new float[] { 1, 2 });
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: Point on the second sphere
+        assertEquals(new Vector(0, 1, 0), set.getNormal(new Point(10, 2, 0)), "Wrong sphere set normal");
+
+        // =============== Boundary Values Tests ==================
+        // TC10: Point off the spheres
+        assertThrows(IllegalArgumentException.class, () -> set.getNormal(new Point(5, 0, 0)));
+    }
+
+    /**
+     * Test method for {@link geometries.SphereSet#calculateIntersections(Ray)} and
+     * {@link geometries.SphereSet#closestHit(Ray, HitRecord)}.
+     */
+    @Test
+    void testIntersections() {
+        Random random = new Random(44);
+        int count = 3000;
+        float[] centers = new float[3 * count];
+        float[] radii = new float[count];
+        Sphere[] spheres = new Sphere[count];
+        for (int i = 0; i < count; ++i) {
+            for (int axis = 0; axis < 3; ++axis) centers[3 * i + axis] = random.nextFloat() * 100;
+            radii[i] = 0.2f + random.nextFloat();
+            spheres[i] = new Sphere(new Point(centers[3 * i], centers[3 * i + 1], centers[3 * i + 2]), radii[i]);
+        }
+        Geometries reference = new Geometries(spheres);
+        SphereSet flat = new SphereSet(centers, radii);
+        SphereSet hierarchy = new SphereSet(centers, radii);
+        hierarchy.computeBoundingBox();
+        HitRecord hit = new HitRecord();
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: The set finds the intersections and the closest hit of the separate spheres
+        int hits = 0;
+        for (int i = 0; i < 300; ++i) {
+            Ray ray = new Ray(new Point(-10, random.nextDouble() * 100, random.nextDouble() * 100),
+                    new Vector(1, random.nextDouble() - 0.5, random.nextDouble() - 0.5));
+            List<Point> expected = reference.findIntersections(ray);
+            for (SphereSet set : new SphereSet[] { flat, hierarchy }) {
+                List<Point> actual = set.findIntersections(ray);
+                assertEquals(expected == null ? 0 : expected.size(), actual == null ? 0 : actual.size(),
+                        "Wrong amount of intersections");
+                set.closestHit(ray, hit.reset());
+                if (expected == null) {
+                    assertFalse(hit.isHit(), "Ray must have no hit");
+                    continue;
+                }
+                Point closest = ray.findClosestPoint(expected);
+                assertEquals(closest.distance(ray.getHead()), hit.getT(), DELTA, "Wrong hit distance");
+                Intersectable.Intersection intersection = hit.toIntersection(ray);
+                assertEquals(1, intersection.geometry.getNormal(intersection.point)
+                        .dotProduct(reference.calculateIntersections(ray).stream()
+                                .filter(x -> x.point.distance(closest) < DELTA).findFirst().orElseThrow()
+                                .geometry.getNormal(closest)), DELTA, "Wrong hit normal");
+                ++hits;
+            }
+        }
+        assertTrue(hits > 100, "Many of the rays must hit");
+
+        // =============== Boundary Values Tests ==================
+        // TC10: Ray starting inside a sphere has only the far intersection
+        SphereSet single = new SphereSet(new float[] { 0, 0, 0 }, new float[] { 2 });
+        assertEquals(List.of(new Point(2, 0, 0)), single.findIntersections(new Ray(Point.ZERO, Vector.AXIS_X)),
+                "Wrong intersection from inside");
+        // TC11: Tangent ray misses the sphere
+        assertNull(single.findIntersections(new Ray(new Point(-5, 2, 0), Vector.AXIS_X)),
+                "Tangent ray must miss the sphere");
+    }
+}
@@ -0,0 +1,101 @@
+package geometries;
+
+import org.junit.jupiter.api.Test;
+import primitives.*;
+
+import java.io.Serial;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link geometries.TopLevelBvh}.
+ */
+class TopLevelBvhTest {
+    /**
+     * Sphere counting the calculations of its bounding box
+     */
+    private static class CountingSphere extends Sphere {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        /** Amount of bounding box calculations */
+        int builds = 0;
+
+        /**
+         * Creates the sphere
+         * @param center the center
+         * @param radius the radius
+         */
+        CountingSphere(Point center, double radius) {
+            super(center, radius);
+        }
+
+        @Override
+        public void computeBoundingBox() {
+            ++builds;
+            super.computeBoundingBox();
+        }
+    }
+
+    /**
+     * Test method for {@link geometries.TopLevelBvh#build()} and {@link geometries.TopLevelBvh#refit()}.
+     */
+    @Test
+    void testBuildAndRefit() {
+        CountingSphere shared = new CountingSphere(Point.ZERO, 1);
+        Instance[] instances = new Instance[20];
+        for (int i = 0; i < instances.length; ++i)
+            instances[i] = new Instance(shared, Transform.translation(new Vector(3 * (i + 1), 0, 0)));
+        Plane floor = new Plane(new Point(0, -10, 0), Vector.AXIS_Y);
+        TopLevelBvh top = new TopLevelBvh(instances).add(floor).build();
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: The bottom level of the shared object is built once for all its instances
+        assertEquals(1, shared.builds, "Shared object must be built once");
+        assertTrue(top.nodes() > 1, "Top level must have a hierarchy");
+        // TC02: Ray through a single instance
+        List<Point> result = top.findIntersections(new Ray(new Point(30, 0, -5), Vector.AXIS_Z));
+        assertNotNull(result, "Ray must hit the instance");
+        assertEquals(2, result.size(), "Wrong number of points");
+        // TC03: Ray along the row hits all the instances
+        result = top.findIntersections(new Ray(new Point(-5, 0, 0), Vector.AXIS_X));
+        assertEquals(2 * instances.length, result.size(), "Ray must hit all the instances");
+        // TC04: Unbounded objects are tested by every ray
+        result = top.findIntersections(new Ray(new Point(500, 0, 0), new Vector(0, -1, 0)));
+        assertEquals(List.of(new Point(500, -10, 0)), result, "Ray must hit the plane");
+        // TC05: Refit follows a moved instance without building the shared object again
+        instances[9].setTransform(Transform.translation(new Vector(30, 50, 0)));
+        top.refit();
+        assertEquals(1, shared.builds, "Refit must not build the shared object");
+        assertNull(top.findIntersections(new Ray(new Point(30, 0, -5), Vector.AXIS_Z)),
+                "Ray must miss the old place of the moved instance");
+        result = top.findIntersections(new Ray(new Point(30, 50, -5), Vector.AXIS_Z));
+        assertNotNull(result, "Ray must hit the new place of the moved instance");
+        assertEquals(2, result.size(), "Wrong number of points");
+
+        // =============== Boundary Values Tests ==================
+        // TC10: Refit of a top level that was not built
+        assertThrows(IllegalStateException.class, () -> new TopLevelBvh(instances).refit());
+        // TC11: Empty top level
+        assertNull(new TopLevelBvh().build().findIntersections(new Ray(Point.ZERO, Vector.AXIS_X)),
+                "Empty top level has no intersections");
+    }
+
+    /**
+     * Test method for {@link geometries.Geometries#createTopLevel()}.
+     */
+    @Test
+    void testCreateTopLevel() {
+        Geometries geometries = new Geometries(new Sphere(new Point(0, 0, -10), 1),
+                new Sphere(new Point(5, 0, -10), 1), new Sphere(new Point(-5, 0, -10), 1));
+        Ray ray = new Ray(Point.ZERO, new Vector(5, 0, -10));
+        List<Point> expected = geometries.findIntersections(ray);
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: The two-level hierarchy finds the same intersections
+        TopLevelBvh top = geometries.createTopLevel();
+        assertEquals(List.of(top), geometries.getGeometries(), "Geometries must be replaced by the top level");
+        assertEquals(expected, geometries.findIntersections(ray), "Wrong intersections");
+    }
+}
@@ -0,0 +1,56 @@
+package lighting;
+
+import org.junit.jupiter.api.Test;
+import primitives.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link lighting.LightSource#sample(Point)}.
+ */
+class LightSampleTest {
+    /** Delta for the comparison of values */
+    private static final double DELTA = 1e-10;
+
+    /**
+     * Asserts that the sample of a light at a point has the values of the separate methods
+     * @param light the light source
+     * @param p     the point
+     */
+    private static void assertSample(LightSource light, Point p) {
+        LightSample sample = light.sample(p);
+        assertEquals(1, sample.direction().dotProduct(light.getL(p)), DELTA, "Wrong light direction");
+        assertEquals(light.getDistance(p), sample.distance(), DELTA, "Wrong light distance");
+        Double3 expected = light.getIntensity(p).getRgb();
+        Double3 actual = sample.intensity().getRgb();
+        assertEquals(expected.d1(), actual.d1(), DELTA, "Wrong light intensity");
+        assertEquals(expected.d2(), actual.d2(), DELTA, "Wrong light intensity");
+        assertEquals(expected.d3(), actual.d3(), DELTA, "Wrong light intensity");
+    }
+
+    /**
+     * Test method for {@link lighting.LightSource#sample(Point)}.
+     */
+    @Test
+    void testSample() {
+        Color color = new Color(800, 500, 250);
+        Point p = new Point(1, 2, -3);
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: Point light with attenuation
+        assertSample(new PointLight(color, new Point(5, -4, 7)).setKl(0.01).setKq(0.001), p);
+        // TC02: Spot light with a narrow beam
+        assertSample(new SpotLight(color, new Point(5, -4, 7), new Vector(-1, 1, -2))
+                .setNarrowBeam(8).setKl(0.01), p);
+        // TC03: Directional light
+        assertSample(new DirectionalLight(color, new Vector(1, -1, -1)), p);
+        // TC04: Area light sampled at its center
+        assertSample(new SphereLight(color, new Point(5, -4, 7), 2).setKq(0.002), p);
+
+        // =============== Boundary Values Tests ==================
+        // TC10: Point behind the spot light gets no light
+        LightSample behind = new SpotLight(color, Point.ZERO, Vector.AXIS_Z).sample(new Point(0, 0, -3));
+        assertEquals(3, behind.distance(), DELTA, "Wrong light distance");
+        assertEquals(Color.BLACK.getRgb(), behind.intensity().getRgb(), "Point behind the spot light must be dark");
+    }
+}
@@ -2,11 +2,20 @@ package renderer;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
 
 import org.junit.jupiter.api.Test;
 
+import geometries.Sphere;
+import lighting.PointLight;
 import primitives.*;
 import renderer.Camera;
+import scene.Scene;
 
 /**
  * Unit tests for the {@link Camera} class.
@@ -97,4 +106,87 @@ class CameraTest {
       // BV01: Set to a target on Y-axis without up vector
       assertThrows(IllegalArgumentException.class, () -> cameraBuilder.setDirection(new Point(0, 10, 0)).build());
    }
+
+   /**
+    * Test method for {@link Camera.Builder#enableHeatmap(HeatmapMetric)}.
+    * Verifies that the per-pixel cost is recorded while rendering.
+    */
+   @Test
+   void testHeatmap() {
+      Scene scene = new Scene("Heatmap scene");
+      scene.geometries.add(new Sphere(new Point(0, 0, -100), 30)
+              .setMaterial(new Material().setkD(0.5).setkS(0.5).setnSh(30)));
+      scene.lights.add(new PointLight(new Color(500, 500, 500), new Point(50, 50, 0)));
+      Camera camera = cameraBuilder.setDirection(new Vector(0, 0, -1), Vector.AXIS_Y)
+              .setVpSize(100, 100).setResolution(11, 11)
+              .setRayTracer(scene, RayTracerType.SIMPLE)
+              .enableHeatmap(HeatmapMetric.INTERSECTIONS)
+              .build()
+              .renderImage();
+
+      // ============ Equivalence Partitions Tests ==============
+      // EP01: A pixel hitting the sphere needs a shadow ray - more intersection tests than a missing one
+      assertTrue(camera.heatmap.cost(5, 5) > camera.heatmap.cost(0, 0), "Wrong per-pixel cost");
+
+      // =============== Boundary Values Tests ==================
+      // BV01: A missing pixel tests the scene geometries once and its only sphere once
+      assertEquals(2, camera.heatmap.cost(0, 0), "Wrong cost of a missing pixel");
+   }
+
+   /**
+    * Test method for {@link Camera.Builder#setProgressive(int, double)}.
+    * Verifies the amount of samples taken by progressive rendering.
+    */
+   @Test
+   void testProgressive() {
+      Scene scene = new Scene("Progressive scene");
+      scene.geometries.add(new Sphere(new Point(0, 0, -100), 30));
+      cameraBuilder.setDirection(new Vector(0, 0, -1), Vector.AXIS_Y)
+              .setVpSize(100, 100).setResolution(13, 10)
+              .setRayTracer(scene, RayTracerType.SIMPLE);
+
+      // ============ Equivalence Partitions Tests ==============
+      // EP01: Every pixel gets the requested samples when there is no time limit
+      Camera camera = cameraBuilder.setProgressive(3, 0).setMultithreading(-1).build().renderImage();
+      for (int i = 0; i < 10; ++i)
+         for (int j = 0; j < 13; ++j)
+            assertEquals(3, camera.getSamples(j, i), "Wrong amount of samples");
+
+      // =============== Boundary Values Tests ==================
+      // BV01: Exhausted time budget stops the rendering before all the samples are taken
+      Camera limited = cameraBuilder.setProgressive(1000, 0.05).setMultithreading(0).build().renderImage();
+      assertTrue(limited.getSamples(12, 9) < 1000, "Time budget must stop the rendering");
+   }
+
+   /**
+    * Test method for {@link Camera.Builder#setStreamingOutput(String, int)}.
+    * Verifies that the streamed image is the same as the image rendered in memory.
+    */
+   @Test
+   void testStreamingOutput() throws IOException {
+      Scene scene = new Scene("Streaming scene").setBackgroundColor(new Color(20, 40, 60));
+      scene.geometries.add(new Sphere(new Point(0, 0, -100), 30)
+              .setEmission(new Color(100, 50, 25))
+              .setMaterial(new Material().setkD(0.5).setkS(0.5).setnSh(30)));
+      scene.lights.add(new PointLight(new Color(500, 500, 500), new Point(50, 50, 0)));
+      cameraBuilder.setDirection(new Vector(0, 0, -1), Vector.AXIS_Y)
+              .setVpSize(100, 100).setResolution(37, 23)
+              .setRayTracer(scene, RayTracerType.SIMPLE);
+      BufferedImage expected = cameraBuilder.build().renderImage().imageWriter.toImage();
+
+      // ============ Equivalence Partitions Tests ==============
+      // EP01: Bands that don't divide the image height, multi-threaded
+      Camera streaming = cameraBuilder.setStreamingOutput("streaming test", 5).setMultithreading(-1).build();
+      streaming.renderImage();
+      BufferedImage streamed = ImageIO.read(ImageWriter.imageFile("streaming test.png").toFile());
+      assertEquals(37, streamed.getWidth(), "Wrong streamed image width");
+      assertEquals(23, streamed.getHeight(), "Wrong streamed image height");
+      for (int i = 0; i < 23; ++i)
+         for (int j = 0; j < 37; ++j)
+            assertEquals(expected.getRGB(j, i), streamed.getRGB(j, i), "Wrong streamed pixel");
+
+      // =============== Boundary Values Tests ==================
+      // BV01: The streamed image can't be written again
+      assertThrows(IllegalStateException.class, () -> streaming.writeToImage("streaming test"));
+   }
 }
\ No newline at end of file
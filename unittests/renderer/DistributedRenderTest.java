@@ -0,0 +1,189 @@
+package renderer;
+
+import geometries.Plane;
+import geometries.Sphere;
+import lighting.PointLight;
+import org.junit.jupiter.api.Test;
+import primitives.*;
+import scene.Scene;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for distributed rendering by {@link RenderCoordinator} and {@link RenderWorker}
+ */
+class DistributedRenderTest {
+    /**
+     * Builds a camera of a small test scene
+     * @return the camera builder
+     */
+    private static Camera.Builder cameraBuilder() {
+        Scene scene = new Scene("Distributed scene").setBackgroundColor(new Color(20, 40, 60))
+                .setAmbientLight(new Color(30, 30, 30));
+        scene.geometries.add(
+                new Sphere(new Point(0, 0, -100), 30).setEmission(new Color(100, 50, 25))
+                        .setMaterial(new Material().setkD(0.5).setkS(0.5).setnSh(20)),
+                new Plane(new Point(0, -30, 0), Vector.AXIS_Y).setEmission(new Color(20, 20, 20))
+                        .setMaterial(new Material().setkD(0.6)));
+        scene.lights.add(new PointLight(new Color(400, 400, 400), new Point(50, 50, 0)));
+        return Camera.getBuilder()
+                .setRayTracer(scene, RayTracerType.SIMPLE)
+                .setLocation(Point.ZERO).setDirection(new Point(0, 0, -1), Vector.AXIS_Y)
+                .setVpDistance(100).setVpSize(100, 100)
+                .setResolution(90, 70);
+    }
+
+    /**
+     * Finds a free local TCP port
+     * @return the port
+     */
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * Test method for {@link Camera.Builder#setDistributed(int, double)}.
+     */
+    @Test
+    void testDistributedRendering() throws Exception {
+        Camera local = cameraBuilder().build().renderImage();
+        int port = freePort();
+        Camera coordinator = cameraBuilder().setDistributed(port, 10).build();
+        CompletableFuture<Camera> render = CompletableFuture.supplyAsync(coordinator::renderImage);
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: A worker lost while holding a lease doesn't lose the tile
+        try (Socket lost = connect(port)) {
+            DataInputStream in = new DataInputStream(lost.getInputStream());
+            loadJob(lost, in);
+            assertEquals(0, in.readInt(), "The first lease must be of the first tile");
+        }
+
+        // TC02: The tiles rendered by several workers assemble the same image as the local rendering
+        CompletableFuture<Integer> worker1 = CompletableFuture.supplyAsync(() -> runWorker(port));
+        CompletableFuture<Integer> worker2 = CompletableFuture.supplyAsync(() -> runWorker(port));
+        render.get(60, TimeUnit.SECONDS);
+        int tiles = worker1.get(10, TimeUnit.SECONDS) + worker2.get(10, TimeUnit.SECONDS);
+        assertTrue(tiles >= 3 * 3, "All the tiles must be rendered by the workers");
+        for (int y = 0; y < 70; ++y)
+            for (int x = 0; x < 90; ++x)
+                for (int c = 0; c < 3; ++c)
+                    assertEquals(local.frameBuffer.component(x, y, c), coordinator.frameBuffer.component(x, y, c),
+                            "Wrong assembled pixel (" + x + "," + y + ")");
+
+        // =============== Boundary Values Tests ==================
+        // TC10: Distributed rendering can't be combined with progressive rendering
+        assertThrows(IllegalArgumentException.class,
+                () -> cameraBuilder().setDistributed(port, 0).setProgressive(2, 0).build());
+        // TC11: Port out of range
+        assertThrows(IllegalArgumentException.class, () -> cameraBuilder().setDistributed(0, 0));
+    }
+
+    /**
+     * Test method for {@link RenderCoordinator#render(FrameBuffer, java.util.function.BooleanSupplier)}.
+     */
+    @Test
+    void testLeaseTimeout() throws Exception {
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: Loading the job longer than the lease timeout doesn't drop the worker
+        int port = freePort();
+        try (RenderCoordinator coordinator = new RenderCoordinator(port, new byte[10], 4, 4, 4, 0.2, 0)) {
+            CompletableFuture<Integer> render = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return coordinator.render(new FrameBuffer(4, 4), () -> false);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            try (Socket slow = connect(port)) {
+                DataInputStream in = new DataInputStream(slow.getInputStream());
+                in.readFully(new byte[in.readInt()]);
+                Thread.sleep(500);
+                DataOutputStream out = new DataOutputStream(slow.getOutputStream());
+                out.writeInt(10);
+                assertEquals(0, in.readInt(), "The slow worker must get the tile");
+                in.readFully(new byte[16]);
+                out.writeInt(0);
+                for (int i = 0; i < 3 * 4 * 4; ++i)
+                    out.writeFloat(0);
+                assertEquals(RenderCoordinator.NO_TILE, in.readInt(), "The tile must be accepted");
+            }
+            assertEquals(0, render.get(10, TimeUnit.SECONDS), "No tile must be leased again");
+        }
+
+        // =============== Boundary Values Tests ==================
+        // TC10: All the workers are lost while tiles are pending - the rendering fails
+        port = freePort();
+        try (RenderCoordinator coordinator = new RenderCoordinator(port, new byte[10], 4, 4, 4, 0.2, 200)) {
+            CompletableFuture<Integer> render = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return coordinator.render(new FrameBuffer(4, 4), () -> false);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            try (Socket lost = connect(port)) {
+                DataInputStream in = new DataInputStream(lost.getInputStream());
+                loadJob(lost, in);
+                assertEquals(0, in.readInt(), "The worker must get the tile");
+                ExecutionException e = assertThrows(ExecutionException.class, () -> render.get(10, TimeUnit.SECONDS),
+                        "Rendering must fail without workers");
+                assertInstanceOf(IllegalStateException.class, e.getCause(), "Wrong failure");
+            }
+        }
+    }
+
+    /**
+     * Receives the job from a coordinator and acknowledges it is loaded
+     * @param socket the connection
+     * @param in     the connection input
+     */
+    private static void loadJob(Socket socket, DataInputStream in) throws IOException {
+        int length = in.readInt();
+        in.readFully(new byte[length]);
+        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+        out.writeInt(length);
+        out.flush();
+    }
+
+    /**
+     * Connects to a coordinator that may not be listening yet
+     * @param port the coordinator port
+     * @return the connection
+     */
+    private static Socket connect(int port) throws IOException, InterruptedException, TimeoutException {
+        for (int attempt = 0; attempt < 100; ++attempt) {
+            try {
+                return new Socket("localhost", port);
+            } catch (IOException e) {
+                Thread.sleep(100);
+            }
+        }
+        throw new TimeoutException("Coordinator is not listening");
+    }
+
+    /**
+     * Runs a worker of the coordinator on a local port
+     * @param port the coordinator port
+     * @return the amount of tiles rendered by the worker
+     */
+    private static int runWorker(int port) {
+        try {
+            return new RenderWorker("localhost", port).run();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
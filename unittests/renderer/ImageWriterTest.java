@@ -3,6 +3,16 @@ package renderer;
 import org.junit.jupiter.api.Test;
 import primitives.Color;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.Adler32;
+
 import static java.awt.Color.*;
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -32,4 +42,121 @@ class ImageWriterTest {
 
 
     }
+
+    /** Test method for {@link PngWriter#writeParallel}.
+     * <p>
+     * This test verifies that the bands compressed in parallel form a valid png
+     * file decoded into the same pixels.
+     */
+    @Test
+    public void testWriteParallelPng() throws IOException {
+        ImageWriter imageWriter = new ImageWriter(97, 61);
+        for (int x = 0; x < 97; x++)
+            for (int y = 0; y < 61; y++)
+                imageWriter.writePixel(x, y, new Color((x * 7 + y * y) % 300, (x ^ y) % 256, (x * y) % 256));
+        BufferedImage expected = imageWriter.toImage();
+        Path file = ImageWriter.imageFile("parallelPngTest.png");
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: Many bands at each compression level decode to the same pixels
+        for (int level : new int[] { 0, 1, 6, 9 }) {
+            PngWriter.writeParallel(file, imageWriter.frameBuffer(), ToneMapping.CLAMP, 0, level, 5);
+            assertSamePixels(expected, ImageIO.read(file.toFile()), "Wrong pixels at level " + level);
+        }
+
+        // =============== Boundary Values Tests ==================
+        // TC10: Single band of the whole image
+        PngWriter.writeParallel(file, imageWriter.frameBuffer(), ToneMapping.CLAMP, 0, -1, 61);
+        assertSamePixels(expected, ImageIO.read(file.toFile()), "Wrong pixels of a single band");
+        // TC11: Band of a single row
+        PngWriter.writeParallel(file, imageWriter.frameBuffer(), ToneMapping.CLAMP, 0, -1, 1);
+        assertSamePixels(expected, ImageIO.read(file.toFile()), "Wrong pixels of single row bands");
+        // TC12: Combined Adler-32 checksum equals the checksum of the whole data
+        byte[] data = new byte[70000];
+        for (int i = 0; i < data.length; i++) data[i] = (byte) (i * 31 + i / 7);
+        Adler32 whole = new Adler32(), first = new Adler32(), second = new Adler32();
+        whole.update(data);
+        first.update(data, 0, 12345);
+        second.update(data, 12345, data.length - 12345);
+        assertEquals(whole.getValue(),
+                PngWriter.adler32Combine(first.getValue(), second.getValue(), data.length - 12345),
+                "Wrong combined checksum");
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * Asserts that two images have the same size and RGB pixels
+     * @param expected the expected image
+     * @param actual   the actual image
+     * @param message  the failure message
+     */
+    private static void assertSamePixels(BufferedImage expected, BufferedImage actual, String message) {
+        assertEquals(expected.getWidth(), actual.getWidth(), message);
+        assertEquals(expected.getHeight(), actual.getHeight(), message);
+        for (int y = 0; y < expected.getHeight(); y++)
+            for (int x = 0; x < expected.getWidth(); x++)
+                assertEquals(expected.getRGB(x, y) & 0xFFFFFF, actual.getRGB(x, y) & 0xFFFFFF, message);
+    }
+
+    /** Test method for {@link ImageWriter#toImage()}.
+     * <p>
+     * This test verifies the accumulation of samples in the frame buffer and the
+     * tone mapping and quantization of the written image.
+     */
+    @Test
+    public void testToImage() {
+        ImageWriter imageWriter = new ImageWriter(2, 1);
+        FrameBuffer frameBuffer = imageWriter.frameBuffer();
+        frameBuffer.addSample(0, 0, new Color(100, 0, 200));
+        frameBuffer.addSample(0, 0, new Color(300, 0, 0));
+        imageWriter.writePixel(1, 0, new Color(1020, 510, 255));
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: The samples of a pixel are averaged without clamping
+        assertEquals(2, frameBuffer.samples(0, 0), "Wrong amount of samples");
+        assertEquals(200, frameBuffer.component(0, 0, 0), 1e-4, "Samples must be averaged");
+        assertEquals(100, frameBuffer.component(0, 0, 2), 1e-4, "Samples must be averaged");
+        assertEquals(1020, frameBuffer.component(1, 0, 0), 1e-4, "Components must not be clamped");
+
+        // TC02: Clamping quantization keeps the colors in range and saturates the rest
+        assertEquals(0xC80064, imageWriter.toImage().getRGB(0, 0) & 0xFFFFFF, "Wrong quantized color");
+        assertEquals(0xFFFFFF, imageWriter.toImage().getRGB(1, 0) & 0xFFFFFF, "Wrong clamped color");
+
+        // TC03: Reinhard tone mapping maps the white point to full intensity and keeps the hue
+        int mapped = imageWriter.setToneMapping(ToneMapping.REINHARD).toImage().getRGB(1, 0) & 0xFFFFFF;
+        assertEquals(255, mapped >> 16, "White point must be mapped to full intensity");
+        assertTrue((mapped >> 8 & 0xFF) < 255 && (mapped & 0xFF) < (mapped >> 8 & 0xFF), "Highlights must be compressed");
+    }
+
+    /** Test method for {@link ImageWriter#writeToImage(String, ImageFormat)}.
+     * <p>
+     * This test verifies the linear HDR files written from the frame buffer.
+     */
+    @Test
+    public void testWriteHdr() throws IOException {
+        ImageWriter imageWriter = new ImageWriter(10, 2);
+        for (int i = 0; i < 10; i++)
+            for (int j = 0; j < 2; j++)
+                imageWriter.writePixel(i, j, j == 0 ? new Color(255, 127.5, 0) : new Color(510, 0, 0));
+        Path folder = Path.of(System.getProperty("user.dir"), "images");
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: PFM keeps the components above the printed white, bottom row first
+        imageWriter.writeToImage("hdrTest", ImageFormat.PFM);
+        ByteBuffer pfm = ByteBuffer.wrap(Files.readAllBytes(folder.resolve("hdrTest.pfm"))).order(ByteOrder.LITTLE_ENDIAN);
+        String pfmHeader = "PF\n10 2\n-1.0\n";
+        assertEquals(pfmHeader.length() + 10 * 2 * 3 * 4, pfm.capacity(), "Wrong PFM file size");
+        assertEquals(2.0f, pfm.getFloat(pfmHeader.length()), 1e-6, "Wrong PFM bottom row red");
+        assertEquals(0.5f, pfm.getFloat(pfmHeader.length() + 10 * 3 * 4 + 4), 1e-6, "Wrong PFM top row green");
+
+        // TC02: Radiance file encodes each uniform scanline component as a single run
+        imageWriter.writeToImage("hdrTest", ImageFormat.HDR);
+        byte[] hdr = Files.readAllBytes(folder.resolve("hdrTest.hdr"));
+        String hdrHeader = "#?RADIANCE\nFORMAT=32-bit_rle_rgbe\n\n-Y 2 +X 10\n";
+        assertEquals(hdrHeader.length() + 2 * (4 + 4 * 2), hdr.length, "Wrong HDR file size");
+        int line = hdrHeader.length();
+        // (1, 0.5, 0) = (128, 64, 0) * 2^(129-136)
+        assertArrayEquals(new byte[] { 2, 2, 0, 10, (byte) 138, (byte) 128, (byte) 138, 64, (byte) 138, 0, (byte) 138, (byte) 129 },
+                Arrays.copyOfRange(hdr, line, line + 12), "Wrong HDR scanline");
+    }
 }
\ No newline at end of file
@@ -0,0 +1,91 @@
+package renderer;
+
+import geometries.Sphere;
+import org.junit.jupiter.api.Test;
+import primitives.*;
+import scene.Scene;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link RenderCheckpoint} and checkpointed rendering by {@link Camera}
+ */
+class RenderCheckpointTest {
+    /** Checkpoint file of the tests */
+    private final Path file = ImageWriter.imageFile("checkpoint test.rckp");
+
+    /**
+     * Test method for {@link RenderCheckpoint#saveTile(int, FrameBuffer)} and
+     * {@link RenderCheckpoint#restore(FrameBuffer)}.
+     */
+    @Test
+    void testSaveRestore() throws IOException {
+        FrameBuffer frameBuffer = new FrameBuffer(10, 5);
+        frameBuffer.setPixel(0, 0, new Color(300, 2, 1));
+        frameBuffer.setPixel(9, 4, new Color(4, 5, 6));
+        try (RenderCheckpoint checkpoint = new RenderCheckpoint(file, 10, 5, 4, false)) {
+            assertEquals(6, checkpoint.tiles(), "Wrong amount of tiles");
+            checkpoint.saveTile(0, frameBuffer);
+            checkpoint.saveTile(5, frameBuffer);
+        }
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: Resumed checkpoint restores only the saved tiles
+        FrameBuffer restored = new FrameBuffer(10, 5);
+        try (RenderCheckpoint checkpoint = new RenderCheckpoint(file, 10, 5, 4, true)) {
+            assertTrue(checkpoint.isDone(0) && checkpoint.isDone(5), "Saved tiles must be done");
+            assertFalse(checkpoint.isDone(1), "Unsaved tile must not be done");
+            assertEquals(2, checkpoint.restore(restored), "Wrong amount of restored tiles");
+        }
+        assertEquals(300, restored.component(0, 0, 0), "Wrong restored component");
+        assertEquals(6, restored.component(9, 4, 2), "Wrong restored component");
+        assertEquals(0, restored.samples(4, 0), "Pixel of unsaved tile must not be restored");
+
+        // TC02: New checkpoint discards the existing one
+        try (RenderCheckpoint checkpoint = new RenderCheckpoint(file, 10, 5, 4, false)) {
+            assertFalse(checkpoint.isDone(0), "New checkpoint must have no done tiles");
+        }
+
+        // =============== Boundary Values Tests ==================
+        // TC10: Checkpoint of another resolution can't be resumed
+        assertThrows(IllegalStateException.class, () -> new RenderCheckpoint(file, 11, 5, 4, true).close());
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * Test method for {@link Camera.Builder#setCheckpoint(Path, double, boolean)}.
+     */
+    @Test
+    void testResumeRendering() throws IOException {
+        Scene scene = new Scene("Checkpoint scene").setBackgroundColor(new Color(20, 40, 60));
+        scene.geometries.add(new Sphere(new Point(0, 0, -100), 30).setEmission(new Color(100, 50, 25)));
+        Camera.Builder builder = Camera.getBuilder()
+                .setRayTracer(scene, RayTracerType.SIMPLE)
+                .setLocation(Point.ZERO).setDirection(new Point(0, 0, -1), Vector.AXIS_Y)
+                .setVpDistance(100).setVpSize(100, 100)
+                .setResolution(70, 40)
+                .setMultithreading(-1)
+                .enableRenderStats();
+        Files.deleteIfExists(file);
+        Camera first = builder.setCheckpoint(file, 0, true).build().renderImage();
+        assertEquals(70 * 40, first.getRenderStats().getRays(RenderStats.RayType.PRIMARY), "All pixels must be rendered");
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: Resuming a complete checkpoint renders nothing and restores the image
+        Camera resumed = builder.build();
+        resumed.frameBuffer.clear();
+        resumed.renderImage();
+        assertEquals(0, resumed.getRenderStats().getRays(RenderStats.RayType.PRIMARY), "No pixel must be rendered");
+        assertEquals(first.frameBuffer.component(35, 20, 0), resumed.frameBuffer.component(35, 20, 0), "Wrong restored pixel");
+        assertEquals(1, resumed.frameBuffer.samples(0, 0), "Restored pixel must have a sample");
+
+        // TC02: Without resume the image is rendered again
+        Camera again = builder.setCheckpoint(file, 0, false).build().renderImage();
+        assertEquals(70 * 40, again.getRenderStats().getRays(RenderStats.RayType.PRIMARY), "All pixels must be rendered");
+        Files.deleteIfExists(file);
+    }
+}
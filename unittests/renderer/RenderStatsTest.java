@@ -0,0 +1,86 @@
+package renderer;
+
+import geometries.Geometries;
+import geometries.Intersectable;
+import geometries.Sphere;
+import geometries.Triangle;
+import lighting.PointLight;
+import org.junit.jupiter.api.Test;
+import primitives.*;
+import scene.Scene;
+
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static renderer.RenderStats.RayType.*;
+
+/**
+ * Unit tests for {@link RenderStats} collected by {@link Camera}
+ */
+class RenderStatsTest {
+
+    /**
+     * Prepares a camera builder of a small scene with a reflective triangle and a sphere
+     * @return the camera builder
+     */
+    private Camera.Builder prepareCamera() {
+        Scene scene = new Scene("Stats scene");
+        scene.geometries.add(
+                new Sphere(new Point(0, 0, -100), 30)
+                        .setMaterial(new Material().setkD(0.5).setkS(0.5).setnSh(30).setkT(0.5)),
+                new Triangle(new Point(-150, -150, -150), new Point(150, -150, -150), new Point(0, 150, -150))
+                        .setMaterial(new Material().setkD(0.5).setkR(0.5)));
+        scene.lights.add(new PointLight(new Color(500, 500, 500), new Point(50, 50, 0)));
+        return Camera.getBuilder()
+                .setRayTracer(scene, RayTracerType.SIMPLE)
+                .setLocation(Point.ZERO).setDirection(new Point(0, 0, -1), Vector.AXIS_Y)
+                .setVpDistance(100).setVpSize(200, 200)
+                .setResolution(20, 20);
+    }
+
+    /**
+     * Test method for {@link Camera#getRenderStats()}.
+     */
+    @Test
+    void testCollectedStats() {
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: statistics are not collected unless enabled
+        Camera plain = prepareCamera().build().renderImage();
+        assertNull(plain.getRenderStats(), "Statistics must not be collected when disabled");
+
+        // TC02: single thread rendering counts every primary ray and every hit
+        RenderStats stats = prepareCamera().enableRenderStats().build().renderImage().getRenderStats();
+        assertNotNull(stats, "Statistics must be collected when enabled");
+        assertEquals(400, stats.getRays(PRIMARY), "Wrong amount of primary rays");
+        assertTrue(stats.getRays(SHADOW) > 0, "Shadow rays must be counted");
+        assertTrue(stats.getRays(REFLECTION) > 0, "Reflected rays must be counted");
+        assertTrue(stats.getRays(REFRACTION) > 0, "Refracted rays must be counted");
+        assertTrue(stats.getIntersectionTests(Sphere.class) >= 400, "Sphere must be tested by each primary ray");
+        assertTrue(stats.getDepthCount(1) > 0 && stats.getDepthCount(2) > 0, "Wrong recursion depth histogram");
+        assertTrue(stats.getPhaseNanos("render") > 0, "Render phase time must be recorded");
+        assertEquals(0, stats.getBoxTests(), "No boxes are tested without acceleration");
+
+        // TC03: multi-threaded rendering with hierarchy merges the per-thread counters
+        RenderStats threaded = prepareCamera().enableBVH().enableRenderStats().setMultithreading(3)
+                .build().renderImage().getRenderStats();
+        assertEquals(400, threaded.getRays(PRIMARY), "Wrong amount of merged primary rays");
+        assertTrue(threaded.getBoxTests() > 0, "Box tests must be counted with BVH");
+        assertTrue(threaded.getBoxRejections() <= threaded.getBoxTests(), "More rejections than tests");
+        assertTrue(threaded.getNodesVisited() > 0, "Hierarchy nodes visits must be counted");
+        assertTrue(threaded.getIntersectionTests(Geometries.class) == threaded.getNodesVisited(),
+                "Nodes visited must be the intersection tests of the hierarchy nodes");
+        assertTrue(threaded.getPhaseNanos("hierarchy") > 0, "Hierarchy build time must be recorded");
+        assertTrue(threaded.report().contains("Sphere"), "Report must list the tested geometry classes");
+
+        // =============== Boundary Values Tests ==================
+        // TC10: pooled rendering threads don't keep reporting into finished statistics
+        prepareCamera().enableRenderStats().setMultithreading(-1).build().renderImage();
+        Intersectable.startObserving();
+        try {
+            assertTrue(IntStream.range(0, 1000).parallel().allMatch(i -> Intersectable.getObserver() == null),
+                    "Rendering threads must be detached from the statistics");
+        } finally {
+            Intersectable.stopObserving();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package scene;
+
+import geometries.Mesh;
+import org.junit.jupiter.api.Test;
+import primitives.Double3;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link ObjImporter}
+ */
+class ObjImporterTest {
+    /**
+     * Test method for {@link ObjImporter#importInto(Scene, Path)}.
+     */
+    @Test
+    void testImport() throws IOException {
+        Path directory = Files.createTempDirectory("obj");
+        Files.writeString(directory.resolve("test.mtl"), """
+                # materials
+                newmtl red
+                Kd 0.8 0.1 0.1
+                Ks 0.5
+                Ns 40
+                d 0.75
+                newmtl lamp
+                Ke 1 1 0.5
+                """);
+        Path obj = directory.resolve("test.obj");
+        Files.writeString(obj, "# test object\r\nmtllib test.mtl\r\n"
+                + "v 0 0 0\r\nv 1.5 0 0\r\nv 1.5 2e0 0\r\nv 0 2 -0.25\r\n"
+                + "vn 0 0 1\r\n"
+                + "usemtl red\r\nf 1/1/1 2/2/1 3/3/1 4/4/1\r\n"
+                + "usemtl lamp\r\nv -1 -1 -1\r\nf -1 1 2\r\n");
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: Vertices, triangulated faces, relative indices and materials
+        Scene scene = new Scene("OBJ scene");
+        ObjImporter.Result result = ObjImporter.importInto(scene, obj);
+        assertEquals(5, result.vertices(), "Wrong amount of vertices");
+        assertEquals(3, result.faces(), "Wrong amount of faces");
+        assertEquals(2, scene.geometries.getGeometries().size(), "Wrong amount of meshes");
+        Mesh red = result.meshes().get(0), lamp = result.meshes().get(1);
+        assertArrayEquals(new int[] { 0, 1, 2, 0, 2, 3 }, red.getIndices(), "Wrong fan triangulation");
+        assertArrayEquals(new int[] { 4, 0, 1 }, lamp.getIndices(), "Wrong relative index");
+        assertEquals(-0.25f, red.getVertices()[11], "Wrong vertex coordinate");
+        assertEquals(new Double3(0.8, 0.1, 0.1), red.getMaterial().kD, "Wrong diffuse factor");
+        assertEquals(new Double3(0.5), red.getMaterial().kS, "Wrong specular factor");
+        assertEquals(40, red.getMaterial().nSh, "Wrong shininess");
+        assertEquals(new Double3(0.25), red.getMaterial().kT, "Wrong transparency");
+        assertEquals(new Double3(255, 255, 127.5), lamp.getEmission().getRgb(), "Wrong emission");
+
+        // TC02: Parallel chunks parse the same as a single chunk
+        StringBuilder grid = new StringBuilder("mtllib test.mtl\nusemtl red\n");
+        int n = 60;
+        for (int y = 0; y <= n; ++y)
+            for (int x = 0; x <= n; ++x)
+                grid.append("v ").append(x * 0.125).append(' ').append(y * -1.5e-1).append(" 0\n");
+        for (int y = 0; y < n; ++y)
+            for (int x = 0; x < n; ++x) {
+                int v = y * (n + 1) + x + 1;
+                grid.append("f ").append(v).append(' ').append(v + 1).append(' ')
+                        .append(v + n + 2).append(' ').append(v + n + 1).append('\n');
+                if (x == n / 2) grid.append("usemtl lamp\n");
+                if (x == n - 1) grid.append("usemtl red\n");
+            }
+        Files.writeString(obj, grid);
+        ObjImporter.Result single = ObjImporter.load(obj, 1);
+        ObjImporter.Result parallel = ObjImporter.load(obj, 13);
+        assertEquals(2 * n * n, parallel.faces(), "Wrong amount of faces");
+        assertEquals(single.meshes().size(), parallel.meshes().size(), "Wrong amount of meshes");
+        assertArrayEquals(single.meshes().get(0).getVertices(), parallel.meshes().get(0).getVertices(),
+                "Chunks must parse the same vertices");
+        for (int i = 0; i < single.meshes().size(); ++i)
+            assertArrayEquals(single.meshes().get(i).getIndices(), parallel.meshes().get(i).getIndices(),
+                    "Chunks must parse the same faces");
+
+        // =============== Boundary Values Tests ==================
+        // TC10: Face index out of range
+        Files.writeString(obj, "v 0 0 0\nv 1 0 0\nv 0 1 0\nf 1 2 4\n");
+        assertThrows(IOException.class, () -> ObjImporter.load(obj), "Index out of range must be rejected");
+
+        Files.delete(obj);
+        Files.delete(directory.resolve("test.mtl"));
+        Files.delete(directory);
+    }
+}
@@ -0,0 +1,134 @@
+package scene;
+
+import geometries.*;
+import lighting.*;
+import org.junit.jupiter.api.Test;
+import primitives.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link SceneFile}
+ */
+class SceneFileTest {
+    /**
+     * Test method for {@link SceneFile#write(Path, Scene, SceneFile.View)} and {@link SceneFile#read(Path)}.
+     */
+    @Test
+    void testWriteRead() throws IOException {
+        Path file = Files.createTempFile("scene", ".rtsc");
+        Material material = new Material().setkD(0.4).setkS(new Double3(0.1, 0.2, 0.3)).setnSh(30).setkT(0.5);
+        int n = 300;
+        float[] vertices = new float[3 * (n + 1) * (n + 1)];
+        for (int i = 0; i < vertices.length; ++i) vertices[i] = i * 0.25f;
+        int[] indices = new int[6 * n * n];
+        for (int i = 0; i < indices.length; ++i) indices[i] = (i * 7) % ((n + 1) * (n + 1));
+
+        Scene scene = new Scene("Saved scene").setBackgroundColor(new Color(1, 2, 3))
+                .setAmbientLight(new Color(4, 5, 6));
+        scene.geometries.add(
+                new Sphere(new Point(1, 2, 3), 4).setEmission(new Color(7, 8, 9)).setMaterial(material),
+                new Geometries(new Plane(new Point(0, 0, -5), new Vector(0, 1, 1)),
+                        new Triangle(new Point(0, 0, 0), new Point(1, 0, 0), new Point(0, 1, 0))),
+                new Polygon(new Point(0, 0, 1), new Point(1, 0, 1), new Point(1, 1, 1), new Point(0, 1, 1)),
+                new Tube(new Ray(Point.ZERO, new Vector(0, 0, 1)), 2),
+                new Cylinder(new Ray(Point.ZERO, new Vector(1, 0, 0)), 1, 3),
+                new Mesh(vertices, indices).setMaterial(material));
+        scene.lights.add(new PointLight(new Color(100, 100, 100), new Point(1, 1, 1)).setKl(0.1).setKq(0.01));
+        scene.lights.add(new SpotLight(new Color(50, 60, 70), new Point(2, 2, 2), new Vector(0, 0, -1))
+                .setNarrowBeam(5));
+        scene.lights.add(new DiskLight(new Color(10, 10, 10), new Point(3, 3, 3), new Vector(0, -1, 0), 1.5));
+        scene.lights.add(new SphereLight(new Color(20, 20, 20), new Point(4, 4, 4), 2.5));
+        scene.lights.add(new DirectionalLight(new Color(30, 30, 30), new Vector(1, -1, 0)));
+        SceneFile.View view = new SceneFile.View(new Point(0, 0, 100), new Vector(0, 0, -1), Vector.AXIS_Y,
+                100, 50, 40, 500, 400);
+        SceneFile.write(file, scene, view);
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: All the scene parts are read back
+        SceneFile.Content content = SceneFile.read(file);
+        Scene read = content.scene();
+        assertEquals(view, content.view(), "Wrong view");
+        assertEquals("Saved scene", read.name, "Wrong scene name");
+        assertEquals(new Double3(1, 2, 3), read.backgroundColor.getRgb(), "Wrong background");
+        assertEquals(new Double3(4, 5, 6), read.ambientLight.getIntensity().getRgb(), "Wrong ambient light");
+
+        List<Intersectable> geometries = read.geometries.getGeometries();
+        assertEquals(6, geometries.size(), "Wrong amount of geometries");
+        Sphere sphere = (Sphere) geometries.get(0);
+        assertEquals(new Point(1, 2, 3), sphere.getCenter(), "Wrong sphere center");
+        assertEquals(4, sphere.getRadius(), "Wrong sphere radius");
+        assertEquals(new Double3(7, 8, 9), sphere.getEmission().getRgb(), "Wrong emission");
+        assertEquals(material.kS, sphere.getMaterial().kS, "Wrong material");
+        assertEquals(material.kT, sphere.getMaterial().kT, "Wrong material");
+        assertEquals(30, sphere.getMaterial().nSh, "Wrong material");
+        List<Intersectable> group = ((Geometries) geometries.get(1)).getGeometries();
+        assertEquals(new Vector(0, 1, 1).normalize(), ((Plane) group.get(0)).getNormal(null), "Wrong plane");
+        assertEquals(new Point(1, 0, 0), ((Triangle) group.get(1)).getVertices().get(1), "Wrong triangle");
+        assertEquals(4, ((Polygon) geometries.get(2)).getVertices().size(), "Wrong polygon");
+        assertInstanceOf(Tube.class, geometries.get(3), "Wrong tube");
+        assertEquals(3, ((Cylinder) geometries.get(4)).getHeight(), "Wrong cylinder");
+        Mesh mesh = (Mesh) geometries.get(5);
+        assertArrayEquals(vertices, mesh.getVertices(), "Wrong mesh vertices");
+        assertArrayEquals(indices, mesh.getIndices(), "Wrong mesh indices");
+
+        assertEquals(5, read.lights.size(), "Wrong amount of lights");
+        assertEquals(0.01, ((PointLight) read.lights.get(0)).getKq(), "Wrong attenuation");
+        assertEquals(5, ((SpotLight) read.lights.get(1)).getNarrowBeam(), "Wrong narrow beam");
+        assertEquals(1.5, ((DiskLight) read.lights.get(2)).getRadius(), "Wrong disk light");
+        assertEquals(2.5, ((SphereLight) read.lights.get(3)).getRadius(), "Wrong sphere light");
+        assertEquals(new Vector(1, -1, 0).normalize(), ((DirectionalLight) read.lights.get(4)).getDirection(),
+                "Wrong directional light");
+
+        // =============== Boundary Values Tests ==================
+        // TC10: File of a newer version is rejected
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(4, SceneFile.VERSION + 1);
+        Files.write(file, bytes);
+        assertThrows(IOException.class, () -> SceneFile.read(file), "Newer version must be rejected");
+        // TC11: Truncated file is rejected
+        Files.write(file, Arrays.copyOf(bytes, bytes.length / 2));
+        assertThrows(IOException.class, () -> SceneFile.read(file), "Truncated file must be rejected");
+        // TC12: Corrupted lengths of the arrays are rejected before they are allocated
+        Scene small = new Scene("Small");
+        small.geometries.add(new Polygon(new Point(0.1, 0, 1), new Point(1, 0, 1), new Point(1, 1, 1)),
+                new Mesh(new float[] { 0, 0, 0, 1, 0, 0, 0, 1, 0 }, new int[] { 0, 1, 2 }));
+        SceneFile.write(file, small, null);
+        byte[] smallBytes = Files.readAllBytes(file);
+        // the polygon vertex count is followed by its first vertex, the mesh vertex count by its index count
+        int polygonLength = find(smallBytes, 3, (int) Double.doubleToLongBits(0.1)), meshLength = find(smallBytes, 9, 3);
+        int[][] corruptions = { { 8, -1 }, { 8, Integer.MAX_VALUE }, { polygonLength, -3 },
+                { polygonLength, 0x40000000 }, { meshLength, -9 }, { meshLength, Integer.MAX_VALUE },
+                { meshLength + 4, 0x40000000 } };
+        for (int[] corruption : corruptions) {
+            byte[] corrupted = smallBytes.clone();
+            ByteBuffer.wrap(corrupted).order(ByteOrder.LITTLE_ENDIAN).putInt(corruption[0], corruption[1]);
+            Files.write(file, corrupted);
+            assertThrows(IOException.class, () -> SceneFile.read(file), "Corrupted length must be rejected");
+        }
+        Files.delete(file);
+    }
+
+    /**
+     * Finds the first position of a pair of little endian ints in file content
+     *
+     * @param bytes  the content
+     * @param first  the first int
+     * @param second the second int
+     * @return the position of the first int
+     */
+    private static int find(byte[] bytes, int first, int second) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i + 8 <= bytes.length; i += 4)
+            if (buffer.getInt(i) == first && buffer.getInt(i + 4) == second) return i;
+        throw new IllegalStateException("Not found");
+    }
+}